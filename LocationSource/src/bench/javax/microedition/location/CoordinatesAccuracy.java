@@ -0,0 +1,229 @@
+package javax.microedition.location;
+
+import java.util.Random;
+
+/**
+ * Reports how far the math in <code>Coordinates</code> is from a high
+ * precision reference.  The reference is <code>java.lang.StrictMath</code>,
+ * whose results are within one ulp of the exact answer, evaluated with the
+ * same formulas.  The error therefore comes only from the implementation
+ * being measured, not from the earth model.  How far the distance formula
+ * itself is from the geodesic on the ellipsoid is reported separately,
+ * against <code>GeodesicCalculator</code>.
+ * <p>
+ * Run with <code>ant accuracy</code>.  The optional argument is the number of
+ * random samples.
+ *
+ * @see CoordinatesBenchmark
+ */
+public class CoordinatesAccuracy
+{
+	/**
+	 * The default number of random samples.
+	 */
+	private static final int DEFAULT_SAMPLES = 1000000;
+
+	/**
+	 * Measures every implementation and prints a table of the errors.
+	 *
+	 * @param args is an optional number of samples.
+	 */
+	public static void main (String[] args)
+	{
+		int samples = (args.length > 0) ? Integer.parseInt( args[0] ) : DEFAULT_SAMPLES;
+		Random random = new Random( 179 );
+
+		Error atan = new Error( "Coordinates.atan", "rad" );
+		Error atan2 = new Error( "Coordinates.atan2", "rad" );
+		Error asin = new Error( "Coordinates.asin", "rad" );
+		Error distance = new Error( "Coordinates.distance", "%" );
+		Error azimuth = new Error( "Coordinates.azimuthTo", "deg" );
+		Error geodesic = new Error( "Coordinates.distance vs geodesic", "%" );
+		Error fastAtan = new Error( "FastTrig.atan", "rad" );
+		Error fastAtan2 = new Error( "FastTrig.atan2", "rad" );
+		Error fastAsin = new Error( "FastTrig.asin", "rad" );
+		Error fastDistance = new Error( "CoordinatesBatch.distances fast", "%" );
+		Error fastAzimuth = new Error( "CoordinatesBatch.azimuths fast", "deg" );
+
+		// Single point batches for the fast math mode.
+		double[] from1 = new double[1];
+		double[] from2 = new double[1];
+		double[] to1 = new double[1];
+		double[] to2 = new double[1];
+		float[] result = new float[1];
+
+		for ( int i = 0; i < samples; i++ )
+		{
+			double y = random.nextGaussian() * 10.0;
+			double x = random.nextGaussian() * 10.0;
+			double ratio = random.nextDouble() * 2.0 - 1.0;
+
+			atan.add( Coordinates.atan(y), StrictMath.atan(y) );
+			atan2.add( Coordinates.atan2(y, x), StrictMath.atan2(y, x) );
+			asin.add( Coordinates.asin(ratio), StrictMath.asin(ratio) );
+			fastAtan.add( FastTrig.atan(y), StrictMath.atan(y) );
+			fastAtan2.add( FastTrig.atan2(y, x), StrictMath.atan2(y, x) );
+			fastAsin.add( FastTrig.asin(ratio), StrictMath.asin(ratio) );
+
+			Coordinates from = randomCoordinates( random );
+			Coordinates to = randomCoordinates( random );
+			double expected = referenceDistance( from, to );
+
+			double expectedAzimuth = referenceAzimuth( from, to );
+
+			if ( expected > 1.0 )
+			{
+				distance.add( 100.0 * (from.distance(to) - expected) / expected, 0.0 );
+
+				double ellipsoid = new GeodesicCalculator( from ).distance( to.getLatitude(), to.getLongitude() );
+				geodesic.add( 100.0 * (from.distance(to) - ellipsoid) / ellipsoid, 0.0 );
+			}
+
+			azimuth.add( angleDifference(from.azimuthTo(to), expectedAzimuth), 0.0 );
+
+			from1[0] = from.getLatitude();
+			from2[0] = from.getLongitude();
+			to1[0] = to.getLatitude();
+			to2[0] = to.getLongitude();
+
+			if ( expected > 1.0 )
+			{
+				CoordinatesBatch.distances( from1, from2, to1, to2, result, 0, 1, CoordinatesBatch.MATH_FAST );
+				fastDistance.add( 100.0 * (result[0] - expected) / expected, 0.0 );
+			}
+
+			CoordinatesBatch.azimuths( from1, from2, to1, to2, result, 0, 1, CoordinatesBatch.MATH_FAST );
+			fastAzimuth.add( angleDifference(result[0], expectedAzimuth), 0.0 );
+		}
+
+		System.out.println( "Errors over " + samples + " samples versus StrictMath:" );
+		System.out.println( atan );
+		System.out.println( atan2 );
+		System.out.println( asin );
+		System.out.println( distance );
+		System.out.println( azimuth );
+		System.out.println( geodesic );
+		System.out.println( fastAtan );
+		System.out.println( fastAtan2 );
+		System.out.println( fastAsin );
+		System.out.println( fastDistance );
+		System.out.println( fastAzimuth );
+	}
+
+	/**
+	 * @return A point anywhere on the globe.
+	 */
+	private static Coordinates randomCoordinates (Random random)
+	{
+		double latitude = random.nextDouble() * 179.998 - 89.999;
+		double longitude = random.nextDouble() * 359.998 - 179.999;
+
+		return new Coordinates( latitude, longitude, Float.NaN );
+	}
+
+	/**
+	 * @return Lambert's distance in meters computed with <code>StrictMath</code>
+	 *  and exact reduced latitudes.
+	 */
+	private static double referenceDistance (Coordinates from, Coordinates to)
+	{
+		double beta1 = StrictMath.atan( (1.0 - Coordinates.FLATTENING) * StrictMath.tan(StrictMath.toRadians(from.getLatitude())) );
+		double lon1 = StrictMath.toRadians( from.getLongitude() );
+		double beta2 = StrictMath.atan( (1.0 - Coordinates.FLATTENING) * StrictMath.tan(StrictMath.toRadians(to.getLatitude())) );
+		double lon2 = StrictMath.toRadians( to.getLongitude() );
+
+		double d1 = StrictMath.sin( (beta1 - beta2) / 2.0 );
+		double d4 = StrictMath.sin( (lon1 - lon2) / 2.0 );
+		double h = d1 * d1 + StrictMath.cos( beta1 ) * StrictMath.cos( beta2 ) * d4 * d4;
+		double sigma = 2.0 * StrictMath.asin( StrictMath.sqrt(h) );
+
+		if ( h <= 0.0 )
+		{
+			return 0.0;
+		}
+
+		double sinSigma = StrictMath.sin( sigma );
+		double sinP = StrictMath.sin( (beta1 + beta2) / 2.0 );
+		double cosP = StrictMath.cos( (beta1 + beta2) / 2.0 );
+		double sinQ = StrictMath.sin( (beta2 - beta1) / 2.0 );
+		double cosQ = StrictMath.cos( (beta2 - beta1) / 2.0 );
+		double cosHalfSigma = StrictMath.cos( sigma / 2.0 );
+		double sinHalfSigma = StrictMath.sin( sigma / 2.0 );
+		double x = (cosHalfSigma == 0.0) ? 0.0 :
+			(sigma - sinSigma) * sinP * sinP * cosQ * cosQ / (cosHalfSigma * cosHalfSigma);
+		double y = (sigma + sinSigma) * cosP * cosP * sinQ * sinQ / (sinHalfSigma * sinHalfSigma);
+
+		return Coordinates.SEMI_MAJOR_AXIS * (sigma - Coordinates.FLATTENING / 2.0 * (x + y));
+	}
+
+	/**
+	 * @return The azimuth in degrees computed with <code>StrictMath</code>.
+	 */
+	private static double referenceAzimuth (Coordinates from, Coordinates to)
+	{
+		double lat1 = StrictMath.toRadians( from.getLatitude() );
+		double lon1 = StrictMath.toRadians( from.getLongitude() );
+		double lat2 = StrictMath.toRadians( to.getLatitude() );
+		double lon2 = StrictMath.toRadians( to.getLongitude() );
+
+		double deltaLon = lon2 - lon1;
+		double c1 = StrictMath.sin( deltaLon ) * StrictMath.cos( lat2 );
+		double c2 = StrictMath.cos( lat1 ) * StrictMath.sin( lat2 ) -
+			StrictMath.sin( lat1 ) * StrictMath.cos( lat2 ) * StrictMath.cos( deltaLon );
+
+		return (360.0 + StrictMath.toDegrees(StrictMath.atan2(c1, c2))) % 360.0;
+	}
+
+	/**
+	 * @return The signed difference between two angles in degrees, taking
+	 *  the wrap at 360 into account.
+	 */
+	private static double angleDifference (double a, double b)
+	{
+		double difference = (a - b) % 360.0;
+
+		if ( difference > 180.0 )
+		{
+			difference -= 360.0;
+		}
+		else if ( difference < -180.0 )
+		{
+			difference += 360.0;
+		}
+
+		return difference;
+	}
+
+	/**
+	 * Accumulates the error statistics of one implementation.
+	 */
+	private static final class Error
+	{
+		private final String name;
+		private final String unit;
+		private long count;
+		private double sumOfSquares;
+		private double maximum;
+
+		Error (String name, String unit)
+		{
+			this.name = name;
+			this.unit = unit;
+		}
+
+		void add (double actual, double expected)
+		{
+			double error = Math.abs( actual - expected );
+
+			count++;
+			sumOfSquares += error * error;
+			maximum = Math.max( maximum, error );
+		}
+
+		public String toString ()
+		{
+			double rms = (count == 0) ? 0.0 : Math.sqrt( sumOfSquares / count );
+			return String.format( "  %-34s max %.3e %-3s  rms %.3e %s", name, maximum, unit, rms, unit );
+		}
+	}
+}
@@ -0,0 +1,297 @@
+package javax.microedition.location;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * JMH benchmarks of the math in <code>Coordinates</code>.  Each benchmark
+ * works through the same fixed set of random inputs so the hand written
+ * trigonometry CLDC needs can be compared with <code>java.lang.Math</code>
+ * and with the <code>CoordinatesBatch.MATH_FAST</code> approximations.
+ * <p>
+ * Run with <code>ant bench</code>.  The accuracy of each implementation is
+ * reported separately by <code>CoordinatesAccuracy</code>.
+ *
+ * @see CoordinatesAccuracy
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class CoordinatesBenchmark
+{
+	/**
+	 * The number of inputs each benchmark invocation works through.
+	 */
+	private static final int SIZE = 1024;
+
+	/**
+	 * Random points spread over the whole globe.
+	 */
+	private Coordinates[] points;
+
+	/**
+	 * The latitudes and longitudes of <code>points</code> in degrees.
+	 */
+	private double[] latitudeDegrees;
+	private double[] longitudeDegrees;
+
+	/**
+	 * Receives the results of the batch benchmarks.
+	 */
+	private float[] results;
+
+	/**
+	 * The latitudes and longitudes of <code>points</code> in radians.
+	 */
+	private double[] latitudes;
+	private double[] longitudes;
+
+	/**
+	 * Arguments for the trigonometric functions.
+	 */
+	private double[] ratios;
+	private double[] ys;
+	private double[] xs;
+
+	@Setup
+	public void setUp ()
+	{
+		Random random = new Random( 179 );
+
+		points = new Coordinates[SIZE];
+		latitudeDegrees = new double[SIZE];
+		longitudeDegrees = new double[SIZE];
+		results = new float[SIZE];
+		latitudes = new double[SIZE];
+		longitudes = new double[SIZE];
+		ratios = new double[SIZE];
+		ys = new double[SIZE];
+		xs = new double[SIZE];
+
+		for ( int i = 0; i < SIZE; i++ )
+		{
+			double latitude = random.nextDouble() * 179.0 - 89.5;
+			double longitude = random.nextDouble() * 359.0 - 179.5;
+
+			points[i] = new Coordinates( latitude, longitude, Float.NaN );
+			latitudeDegrees[i] = latitude;
+			longitudeDegrees[i] = longitude;
+			latitudes[i] = Math.toRadians( latitude );
+			longitudes[i] = Math.toRadians( longitude );
+			ratios[i] = random.nextDouble() * 2.0 - 1.0;
+			ys[i] = random.nextGaussian();
+			xs[i] = random.nextGaussian();
+		}
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(SIZE)
+	public void distance (Blackhole blackhole)
+	{
+		Coordinates origin = points[0];
+
+		for ( int i = 0; i < SIZE; i++ )
+		{
+			blackhole.consume( origin.distance(points[i]) );
+		}
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(SIZE)
+	public void distanceBatch (Blackhole blackhole)
+	{
+		CoordinatesBatch.distances( latitudeDegrees[0], longitudeDegrees[0], latitudeDegrees, longitudeDegrees, results, 0, SIZE );
+		blackhole.consume( results );
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(SIZE)
+	public void distanceFast (Blackhole blackhole)
+	{
+		CoordinatesBatch.distances( latitudeDegrees[0], longitudeDegrees[0], latitudeDegrees, longitudeDegrees, results, 0, SIZE, CoordinatesBatch.MATH_FAST );
+		blackhole.consume( results );
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(SIZE)
+	public void distanceMath (Blackhole blackhole)
+	{
+		double beta1 = Coordinates.reducedLatitude( latitudes[0] );
+		double lon1 = longitudes[0];
+
+		for ( int i = 0; i < SIZE; i++ )
+		{
+			double beta2 = Coordinates.reducedLatitude( latitudes[i] );
+			double d1 = Math.sin( (beta1 - beta2) / 2.0 );
+			double d4 = Math.sin( (lon1 - longitudes[i]) / 2.0 );
+			double h = d1 * d1 + Math.cos( beta1 ) * Math.cos( beta2 ) * d4 * d4;
+
+			blackhole.consume( (float)Coordinates.lambert(beta1, beta2, h, 2.0 * Math.asin(Math.sqrt(h))) );
+		}
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(SIZE)
+	public void distanceGeodesic (Blackhole blackhole)
+	{
+		GeodesicCalculator calculator = new GeodesicCalculator( points[0] );
+
+		for ( int i = 0; i < SIZE; i++ )
+		{
+			blackhole.consume( calculator.distance(points[i]) );
+		}
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(SIZE)
+	public void azimuthTo (Blackhole blackhole)
+	{
+		Coordinates origin = points[0];
+
+		for ( int i = 0; i < SIZE; i++ )
+		{
+			blackhole.consume( origin.azimuthTo(points[i]) );
+		}
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(SIZE)
+	public void azimuthToBatch (Blackhole blackhole)
+	{
+		CoordinatesBatch.azimuths( latitudeDegrees[0], longitudeDegrees[0], latitudeDegrees, longitudeDegrees, results, 0, SIZE );
+		blackhole.consume( results );
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(SIZE)
+	public void azimuthToFast (Blackhole blackhole)
+	{
+		CoordinatesBatch.azimuths( latitudeDegrees[0], longitudeDegrees[0], latitudeDegrees, longitudeDegrees, results, 0, SIZE, CoordinatesBatch.MATH_FAST );
+		blackhole.consume( results );
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(SIZE)
+	public void azimuthToMath (Blackhole blackhole)
+	{
+		double lat1 = latitudes[0];
+		double lon1 = longitudes[0];
+
+		for ( int i = 0; i < SIZE; i++ )
+		{
+			double lat2 = latitudes[i];
+			double deltaLon = longitudes[i] - lon1;
+			double cosLat2 = Math.cos( lat2 );
+			double c1 = Math.sin( deltaLon ) * cosLat2;
+			double c2 = Math.cos( lat1 ) * Math.sin( lat2 ) - Math.sin( lat1 ) * cosLat2 * Math.cos( deltaLon );
+
+			blackhole.consume( (float)((360.0 + Math.toDegrees(Math.atan2(c1, c2))) % 360.0) );
+		}
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(SIZE)
+	public void atan (Blackhole blackhole)
+	{
+		for ( int i = 0; i < SIZE; i++ )
+		{
+			blackhole.consume( Coordinates.atan(ys[i]) );
+		}
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(SIZE)
+	public void atanFast (Blackhole blackhole)
+	{
+		for ( int i = 0; i < SIZE; i++ )
+		{
+			blackhole.consume( FastTrig.atan(ys[i]) );
+		}
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(SIZE)
+	public void atanMath (Blackhole blackhole)
+	{
+		for ( int i = 0; i < SIZE; i++ )
+		{
+			blackhole.consume( Math.atan(ys[i]) );
+		}
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(SIZE)
+	public void atan2 (Blackhole blackhole)
+	{
+		for ( int i = 0; i < SIZE; i++ )
+		{
+			blackhole.consume( Coordinates.atan2(ys[i], xs[i]) );
+		}
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(SIZE)
+	public void atan2Fast (Blackhole blackhole)
+	{
+		for ( int i = 0; i < SIZE; i++ )
+		{
+			blackhole.consume( FastTrig.atan2(ys[i], xs[i]) );
+		}
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(SIZE)
+	public void atan2Math (Blackhole blackhole)
+	{
+		for ( int i = 0; i < SIZE; i++ )
+		{
+			blackhole.consume( Math.atan2(ys[i], xs[i]) );
+		}
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(SIZE)
+	public void asin (Blackhole blackhole)
+	{
+		for ( int i = 0; i < SIZE; i++ )
+		{
+			blackhole.consume( Coordinates.asin(ratios[i]) );
+		}
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(SIZE)
+	public void asinFast (Blackhole blackhole)
+	{
+		for ( int i = 0; i < SIZE; i++ )
+		{
+			blackhole.consume( FastTrig.asin(ratios[i]) );
+		}
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(SIZE)
+	public void asinMath (Blackhole blackhole)
+	{
+		for ( int i = 0; i < SIZE; i++ )
+		{
+			blackhole.consume( Math.asin(ratios[i]) );
+		}
+	}
+}
@@ -0,0 +1,314 @@
+package javax.microedition.location;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+
+/**
+ * Measures how many fixes a <code>FleetHub</code> takes in.  It starts a hub
+ * and connects simulated devices to it over local sockets, each sending
+ * fixes at a fixed rate, then reports the fixes raised by the devices'
+ * providers each second.
+ * <p>
+ * Run with <code>ant fleet-load</code>.  The optional arguments are the
+ * number of devices (1000), the fixes each sends per second (50), the
+ * seconds to run (10), the format, "nmea" or "track" (nmea), and the number
+ * of hub selector threads (the hub's default).
+ *
+ * @see FleetHub
+ */
+public class FleetLoad
+{
+	/**
+	 * The number of threads sending the devices' fixes.
+	 */
+	private static final int CLIENT_THREADS = 4;
+
+	/**
+	 * Starts the hub and the devices and prints the fixes taken in.
+	 *
+	 * @param args are the optional settings described above.
+	 */
+	public static void main (String[] args)
+		throws Exception
+	{
+		int devices = (args.length > 0) ? Integer.parseInt( args[0] ) : 1000;
+		int rate = (args.length > 1) ? Integer.parseInt( args[1] ) : 50;
+		int seconds = (args.length > 2) ? Integer.parseInt( args[2] ) : 10;
+		boolean track = (args.length > 3) && args[3].equals( "track" );
+		int threads = (args.length > 4) ? Integer.parseInt( args[4] ) : Math.min( Runtime.getRuntime().availableProcessors(), 4 );
+
+		FleetHub hub = new FleetHub( new InetSocketAddress("127.0.0.1", 0), threads );
+		FleetLocationProvider[] providers = new FleetLocationProvider[devices];
+
+		for ( int i = 0; i < devices; i++ )
+		{
+			providers[i] = hub.getProvider( "vehicle-" + i );
+			providers[i].setReuseLocations( true );
+		}
+
+		System.out.println( devices + " devices sending " + (track ? "track log" : "NMEA") + " at " + rate +
+			" Hz to " + threads + " selector threads: " + devices * rate + " fixes/s offered" );
+
+		Client[] clients = new Client[CLIENT_THREADS];
+
+		for ( int i = 0; i < CLIENT_THREADS; i++ )
+		{
+			clients[i] = new Client( hub.getPort(), i, devices, rate, track );
+			clients[i].start();
+		}
+
+		long last = 0;
+		long start = System.nanoTime();
+
+		for ( int second = 1; second <= seconds; second++ )
+		{
+			Thread.sleep( 1000 );
+
+			long total = 0;
+
+			for ( int i = 0; i < devices; i++ )
+			{
+				total += providers[i].getMetrics().getLocationCount();
+			}
+
+			System.out.println( second + "s: " + (total - last) + " fixes/s" );
+			last = total;
+		}
+
+		double elapsed = (System.nanoTime() - start) / 1e9;
+		System.out.println( "Average: " + Math.round(last / elapsed) + " fixes/s" );
+		System.out.println( "vehicle-0: " + providers[0].getMetrics() );
+
+		for ( int i = 0; i < CLIENT_THREADS; i++ )
+		{
+			clients[i].interrupt();
+		}
+
+		hub.close();
+	}
+
+	/**
+	 * Sends the fixes of every <code>CLIENT_THREADS</code>th device.
+	 */
+	private static class Client
+		extends Thread
+	{
+		private final SocketChannel[] channels;
+		private final int[] ids;
+		private final int rate;
+		private final boolean track;
+		private final ByteBuffer out = ByteBuffer.allocate( 256 );
+
+		/**
+		 * The previous fix of each device in track log units.
+		 */
+		private final long[] timestamps;
+		private final int[] latitudes;
+
+		Client (int port, int first, int devices, int rate, boolean track)
+			throws IOException
+		{
+			int count = (devices - first + CLIENT_THREADS - 1) / CLIENT_THREADS;
+
+			this.channels = new SocketChannel[count];
+			this.ids = new int[count];
+			this.rate = rate;
+			this.track = track;
+			this.timestamps = new long[count];
+			this.latitudes = new int[count];
+
+			for ( int i = 0; i < count; i++ )
+			{
+				ids[i] = first + i * CLIENT_THREADS;
+				channels[i] = SocketChannel.open( new InetSocketAddress("127.0.0.1", port) );
+				channels[i].socket().setTcpNoDelay( true );
+
+				out.clear();
+				out.put( ("vehicle-" + ids[i] + "\n").getBytes() );
+
+				if ( track )
+				{
+					out.put( TrackReader.MAGIC );
+				}
+
+				write( channels[i] );
+			}
+
+			setDaemon( true );
+		}
+
+		/**
+		 * Sends a fix from every device each tick.
+		 */
+		public void run ()
+		{
+			long period = 1000000000L / rate;
+			long next = System.nanoTime();
+
+			try
+			{
+				for ( long tick = 0; isInterrupted() == false; tick++ )
+				{
+					long time = 1200000000000L + tick * 1000L / rate;
+
+					for ( int i = 0; i < channels.length; i++ )
+					{
+						double latitude = 40.0 + ids[i] * 0.001 + tick * 0.000001;
+						double longitude = -75.0 + ids[i] * 0.001;
+						out.clear();
+
+						if ( track )
+						{
+							putTrack( i, time, latitude, longitude );
+						}
+						else
+						{
+							putNMEA( time, latitude, longitude );
+						}
+
+						write( channels[i] );
+					}
+
+					next += period;
+					long wait = next - System.nanoTime();
+
+					if ( wait > 0 )
+					{
+						Thread.sleep( wait / 1000000, (int)(wait % 1000000) );
+					}
+				}
+			}
+			catch (Exception e)
+			{
+				// Interrupted or the hub closed.
+			}
+		}
+
+		private void write (SocketChannel channel)
+			throws IOException
+		{
+			out.flip();
+
+			while ( out.hasRemaining() )
+			{
+				channel.write( out );
+			}
+		}
+
+		/**
+		 * Puts a fix as a track log location.
+		 */
+		private void putTrack (int device, long time, double latitude, double longitude)
+		{
+			int flags = TrackReader.VALID | TrackReader.SPEED | TrackReader.HORIZONTAL_ACCURACY;
+			int storedLatitude = (int)Math.round( latitude * TrackReader.UNITS_PER_DEGREE );
+			int storedLongitude = (int)Math.round( longitude * TrackReader.UNITS_PER_DEGREE );
+
+			if ( timestamps[device] == 0 )
+			{
+				// The first location holds the values themselves.
+				out.put( (byte)(flags | TrackReader.RESET) );
+				TrackReader.writeLong( out, time );
+				TrackReader.writeLong( out, storedLatitude );
+				TrackReader.writeLong( out, storedLongitude );
+				TrackReader.writeLong( out, 1000 );
+				TrackReader.writeLong( out, 25 );
+			}
+			else
+			{
+				out.put( (byte)flags );
+				TrackReader.writeLong( out, time - timestamps[device] );
+				TrackReader.writeLong( out, storedLatitude - latitudes[device] );
+				TrackReader.writeLong( out, 0 );
+				TrackReader.writeLong( out, 0 );
+				TrackReader.writeLong( out, 0 );
+			}
+
+			timestamps[device] = time;
+			latitudes[device] = storedLatitude;
+		}
+
+		/**
+		 * Puts a fix as GGA and RMC sentences.
+		 */
+		private void putNMEA (long time, double latitude, double longitude)
+		{
+			int start = out.position();
+			putASCII( "$GPGGA," );
+			putTime( time );
+			out.put( (byte)',' );
+			putAngle( latitude, 2, 'N', 'S' );
+			out.put( (byte)',' );
+			putAngle( longitude, 3, 'E', 'W' );
+			putASCII( ",1,08,0.9,120.5,M,-34.2,M,," );
+			putChecksum( start );
+
+			start = out.position();
+			putASCII( "$GPRMC," );
+			putTime( time );
+			putASCII( ",A," );
+			putAngle( latitude, 2, 'N', 'S' );
+			out.put( (byte)',' );
+			putAngle( longitude, 3, 'E', 'W' );
+			putASCII( ",019.4,084.4,100608,,,A" );
+			putChecksum( start );
+		}
+
+		private void putTime (long time)
+		{
+			long millisOfDay = time % 86400000L;
+			putDigits( (int)(millisOfDay / 3600000L), 2 );
+			putDigits( (int)(millisOfDay / 60000L % 60), 2 );
+			putDigits( (int)(millisOfDay / 1000L % 60), 2 );
+			out.put( (byte)'.' );
+			putDigits( (int)(millisOfDay % 1000) / 10, 2 );
+		}
+
+		private void putAngle (double degrees, int digits, char positive, char negative)
+		{
+			double magnitude = Math.abs( degrees );
+			int whole = (int)magnitude;
+			long minutes = Math.round( (magnitude - whole) * 60.0 * 100000.0 );
+
+			putDigits( whole, digits );
+			putDigits( (int)(minutes / 100000), 2 );
+			out.put( (byte)'.' );
+			putDigits( (int)(minutes % 100000), 5 );
+			out.put( (byte)',' );
+			out.put( (byte)((degrees < 0) ? negative : positive) );
+		}
+
+		private void putDigits (int value, int digits)
+		{
+			for ( int divisor = (int)Math.pow( 10, digits - 1 ); divisor > 0; divisor /= 10 )
+			{
+				out.put( (byte)('0' + value / divisor % 10) );
+			}
+		}
+
+		private void putASCII (String text)
+		{
+			for ( int i = 0; i < text.length(); i++ )
+			{
+				out.put( (byte)text.charAt(i) );
+			}
+		}
+
+		private void putChecksum (int start)
+		{
+			int checksum = 0;
+
+			for ( int i = start + 1; i < out.position(); i++ )
+			{
+				checksum ^= out.get( i );
+			}
+
+			out.put( (byte)'*' );
+			out.put( (byte)Character.toUpperCase(Character.forDigit(checksum >> 4, 16)) );
+			out.put( (byte)Character.toUpperCase(Character.forDigit(checksum & 0xF, 16)) );
+			putASCII( "\r\n" );
+		}
+	}
+}
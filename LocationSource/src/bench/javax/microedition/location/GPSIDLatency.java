@@ -0,0 +1,246 @@
+package javax.microedition.location;
+
+/**
+ * Measures the latency the Windows Mobile provider adds to fixes.  It runs
+ * the provider's event loop against a simulated GPS Intermediate Driver
+ * that signals the newest position at a fixed rate, the way the driver's
+ * new location event does, and reports the fixes raised per second and the
+ * time from the signal to <code>raiseLocationEvent</code>.  The first
+ * second warms up and is not counted.
+ * <p>
+ * Run with <code>ant gpsid-latency</code>.  The optional arguments are the
+ * receiver's rate in Hz (20), the seconds to run (10), the batching window
+ * in milliseconds (0), and a sleep in milliseconds after each event (0) to
+ * compare with the fixed <code>Thread.sleep(100)</code> the loop once had.
+ *
+ * @see WindowsMobileLocationProvider
+ */
+public class GPSIDLatency
+{
+	/**
+	 * Runs the simulated driver and prints the latency.
+	 *
+	 * @param args are the optional settings described above.
+	 */
+	public static void main (String[] args)
+		throws Exception
+	{
+		int rate = (args.length > 0) ? Integer.parseInt( args[0] ) : 20;
+		int seconds = (args.length > 1) ? Integer.parseInt( args[1] ) : 10;
+		int window = (args.length > 2) ? Integer.parseInt( args[2] ) : 0;
+		int sleep = (args.length > 3) ? Integer.parseInt( args[3] ) : 0;
+
+		long period = 1000000000L / rate;
+		long next = System.nanoTime();
+		long measured = next + 1000000000L;
+		long end = measured + seconds * 1000000000L;
+
+		SimulatedGPSID provider = new SimulatedGPSID( window, sleep, measured );
+		provider.setReuseLocations( true );
+
+		Thread worker = new Thread( provider );
+		worker.start();
+
+		while ( next < end )
+		{
+			next += period;
+
+			long wait = next - System.nanoTime();
+
+			if ( wait > 0 )
+			{
+				Thread.sleep( wait / 1000000, (int)(wait % 1000000) );
+			}
+
+			provider.signal();
+		}
+
+		provider.shutdown();
+		worker.join();
+
+		System.out.println( rate + " Hz, window " + window + " ms, sleep " + sleep + " ms: " +
+			(provider.raised / seconds) + " fixes/s raised, " + provider.dropped + " dropped, latency mean " +
+			format(provider.raised == 0 ? 0 : provider.totalLatency / provider.raised) +
+			" ms, max " + format(provider.maxLatency) + " ms" );
+	}
+
+	/**
+	 * @return Nanoseconds as milliseconds with two decimals.
+	 */
+	private static String format (long nanos)
+	{
+		return String.valueOf( Math.round(nanos / 10000.0) / 100.0 );
+	}
+
+	/**
+	 * The provider with <code>getGPSEvent</code> answered by a simulated
+	 * driver instead of the native one.
+	 */
+	private static class SimulatedGPSID
+		extends WindowsMobileLocationProvider
+	{
+		/**
+		 * The milliseconds to sleep after each event.
+		 */
+		private final int sleep;
+
+		/**
+		 * When to start counting, from <code>System.nanoTime</code>.
+		 */
+		private final long measured;
+
+		/**
+		 * Incremented each time the driver signals a new position.
+		 */
+		private int signals;
+
+		/**
+		 * The signal last returned by <code>getGPSEvent</code>.
+		 */
+		private int taken;
+
+		/**
+		 * When the newest position was signaled, from <code>System.nanoTime</code>.
+		 */
+		private long signaled;
+
+		/**
+		 * When the position being raised was signaled.
+		 */
+		private long raising;
+
+		/**
+		 * Set to make <code>getGPSEvent</code> return shutdown.
+		 */
+		private boolean closing;
+
+		/**
+		 * Whether <code>getGPSEvent</code> has returned an event yet.
+		 */
+		private boolean started;
+
+		/**
+		 * The number of locations raised.
+		 */
+		long raised;
+
+		/**
+		 * The number of locations dropped by the batching window.
+		 */
+		long dropped;
+
+		/**
+		 * The sum of the nanoseconds from signal to raise.
+		 */
+		long totalLatency;
+
+		/**
+		 * The most nanoseconds from signal to raise.
+		 */
+		long maxLatency;
+
+		SimulatedGPSID (int window, int sleep, long measured)
+		{
+			super( window );
+			this.sleep = sleep;
+			this.measured = measured;
+		}
+
+		/**
+		 * Signals a new position, like the driver's new location event.
+		 */
+		synchronized void signal ()
+		{
+			signals++;
+			signaled = System.nanoTime();
+			notifyAll();
+		}
+
+		/**
+		 * Signals the driver is closing.
+		 */
+		synchronized void shutdown ()
+		{
+			closing = true;
+			notifyAll();
+		}
+
+		/**
+		 * Waits for the next signal and fills in the newest position.
+		 */
+		int getGPSEvent (GPSRecord record, int interval, int timeout, int maxAge)
+		{
+			if ( (sleep > 0) && started )
+			{
+				try
+				{
+					Thread.sleep( sleep );
+				}
+				catch (InterruptedException e)
+				{
+				}
+			}
+
+			started = true;
+
+			synchronized ( this )
+			{
+				while ( (signals == taken) && (closing == false) )
+				{
+					try
+					{
+						wait();
+					}
+					catch (InterruptedException e)
+					{
+					}
+				}
+
+				if ( closing )
+				{
+					return -1;  // SHUTDOWN
+				}
+
+				taken = signals;
+				raising = signaled;
+			}
+
+			record.latitude = 47.6 + taken * 1e-6;
+			record.longitude = -122.3;
+			record.altitude = 50.0f;
+			record.hdop = 1.0f;
+			record.speed = 1.0f;
+			record.course = 0.0f;
+
+			return 0;  // LOCATION
+		}
+
+		protected void raiseLocationEvent (Location location)
+		{
+			long latency = System.nanoTime() - raising;
+
+			if ( raising >= measured )
+			{
+				raised++;
+				totalLatency += latency;
+				maxLatency = Math.max( maxLatency, latency );
+			}
+
+			super.raiseLocationEvent( location );
+		}
+
+		protected void locationDropped ()
+		{
+			if ( raising >= measured )
+			{
+				dropped++;
+			}
+
+			super.locationDropped();
+		}
+
+		protected void stopGPS ()
+		{
+		}
+	}
+}
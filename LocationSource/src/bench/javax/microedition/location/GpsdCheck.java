@@ -0,0 +1,657 @@
+package javax.microedition.location;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.Vector;
+
+/**
+ * Checks <code>GpsdLocationProvider</code> against fake gpsd servers on
+ * local sockets.  Each server answers the provider's <code>?WATCH</code>
+ * with a script of JSON reports.  The checks are:
+ * <ul>
+ *  <li>the values of a <code>TPV</code> and <code>SKY</code> report become
+ *   the location exactly,
+ *  <li>the provider reconnects each time the server drops it,
+ *  <li>reports from other devices are ignored when a device is given,
+ *  <li>a fix on the antimeridian or beyond the poles neither throws nor
+ *   stops the fixes after it,
+ *  <li>reconnects to a refused port back off, doubling each time, and
+ *  <li>many endpoints stream at once on the single selector thread.
+ * </ul>
+ * <p>
+ * Run with <code>ant gpsd-check</code>.  The optional argument is the number
+ * of endpoints streaming at once (200).  It fails if any check does.
+ *
+ * @see GpsdLocationProvider
+ */
+public class GpsdCheck
+{
+	/**
+	 * The report gpsd sends first on each connection.
+	 */
+	private static final String VERSION =
+		"{\"class\":\"VERSION\",\"release\":\"3.25\",\"rev\":\"3.25\",\"proto_major\":3,\"proto_minor\":15}";
+
+	/**
+	 * A report giving the dilutions of precision.
+	 */
+	private static final String SKY =
+		"{\"class\":\"SKY\",\"device\":\"/dev/ttyUSB0\",\"hdop\":1.2,\"vdop\":1.8,\"pdop\":2.16,\"uSat\":9," +
+		"\"satellites\":[{\"PRN\":5,\"el\":42,\"az\":87,\"ss\":38,\"used\":true}]}";
+
+	/**
+	 * A fix whose values are checked.
+	 */
+	private static final String TPV =
+		"{\"class\":\"TPV\",\"device\":\"/dev/ttyUSB0\",\"mode\":3,\"time\":\"2026-10-16T12:34:56.789Z\"," +
+		"\"lat\":47.6062095,\"lon\":-122.3320708,\"altHAE\":56.7,\"alt\":75.25,\"track\":93.25,\"speed\":2.5}";
+
+	/**
+	 * A fix from another receiver.
+	 */
+	private static final String OTHER_TPV =
+		"{\"class\":\"TPV\",\"device\":\"/dev/ttyUSB1\",\"mode\":2,\"time\":\"2026-10-16T12:34:57.000Z\"," +
+		"\"lat\":-33.8688,\"lon\":151.2093,\"track\":0.0,\"speed\":0.0}";
+
+	/**
+	 * A fix on the antimeridian, given as 180 degrees east.
+	 */
+	private static final String ANTIMERIDIAN_TPV =
+		"{\"class\":\"TPV\",\"device\":\"/dev/ttyUSB0\",\"mode\":2,\"time\":\"2026-10-16T12:34:57.000Z\"," +
+		"\"lat\":-16.5,\"lon\":180.0,\"track\":0.0,\"speed\":0.0}";
+
+	/**
+	 * A fix beyond the north pole, which no location can hold.
+	 */
+	private static final String BEYOND_POLE_TPV =
+		"{\"class\":\"TPV\",\"device\":\"/dev/ttyUSB0\",\"mode\":2,\"time\":\"2026-10-16T12:34:58.000Z\"," +
+		"\"lat\":90.0,\"lon\":10.0,\"track\":0.0,\"speed\":0.0}";
+
+	/**
+	 * <code>TPV</code>'s time in milliseconds since 1970.
+	 */
+	private static final long TPV_TIME = 1792154096789L;
+
+	/**
+	 * The number of checks that failed.
+	 */
+	private static int failures;
+
+	/**
+	 * Runs the checks and prints the results.
+	 *
+	 * @param args are the optional settings described above.
+	 */
+	public static void main (String[] args)
+		throws Exception
+	{
+		int endpoints = (args.length > 0) ? Integer.parseInt( args[0] ) : 200;
+
+		checkValues();
+		checkReconnects();
+		checkDevice();
+		checkOutOfRange();
+		checkBackOff();
+		checkEndpoints( endpoints );
+
+		if ( failures > 0 )
+		{
+			System.out.println( failures + " checks failed" );
+			System.exit( 1 );
+		}
+
+		System.out.println( "All checks passed" );
+		System.exit( 0 );
+	}
+
+	/**
+	 * Checks the values of a report become the location exactly.
+	 */
+	private static void checkValues ()
+		throws Exception
+	{
+		FakeGpsd gpsd = new FakeGpsd( 0, new String[] { SKY, TPV }, 100, 50 );
+		GpsdLocationProvider provider = new GpsdLocationProvider( "127.0.0.1", gpsd.port, null );
+		Recorder recorder = new Recorder( provider );
+
+		Location location = recorder.waitForLocation( 5000 );
+		provider.close();
+		gpsd.close();
+
+		if ( location == null )
+		{
+			fail( "values", "no location" );
+			return;
+		}
+
+		QualifiedCoordinates coordinates = location.getQualifiedCoordinates();
+		int failed = failures;
+
+		check( "values", "latitude", coordinates.getLatitude() == 47.6062095 );
+		check( "values", "longitude", coordinates.getLongitude() == -122.3320708 );
+		check( "values", "altitude from altHAE", coordinates.getAltitude() == 56.7f );
+		check( "values", "horizontal accuracy from hdop", coordinates.getHorizontalAccuracy() == 1.2f );
+		check( "values", "vertical accuracy from vdop", coordinates.getVerticalAccuracy() == 1.8f );
+		check( "values", "speed", Math.abs(location.getSpeed() - 2.5f) < 1e-5f );
+		check( "values", "course", location.getCourse() == 93.25f );
+		check( "values", "timestamp", location.getTimestamp() == TPV_TIME );
+		check( "values", "valid", location.isValid() );
+
+		if ( failures == failed )
+		{
+			pass( "values", "TPV and SKY values match" );
+		}
+	}
+
+	/**
+	 * Checks the provider reconnects after the server drops it.
+	 */
+	private static void checkReconnects ()
+		throws Exception
+	{
+		final int drops = 3;
+
+		// Send a few fixes then hang up, each connection.
+		FakeGpsd gpsd = new FakeGpsd( 0, new String[] { SKY, TPV }, 3, 50 );
+		GpsdLocationProvider provider = new GpsdLocationProvider( "127.0.0.1", gpsd.port, null );
+		Recorder recorder = new Recorder( provider );
+
+		long deadline = System.currentTimeMillis() + 15000;
+
+		while ( (gpsd.connections() <= drops) && (System.currentTimeMillis() < deadline) )
+		{
+			Thread.sleep( 50 );
+		}
+
+		recorder.waitForState( LocationProvider.AVAILABLE, 2000 );
+		provider.close();
+		gpsd.close();
+
+		int unavailable = recorder.count( LocationProvider.TEMPORARILY_UNAVAILABLE );
+		int available = recorder.count( LocationProvider.AVAILABLE );
+
+		if ( (gpsd.connections() > drops) && (unavailable >= drops) && (available > drops) )
+		{
+			pass( "reconnect", gpsd.connections() + " connections, " + unavailable + " times unavailable, " +
+				available + " times available again" );
+		}
+		else
+		{
+			fail( "reconnect", gpsd.connections() + " connections, " + unavailable + " unavailable, " +
+				available + " available" );
+		}
+	}
+
+	/**
+	 * Checks reports from other devices are ignored.
+	 */
+	private static void checkDevice ()
+		throws Exception
+	{
+		FakeGpsd gpsd = new FakeGpsd( 0, new String[] { OTHER_TPV, SKY, TPV, OTHER_TPV }, 20, 50 );
+		GpsdLocationProvider provider = new GpsdLocationProvider( "127.0.0.1", gpsd.port, "/dev/ttyUSB0" );
+		Recorder recorder = new Recorder( provider );
+
+		Thread.sleep( 1500 );
+		provider.close();
+		gpsd.close();
+
+		int locations = recorder.locations.size();
+		int others = 0;
+
+		for ( int i = 0; i < locations; i++ )
+		{
+			Location location = recorder.locations.elementAt( i );
+
+			if ( location.getQualifiedCoordinates().getLatitude() != 47.6062095 )
+			{
+				others++;
+			}
+		}
+
+		if ( (locations > 0) && (others == 0) && (provider.getMetrics().getLocationCount() == 20) )
+		{
+			pass( "device", provider.getMetrics().getLocationCount() + " fixes raised of 60 sent, none from the other device" );
+		}
+		else
+		{
+			fail( "device", provider.getMetrics().getLocationCount() + " fixes raised, " + others + " from the other device" );
+		}
+	}
+
+	/**
+	 * Checks fixes on the antimeridian and beyond the poles are taken or
+	 * made invalid, and the fixes after them still arrive.
+	 */
+	private static void checkOutOfRange ()
+		throws Exception
+	{
+		final int rounds = 10;
+
+		FakeGpsd gpsd = new FakeGpsd( 0, new String[] { ANTIMERIDIAN_TPV, BEYOND_POLE_TPV, SKY, TPV }, rounds, 50 );
+		GpsdLocationProvider provider = new GpsdLocationProvider( "127.0.0.1", gpsd.port, null );
+		final Vector<Location> locations = new Vector<Location>();
+
+		provider.addLocationListener( new LocationListener()
+		{
+			public void locationUpdated (LocationProvider provider, Location location)
+			{
+				locations.addElement( location );
+			}
+
+			public void providerStateChanged (LocationProvider provider, int newState)
+			{
+			}
+		}, AbstractLocationProvider.EVERY_LOCATION, -1, 0 );
+
+		Thread.sleep( 1500 );
+		provider.close();
+		gpsd.close();
+
+		int antimeridian = 0;
+		int invalid = 0;
+		int good = 0;
+
+		for ( int i = 0; i < locations.size(); i++ )
+		{
+			Location location = locations.elementAt( i );
+
+			if ( location.isValid() == false )
+			{
+				invalid++;
+			}
+			else if ( location.getQualifiedCoordinates().getLongitude() == -180.0 )
+			{
+				antimeridian++;
+			}
+			else if ( location.getQualifiedCoordinates().getLatitude() == 47.6062095 )
+			{
+				good++;
+			}
+		}
+
+		if ( (antimeridian >= rounds) && (invalid == antimeridian) && (good == antimeridian) )
+		{
+			pass( "out of range", antimeridian + " fixes at 180 east raised at -180, " + invalid +
+				" beyond the pole invalid, " + good + " after them raised" );
+		}
+		else
+		{
+			fail( "out of range", antimeridian + " fixes at -180, " + invalid + " invalid, " + good + " after them" );
+		}
+	}
+
+	/**
+	 * Checks reconnects to a refused port wait 0.5, 1, and 2 seconds.
+	 */
+	private static void checkBackOff ()
+		throws Exception
+	{
+		// Find a free port then leave it closed.
+		ServerSocket free = new ServerSocket( 0, 50, InetAddress.getByName("127.0.0.1") );
+		int port = free.getLocalPort();
+		free.close();
+
+		long start = System.currentTimeMillis();
+		GpsdLocationProvider provider = new GpsdLocationProvider( "127.0.0.1", port, null );
+		Recorder recorder = new Recorder( provider );
+
+		// Attempts at 0, 0.5, and 1.5 s are refused; open before the one at 3.5 s.
+		Thread.sleep( 2500 );
+		boolean unavailable = (provider.getState() == LocationProvider.TEMPORARILY_UNAVAILABLE);
+		FakeGpsd gpsd = new FakeGpsd( port, new String[] { SKY, TPV }, 100, 50 );
+
+		long deadline = start + 8000;
+
+		while ( (gpsd.connections() == 0) && (System.currentTimeMillis() < deadline) )
+		{
+			Thread.sleep( 10 );
+		}
+
+		long connected = gpsd.firstConnection - start;
+		recorder.waitForState( LocationProvider.AVAILABLE, 2000 );
+		provider.close();
+		gpsd.close();
+
+		if ( unavailable && (gpsd.connections() > 0) && (connected >= 3300) && (connected < 4500) &&
+			 (recorder.count(LocationProvider.AVAILABLE) > 0) )
+		{
+			pass( "back off", "unavailable while refused, reconnected after " + connected + " ms" );
+		}
+		else
+		{
+			fail( "back off", "unavailable " + unavailable + ", reconnected after " + connected + " ms" );
+		}
+	}
+
+	/**
+	 * Checks many endpoints stream at once on one selector thread.
+	 */
+	private static void checkEndpoints (int endpoints)
+		throws Exception
+	{
+		final int rate = 10;
+		final int seconds = 3;
+
+		FakeGpsd[] servers = new FakeGpsd[endpoints];
+		GpsdLocationProvider[] providers = new GpsdLocationProvider[endpoints];
+
+		for ( int i = 0; i < endpoints; i++ )
+		{
+			servers[i] = new FakeGpsd( 0, new String[] { SKY, TPV }, Integer.MAX_VALUE, 1000 / rate );
+			providers[i] = new GpsdLocationProvider( "127.0.0.1", servers[i].port, null );
+			providers[i].setReuseLocations( true );
+		}
+
+		Thread.sleep( seconds * 1000 );
+
+		long total = 0;
+		long least = Long.MAX_VALUE;
+
+		for ( int i = 0; i < endpoints; i++ )
+		{
+			long count = providers[i].getMetrics().getLocationCount();
+			total += count;
+			least = Math.min( least, count );
+		}
+
+		int selectors = 0;
+		Thread[] threads = new Thread[Thread.activeCount() * 2];
+		int count = Thread.enumerate( threads );
+
+		for ( int i = 0; i < count; i++ )
+		{
+			if ( "gpsd selector".equals(threads[i].getName()) )
+			{
+				selectors++;
+			}
+		}
+
+		for ( int i = 0; i < endpoints; i++ )
+		{
+			providers[i].close();
+			servers[i].close();
+		}
+
+		if ( (least > 0) && (selectors == 1) )
+		{
+			pass( "endpoints", endpoints + " endpoints on " + selectors + " selector thread: " + (total / seconds) +
+				" fixes/s, the fewest from one " + least );
+		}
+		else
+		{
+			fail( "endpoints", endpoints + " endpoints on " + selectors + " selector threads, the fewest fixes from one " + least );
+		}
+	}
+
+	/**
+	 * Fails <code>check</code> with <code>what</code> unless <code>ok</code>.
+	 */
+	private static void check (String check, String what, boolean ok)
+	{
+		if ( ok == false )
+		{
+			fail( check, what + " differs" );
+		}
+	}
+
+	/**
+	 * Prints a check that passed.
+	 */
+	private static void pass (String check, String detail)
+	{
+		System.out.println( check + ": " + detail );
+	}
+
+	/**
+	 * Counts and prints a check that failed.
+	 */
+	private static void fail (String check, String detail)
+	{
+		failures++;
+		System.out.println( check + ": FAILED " + detail );
+	}
+
+	/**
+	 * Records what a provider raises to its listener.
+	 */
+	private static class Recorder
+		implements LocationListener
+	{
+		/**
+		 * The locations raised.
+		 */
+		final Vector<Location> locations = new Vector<Location>();
+
+		/**
+		 * The states raised.
+		 */
+		private final Vector<Integer> states = new Vector<Integer>();
+
+		Recorder (LocationProvider provider)
+		{
+			provider.setLocationListener( this, 1, 1, 1 );
+		}
+
+		public synchronized void locationUpdated (LocationProvider provider, Location location)
+		{
+			locations.addElement( location );
+			notifyAll();
+		}
+
+		public synchronized void providerStateChanged (LocationProvider provider, int newState)
+		{
+			states.addElement( Integer.valueOf(newState) );
+			notifyAll();
+		}
+
+		/**
+		 * @return The first location or <code>null</code> if none came in time.
+		 */
+		synchronized Location waitForLocation (long timeout)
+			throws InterruptedException
+		{
+			long deadline = System.currentTimeMillis() + timeout;
+
+			while ( locations.isEmpty() && (System.currentTimeMillis() < deadline) )
+			{
+				wait( Math.max(1, deadline - System.currentTimeMillis()) );
+			}
+
+			return locations.isEmpty() ? null : locations.firstElement();
+		}
+
+		/**
+		 * Waits for <code>state</code> to be the last state raised.
+		 */
+		synchronized void waitForState (int state, long timeout)
+			throws InterruptedException
+		{
+			long deadline = System.currentTimeMillis() + timeout;
+
+			while ( (states.isEmpty() || (states.lastElement().intValue() != state)) &&
+					(System.currentTimeMillis() < deadline) )
+			{
+				wait( Math.max(1, deadline - System.currentTimeMillis()) );
+			}
+		}
+
+		/**
+		 * @return The times <code>state</code> was raised.
+		 */
+		synchronized int count (int state)
+		{
+			int count = 0;
+
+			for ( int i = 0; i < states.size(); i++ )
+			{
+				if ( states.elementAt(i).intValue() == state )
+				{
+					count++;
+				}
+			}
+
+			return count;
+		}
+	}
+
+	/**
+	 * A gpsd that answers each connection's <code>?WATCH</code> with its
+	 * version and then a script of reports, over and over.
+	 */
+	private static class FakeGpsd
+		extends Thread
+	{
+		/**
+		 * The port it listens on.
+		 */
+		final int port;
+
+		/**
+		 * The reports sent each round.
+		 */
+		private final String[] script;
+
+		/**
+		 * The rounds sent before hanging up.
+		 */
+		private final int rounds;
+
+		/**
+		 * The milliseconds between rounds.
+		 */
+		private final long period;
+
+		/**
+		 * Accepts the provider's connections.
+		 */
+		private final ServerSocket server;
+
+		/**
+		 * The connections accepted.
+		 */
+		private int connections;
+
+		/**
+		 * When the first connection was accepted from <code>System.currentTimeMillis</code>.
+		 */
+		volatile long firstConnection;
+
+		/**
+		 * Set once closed.
+		 */
+		private volatile boolean closed;
+
+		FakeGpsd (int port, String[] script, int rounds, long period)
+			throws IOException
+		{
+			this.server = new ServerSocket( port, 50, InetAddress.getByName("127.0.0.1") );
+			this.port = server.getLocalPort();
+			this.script = script;
+			this.rounds = rounds;
+			this.period = period;
+
+			setDaemon( true );
+			start();
+		}
+
+		synchronized int connections ()
+		{
+			return connections;
+		}
+
+		void close ()
+			throws IOException
+		{
+			closed = true;
+			server.close();
+		}
+
+		public void run ()
+		{
+			while ( closed == false )
+			{
+				final Socket socket;
+
+				try
+				{
+					socket = server.accept();
+				}
+				catch (IOException e)
+				{
+					return;
+				}
+
+				synchronized ( this )
+				{
+					if ( connections == 0 )
+					{
+						firstConnection = System.currentTimeMillis();
+					}
+
+					connections++;
+				}
+
+				Thread session = new Thread()
+				{
+					public void run ()
+					{
+						serve( socket );
+					}
+				};
+
+				session.setDaemon( true );
+				session.start();
+			}
+		}
+
+		/**
+		 * Sends the script to one client then hangs up.
+		 */
+		private void serve (Socket socket)
+		{
+			try
+			{
+				BufferedReader in = new BufferedReader( new InputStreamReader(socket.getInputStream(), "US-ASCII") );
+				OutputStream out = socket.getOutputStream();
+
+				if ( in.readLine() == null )
+				{
+					return;
+				}
+
+				out.write( (VERSION + "\n").getBytes("US-ASCII") );
+
+				for ( int round = 0; (round < rounds) && (closed == false); round++ )
+				{
+					for ( int i = 0; i < script.length; i++ )
+					{
+						out.write( (script[i] + "\n").getBytes("US-ASCII") );
+					}
+
+					out.flush();
+					Thread.sleep( period );
+				}
+			}
+			catch (Exception e)
+			{
+				// The client went away.
+			}
+			finally
+			{
+				try
+				{
+					socket.close();
+				}
+				catch (IOException e)
+				{
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,365 @@
+package javax.microedition.location;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.Enumeration;
+import java.util.Random;
+
+/**
+ * Checks the searches of a <code>LandmarkFile</code> against a brute force
+ * search of the same landmarks.  It stores landmarks at random places, some
+ * near the poles and the antimeridian and some without coordinates, then
+ * updates, recategorizes, and deletes some of them so the journal is
+ * compacted several times.  Random areas, areas crossing the antimeridian,
+ * and names are searched for before and after the file is reopened and
+ * the results compared with a scan of every landmark.
+ * <p>
+ * Run with <code>ant landmark-check</code>.  The optional arguments are the
+ * number of landmarks (100000), the number of random areas searched (1000),
+ * and the random seed (1).  It fails if any search differs.
+ *
+ * @see LandmarkFile
+ */
+public class LandmarkCheck
+{
+	/**
+	 * The categories landmarks are put in.
+	 */
+	private static final String[] CATEGORIES = { "fuel", "food", "lodging" };
+
+	/**
+	 * The latitude of each landmark by id.
+	 */
+	private static double[] latitudes;
+
+	/**
+	 * The longitude of each landmark by id.
+	 */
+	private static double[] longitudes;
+
+	/**
+	 * Whether each landmark by id has coordinates.
+	 */
+	private static boolean[] located;
+
+	/**
+	 * Whether each landmark by id is still stored.
+	 */
+	private static boolean[] stored;
+
+	/**
+	 * The categories of each landmark by id as bits of <code>CATEGORIES</code>.
+	 */
+	private static int[] categories;
+
+	/**
+	 * The number of searches that differed from the brute force search.
+	 */
+	private static int failures;
+
+	/**
+	 * Builds the file, searches it, and prints the results.
+	 *
+	 * @param args are the optional settings described above.
+	 */
+	public static void main (String[] args)
+		throws Exception
+	{
+		int count = (args.length > 0) ? Integer.parseInt( args[0] ) : 100000;
+		int queries = (args.length > 1) ? Integer.parseInt( args[1] ) : 1000;
+		long seed = (args.length > 2) ? Long.parseLong( args[2] ) : 1;
+
+		Random random = new Random( seed );
+		File path = File.createTempFile( "landmarks", ".lms" );
+		path.deleteOnExit();
+
+		// Ids start at 1.
+		latitudes = new double[count + 1];
+		longitudes = new double[count + 1];
+		located = new boolean[count + 1];
+		stored = new boolean[count + 1];
+		categories = new int[count + 1];
+
+		LandmarkFile.create( path );
+		LandmarkFile file = new LandmarkFile( path, null );
+
+		for ( int i = 0; i < CATEGORIES.length; i++ )
+		{
+			file.addCategory( CATEGORIES[i] );
+		}
+
+		// Store the landmarks.
+		long start = System.nanoTime();
+
+		for ( int i = 1; i <= count; i++ )
+		{
+			int category = random.nextInt( CATEGORIES.length + 1 ) - 1;
+			int id = file.add( landmark(random, i), (category < 0) ? null : CATEGORIES[category] );
+
+			if ( id != i )
+			{
+				throw new IllegalStateException( "Landmark " + i + " was given id " + id );
+			}
+
+			stored[id] = true;
+			categories[id] = (category < 0) ? 0 : (1 << category);
+		}
+
+		System.out.println( count + " landmarks stored in " + millis(start) + " ms" );
+
+		// Move, recategorize, and delete some of them.
+		start = System.nanoTime();
+		int changes = count / 10;
+
+		for ( int i = 0; i < changes; i++ )
+		{
+			int id = random.nextInt( count ) + 1;
+
+			if ( stored[id] == false )
+			{
+				continue;
+			}
+
+			switch ( random.nextInt(4) )
+			{
+				case 0:
+					file.update( id, landmark(random, id) );
+					break;
+
+				case 1:
+					int add = random.nextInt( CATEGORIES.length );
+					file.addToCategory( id, CATEGORIES[add] );
+					categories[id] |= (1 << add);
+					break;
+
+				case 2:
+					int remove = random.nextInt( CATEGORIES.length );
+					file.removeFromCategory( id, CATEGORIES[remove] );
+					categories[id] &= ~(1 << remove);
+					break;
+
+				default:
+					file.delete( id );
+					stored[id] = false;
+					break;
+			}
+		}
+
+		System.out.println( changes + " changes made in " + millis(start) + " ms" );
+
+		check( "journaled", file, new Random(seed + 1), queries, count );
+
+		// Reopen so the journal is replayed.
+		file.close();
+		file = new LandmarkFile( path, null );
+		check( "reopened", file, new Random(seed + 1), queries, count );
+		file.close();
+
+		if ( failures > 0 )
+		{
+			System.out.println( failures + " searches differed" );
+			System.exit( 1 );
+		}
+
+		System.out.println( "All searches matched" );
+	}
+
+	/**
+	 * Creates a landmark and records its coordinates.  One in 100 has none,
+	 * and one in 10 is near a pole or the antimeridian.
+	 */
+	private static Landmark landmark (Random random, int id)
+	{
+		QualifiedCoordinates coordinates = null;
+		located[id] = (random.nextInt( 100 ) != 0);
+
+		if ( located[id] )
+		{
+			double latitude = random.nextDouble() * 180.0 - 90.0;
+			double longitude = random.nextDouble() * 360.0 - 180.0;
+
+			switch ( random.nextInt(20) )
+			{
+				case 0:
+					longitude = (random.nextBoolean() ? 180.0 : -180.0) * (1.0 - random.nextDouble() * 0.01);
+					break;
+
+				case 1:
+					latitude = (random.nextBoolean() ? 90.0 : -90.0) * (1.0 - random.nextDouble() * 0.01);
+					break;
+			}
+
+			latitudes[id] = latitude;
+			longitudes[id] = longitude;
+			coordinates = new QualifiedCoordinates( latitude, longitude, Float.NaN, Float.NaN, Float.NaN );
+		}
+
+		return new Landmark( name(id), null, coordinates, null );
+	}
+
+	/**
+	 * @return The name of landmark <code>id</code>, shared with every 1000th.
+	 */
+	private static String name (int id)
+	{
+		return "landmark " + (id % 1000);
+	}
+
+	/**
+	 * Searches random areas, areas crossing the antimeridian, and names, in
+	 * each category and any, and compares the results with brute force.
+	 */
+	private static void check (String label, LandmarkFile file, Random random, int queries, int count)
+	{
+		long indexed = 0;
+		long scanned = 0;
+		int found = 0;
+
+		for ( int i = 0; i < queries; i++ )
+		{
+			double minLatitude;
+			double maxLatitude;
+			double minLongitude;
+			double maxLongitude;
+
+			double height = random.nextDouble() * 20.0;
+			double width = random.nextDouble() * 20.0;
+			minLatitude = random.nextDouble() * (180.0 - height) - 90.0;
+			maxLatitude = minLatitude + height;
+
+			if ( i % 4 == 0 )
+			{
+				// Cross the antimeridian.
+				minLongitude = 180.0 - random.nextDouble() * width;
+				maxLongitude = minLongitude + width - 360.0;
+			}
+			else
+			{
+				minLongitude = random.nextDouble() * (360.0 - width) - 180.0;
+				maxLongitude = minLongitude + width;
+			}
+
+			int category = random.nextInt( CATEGORIES.length + 1 ) - 1;
+
+			long start = System.nanoTime();
+			int[] actual = ids( file.find((category < 0) ? null : CATEGORIES[category],
+				minLatitude, maxLatitude, minLongitude, maxLongitude) );
+			indexed += System.nanoTime() - start;
+
+			start = System.nanoTime();
+			int[] expected = scan( count, category, minLatitude, maxLatitude, minLongitude, maxLongitude, null );
+			scanned += System.nanoTime() - start;
+
+			found += expected.length;
+			compare( label + " area " + minLatitude + ", " + maxLatitude + ", " + minLongitude + ", " + maxLongitude +
+				" in " + ((category < 0) ? "any" : CATEGORIES[category]), actual, expected );
+		}
+
+		// The whole world, and a band only as wide as the antimeridian crossing.
+		compare( label + " world", ids(file.find(null, -90.0, 90.0, -180.0, 180.0)),
+			scan(count, -1, -90.0, 90.0, -180.0, 180.0, null) );
+		compare( label + " antimeridian", ids(file.find(null, -90.0, 90.0, 179.9, -179.9)),
+			scan(count, -1, -90.0, 90.0, 179.9, -179.9, null) );
+
+		for ( int i = 0; i < 100; i++ )
+		{
+			String name = name( random.nextInt(count) + 1 );
+			int category = random.nextInt( CATEGORIES.length + 1 ) - 1;
+
+			compare( label + " name " + name, ids(file.find((category < 0) ? null : CATEGORIES[category], name)),
+				scan(count, category, 0, 0, 0, 0, name) );
+		}
+
+		System.out.println( label + ": " + queries + " areas, " + found + " landmarks found, " +
+			(indexed / 1000000) + " ms indexed vs " + (scanned / 1000000) + " ms scanned" );
+	}
+
+	/**
+	 * @return The sorted ids of the landmarks stored in <code>category</code>
+	 *  (-1 for any) in the area, or named <code>name</code> when it is not
+	 *  <code>null</code>.
+	 */
+	private static int[] scan (int count, int category,
+			double minLatitude, double maxLatitude, double minLongitude, double maxLongitude, String name)
+	{
+		int[] ids = new int[count];
+		int found = 0;
+
+		for ( int id = 1; id <= count; id++ )
+		{
+			if ( (stored[id] == false) || ((category >= 0) && ((categories[id] & (1 << category)) == 0)) )
+			{
+				continue;
+			}
+
+			if ( name != null )
+			{
+				if ( name(id).equals(name) == false )
+				{
+					continue;
+				}
+			}
+			else
+			{
+				double longitude = longitudes[id];
+				boolean within = (minLongitude <= maxLongitude) ?
+					((longitude >= minLongitude) && (longitude <= maxLongitude)) :
+					((longitude >= minLongitude) || (longitude <= maxLongitude));
+
+				if ( (located[id] == false) || (latitudes[id] < minLatitude) || (latitudes[id] > maxLatitude) ||
+					 (within == false) )
+				{
+					continue;
+				}
+			}
+
+			ids[found++] = id;
+		}
+
+		return Arrays.copyOf( ids, found );
+	}
+
+	/**
+	 * @return The sorted ids of the landmarks found.
+	 */
+	private static int[] ids (Enumeration<Landmark> landmarks)
+	{
+		int[] ids = new int[16];
+		int found = 0;
+
+		while ( (landmarks != null) && landmarks.hasMoreElements() )
+		{
+			if ( found == ids.length )
+			{
+				ids = Arrays.copyOf( ids, found * 2 );
+			}
+
+			ids[found++] = landmarks.nextElement().id;
+		}
+
+		ids = Arrays.copyOf( ids, found );
+		Arrays.sort( ids );
+
+		return ids;
+	}
+
+	/**
+	 * Counts and prints a search that differs from the brute force search.
+	 */
+	private static void compare (String search, int[] actual, int[] expected)
+	{
+		if ( Arrays.equals(actual, expected) == false )
+		{
+			failures++;
+			System.out.println( search + ": found " + actual.length + " landmarks, expected " + expected.length );
+		}
+	}
+
+	/**
+	 * @return The milliseconds since <code>start</code>.
+	 */
+	private static long millis (long start)
+	{
+		return (System.nanoTime() - start) / 1000000;
+	}
+}
@@ -12,6 +12,10 @@
 #define TEMPORARILY_UNAVAILABLE  javax_microedition_location_WindowsMobileLocationProvider_TEMPORARILY_UNAVAILABLE
 #define OUT_OF_SERVICE           javax_microedition_location_WindowsMobileLocationProvider_OUT_OF_SERVICE
 
+// Redefine Java's return codes for getGPSEvent.
+#define SHUTDOWN                 javax_microedition_location_WindowsMobileLocationProvider_SHUTDOWN
+#define LOCATION                 javax_microedition_location_WindowsMobileLocationProvider_LOCATION
+
 
 //////////////////////////////////////////////////////////////////////////
 // Globals
@@ -26,6 +30,21 @@ HANDLE hNewLocationData;
 // Event handle triggered when the GPS changes state.
 HANDLE hDeviceStateChange;
 
+// GPSRecord's class and field IDs, looked up once by startGPS so each fix
+// only sets the fields.  The global reference keeps the class, and so the
+// IDs, from being unloaded.
+jclass clsGPSRecord;
+jfieldID fidDate;
+jfieldID fidSecondsSinceMidnight;
+jfieldID fidMilliseconds;
+jfieldID fidLatitude;
+jfieldID fidLongitude;
+jfieldID fidAltitude;
+jfieldID fidHdop;
+jfieldID fidVdop;
+jfieldID fidSpeed;
+jfieldID fidCourse;
+
 
 //////////////////////////////////////////////////////////////////////////
 // Helper Methods
@@ -118,57 +137,111 @@ jint convertState (GPS_DEVICE &state)
 }
 
 /**
- * Converts a jint to a Java Integer object.
+ * Looks up a field ID.  Returns FALSE if the field does not exist.
+ */
+BOOL getFieldID (JNIEnv *env, jclass cls, const char *name, const char *signature, jfieldID &fid)
+{
+    fid = env->GetFieldID( cls, name, signature );
+    return (fid != NULL);
+}
+
+/**
+ * Looks up GPSRecord's field IDs.  Returns FALSE, with a Java exception
+ * pending, if the class or a field cannot be found.
  */
-jobject convertInteger (JNIEnv *env, jint i)
+BOOL cacheFieldIDs (JNIEnv *env)
 {
-    // Convert the jint to Java's Integer class.
-    jclass cls = env->FindClass( "java/lang/Integer" );
-    jmethodID methodID = env->GetMethodID( cls, "<init>", "(I)V" );
-    jobject ret = env->NewObject( cls, methodID, i );
-    return ret;
+    if ( clsGPSRecord != NULL )
+    {
+        // Already looked up.
+        return TRUE;
+    }
+
+    jclass cls = env->FindClass( "javax/microedition/location/GPSRecord" );
+    if ( cls == NULL )
+    {
+        return FALSE;
+    }
+
+    // Stop at the first missing field; NoSuchFieldError is then pending.
+    BOOL found =
+        getFieldID( env, cls, "date", "I", fidDate ) &&
+        getFieldID( env, cls, "secondsSinceMidnight", "I", fidSecondsSinceMidnight ) &&
+        getFieldID( env, cls, "milliseconds", "I", fidMilliseconds ) &&
+        getFieldID( env, cls, "latitude", "D", fidLatitude ) &&
+        getFieldID( env, cls, "longitude", "D", fidLongitude ) &&
+        getFieldID( env, cls, "altitude", "F", fidAltitude ) &&
+        getFieldID( env, cls, "hdop", "F", fidHdop ) &&
+        getFieldID( env, cls, "vdop", "F", fidVdop ) &&
+        getFieldID( env, cls, "speed", "F", fidSpeed ) &&
+        getFieldID( env, cls, "course", "F", fidCourse );
+
+    if ( found == FALSE )
+    {
+        env->DeleteLocalRef( cls );
+        return FALSE;
+    }
+
+    clsGPSRecord = (jclass)env->NewGlobalRef( cls );
+    env->DeleteLocalRef( cls );
+    return (clsGPSRecord != NULL);
 }
 
 /**
- * Converts a GPS Intermediate Driver location to a Java JSR-179 Location.
+ * Writes a GPS Intermediate Driver location into a Java GPSRecord.  Only
+ * the fields the driver reported valid are set; the rest keep the values
+ * GPSRecord.reset() gave them.  No Java objects are created and no IDs are
+ * looked up; cacheFieldIDs did that.
  */
-jobject convertLocation (JNIEnv *env, GPS_POSITION &position)
+void convertLocation (JNIEnv *env, GPS_POSITION &position, jobject record)
 {
+    // The receiver's UTC time of the fix in GPSRecord's NMEA form.
+    if ( position.dwValidFields & GPS_VALID_UTC_TIME )
+    {
+        SYSTEMTIME &utc = position.stUTCTime;
+        jint date = utc.wDay * 10000 + utc.wMonth * 100 + utc.wYear % 100;
+        jint seconds = (utc.wHour * 60 + utc.wMinute) * 60 + utc.wSecond;
+
+        env->SetIntField( record, fidDate, date );
+        env->SetIntField( record, fidSecondsSinceMidnight, seconds );
+        env->SetIntField( record, fidMilliseconds, utc.wMilliseconds );
+    }
+
     // At a minimum we need latitude and longitude to be valid.
     if ( (position.dwValidFields & (GPS_VALID_LATITUDE | GPS_VALID_LONGITUDE)) == 0 )
     {
-        // Return an invalid location object.
-        jclass clsLocation = env->FindClass( "javax/microedition/location/LocationImpl" );
-        jmethodID methodLocation = env->GetMethodID( clsLocation, "<init>", "()V" );
-        jobject objLocation = env->NewObject( clsLocation, methodLocation );
-        return objLocation;
+        // Leave the record without a fix.
+        return;
     }
 
-    // Get the GPS values.
-    jdouble latitude = position.dblLatitude;
-    jdouble longitude = position.dblLongitude;
-    jfloat altitude = (position.dwValidFields & GPS_VALID_ALTITUDE_WRT_ELLIPSOID) ? position.flAltitudeWRTEllipsoid : -15000;
-    jfloat hAccuracy = (position.dwValidFields & GPS_VALID_HORIZONTAL_DILUTION_OF_PRECISION) ? position.flHorizontalDilutionOfPrecision : -15000;
-    jfloat vAccuracy = (position.dwValidFields & GPS_VALID_VERTICAL_DILUTION_OF_PRECISION) ? position.flVerticalDilutionOfPrecision : -15000;
-    jfloat speed = (position.dwValidFields & GPS_VALID_SPEED) ? position.flSpeed : -15000;
-    jfloat heading = (position.dwValidFields & GPS_VALID_HEADING) ? position.flHeading : -15000;
-
-    // Create a Java QualifiedCoordinates object.
-    //   QualifiedCoordinates( double latitude, double longitude, float altitude, float horizontalAccuracy, float verticalAccuracy )
-    jclass clsCoordinates = env->FindClass( "javax/microedition/location/QualifiedCoordinates" );
-    jmethodID methodCoordinates = env->GetMethodID( clsCoordinates, "<init>", "(DDFFF)V" );
-    jobject objCoordinates = env->NewObject( clsCoordinates, methodCoordinates,
-        latitude, longitude, altitude, hAccuracy, vAccuracy );
-
-    // Create a Java LocationImpl object.
-    //   LocationImpl( QualifiedCoordinates qualifiedCoordinates, float speed, float course )
-    //   Note that speed is tranlated from knots to meters/second by the constructor.
-    jclass clsLocation = env->FindClass( "javax/microedition/location/LocationImpl" );
-    jmethodID methodLocation = env->GetMethodID( clsLocation, "<init>", "(Ljavax/microedition/location/QualifiedCoordinates;FF)V" );
-    jobject objLocation = env->NewObject( clsLocation, methodLocation,
-        objCoordinates, speed, heading );
-
-    return objLocation;
+    env->SetDoubleField( record, fidLatitude, position.dblLatitude );
+    env->SetDoubleField( record, fidLongitude, position.dblLongitude );
+
+    if ( position.dwValidFields & GPS_VALID_ALTITUDE_WRT_ELLIPSOID )
+    {
+        env->SetFloatField( record, fidAltitude, position.flAltitudeWRTEllipsoid );
+    }
+
+    if ( position.dwValidFields & GPS_VALID_HORIZONTAL_DILUTION_OF_PRECISION )
+    {
+        env->SetFloatField( record, fidHdop, position.flHorizontalDilutionOfPrecision );
+    }
+
+    if ( position.dwValidFields & GPS_VALID_VERTICAL_DILUTION_OF_PRECISION )
+    {
+        env->SetFloatField( record, fidVdop, position.flVerticalDilutionOfPrecision );
+    }
+
+    // Speed stays in knots; GPSRecord holds it that way.
+    if ( position.dwValidFields & GPS_VALID_SPEED )
+    {
+        env->SetFloatField( record, fidSpeed, position.flSpeed );
+    }
+
+    if ( position.dwValidFields & GPS_VALID_HEADING )
+    {
+        env->SetFloatField( record, fidCourse, position.flHeading );
+    }
 }
 
 /**
@@ -204,9 +277,10 @@ jint getState (JNIEnv *env)
 }
 
 /**
- * Gets the last known location from the GPS.
+ * Gets the last known location from the GPS into a Java GPSRecord.
+ * Returns TRUE if the position was read.
  */
-jobject getLocation (JNIEnv *env)
+BOOL getLocation (JNIEnv *env, jobject record)
 {
     try
     {
@@ -225,16 +299,16 @@ jobject getLocation (JNIEnv *env)
         if ( result != ERROR_SUCCESS )
         {
             throwLocationExceptionIfError( env, "Could not get position", result );
-            return NULL;
+            return FALSE;
         }
 
-        jobject objLocation = convertLocation( env, position );
-        return objLocation;
+        convertLocation( env, position, record );
+        return TRUE;
     }
     catch (...)
     {
         throwUnhandledException( env, "Unhandled exception getting a location from the GPS Intermediate Driver." );
-        return NULL;
+        return FALSE;
     }
 }
 
@@ -258,6 +332,12 @@ JNIEXPORT jboolean JNICALL Java_javax_microedition_location_WindowsMobileLocatio
             return FALSE;
         }
 
+        // Look up the fields each fix is written to.
+        if ( cacheFieldIDs(env) == FALSE )
+        {
+            return FALSE;
+        }
+
         // Create handles for events that get raised when new GPS data comes in.
         hNewLocationData = CreateEvent( NULL, FALSE, FALSE, NULL );
         if ( hNewLocationData == NULL )
@@ -328,9 +408,11 @@ JNIEXPORT void JNICALL Java_javax_microedition_location_WindowsMobileLocationPro
 /**
  * Blocks until the GPS Intermediate Driver gets a new event.  Then
  * that is returned to Java's worker thread and passed onto the user's
- * registered LocationListener.
+ * registered LocationListener.  A new location is written into the given
+ * GPSRecord.  Returns LOCATION for a location, the new state for a state
+ * change, or SHUTDOWN when this thread should exit.
  */
-JNIEXPORT jobject JNICALL Java_javax_microedition_location_WindowsMobileLocationProvider_getGPSEvent (JNIEnv *env, jobject obj, jint interval, jint timeout, jint maxAge)
+JNIEXPORT jint JNICALL Java_javax_microedition_location_WindowsMobileLocationProvider_getGPSEvent (JNIEnv *env, jobject obj, jobject record, jint interval, jint timeout, jint maxAge)
 {
     try
     {
@@ -340,13 +422,15 @@ JNIEXPORT jobject JNICALL Java_javax_microedition_location_WindowsMobileLocation
         if ( event_raised == WAIT_OBJECT_0 )
         {
             // New location data is available.
-            return getLocation( env );
+            if ( getLocation(env, record) )
+            {
+                return LOCATION;
+            }
         }
         else if ( event_raised == WAIT_OBJECT_0 + 1 )
         {
             // The GPS changed state.
-            jint state = getState( env );
-            return convertInteger( env, state );
+            return getState( env );
         }
         else if ( event_raised == WAIT_FAILED )
         {
@@ -359,5 +443,5 @@ JNIEXPORT jobject JNICALL Java_javax_microedition_location_WindowsMobileLocation
     }
 
     // If we got here we are shutting down this thread.
-    return NULL;
+    return SHUTDOWN;
 }
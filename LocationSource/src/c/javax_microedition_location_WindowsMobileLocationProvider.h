@@ -13,6 +13,10 @@ extern "C" {
 #define javax_microedition_location_WindowsMobileLocationProvider_TEMPORARILY_UNAVAILABLE 2L
 #undef javax_microedition_location_WindowsMobileLocationProvider_OUT_OF_SERVICE
 #define javax_microedition_location_WindowsMobileLocationProvider_OUT_OF_SERVICE 3L
+#undef javax_microedition_location_WindowsMobileLocationProvider_SHUTDOWN
+#define javax_microedition_location_WindowsMobileLocationProvider_SHUTDOWN -1L
+#undef javax_microedition_location_WindowsMobileLocationProvider_LOCATION
+#define javax_microedition_location_WindowsMobileLocationProvider_LOCATION 0L
 /* Inaccessible static: instance */
 /* Inaccessible static: instance */
 /*
@@ -34,10 +38,10 @@ JNIEXPORT void JNICALL Java_javax_microedition_location_WindowsMobileLocationPro
 /*
  * Class:     javax_microedition_location_WindowsMobileLocationProvider
  * Method:    getGPSEvent
- * Signature: (III)Ljava/lang/Object;
+ * Signature: (Ljavax/microedition/location/GPSRecord;III)I
  */
-JNIEXPORT jobject JNICALL Java_javax_microedition_location_WindowsMobileLocationProvider_getGPSEvent
-  (JNIEnv *, jobject, jint, jint, jint);
+JNIEXPORT jint JNICALL Java_javax_microedition_location_WindowsMobileLocationProvider_getGPSEvent
+  (JNIEnv *, jobject, jobject, jint, jint, jint);
 
 #ifdef __cplusplus
 }
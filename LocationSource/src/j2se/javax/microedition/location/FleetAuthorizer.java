@@ -0,0 +1,22 @@
+package javax.microedition.location;
+
+/**
+ * Decides which devices may connect to a <code>FleetHub</code>.  Without
+ * one any device ID is taken, so anyone who can reach the port can make the
+ * hub hold a provider for every ID they invent.  This interface is not part
+ * of JSR-179.
+ *
+ * @see FleetHub#setAuthorizer(FleetAuthorizer)
+ */
+public interface FleetAuthorizer
+{
+	/**
+	 * Called on a selector thread when a connection has sent its device ID.
+	 * It must return quickly.
+	 *
+	 * @param deviceId is the ID the device sent.
+	 * @return <code>true</code> to take the device's fixes or
+	 *  <code>false</code> to close the connection.
+	 */
+	public boolean isAuthorized (String deviceId);
+}
@@ -0,0 +1,431 @@
+package javax.microedition.location;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * One device's connection to a <code>FleetHub</code>.  It reads the device
+ * ID the connection starts with, works out whether NMEA sentences or a
+ * track log follow, and parses them straight out of the buffer they are
+ * read into, raising each fix on the device's <code>FleetLocationProvider</code>.
+ * <p>
+ * A connection is only used by the selector thread it is registered with.
+ * Once the device is known the connection is handed to the selector thread
+ * that serves that device.
+ *
+ * @see FleetHub
+ */
+final class FleetConnection
+{
+	/**
+	 * The bytes read from the socket at a time.  Sentences and track log
+	 * locations are both far shorter.
+	 */
+	private static final int BUFFER_SIZE = 2048;
+
+	/**
+	 * The longest line considered a sentence.  NMEA limits sentences to 82
+	 * characters; anything longer is corrupt and skipped.
+	 */
+	private static final int MAX_SENTENCE_LENGTH = 128;
+
+	/**
+	 * What the connection is reading.
+	 */
+	private static final int DEVICE_ID = 0;
+	private static final int FORMAT = 1;
+	private static final int NMEA = 2;
+	private static final int TRACK = 3;
+
+	/**
+	 * The hub the device connected to.
+	 */
+	private final FleetHub hub;
+
+	/**
+	 * The socket.
+	 */
+	final SocketChannel channel;
+
+	/**
+	 * Bytes read from the socket not yet parsed.  Between reads it is ready
+	 * to be read into.
+	 */
+	private final ByteBuffer in = ByteBuffer.allocate( BUFFER_SIZE );
+
+	/**
+	 * What is being read: <code>DEVICE_ID</code>, <code>FORMAT</code>,
+	 * <code>NMEA</code>, or <code>TRACK</code>.
+	 */
+	private int mode = DEVICE_ID;
+
+	/**
+	 * The device's provider once its ID has been read.
+	 */
+	private FleetLocationProvider device;
+
+	/**
+	 * Set once the connection gave up its claim on <code>device</code>.
+	 */
+	private boolean released;
+
+	/**
+	 * When <code>true</code> bytes are dropped up to the next new line.
+	 * Set when a sentence was too long.
+	 */
+	private boolean skipping;
+
+	/**
+	 * Parses NMEA sentences into <code>record</code>.  The values of the
+	 * epoch before the last sentence are in <code>previous</code>.
+	 */
+	private NMEAParser parser;
+	private GPSRecord record;
+	private GPSRecord previous;
+
+	/**
+	 * The UTC time of day, in milliseconds, of the last epoch raised or -1.
+	 */
+	private long raised = -1;
+
+	/**
+	 * Decodes a track log.
+	 */
+	private TrackDecoder decoder;
+
+	/**
+	 * @param hub is the hub the device connected to.
+	 * @param channel is the non-blocking socket.
+	 */
+	FleetConnection (FleetHub hub, SocketChannel channel)
+	{
+		this.hub = hub;
+		this.channel = channel;
+	}
+
+	/**
+	 * Reads and parses what the device sent.  Called when the channel is
+	 * readable.
+	 *
+	 * @param selector is the selector thread calling.
+	 */
+	void ready (FleetSelector selector)
+	{
+		try
+		{
+			if ( channel.read(in) < 0 )
+			{
+				close();
+			}
+			else
+			{
+				parse( selector );
+			}
+		}
+		catch (IOException e)
+		{
+			close();
+		}
+	}
+
+	/**
+	 * Parses the bytes in the buffer.  When the device ID has been read and
+	 * another selector thread serves the device the rest is left for that
+	 * thread.
+	 *
+	 * @param selector is the selector thread calling.
+	 */
+	void parse (FleetSelector selector)
+	{
+		FleetSelector owner = selector;
+		in.flip();
+
+		try
+		{
+			if ( (mode == DEVICE_ID) && readDeviceId() )
+			{
+				owner = hub.selectorFor( device.getDeviceId() );
+
+				if ( owner == selector )
+				{
+					device.attach( this );
+				}
+			}
+
+			if ( owner == selector )
+			{
+				if ( mode == FORMAT )
+				{
+					readFormat();
+				}
+
+				if ( mode == NMEA )
+				{
+					readSentences();
+				}
+				else if ( mode == TRACK )
+				{
+					readTrack();
+				}
+			}
+		}
+		finally
+		{
+			in.compact();
+		}
+
+		// Only once the buffer is ready for the other thread.
+		if ( owner != selector )
+		{
+			selector.handOver( this, owner );
+		}
+	}
+
+	/**
+	 * Called by the selector thread that serves the device once the
+	 * connection has been handed to it.
+	 */
+	void attached ()
+	{
+		device.attach( this );
+	}
+
+	/**
+	 * Closes the socket.  The device becomes unavailable if this was its
+	 * connection.
+	 */
+	void close ()
+	{
+		try
+		{
+			channel.close();
+		}
+		catch (IOException e)
+		{
+			// Closed anyway.
+		}
+
+		if ( device != null )
+		{
+			device.detach( this );
+
+			if ( released == false )
+			{
+				released = true;
+				hub.release( device );
+			}
+		}
+	}
+
+	/**
+	 * Reads the line naming the device.
+	 *
+	 * @return <code>true</code> once the ID has been read.
+	 */
+	private boolean readDeviceId ()
+	{
+		byte[] bytes = in.array();
+		int start = in.position();
+		int limit = in.limit();
+
+		for ( int i = start; i < limit; i++ )
+		{
+			if ( bytes[i] == '\n' )
+			{
+				String id = new String( bytes, start, i - start, StandardCharsets.US_ASCII ).trim();
+				in.position( i + 1 );
+
+				if ( (id.length() == 0) || (id.length() > FleetHub.MAX_DEVICE_ID_LENGTH) )
+				{
+					close();
+					return false;
+				}
+
+				device = hub.connect( id );
+
+				if ( device == null )
+				{
+					// Not authorized or the hub is full.
+					close();
+					return false;
+				}
+
+				mode = FORMAT;
+				return true;
+			}
+		}
+
+		if ( limit - start > FleetHub.MAX_DEVICE_ID_LENGTH + 2 )
+		{
+			// Not a device.
+			close();
+		}
+
+		return false;
+	}
+
+	/**
+	 * Works out from the first bytes after the device ID whether a track
+	 * log or NMEA sentences follow.
+	 */
+	private void readFormat ()
+	{
+		if ( in.hasRemaining() == false )
+		{
+			return;
+		}
+
+		if ( in.get(in.position()) != TrackReader.MAGIC[0] )
+		{
+			parser = new NMEAParser();
+			record = new GPSRecord();
+			previous = new GPSRecord();
+			mode = NMEA;
+			return;
+		}
+
+		if ( in.remaining() < TrackReader.MAGIC.length )
+		{
+			return;
+		}
+
+		for ( int i = 0; i < TrackReader.MAGIC.length; i++ )
+		{
+			if ( in.get() != TrackReader.MAGIC[i] )
+			{
+				close();
+				return;
+			}
+		}
+
+		decoder = new TrackDecoder();
+		mode = TRACK;
+	}
+
+	/**
+	 * Parses the whole sentences in the buffer.
+	 */
+	private void readSentences ()
+	{
+		byte[] bytes = in.array();
+		int start = in.position();
+		int limit = in.limit();
+
+		for ( int i = start; i < limit; i++ )
+		{
+			if ( bytes[i] == '\n' )
+			{
+				if ( skipping == false )
+				{
+					sentence( bytes, start, i + 1 - start );
+				}
+
+				skipping = false;
+				start = i + 1;
+			}
+		}
+
+		if ( limit - start > MAX_SENTENCE_LENGTH )
+		{
+			// Drop the rest of a line too long to be a sentence.
+			skipping = true;
+			start = limit;
+		}
+
+		in.position( start );
+	}
+
+	/**
+	 * Parses one sentence.  An epoch, the sentences sharing one UTC time, is
+	 * raised as soon as both its GGA and RMC sentences have arrived.  For
+	 * receivers that do not send both it is raised when the next epoch starts.
+	 */
+	private void sentence (byte[] bytes, int offset, int length)
+	{
+		if ( length > MAX_SENTENCE_LENGTH )
+		{
+			return;
+		}
+
+		previous.copy( record );
+		int type = parser.parse( bytes, offset, length, record );
+
+		if ( (type != GPSRecord.GGA) && (type != GPSRecord.RMC) )
+		{
+			return;
+		}
+
+		// Sentences with a different UTC time belong to the next epoch.
+		long time = timeOfDay( record );
+		long previousTime = timeOfDay( previous );
+
+		if ( (previous.sentences != 0) && (previousTime >= 0) && (previousTime != time) )
+		{
+			if ( previousTime != raised )
+			{
+				raise( previous );
+			}
+
+			// Start the next epoch from only this sentence so values of
+			// the last epoch's sentences are not carried into it.
+			record.reset();
+			parser.parse( bytes, offset, length, record );
+		}
+
+		int both = GPSRecord.GGA | GPSRecord.RMC;
+
+		if ( ((record.sentences & both) == both) && (time != raised) )
+		{
+			raise( record );
+			raised = time;
+		}
+	}
+
+	/**
+	 * @return The UTC time of day of a record in milliseconds or -1.
+	 */
+	private static long timeOfDay (GPSRecord record)
+	{
+		if ( record.secondsSinceMidnight < 0 )
+		{
+			return -1;
+		}
+
+		return record.secondsSinceMidnight * 1000L + record.milliseconds;
+	}
+
+	/**
+	 * Raises an NMEA epoch on the device's provider.
+	 */
+	private void raise (GPSRecord epoch)
+	{
+		try
+		{
+			device.epoch( epoch );
+		}
+		catch (IllegalArgumentException e)
+		{
+			// The device sent coordinates out of range.  Skip the fix.
+		}
+	}
+
+	/**
+	 * Decodes the whole track log locations in the buffer.
+	 */
+	private void readTrack ()
+	{
+		while ( in.hasRemaining() && decoder.decode(in) )
+		{
+			try
+			{
+				device.track( decoder );
+			}
+			catch (IllegalArgumentException e)
+			{
+				// The device sent coordinates out of range.  Skip the fix.
+			}
+		}
+	}
+}
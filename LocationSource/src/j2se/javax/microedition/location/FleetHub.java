@@ -0,0 +1,374 @@
+package javax.microedition.location;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.channels.ServerSocketChannel;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Server that many devices, such as the vehicles of a fleet, connect to
+ * and send their fixes.  Each device is its own
+ * <code>FleetLocationProvider</code>, so applications track a vehicle the
+ * same way they would use a receiver attached to the machine.
+ * <p>
+ * A device opens a TCP connection and sends its ID, up to
+ * <code>MAX_DEVICE_ID_LENGTH</code> ASCII characters, on a line of its own.
+ * Then it sends either:
+ * <ul>
+ *  <li>NMEA 0183 sentences, one per line, parsed by <code>NMEAParser</code>,
+ *      or
+ *  <li>a track log, the compact binary format written by
+ *      <code>TrackRecorder</code>: "LTRK", a version byte, then each fix as
+ *      differences from the one before in a few bytes.  The timestamp of
+ *      each fix is the device's UTC time.
+ * </ul>
+ * Nothing is sent back.  A device that connects again replaces its previous
+ * connection.
+ * <p>
+ * A <code>FleetAuthorizer</code> set with <code>setAuthorizer</code> decides
+ * which device IDs are taken.  Either way the hub keeps providers for at
+ * most <code>getMaxDevices</code> IDs.  When a new device connects and the
+ * hub is full, the providers of disconnected devices the application never
+ * asked for with <code>getProvider</code> are dropped to make room, longest
+ * disconnected first; if none can be, the connection is closed.  Those
+ * providers are queued as their devices disconnect, so a full hub finds
+ * one to drop, or finds there is none, without looking at the others.
+ * <p>
+ * The sockets are non-blocking and served by a small pool of selector
+ * threads, one per core up to four by default.  Each device is always served
+ * by the same thread, picked from its ID, so its events are raised in order
+ * from one thread and fixes are parsed straight out of the buffers they are
+ * read into without locking.  Listeners are called on the selector threads
+ * and must return quickly; a listener that blocks stalls every device its
+ * thread serves.
+ *
+ * @see FleetLocationProvider
+ */
+public class FleetHub
+	implements Closeable
+{
+	/**
+	 * The longest device ID.
+	 */
+	public static final int MAX_DEVICE_ID_LENGTH = 64;
+
+	/**
+	 * The most device providers kept by default.
+	 */
+	public static final int DEFAULT_MAX_DEVICES = 100000;
+
+	/**
+	 * The most selector threads used by default.
+	 */
+	private static final int MAX_DEFAULT_THREADS = 4;
+
+	/**
+	 * The socket devices connect to.
+	 */
+	private final ServerSocketChannel server;
+
+	/**
+	 * The threads serving the connections.  The first also accepts them.
+	 */
+	private final FleetSelector[] selectors;
+
+	/**
+	 * Every device's provider keyed by its ID.
+	 */
+	private final ConcurrentHashMap<String, FleetLocationProvider> devices = new ConcurrentHashMap<String, FleetLocationProvider>();
+
+	/**
+	 * Providers that could be dropped, in the order their devices
+	 * disconnected.  Each is queued at most once and may since have been
+	 * asked for or connected again.
+	 */
+	private final ConcurrentLinkedQueue<FleetLocationProvider> idle = new ConcurrentLinkedQueue<FleetLocationProvider>();
+
+	/**
+	 * Decides which devices may connect or <code>null</code> for any.
+	 */
+	private volatile FleetAuthorizer authorizer;
+
+	/**
+	 * The most device providers kept for connections.
+	 */
+	private volatile int maxDevices = DEFAULT_MAX_DEVICES;
+
+	/**
+	 * Listens for devices on a port of every address of this machine.
+	 *
+	 * @param port is the TCP port or 0 for any free port.
+	 * @throws IOException if the port cannot be listened on.
+	 */
+	public FleetHub (int port)
+		throws IOException
+	{
+		this( new InetSocketAddress(port), defaultThreads() );
+	}
+
+	/**
+	 * Listens for devices.
+	 *
+	 * @param address is the address and port to listen on.
+	 * @param threads is the number of selector threads.
+	 * @throws IOException if the address cannot be listened on.
+	 * @throws IllegalArgumentException if <code>threads</code> is less than 1.
+	 */
+	public FleetHub (InetSocketAddress address, int threads)
+		throws IOException
+	{
+		if ( threads < 1 )
+		{
+			throw new IllegalArgumentException( "Threads (" + threads + ") must be at least 1." );
+		}
+
+		server = ServerSocketChannel.open();
+
+		try
+		{
+			server.configureBlocking( false );
+			server.bind( address, 1024 );
+
+			selectors = new FleetSelector[threads];
+
+			for ( int i = 0; i < threads; i++ )
+			{
+				selectors[i] = new FleetSelector( this, i, (i == 0) ? server : null );
+			}
+
+			for ( int i = 0; i < threads; i++ )
+			{
+				selectors[i].start();
+			}
+		}
+		catch (IOException e)
+		{
+			server.close();
+			throw e;
+		}
+	}
+
+	/**
+	 * @return The number of selector threads used by default: one per core
+	 *  up to <code>MAX_DEFAULT_THREADS</code>.
+	 */
+	private static int defaultThreads ()
+	{
+		return Math.min( Runtime.getRuntime().availableProcessors(), MAX_DEFAULT_THREADS );
+	}
+
+	/**
+	 * @return The port devices connect to.
+	 */
+	public int getPort ()
+	{
+		return server.socket().getLocalPort();
+	}
+
+	/**
+	 * Sets what decides which devices may connect.  Devices already
+	 * connected stay connected.
+	 *
+	 * @param authorizer decides which devices may connect or <code>null</code>
+	 *  to take any.
+	 */
+	public void setAuthorizer (FleetAuthorizer authorizer)
+	{
+		this.authorizer = authorizer;
+	}
+
+	/**
+	 * @return The most device providers kept.
+	 */
+	public int getMaxDevices ()
+	{
+		return maxDevices;
+	}
+
+	/**
+	 * Sets the most device providers kept.  Providers asked for with
+	 * <code>getProvider</code> are always created but count toward it.
+	 *
+	 * @param maxDevices is the most providers.
+	 * @throws IllegalArgumentException if <code>maxDevices</code> is less than 1.
+	 */
+	public void setMaxDevices (int maxDevices)
+	{
+		if ( maxDevices < 1 )
+		{
+			throw new IllegalArgumentException( "Max devices (" + maxDevices + ") must be at least 1." );
+		}
+
+		this.maxDevices = maxDevices;
+	}
+
+	/**
+	 * Returns a device's provider.  It is created if the device has not
+	 * connected yet, so listeners can be added before it does, and is kept
+	 * until the hub is closed.
+	 *
+	 * @param deviceId is the ID the device connects with.
+	 * @return The device's provider.
+	 * @throws NullPointerException if <code>deviceId</code> is <code>null</code>.
+	 */
+	public FleetLocationProvider getProvider (String deviceId)
+	{
+		while ( true )
+		{
+			FleetLocationProvider device = device( deviceId );
+
+			if ( device.claim(true) )
+			{
+				return device;
+			}
+
+			// It was just dropped; make another.
+			devices.remove( deviceId, device );
+		}
+	}
+
+	/**
+	 * @return The providers of every device that is connected or has been
+	 *  asked for.  Only those asked for with <code>getProvider</code> are
+	 *  sure to be kept once their device disconnects.
+	 */
+	public FleetLocationProvider[] getProviders ()
+	{
+		return devices.values().toArray( new FleetLocationProvider[0] );
+	}
+
+	/**
+	 * Stops listening and disconnects every device.  Their providers go
+	 * <code>OUT_OF_SERVICE</code>.
+	 */
+	public void close ()
+		throws IOException
+	{
+		try
+		{
+			server.close();
+		}
+		finally
+		{
+			for ( int i = 0; i < selectors.length; i++ )
+			{
+				selectors[i].close();
+			}
+		}
+	}
+
+	/**
+	 * Claims a device's provider for a connection that sent its ID.  The
+	 * connection must <code>release</code> it when it closes.
+	 *
+	 * @param deviceId is the ID the device sent.
+	 * @return The device's provider or <code>null</code> if the device is
+	 *  not authorized or the hub is full.
+	 */
+	FleetLocationProvider connect (String deviceId)
+	{
+		FleetAuthorizer authorizer = this.authorizer;
+
+		if ( (authorizer != null) && (authorizer.isAuthorized(deviceId) == false) )
+		{
+			return null;
+		}
+
+		while ( true )
+		{
+			FleetLocationProvider device = devices.get( deviceId );
+
+			if ( device == null )
+			{
+				if ( (devices.size() >= maxDevices) && (evict() == false) )
+				{
+					return null;
+				}
+
+				device = device( deviceId );
+			}
+
+			if ( device.claim(false) )
+			{
+				return device;
+			}
+
+			devices.remove( deviceId, device );
+		}
+	}
+
+	/**
+	 * Gives up a connection's claim on a device's provider.  Called when
+	 * the connection closes.
+	 *
+	 * @param device is the provider <code>connect</code> returned.
+	 */
+	void release (FleetLocationProvider device)
+	{
+		if ( device.release() )
+		{
+			idle.add( device );
+		}
+	}
+
+	/**
+	 * Drops the providers of disconnected devices the application never
+	 * asked for until the hub is below <code>maxDevices</code>.  Each
+	 * provider taken from <code>idle</code> is looked at once, so this
+	 * costs nothing when there are none.
+	 *
+	 * @return <code>true</code> if there is room for another device.
+	 */
+	private boolean evict ()
+	{
+		while ( devices.size() >= maxDevices )
+		{
+			FleetLocationProvider device = idle.poll();
+
+			if ( device == null )
+			{
+				return false;
+			}
+
+			if ( device.evict() )
+			{
+				devices.remove( device.getDeviceId(), device );
+			}
+		}
+
+		return true;
+	}
+
+	/**
+	 * @param deviceId is the ID the device connects with.
+	 * @return The device's provider, created the first time.
+	 */
+	private FleetLocationProvider device (String deviceId)
+	{
+		FleetLocationProvider device = devices.get( deviceId );
+
+		if ( device == null )
+		{
+			FleetLocationProvider created = new FleetLocationProvider( deviceId );
+			device = devices.putIfAbsent( deviceId, created );
+
+			if ( device == null )
+			{
+				device = created;
+			}
+		}
+
+		return device;
+	}
+
+	/**
+	 * @param deviceId is the ID the device connects with.
+	 * @return The selector thread that serves the device.
+	 */
+	FleetSelector selectorFor (String deviceId)
+	{
+		return selectors[(deviceId.hashCode() & 0x7FFFFFFF) % selectors.length];
+	}
+}
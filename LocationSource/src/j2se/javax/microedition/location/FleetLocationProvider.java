@@ -0,0 +1,283 @@
+package javax.microedition.location;
+
+/**
+ * Location provider for one device connected to a <code>FleetHub</code>.
+ * It exists from the first time the device connects, or its ID is asked
+ * for, until the hub is closed, and keeps its listeners while the device
+ * reconnects.  One the application never asked for may be dropped while
+ * its device is disconnected to make room for others.
+ * <p>
+ * Events are raised on the hub's selector thread that serves the device.
+ * Every connection from the device is served by the same thread, so events
+ * are never raised from two threads at once.  Listeners share that thread
+ * with many other devices and must return quickly.
+ * <p>
+ * The provider is <code>TEMPORARILY_UNAVAILABLE</code> until the device
+ * sends a valid fix and again whenever it sends an invalid one or
+ * disconnects.  It is <code>OUT_OF_SERVICE</code> once the hub is closed.
+ * <p>
+ * A device's position is not this machine's, so its locations do not
+ * trigger the proximity listeners registered with
+ * <code>addProximityListener</code>.
+ *
+ * @see FleetHub
+ */
+public class FleetLocationProvider
+	extends AbstractLocationProvider
+{
+	/**
+	 * The ID the device gave when it connected.
+	 */
+	private final String deviceId;
+
+	/**
+	 * Used to raise invalid locations from track logs.  This and
+	 * <code>connection</code> are only used by the selector thread.
+	 */
+	private final GPSRecord invalid = new GPSRecord();
+
+	/**
+	 * The device's current connection or <code>null</code>.
+	 */
+	private FleetConnection connection;
+
+	/**
+	 * <code>true</code> while the device is connected.
+	 */
+	private volatile boolean connected;
+
+	/**
+	 * <code>true</code> once the application asked for the provider.  This
+	 * and the fields below are guarded by <code>this</code>.
+	 */
+	private boolean requested;
+
+	/**
+	 * The connections from the device not yet closed.
+	 */
+	private int claims;
+
+	/**
+	 * <code>true</code> once the hub dropped the provider.
+	 */
+	private boolean evicted;
+
+	/**
+	 * <code>true</code> while the provider is in the hub's queue of
+	 * providers it could drop.
+	 */
+	private boolean queued;
+
+	/**
+	 * Only <code>FleetHub</code> creates providers.
+	 *
+	 * @param deviceId is the ID the device connects with.
+	 */
+	FleetLocationProvider (String deviceId)
+	{
+		this.deviceId = deviceId;
+	}
+
+	/**
+	 * @return The ID the device connects with.
+	 */
+	public String getDeviceId ()
+	{
+		return deviceId;
+	}
+
+	/**
+	 * @return <code>true</code> if the device is connected to the hub.
+	 */
+	public boolean isConnected ()
+	{
+		return connected;
+	}
+
+	/**
+	 * Keeps the provider from being dropped by the hub.
+	 *
+	 * @param request is <code>true</code> for the application asking for it
+	 *  and <code>false</code> for a connection from the device.
+	 * @return <code>false</code> if it was already dropped.
+	 */
+	synchronized boolean claim (boolean request)
+	{
+		if ( evicted )
+		{
+			return false;
+		}
+
+		if ( request )
+		{
+			requested = true;
+		}
+		else
+		{
+			claims++;
+		}
+
+		return true;
+	}
+
+	/**
+	 * Called when a connection that claimed the provider closes.
+	 *
+	 * @return <code>true</code> if nothing keeps the provider any more and
+	 *  the hub should queue it to be dropped.
+	 */
+	synchronized boolean release ()
+	{
+		claims--;
+
+		if ( requested || (claims > 0) || queued )
+		{
+			return false;
+		}
+
+		queued = true;
+		return true;
+	}
+
+	/**
+	 * Marks the provider dropped if nothing keeps it.  Called when the hub
+	 * takes it from its queue.
+	 *
+	 * @return <code>true</code> if the hub may drop it.
+	 */
+	synchronized boolean evict ()
+	{
+		queued = false;
+
+		if ( requested || (claims > 0) || evicted )
+		{
+			return false;
+		}
+
+		evicted = true;
+		return true;
+	}
+
+	/**
+	 * Makes a connection the device's.  Its previous connection, left open
+	 * when the device lost its network without closing it, is closed.
+	 * Called on the selector thread.
+	 *
+	 * @param connection is the new connection.
+	 */
+	void attach (FleetConnection connection)
+	{
+		FleetConnection previous = this.connection;
+		this.connection = connection;
+		this.connected = true;
+
+		if ( (previous != null) && (previous != connection) )
+		{
+			previous.close();
+		}
+	}
+
+	/**
+	 * Called on the selector thread when a connection closes.
+	 *
+	 * @param connection is the connection that closed.
+	 */
+	void detach (FleetConnection connection)
+	{
+		if ( this.connection == connection )
+		{
+			this.connection = null;
+			this.connected = false;
+
+			if ( getState() == AVAILABLE )
+			{
+				raiseStateChangeEvent( TEMPORARILY_UNAVAILABLE );
+			}
+		}
+	}
+
+	/**
+	 * Called on the selector thread when the hub closes.
+	 */
+	void close ()
+	{
+		if ( connection != null )
+		{
+			connection.close();
+		}
+
+		raiseStateChangeEvent( OUT_OF_SERVICE );
+	}
+
+	/**
+	 * Raises an NMEA epoch.  Called on the selector thread.
+	 *
+	 * @param record holds the values of the epoch's sentences.
+	 */
+	void epoch (GPSRecord record)
+	{
+		raise( newLocation(record, System.currentTimeMillis()) );
+	}
+
+	/**
+	 * Raises a location from a track log.  Called on the selector thread.
+	 *
+	 * @param decoder holds the location just decoded.  Its timestamp is the
+	 *  device's time for the fix.
+	 */
+	void track (TrackDecoder decoder)
+	{
+		long now = System.currentTimeMillis();
+
+		if ( decoder.valid )
+		{
+			raise( newLocation(decoder.latitude, decoder.longitude, decoder.altitude,
+				decoder.horizontalAccuracy, decoder.verticalAccuracy, decoder.speed, decoder.course,
+				now, decoder.timestamp) );
+		}
+		else
+		{
+			invalid.reset();
+			invalid.setUTCTime( decoder.timestamp );
+			raise( newLocation(invalid, now) );
+		}
+	}
+
+	/**
+	 * Keeps the device out of <code>ProximityMonitor</code>.
+	 *
+	 * @see AbstractLocationProvider#isProximityMonitored()
+	 */
+	protected boolean isProximityMonitored ()
+	{
+		return false;
+	}
+
+	/**
+	 * Raises a location and any change of state it brings.
+	 */
+	private void raise (Location location)
+	{
+		if ( location.isValid() )
+		{
+			if ( getState() != AVAILABLE )
+			{
+				raiseStateChangeEvent( AVAILABLE );
+			}
+		}
+		else if ( getState() == AVAILABLE )
+		{
+			raiseStateChangeEvent( TEMPORARILY_UNAVAILABLE );
+		}
+
+		raiseLocationEvent( location );
+	}
+
+	/**
+	 * @return The name of this location provider.
+	 */
+	public String toString ()
+	{
+		return "Fleet device " + deviceId;
+	}
+}
@@ -0,0 +1,276 @@
+package javax.microedition.location;
+
+import java.io.IOException;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * One of the threads that serve a <code>FleetHub</code>'s connections.
+ * Each has its own <code>Selector</code> with its share of the devices'
+ * non-blocking sockets registered, so a few threads serve thousands of
+ * devices.  The first also accepts new connections.
+ * <p>
+ * Connections handed over from other threads, once their device is known,
+ * come through a queue the thread drains between selects, as for
+ * <code>GpsdSelector</code>.  Everything else happens on this thread.
+ *
+ * @see FleetHub
+ */
+final class FleetSelector
+	implements Runnable
+{
+	/**
+	 * The hub this thread serves.
+	 */
+	private final FleetHub hub;
+
+	/**
+	 * The selector the connections are registered with.
+	 */
+	private final Selector selector;
+
+	/**
+	 * Connections handed over by other threads.  Guarded by <code>this</code>.
+	 */
+	private final List<FleetConnection> added = new ArrayList<FleetConnection>();
+
+	/**
+	 * Set when the hub is closed.
+	 */
+	private volatile boolean closed;
+
+	/**
+	 * The thread, started by <code>start</code>.
+	 */
+	private final Thread thread;
+
+	/**
+	 * Opens the selector.
+	 *
+	 * @param hub is the hub to serve.
+	 * @param index numbers the thread.
+	 * @param server is the hub's socket to accept connections from or
+	 *  <code>null</code> if another thread accepts them.
+	 * @throws IOException if the selector cannot be opened.
+	 */
+	FleetSelector (FleetHub hub, int index, ServerSocketChannel server)
+		throws IOException
+	{
+		this.hub = hub;
+		this.selector = Selector.open();
+
+		if ( server != null )
+		{
+			server.register( selector, SelectionKey.OP_ACCEPT );
+		}
+
+		thread = new Thread( this, "Fleet selector " + index );
+		thread.setDaemon( true );
+	}
+
+	/**
+	 * Starts the thread once the hub has all its selectors.
+	 */
+	void start ()
+	{
+		thread.start();
+	}
+
+	/**
+	 * Gives a connection to the thread serving its device.  Called on this
+	 * thread, which stops reading the connection.
+	 *
+	 * @param connection is the connection whose device is known.
+	 * @param owner is the thread that serves the device.
+	 */
+	void handOver (FleetConnection connection, FleetSelector owner)
+	{
+		SelectionKey key = connection.channel.keyFor( selector );
+
+		if ( key != null )
+		{
+			key.cancel();
+		}
+
+		owner.add( connection );
+	}
+
+	/**
+	 * Starts serving a connection.
+	 *
+	 * @param connection is registered on this thread.
+	 */
+	private void add (FleetConnection connection)
+	{
+		synchronized ( this )
+		{
+			added.add( connection );
+		}
+
+		selector.wakeup();
+	}
+
+	/**
+	 * Stops the thread.  It closes its connections and its devices go
+	 * <code>OUT_OF_SERVICE</code>.
+	 */
+	void close ()
+	{
+		closed = true;
+		selector.wakeup();
+	}
+
+	/**
+	 * Serves the connections until the hub is closed.
+	 *
+	 * @see Runnable#run()
+	 */
+	public void run ()
+	{
+		while ( closed == false )
+		{
+			try
+			{
+				addConnections();
+				selector.select();
+
+				Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+
+				while ( keys.hasNext() )
+				{
+					SelectionKey key = keys.next();
+					keys.remove();
+
+					if ( key.isValid() == false )
+					{
+						continue;
+					}
+
+					if ( key.isAcceptable() )
+					{
+						accept( (ServerSocketChannel)key.channel() );
+					}
+					else
+					{
+						((FleetConnection)key.attachment()).ready( this );
+					}
+				}
+			}
+			catch (Throwable t)
+			{
+				// Should never happen, but if it does it would be nice to know why.
+				System.out.println( t.getMessage() );
+			}
+		}
+
+		shutDown();
+	}
+
+	/**
+	 * Accepts every connection waiting.  Each is read on this thread until
+	 * its device ID arrives.
+	 */
+	private void accept (ServerSocketChannel server)
+	{
+		try
+		{
+			SocketChannel channel;
+
+			while ( (channel = server.accept()) != null )
+			{
+				channel.configureBlocking( false );
+				channel.register( selector, SelectionKey.OP_READ, new FleetConnection(hub, channel) );
+			}
+		}
+		catch (IOException e)
+		{
+			// Such as running out of file descriptors.  Try again next select.
+			System.out.println( "Could not accept a device: " + e.getMessage() );
+		}
+	}
+
+	/**
+	 * Registers the connections handed over since the last select and parses
+	 * what they had already read.
+	 */
+	private void addConnections ()
+	{
+		FleetConnection[] adding;
+
+		synchronized ( this )
+		{
+			adding = added.toArray( new FleetConnection[added.size()] );
+			added.clear();
+		}
+
+		for ( int i = 0; i < adding.length; i++ )
+		{
+			FleetConnection connection = adding[i];
+
+			try
+			{
+				connection.channel.register( selector, SelectionKey.OP_READ, connection );
+			}
+			catch (ClosedChannelException e)
+			{
+				continue;
+			}
+
+			connection.attached();
+			connection.parse( this );
+		}
+	}
+
+	/**
+	 * Closes the connections and the devices this thread serves.
+	 */
+	private void shutDown ()
+	{
+		Iterator<SelectionKey> keys = selector.keys().iterator();
+
+		while ( keys.hasNext() )
+		{
+			Object attachment = keys.next().attachment();
+
+			if ( attachment instanceof FleetConnection )
+			{
+				((FleetConnection)attachment).close();
+			}
+		}
+
+		synchronized ( this )
+		{
+			for ( int i = 0; i < added.size(); i++ )
+			{
+				added.get( i ).close();
+			}
+
+			added.clear();
+		}
+
+		FleetLocationProvider[] devices = hub.getProviders();
+
+		for ( int i = 0; i < devices.length; i++ )
+		{
+			if ( hub.selectorFor(devices[i].getDeviceId()) == this )
+			{
+				devices[i].close();
+			}
+		}
+
+		try
+		{
+			selector.close();
+		}
+		catch (IOException e)
+		{
+			// Closed anyway.
+		}
+	}
+}
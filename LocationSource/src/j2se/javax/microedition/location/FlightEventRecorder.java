@@ -0,0 +1,238 @@
+package javax.microedition.location;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.EventType;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timestamp;
+
+/**
+ * The J2SE <code>EventRecorder</code>, which records Java Flight Recorder
+ * events.  They appear under "Location Source" in JDK Mission Control next
+ * to the garbage collections and safepoints of the same recording, so a
+ * late location can be matched with the pause that held it up.  Turn them
+ * on with a recording's settings like any other event, for example
+ * <code>-XX:StartFlightRecording:settings=profile</code> records them all.
+ * <p>
+ * Each method first checks whether its event type is enabled, which is a
+ * field read, so nothing is created when the events are not recorded.
+ *
+ * @see EventRecorder
+ */
+final class FlightEventRecorder
+	extends EventRecorder
+{
+	private static final EventType ARRIVED = EventType.getEventType( LocationArrived.class );
+	private static final EventType DROPPED = EventType.getEventType( LocationDropped.class );
+	private static final EventType STATE = EventType.getEventType( StateChanged.class );
+	private static final EventType DISPATCH = EventType.getEventType( LocationDispatched.class );
+
+	/**
+	 * A location arrived from the receiver.
+	 */
+	@Name("javax.microedition.location.LocationArrived")
+	@Label("Location Arrived")
+	@Category("Location Source")
+	@Description("A location arrived from the receiver and is about to be raised")
+	@StackTrace(false)
+	static final class LocationArrived
+		extends Event
+	{
+		@Label("Provider")
+		String provider;
+
+		@Label("Valid")
+		boolean valid;
+
+		@Label("Latitude")
+		double latitude;
+
+		@Label("Longitude")
+		double longitude;
+
+		@Label("Horizontal Accuracy")
+		float horizontalAccuracy;
+
+		@Label("GPS Time")
+		@Description("The UTC time the receiver reported for the fix")
+		@Timestamp(Timestamp.MILLISECONDS_SINCE_EPOCH)
+		long gpsTime;
+	}
+
+	/**
+	 * A location was not given to any listener.
+	 */
+	@Name("javax.microedition.location.LocationDropped")
+	@Label("Location Dropped")
+	@Category("Location Source")
+	@Description("A location was not given to any listener")
+	@StackTrace(false)
+	static final class LocationDropped
+		extends Event
+	{
+		@Label("Provider")
+		String provider;
+
+		@Label("Suppressed")
+		@Description("True if no listener's interval had expired, false if the provider dropped it")
+		boolean suppressed;
+	}
+
+	/**
+	 * A provider changed state.
+	 */
+	@Name("javax.microedition.location.StateChanged")
+	@Label("Provider State Changed")
+	@Category("Location Source")
+	@StackTrace(false)
+	static final class StateChanged
+		extends Event
+	{
+		@Label("Provider")
+		String provider;
+
+		@Label("Old State")
+		String oldState;
+
+		@Label("New State")
+		String newState;
+	}
+
+	/**
+	 * A listener's <code>locationUpdated</code> call.
+	 */
+	@Name("javax.microedition.location.LocationDispatched")
+	@Label("Location Dispatched")
+	@Category("Location Source")
+	@Description("A listener's locationUpdated call")
+	@StackTrace(false)
+	static final class LocationDispatched
+		extends Event
+	{
+		@Label("Provider")
+		String provider;
+
+		@Label("Listener")
+		Class<?> listener;
+
+		@Label("Valid")
+		boolean valid;
+
+		@Label("Failed")
+		@Description("True if the listener threw")
+		boolean failed;
+	}
+
+	/**
+	 * @see javax.microedition.location.EventRecorder#locationArrived(javax.microedition.location.LocationProvider, javax.microedition.location.Location)
+	 */
+	void locationArrived (LocationProvider provider, Location location)
+	{
+		if ( ARRIVED.isEnabled() == false )
+		{
+			return;
+		}
+
+		LocationArrived event = new LocationArrived();
+		event.provider = provider.toString();
+		event.gpsTime = location.getGPSTime();
+		event.valid = location.isValid();
+
+		if ( event.valid )
+		{
+			event.latitude = location.latitude();
+			event.longitude = location.longitude();
+			event.horizontalAccuracy = location.horizontalAccuracy();
+		}
+
+		event.commit();
+	}
+
+	/**
+	 * @see javax.microedition.location.EventRecorder#locationDropped(javax.microedition.location.LocationProvider, boolean)
+	 */
+	void locationDropped (LocationProvider provider, boolean suppressed)
+	{
+		if ( DROPPED.isEnabled() == false )
+		{
+			return;
+		}
+
+		LocationDropped event = new LocationDropped();
+		event.provider = provider.toString();
+		event.suppressed = suppressed;
+		event.commit();
+	}
+
+	/**
+	 * @see javax.microedition.location.EventRecorder#stateChanged(javax.microedition.location.LocationProvider, int, int)
+	 */
+	void stateChanged (LocationProvider provider, int oldState, int newState)
+	{
+		if ( STATE.isEnabled() == false )
+		{
+			return;
+		}
+
+		StateChanged event = new StateChanged();
+		event.provider = provider.toString();
+		event.oldState = stateName( oldState );
+		event.newState = stateName( newState );
+		event.commit();
+	}
+
+	/**
+	 * @see javax.microedition.location.EventRecorder#dispatchStarted()
+	 */
+	Object dispatchStarted ()
+	{
+		if ( DISPATCH.isEnabled() == false )
+		{
+			return null;
+		}
+
+		LocationDispatched event = new LocationDispatched();
+		event.begin();
+		return event;
+	}
+
+	/**
+	 * @see javax.microedition.location.EventRecorder#dispatchEnded(java.lang.Object, javax.microedition.location.LocationProvider, javax.microedition.location.LocationListener, javax.microedition.location.Location, boolean)
+	 */
+	void dispatchEnded (Object dispatch, LocationProvider provider, LocationListener listener, Location location, boolean failed)
+	{
+		LocationDispatched event = (LocationDispatched)dispatch;
+		event.end();
+
+		if ( event.shouldCommit() )
+		{
+			event.provider = provider.toString();
+			event.listener = listener.getClass();
+			event.valid = (location != null) && location.isValid();
+			event.failed = failed;
+			event.commit();
+		}
+	}
+
+	/**
+	 * @param state is a <code>LocationProvider</code> state code.
+	 * @return The name of the state.
+	 */
+	private static String stateName (int state)
+	{
+		switch ( state )
+		{
+			case LocationProvider.AVAILABLE:
+				return "AVAILABLE";
+			case LocationProvider.TEMPORARILY_UNAVAILABLE:
+				return "TEMPORARILY_UNAVAILABLE";
+			case LocationProvider.OUT_OF_SERVICE:
+				return "OUT_OF_SERVICE";
+			default:
+				return String.valueOf( state );
+		}
+	}
+}
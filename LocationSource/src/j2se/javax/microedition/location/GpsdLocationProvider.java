@@ -0,0 +1,446 @@
+package javax.microedition.location;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+
+/**
+ * Location provider that reads fixes from <a href="https://gpsd.io/">gpsd</a>,
+ * the GPS service daemon found on Linux and BSD hosts.  It needs no native
+ * code: it connects to gpsd's TCP port and asks for its JSON reports.
+ * <p>
+ * Each <code>TPV</code> report becomes a <code>Location</code>; its accuracy
+ * is the dilution of precision from the latest <code>SKY</code> report, as
+ * the other providers give it.  Reports are parsed by <code>GpsdParser</code>
+ * straight out of the buffer they are read into.
+ * <p>
+ * The socket is a non-blocking <code>SocketChannel</code> served by a thread
+ * shared with every other <code>GpsdLocationProvider</code> in the process,
+ * so one thread serves any number of gpsd endpoints.  Listeners are called on
+ * that thread and should return quickly.  When the connection cannot be made
+ * or is lost the provider becomes <code>TEMPORARILY_UNAVAILABLE</code> and
+ * reconnects, waiting twice as long after each failure up to 30 seconds.
+ * It is <code>OUT_OF_SERVICE</code> once closed.
+ *
+ * @see GpsdParser
+ */
+public class GpsdLocationProvider
+	extends AbstractLocationProvider
+	implements Closeable
+{
+	/**
+	 * The port gpsd listens on by default.
+	 */
+	public static final int DEFAULT_PORT = 2947;
+
+	/**
+	 * The command that asks gpsd for JSON reports.
+	 */
+	private static final byte[] WATCH = "?WATCH={\"enable\":true,\"json\":true};\n".getBytes();
+
+	/**
+	 * The longest report, in bytes, read.  Longer ones are skipped.  A
+	 * <code>SKY</code> report listing every satellite is a few kilobytes.
+	 */
+	private static final int BUFFER_SIZE = 64 * 1024;
+
+	/**
+	 * The wait, in milliseconds, before the first reconnect.
+	 */
+	private static final long MIN_RECONNECT_DELAY = 500;
+
+	/**
+	 * The longest wait, in milliseconds, between reconnects.
+	 */
+	private static final long MAX_RECONNECT_DELAY = 30000;
+
+	/**
+	 * The host gpsd runs on.
+	 */
+	private final String host;
+
+	/**
+	 * The port gpsd listens on.
+	 */
+	private final int port;
+
+	/**
+	 * Serves the socket.
+	 */
+	private final GpsdSelector selector;
+
+	/**
+	 * Parses reports from the receiver this provider listens to.
+	 */
+	private final GpsdParser parser;
+
+	/**
+	 * The values of the last reports.
+	 */
+	private final GPSRecord record = new GPSRecord();
+
+	/**
+	 * Bytes read from gpsd not yet parsed.
+	 */
+	private final ByteBuffer in = ByteBuffer.allocateDirect( BUFFER_SIZE );
+
+	/**
+	 * The command not yet written to gpsd.
+	 */
+	private final ByteBuffer out = ByteBuffer.allocate( WATCH.length );
+
+	/**
+	 * The connection to gpsd or <code>null</code> when there is none.
+	 * This and the other connection fields are only used by the selector
+	 * thread.
+	 */
+	private SocketChannel channel;
+
+	/**
+	 * When <code>true</code> bytes are dropped up to the next new line.
+	 * Set when a report did not fit in <code>in</code>.
+	 */
+	private boolean skipping;
+
+	/**
+	 * When to reconnect in milliseconds or 0 if not waiting to.
+	 */
+	private long reconnectTime;
+
+	/**
+	 * How long to wait before the next reconnect in milliseconds.
+	 */
+	private long reconnectDelay = MIN_RECONNECT_DELAY;
+
+	/**
+	 * Set once the provider has been closed.
+	 */
+	private volatile boolean closed;
+
+	/**
+	 * Connects to gpsd on its default port.
+	 *
+	 * @param host is the name or address of the host gpsd runs on.
+	 * @throws IOException if the selector thread cannot be started.
+	 */
+	public GpsdLocationProvider (String host)
+		throws IOException
+	{
+		this( host, DEFAULT_PORT, null );
+	}
+
+	/**
+	 * Connects to gpsd.  This returns at once; the connection is made in the
+	 * background and remade whenever it is lost.
+	 *
+	 * @param host is the name or address of the host gpsd runs on.
+	 * @param port is the port gpsd listens on, normally <code>DEFAULT_PORT</code>.
+	 * @param device is the path gpsd knows the receiver by, such as
+	 *  "/dev/ttyUSB0", to use only its reports when gpsd has several, or
+	 *  <code>null</code> to use every report.
+	 * @throws IOException if the selector thread cannot be started.
+	 * @throws NullPointerException if <code>host</code> is <code>null</code>.
+	 */
+	public GpsdLocationProvider (String host, int port, String device)
+		throws IOException
+	{
+		if ( host == null )
+		{
+			throw new NullPointerException();
+		}
+
+		this.host = host;
+		this.port = port;
+		this.parser = new GpsdParser( device );
+		this.selector = GpsdSelector.shared();
+		this.selector.add( this );
+	}
+
+	/**
+	 * Disconnects from gpsd.  The provider goes <code>OUT_OF_SERVICE</code>.
+	 */
+	public void close ()
+	{
+		if ( closed == false )
+		{
+			closed = true;
+			selector.remove( this );
+		}
+	}
+
+	/**
+	 * Starts connecting to gpsd.  Called on the selector thread.
+	 *
+	 * @param selector is what the channel is registered with.
+	 */
+	void connect (Selector selector)
+	{
+		reconnectTime = 0;
+
+		if ( closed )
+		{
+			return;
+		}
+
+		try
+		{
+			channel = SocketChannel.open();
+			channel.configureBlocking( false );
+			channel.register( selector, SelectionKey.OP_CONNECT, this );
+
+			if ( channel.connect(new InetSocketAddress(host, port)) )
+			{
+				connected( channel.keyFor(selector) );
+			}
+		}
+		catch (IOException e)
+		{
+			failed( e.getMessage() );
+		}
+	}
+
+	/**
+	 * Handles the channel being ready.  Called on the selector thread.
+	 *
+	 * @param key is the channel's registration.
+	 */
+	void ready (SelectionKey key)
+	{
+		try
+		{
+			if ( key.isConnectable() )
+			{
+				channel.finishConnect();
+				connected( key );
+			}
+
+			if ( key.isValid() && key.isWritable() )
+			{
+				write( key );
+			}
+
+			if ( key.isValid() && key.isReadable() )
+			{
+				read();
+			}
+		}
+		catch (IOException e)
+		{
+			failed( e.getMessage() );
+		}
+	}
+
+	/**
+	 * Closes the connection for good.  Called on the selector thread.
+	 */
+	void disconnect ()
+	{
+		close( channel );
+		channel = null;
+		reconnectTime = 0;
+		raiseStateChangeEvent( OUT_OF_SERVICE );
+	}
+
+	/**
+	 * @return When, in milliseconds, this provider wants to reconnect or 0
+	 *  if it does not.
+	 */
+	long reconnectTime ()
+	{
+		return reconnectTime;
+	}
+
+	/**
+	 * Asks gpsd for reports once connected.
+	 */
+	private void connected (SelectionKey key)
+		throws IOException
+	{
+		in.clear();
+		skipping = false;
+		record.reset();
+
+		out.clear();
+		out.put( WATCH );
+		out.flip();
+
+		key.interestOps( SelectionKey.OP_READ );
+		write( key );
+	}
+
+	/**
+	 * Writes what is left of the command.  Waits for the channel to be
+	 * writable if it cannot all be written now.
+	 */
+	private void write (SelectionKey key)
+		throws IOException
+	{
+		channel.write( out );
+
+		if ( out.hasRemaining() )
+		{
+			key.interestOps( SelectionKey.OP_READ | SelectionKey.OP_WRITE );
+		}
+		else
+		{
+			key.interestOps( SelectionKey.OP_READ );
+		}
+	}
+
+	/**
+	 * Reads what gpsd has sent and handles each whole report.
+	 */
+	private void read ()
+		throws IOException
+	{
+		while ( true )
+		{
+			int count = channel.read( in );
+
+			if ( count < 0 )
+			{
+				failed( "gpsd closed the connection." );
+				return;
+			}
+
+			// Handle each whole line.
+			int limit = in.position();
+			int start = 0;
+
+			for ( int i = 0; i < limit; i++ )
+			{
+				if ( in.get(i) == '\n' )
+				{
+					if ( skipping )
+					{
+						skipping = false;
+					}
+					else
+					{
+						report( start, i );
+					}
+
+					start = i + 1;
+				}
+			}
+
+			if ( (start == 0) && (limit == in.capacity()) )
+			{
+				// The report is too long; drop it.
+				skipping = true;
+				start = limit;
+			}
+
+			// Keep the start of the next line.
+			in.position( start );
+			in.limit( limit );
+			in.compact();
+
+			if ( count == 0 )
+			{
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Handles one report.
+	 *
+	 * @param start is the index of its first byte in <code>in</code>.
+	 * @param end is the index of the new line after it.
+	 */
+	private void report (int start, int end)
+	{
+		if ( parser.parse(in, start, end, record) != GpsdParser.TPV )
+		{
+			return;
+		}
+
+		// Now that gpsd is talking, the next failure retries quickly.
+		reconnectDelay = MIN_RECONNECT_DELAY;
+
+		long time = (parser.lastTime < 0) ? System.currentTimeMillis() : parser.lastTime;
+		Location location;
+
+		try
+		{
+			location = newLocation( record, time );
+		}
+		catch (IllegalArgumentException e)
+		{
+			// gpsd sent a value a location cannot hold.  Skip the fix.
+			return;
+		}
+
+		if ( location.isValid() )
+		{
+			if ( getState() != AVAILABLE )
+			{
+				raiseStateChangeEvent( AVAILABLE );
+			}
+		}
+		else if ( getState() == AVAILABLE )
+		{
+			raiseStateChangeEvent( TEMPORARILY_UNAVAILABLE );
+		}
+
+		raiseLocationEvent( location );
+	}
+
+	/**
+	 * Drops the connection and waits to reconnect.
+	 *
+	 * @param reason is why the connection failed.
+	 */
+	private void failed (String reason)
+	{
+		close( channel );
+		channel = null;
+
+		if ( closed )
+		{
+			return;
+		}
+
+		System.out.println( "gpsd at " + host + ":" + port + ": " + reason );
+
+		if ( getState() != TEMPORARILY_UNAVAILABLE )
+		{
+			raiseStateChangeEvent( TEMPORARILY_UNAVAILABLE );
+		}
+
+		reconnectTime = System.currentTimeMillis() + reconnectDelay;
+		reconnectDelay = Math.min( reconnectDelay * 2, MAX_RECONNECT_DELAY );
+		selector.reconnectAt( reconnectTime );
+	}
+
+	/**
+	 * Closes a channel, which also cancels its registration.
+	 */
+	private static void close (SocketChannel channel)
+	{
+		if ( channel != null )
+		{
+			try
+			{
+				channel.close();
+			}
+			catch (IOException e)
+			{
+				System.out.println( e.getMessage() );
+			}
+		}
+	}
+
+	/**
+	 * @return The name of this location provider.
+	 */
+	public String toString ()
+	{
+		return "gpsd at " + host + ":" + port;
+	}
+}
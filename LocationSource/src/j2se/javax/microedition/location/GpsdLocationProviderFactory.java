@@ -0,0 +1,136 @@
+package javax.microedition.location;
+
+import java.io.IOException;
+
+/**
+ * Registers a <code>GpsdLocationProvider</code> so it can be chosen by
+ * <code>LocationProvider.getInstance</code>.  Name this class in the
+ * <code>locationsource.providers</code> system property and optionally set:
+ * <ul>
+ *  <li><code>locationsource.gpsd.host</code> to the host gpsd runs on,
+ *      "localhost" by default,
+ *  <li><code>locationsource.gpsd.port</code> to the port it listens on,
+ *      2947 by default, and
+ *  <li><code>locationsource.gpsd.device</code> to the receiver to use when
+ *      gpsd has several.
+ * </ul>
+ * gpsd is not connected to until the provider is chosen.
+ *
+ * @see LocationProviderRegistry
+ */
+public class GpsdLocationProviderFactory
+	extends LocationProviderFactory
+{
+	/**
+	 * The host gpsd runs on.
+	 */
+	private final String host;
+
+	/**
+	 * The port gpsd listens on.
+	 */
+	private final int port;
+
+	/**
+	 * The receiver to use or <code>null</code> for any.
+	 */
+	private final String device;
+
+	/**
+	 * Constructs a factory configured by system properties.
+	 */
+	public GpsdLocationProviderFactory ()
+	{
+		this( System.getProperty("locationsource.gpsd.host", "localhost"),
+			Integer.getInteger( "locationsource.gpsd.port", GpsdLocationProvider.DEFAULT_PORT ).intValue(),
+			System.getProperty( "locationsource.gpsd.device" ) );
+	}
+
+	/**
+	 * Constructs a factory for a gpsd.
+	 *
+	 * @param host is the name or address of the host gpsd runs on.
+	 * @param port is the port gpsd listens on.
+	 * @param device is the receiver to use or <code>null</code> for any.
+	 */
+	public GpsdLocationProviderFactory (String host, int port, String device)
+	{
+		this.host = host;
+		this.port = port;
+		this.device = device;
+	}
+
+	/**
+	 * @see javax.microedition.location.LocationProviderFactory#getHorizontalAccuracy()
+	 */
+	public int getHorizontalAccuracy ()
+	{
+		return 10;
+	}
+
+	/**
+	 * @see javax.microedition.location.LocationProviderFactory#getVerticalAccuracy()
+	 */
+	public int getVerticalAccuracy ()
+	{
+		return 20;
+	}
+
+	/**
+	 * @see javax.microedition.location.LocationProviderFactory#getResponseTime()
+	 */
+	public int getResponseTime ()
+	{
+		return 1000;
+	}
+
+	/**
+	 * gpsd keeps the receiver running whether or not this provider listens.
+	 *
+	 * @see javax.microedition.location.LocationProviderFactory#getPowerConsumption()
+	 */
+	public int getPowerConsumption ()
+	{
+		return Criteria.POWER_USAGE_LOW;
+	}
+
+	/**
+	 * @see javax.microedition.location.LocationProviderFactory#isCostIncurred()
+	 */
+	public boolean isCostIncurred ()
+	{
+		return false;
+	}
+
+	/**
+	 * @see javax.microedition.location.LocationProviderFactory#isSpeedAndCourseSupported()
+	 */
+	public boolean isSpeedAndCourseSupported ()
+	{
+		return true;
+	}
+
+	/**
+	 * @see javax.microedition.location.LocationProviderFactory#isAltitudeSupported()
+	 */
+	public boolean isAltitudeSupported ()
+	{
+		return true;
+	}
+
+	/**
+	 * @see javax.microedition.location.LocationProviderFactory#createProvider()
+	 */
+	protected LocationProvider createProvider ()
+		throws LocationException
+	{
+		try
+		{
+			return new GpsdLocationProvider( host, port, device );
+		}
+		catch (IOException e)
+		{
+			throw new LocationException( "Could not start the gpsd client: " + e.getMessage() );
+		}
+	}
+}
@@ -0,0 +1,714 @@
+package javax.microedition.location;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Parses the JSON reports gpsd sends to its clients.  Only the two reports
+ * a location provider needs are understood:
+ * <ul>
+ *  <li><code>TPV</code>, time-position-velocity, gives the fix, and
+ *  <li><code>SKY</code> gives the dilutions of precision.
+ * </ul>
+ * Every other report is recognized and ignored.
+ * <p>
+ * A report is one line of JSON.  It is parsed where it lies in the byte
+ * buffer it was read into; no <code>String</code>s or other objects are
+ * created.  Values go into a <code>GPSRecord</code> the same way
+ * <code>NMEAParser</code> fills one, so the record can be turned into a
+ * <code>LocationImpl</code> as any other fix is.  Members of a report can
+ * come in any order and unknown members, arrays, and nested objects are
+ * skipped.
+ *
+ * @see <a href="https://gpsd.gitlab.io/gpsd/gpsd_json.html">gpsd JSON protocol</a>
+ */
+final class GpsdParser
+{
+	/**
+	 * What <code>parse</code> found.
+	 */
+	static final int OTHER = 0;
+	static final int TPV = 1;
+	static final int SKY = 2;
+
+	/**
+	 * The most significant digits of a number kept.  More would overflow a
+	 * <code>long</code>.
+	 */
+	private static final int MAX_DIGITS = 18;
+
+	/**
+	 * Converts meters per second to knots, the unit of <code>GPSRecord.speed</code>.
+	 */
+	private static final double KNOTS_PER_METER_PER_SECOND = 1.0 / 0.514444444444444;
+
+	/**
+	 * Powers of ten exactly representable as a <code>double</code>.
+	 */
+	private static final double[] POWERS_OF_TEN = {
+		1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+		1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22 };
+
+	/**
+	 * Member names and values compared against.
+	 */
+	private static final byte[] CLASS = bytes( "class" );
+	private static final byte[] DEVICE = bytes( "device" );
+	private static final byte[] MODE = bytes( "mode" );
+	private static final byte[] TIME = bytes( "time" );
+	private static final byte[] LAT = bytes( "lat" );
+	private static final byte[] LON = bytes( "lon" );
+	private static final byte[] ALT_HAE = bytes( "altHAE" );
+	private static final byte[] ALT = bytes( "alt" );
+	private static final byte[] SPEED = bytes( "speed" );
+	private static final byte[] TRACK = bytes( "track" );
+	private static final byte[] HDOP = bytes( "hdop" );
+	private static final byte[] VDOP = bytes( "vdop" );
+	private static final byte[] PDOP = bytes( "pdop" );
+	private static final byte[] USAT = bytes( "uSat" );
+	private static final byte[] TPV_CLASS = bytes( "TPV" );
+	private static final byte[] SKY_CLASS = bytes( "SKY" );
+
+	/**
+	 * Reports from other devices are ignored.  <code>null</code> accepts
+	 * reports from every device.
+	 */
+	private final byte[] device;
+
+	/**
+	 * The buffer being parsed and the end of the report in it.
+	 */
+	private ByteBuffer in;
+	private int end;
+
+	/**
+	 * The end of the last string or number read.
+	 */
+	private int next;
+
+	/**
+	 * The members of the report being parsed.
+	 */
+	private int reportClass;
+	private boolean otherDevice;
+	private int mode;
+	private long time;
+	private double latitude;
+	private double longitude;
+	private double altitudeHAE;
+	private double altitude;
+	private double speed;
+	private double track;
+	private double hdop;
+	private double vdop;
+	private double pdop;
+	private double satellites;
+
+	/**
+	 * The UTC time of the last <code>TPV</code> report in milliseconds since
+	 * 1970 or -1 if it did not have one.
+	 */
+	long lastTime = -1;
+
+	/**
+	 * Constructs a parser.
+	 *
+	 * @param device is the path of the receiver, as gpsd names it, to take
+	 *  reports from or <code>null</code> for any receiver.
+	 */
+	GpsdParser (String device)
+	{
+		this.device = (device == null) ? null : bytes( device );
+	}
+
+	/**
+	 * Parses one report.  A <code>TPV</code> report replaces the position,
+	 * velocity, fix, and time in <code>record</code>; the dilutions of
+	 * precision are left as the last <code>SKY</code> report set them.  A
+	 * <code>SKY</code> report sets only the dilutions of precision and the
+	 * number of satellites used.
+	 *
+	 * @param buffer holds the report.  Its position and limit are not changed.
+	 * @param start is the index of the report's first byte.
+	 * @param end is the index after the report's last byte.
+	 * @param record is filled with the report's values.
+	 * @return <code>TPV</code>, <code>SKY</code>, or <code>OTHER</code> for
+	 *  any other report or one that could not be parsed.
+	 */
+	int parse (ByteBuffer buffer, int start, int end, GPSRecord record)
+	{
+		this.in = buffer;
+		this.end = end;
+
+		reportClass = OTHER;
+		otherDevice = false;
+		mode = 0;
+		time = -1;
+		latitude = longitude = altitudeHAE = altitude = Double.NaN;
+		speed = track = hdop = vdop = pdop = satellites = Double.NaN;
+
+		try
+		{
+			if ( members(start) == false )
+			{
+				return OTHER;
+			}
+		}
+		finally
+		{
+			this.in = null;
+		}
+
+		if ( otherDevice )
+		{
+			return OTHER;
+		}
+
+		if ( reportClass == TPV )
+		{
+			// Only coordinates LocationImpl accepts are a fix.  180 degrees
+			// east is the same meridian as 180 west.
+			if ( longitude == 180.0 )
+			{
+				longitude = -180.0;
+			}
+
+			boolean fix = (mode >= 2) &&
+				(latitude >= -90.0) && (latitude < 90.0) && (longitude >= -180.0) && (longitude < 180.0);
+
+			record.sentences = 0;
+			record.fixType = mode;
+			record.latitude = fix ? latitude : Double.NaN;
+			record.longitude = fix ? longitude : Double.NaN;
+			record.altitude = (mode >= 3) ? (float)(Double.isNaN(altitudeHAE) ? altitude : altitudeHAE) : Float.NaN;
+			record.speed = (float)(speed * KNOTS_PER_METER_PER_SECOND);
+			record.course = (float)track;
+			record.setUTCTime( time );
+			lastTime = time;
+		}
+		else if ( reportClass == SKY )
+		{
+			record.hdop = (float)hdop;
+			record.vdop = (float)vdop;
+			record.pdop = (float)pdop;
+			record.satelliteCount = Double.isNaN( satellites ) ? -1 : (int)satellites;
+		}
+
+		return reportClass;
+	}
+
+	/**
+	 * Reads the members of the report's object.
+	 *
+	 * @param i is the index of the report's first byte.
+	 * @return <code>true</code> if the report was well formed.
+	 */
+	private boolean members (int i)
+	{
+		i = skipSpace( i );
+
+		if ( byteAt(i) != '{' )
+		{
+			return false;
+		}
+
+		i = skipSpace( i + 1 );
+
+		if ( byteAt(i) == '}' )
+		{
+			return true;
+		}
+
+		while ( true )
+		{
+			// The member's name.
+			if ( byteAt(i) != '"' )
+			{
+				return false;
+			}
+
+			int nameStart = i + 1;
+			int nameEnd = skipString( i );
+
+			if ( nameEnd < 0 )
+			{
+				return false;
+			}
+
+			i = skipSpace( next );
+
+			if ( byteAt(i) != ':' )
+			{
+				return false;
+			}
+
+			i = skipSpace( i + 1 );
+
+			// The member's value.
+			if ( member(nameStart, nameEnd, i) == false )
+			{
+				return false;
+			}
+
+			i = skipSpace( next );
+
+			int b = byteAt( i );
+
+			if ( b == '}' )
+			{
+				return true;
+			}
+			else if ( b != ',' )
+			{
+				return false;
+			}
+
+			i = skipSpace( i + 1 );
+		}
+	}
+
+	/**
+	 * Reads one member's value.  Sets <code>next</code> to the index after it.
+	 *
+	 * @param nameStart is the index of the first byte of the member's name.
+	 * @param nameEnd is the index after the last byte of the name.
+	 * @param i is the index of the value's first byte.
+	 * @return <code>true</code> if the value was well formed.
+	 */
+	private boolean member (int nameStart, int nameEnd, int i)
+	{
+		int b = byteAt( i );
+
+		if ( b == '"' )
+		{
+			int valueEnd = skipString( i );
+
+			if ( valueEnd < 0 )
+			{
+				return false;
+			}
+
+			if ( equals(nameStart, nameEnd, CLASS) )
+			{
+				if ( equals(i + 1, valueEnd, TPV_CLASS) )
+				{
+					reportClass = TPV;
+				}
+				else if ( equals(i + 1, valueEnd, SKY_CLASS) )
+				{
+					reportClass = SKY;
+				}
+			}
+			else if ( equals(nameStart, nameEnd, DEVICE) )
+			{
+				otherDevice = (device != null) && (equals(i + 1, valueEnd, device) == false);
+			}
+			else if ( equals(nameStart, nameEnd, TIME) )
+			{
+				time = parseTime( i + 1, valueEnd );
+			}
+
+			return true;
+		}
+		else if ( (b == '-') || ((b >= '0') && (b <= '9')) )
+		{
+			double value = parseNumber( i );
+
+			if ( equals(nameStart, nameEnd, LAT) )
+			{
+				latitude = value;
+			}
+			else if ( equals(nameStart, nameEnd, LON) )
+			{
+				longitude = value;
+			}
+			else if ( equals(nameStart, nameEnd, ALT_HAE) )
+			{
+				altitudeHAE = value;
+			}
+			else if ( equals(nameStart, nameEnd, ALT) )
+			{
+				altitude = value;
+			}
+			else if ( equals(nameStart, nameEnd, SPEED) )
+			{
+				speed = value;
+			}
+			else if ( equals(nameStart, nameEnd, TRACK) )
+			{
+				track = value;
+			}
+			else if ( equals(nameStart, nameEnd, MODE) )
+			{
+				mode = (int)value;
+			}
+			else if ( equals(nameStart, nameEnd, HDOP) )
+			{
+				hdop = value;
+			}
+			else if ( equals(nameStart, nameEnd, VDOP) )
+			{
+				vdop = value;
+			}
+			else if ( equals(nameStart, nameEnd, PDOP) )
+			{
+				pdop = value;
+			}
+			else if ( equals(nameStart, nameEnd, USAT) )
+			{
+				satellites = value;
+			}
+
+			return true;
+		}
+		else
+		{
+			// An array, object, true, false, or null.
+			next = skipValue( i );
+			return (next >= 0);
+		}
+	}
+
+	/**
+	 * Parses a JSON number.  Sets <code>next</code> to the index after it.
+	 *
+	 * @param i is the index of the number's first byte.
+	 * @return The number.
+	 */
+	private double parseNumber (int i)
+	{
+		boolean negative = false;
+		long mantissa = 0;
+		int digits = 0;
+		int exponent = 0;
+
+		if ( byteAt(i) == '-' )
+		{
+			negative = true;
+			i++;
+		}
+
+		int b = byteAt( i );
+
+		// The integer part.
+		while ( (b >= '0') && (b <= '9') )
+		{
+			if ( digits < MAX_DIGITS )
+			{
+				mantissa = mantissa * 10 + (b - '0');
+				digits += (mantissa == 0) ? 0 : 1;
+			}
+			else
+			{
+				exponent++;
+			}
+
+			b = byteAt( ++i );
+		}
+
+		// The fraction.
+		if ( b == '.' )
+		{
+			b = byteAt( ++i );
+
+			while ( (b >= '0') && (b <= '9') )
+			{
+				if ( digits < MAX_DIGITS )
+				{
+					mantissa = mantissa * 10 + (b - '0');
+					digits += (mantissa == 0) ? 0 : 1;
+					exponent--;
+				}
+
+				b = byteAt( ++i );
+			}
+		}
+
+		// The exponent.
+		if ( (b == 'e') || (b == 'E') )
+		{
+			boolean negativeExponent = false;
+			int e = 0;
+
+			b = byteAt( ++i );
+
+			if ( (b == '-') || (b == '+') )
+			{
+				negativeExponent = (b == '-');
+				b = byteAt( ++i );
+			}
+
+			while ( (b >= '0') && (b <= '9') )
+			{
+				if ( e < 1000 )
+				{
+					e = e * 10 + (b - '0');
+				}
+
+				b = byteAt( ++i );
+			}
+
+			exponent += negativeExponent ? -e : e;
+		}
+
+		next = i;
+
+		// Dividing by an exact power of ten rounds correctly for the number
+		// of digits gpsd writes.
+		double value;
+
+		if ( exponent == 0 )
+		{
+			value = mantissa;
+		}
+		else if ( (exponent < 0) && (exponent >= -22) )
+		{
+			value = mantissa / POWERS_OF_TEN[-exponent];
+		}
+		else if ( (exponent > 0) && (exponent <= 22) )
+		{
+			value = mantissa * POWERS_OF_TEN[exponent];
+		}
+		else
+		{
+			value = mantissa * Math.pow( 10.0, exponent );
+		}
+
+		return negative ? -value : value;
+	}
+
+	/**
+	 * Parses an ISO 8601 UTC time such as "2024-05-01T12:34:56.789Z".
+	 *
+	 * @param i is the index of the first byte of the time.
+	 * @param stop is the index after its last byte.
+	 * @return The time in milliseconds since 1970 or -1 if it is not valid.
+	 */
+	private long parseTime (int i, int stop)
+	{
+		if ( (stop - i < 20) ||
+			 (byteAt(i + 4) != '-') || (byteAt(i + 7) != '-') || (byteAt(i + 10) != 'T') ||
+			 (byteAt(i + 13) != ':') || (byteAt(i + 16) != ':') )
+		{
+			return -1;
+		}
+
+		int year = digits( i, 4 );
+		int month = digits( i + 5, 2 );
+		int day = digits( i + 8, 2 );
+		int hour = digits( i + 11, 2 );
+		int minute = digits( i + 14, 2 );
+		int second = digits( i + 17, 2 );
+
+		if ( (year < 0) || (month < 1) || (month > 12) || (day < 1) || (day > 31) ||
+			 (hour < 0) || (hour > 23) || (minute < 0) || (minute > 59) || (second < 0) || (second > 60) )
+		{
+			return -1;
+		}
+
+		// Up to three digits of fractional seconds.
+		int millis = 0;
+		int j = i + 19;
+
+		if ( byteAt(j) == '.' )
+		{
+			int scale = 100;
+			int b = byteAt( ++j );
+
+			while ( (b >= '0') && (b <= '9') )
+			{
+				millis += (b - '0') * scale;
+				scale /= 10;
+				b = byteAt( ++j );
+			}
+		}
+
+		// Days since 1970 of the civil date.
+		int y = (month <= 2) ? year - 1 : year;
+		int era = y / 400;
+		int yearOfEra = y - era * 400;
+		int dayOfYear = (153 * (month + ((month > 2) ? -3 : 9)) + 2) / 5 + day - 1;
+		int dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+		long days = era * 146097L + dayOfEra - 719468;
+
+		return ((days * 24 + hour) * 60 + minute) * 60000L + second * 1000L + millis;
+	}
+
+	/**
+	 * @return The decimal number in <code>count</code> bytes starting at
+	 *  index <code>i</code> or -1 if they are not all digits.
+	 */
+	private int digits (int i, int count)
+	{
+		int value = 0;
+
+		for ( int j = 0; j < count; j++ )
+		{
+			int b = byteAt( i + j );
+
+			if ( (b < '0') || (b > '9') )
+			{
+				return -1;
+			}
+
+			value = value * 10 + (b - '0');
+		}
+
+		return value;
+	}
+
+	/**
+	 * Skips any JSON value.
+	 *
+	 * @param i is the index of the value's first byte.
+	 * @return The index after the value or -1 if it is not well formed.
+	 */
+	private int skipValue (int i)
+	{
+		int b = byteAt( i );
+
+		if ( b == '"' )
+		{
+			return (skipString(i) < 0) ? -1 : next;
+		}
+
+		if ( (b == '{') || (b == '[') )
+		{
+			// Count brackets, ignoring those in strings.
+			int depth = 0;
+
+			while ( true )
+			{
+				b = byteAt( i );
+
+				if ( b < 0 )
+				{
+					return -1;
+				}
+				else if ( b == '"' )
+				{
+					if ( skipString(i) < 0 )
+					{
+						return -1;
+					}
+
+					i = next;
+					continue;
+				}
+				else if ( (b == '{') || (b == '[') )
+				{
+					depth++;
+				}
+				else if ( (b == '}') || (b == ']') )
+				{
+					if ( --depth == 0 )
+					{
+						return i + 1;
+					}
+				}
+
+				i++;
+			}
+		}
+
+		// A number, true, false, or null.
+		while ( (b >= 0) && (b != ',') && (b != '}') && (b != ']') && (b > ' ') )
+		{
+			b = byteAt( ++i );
+		}
+
+		return i;
+	}
+
+	/**
+	 * Skips a JSON string.  Sets <code>next</code> to the index after its
+	 * closing quote.
+	 *
+	 * @param i is the index of the opening quote.
+	 * @return The index of the closing quote or -1 if there is none.
+	 */
+	private int skipString (int i)
+	{
+		while ( true )
+		{
+			int b = byteAt( ++i );
+
+			if ( b < 0 )
+			{
+				return -1;
+			}
+			else if ( b == '\\' )
+			{
+				i++;
+			}
+			else if ( b == '"' )
+			{
+				next = i + 1;
+				return i;
+			}
+		}
+	}
+
+	/**
+	 * @return The index of the first byte from <code>i</code> on that is not
+	 *  white space.
+	 */
+	private int skipSpace (int i)
+	{
+		while ( true )
+		{
+			int b = byteAt( i );
+
+			if ( (b != ' ') && (b != '\t') && (b != '\r') && (b != '\n') )
+			{
+				return i;
+			}
+
+			i++;
+		}
+	}
+
+	/**
+	 * @return <code>true</code> if the bytes from <code>start</code> to
+	 *  <code>stop</code> are <code>expected</code>.
+	 */
+	private boolean equals (int start, int stop, byte[] expected)
+	{
+		if ( stop - start != expected.length )
+		{
+			return false;
+		}
+
+		for ( int i = 0; i < expected.length; i++ )
+		{
+			if ( in.get(start + i) != expected[i] )
+			{
+				return false;
+			}
+		}
+
+		return true;
+	}
+
+	/**
+	 * @return The byte at index <code>i</code> or -1 past the end of the report.
+	 */
+	private int byteAt (int i)
+	{
+		return (i < end) ? (in.get(i) & 0xFF) : -1;
+	}
+
+	/**
+	 * @return The ASCII bytes of a string.
+	 */
+	private static byte[] bytes (String s)
+	{
+		byte[] b = new byte[s.length()];
+
+		for ( int i = 0; i < b.length; i++ )
+		{
+			b[i] = (byte)s.charAt( i );
+		}
+
+		return b;
+	}
+}
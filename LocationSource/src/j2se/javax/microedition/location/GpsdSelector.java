@@ -0,0 +1,219 @@
+package javax.microedition.location;
+
+import java.io.IOException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * The one thread that does the networking of every
+ * <code>GpsdLocationProvider</code>.  Each provider's non-blocking
+ * <code>SocketChannel</code> is registered with one <code>Selector</code> so
+ * any number of gpsd endpoints are served without a thread each.
+ * <p>
+ * Providers are added and removed from other threads through queues the
+ * thread drains between selects.  Everything else, connecting, reading,
+ * parsing, and raising events, happens on this thread, so providers need no
+ * locking.  Providers waiting to reconnect are woken when their time comes.
+ *
+ * @see GpsdLocationProvider
+ */
+final class GpsdSelector
+	implements Runnable
+{
+	/**
+	 * The selector shared by all providers.  Created with the first provider.
+	 */
+	private static GpsdSelector shared;
+
+	/**
+	 * The selector the providers' channels are registered with.
+	 */
+	private final Selector selector;
+
+	/**
+	 * Providers to start and to stop, handed over from other threads.
+	 * Guarded by <code>this</code>.
+	 */
+	private final List<GpsdLocationProvider> added = new ArrayList<GpsdLocationProvider>();
+	private final List<GpsdLocationProvider> removed = new ArrayList<GpsdLocationProvider>();
+
+	/**
+	 * Every provider being served.  Only used by the selector thread.
+	 */
+	private final List<GpsdLocationProvider> providers = new ArrayList<GpsdLocationProvider>();
+
+	/**
+	 * The earliest time, in milliseconds, a provider is due to reconnect or
+	 * 0 if none are waiting to.  Only used by the selector thread.
+	 */
+	private long nextReconnect;
+
+	/**
+	 * @return The selector shared by all providers.
+	 * @throws IOException if the selector cannot be opened.
+	 */
+	static synchronized GpsdSelector shared ()
+		throws IOException
+	{
+		if ( shared == null )
+		{
+			shared = new GpsdSelector();
+		}
+
+		return shared;
+	}
+
+	/**
+	 * Opens the selector and starts its thread.
+	 */
+	private GpsdSelector ()
+		throws IOException
+	{
+		selector = Selector.open();
+
+		Thread thread = new Thread( this, "gpsd selector" );
+		thread.setDaemon( true );
+		thread.start();
+	}
+
+	/**
+	 * Starts serving a provider.
+	 *
+	 * @param provider is connected to its gpsd on the selector thread.
+	 */
+	void add (GpsdLocationProvider provider)
+	{
+		synchronized ( this )
+		{
+			added.add( provider );
+		}
+
+		selector.wakeup();
+	}
+
+	/**
+	 * Stops serving a provider.
+	 *
+	 * @param provider is disconnected on the selector thread.
+	 */
+	void remove (GpsdLocationProvider provider)
+	{
+		synchronized ( this )
+		{
+			removed.add( provider );
+		}
+
+		selector.wakeup();
+	}
+
+	/**
+	 * Called on the selector thread by a provider that lost its connection.
+	 *
+	 * @param time is when, in milliseconds, the provider wants
+	 *  <code>reconnect</code> called.
+	 */
+	void reconnectAt (long time)
+	{
+		if ( (nextReconnect == 0) || (time < nextReconnect) )
+		{
+			nextReconnect = time;
+		}
+	}
+
+	/**
+	 * Serves the providers until the process exits.
+	 *
+	 * @see Runnable#run()
+	 */
+	public void run ()
+	{
+		while ( true )
+		{
+			try
+			{
+				changeProviders();
+
+				long timeout = 0;
+
+				if ( nextReconnect != 0 )
+				{
+					timeout = Math.max( 1, nextReconnect - System.currentTimeMillis() );
+				}
+
+				selector.select( timeout );
+
+				// Read from the channels that are ready.
+				Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+
+				while ( keys.hasNext() )
+				{
+					SelectionKey key = keys.next();
+					keys.remove();
+
+					GpsdLocationProvider provider = (GpsdLocationProvider)key.attachment();
+					provider.ready( key );
+				}
+
+				// Reconnect the providers whose time has come.
+				if ( (nextReconnect != 0) && (nextReconnect <= System.currentTimeMillis()) )
+				{
+					long now = System.currentTimeMillis();
+					nextReconnect = 0;
+
+					for ( int i = 0; i < providers.size(); i++ )
+					{
+						GpsdLocationProvider provider = providers.get( i );
+						long time = provider.reconnectTime();
+
+						if ( (time != 0) && (time <= now) )
+						{
+							provider.connect( selector );
+						}
+						else if ( time != 0 )
+						{
+							reconnectAt( time );
+						}
+					}
+				}
+			}
+			catch (Throwable t)
+			{
+				// Should never happen, but if it does it would be nice to know why.
+				System.out.println( t.getMessage() );
+			}
+		}
+	}
+
+	/**
+	 * Starts the providers added and stops the ones removed since the last
+	 * select.
+	 */
+	private void changeProviders ()
+	{
+		GpsdLocationProvider[] starting;
+		GpsdLocationProvider[] stopping;
+
+		synchronized ( this )
+		{
+			starting = added.toArray( new GpsdLocationProvider[added.size()] );
+			stopping = removed.toArray( new GpsdLocationProvider[removed.size()] );
+			added.clear();
+			removed.clear();
+		}
+
+		for ( int i = 0; i < starting.length; i++ )
+		{
+			providers.add( starting[i] );
+			starting[i].connect( selector );
+		}
+
+		for ( int i = 0; i < stopping.length; i++ )
+		{
+			providers.remove( stopping[i] );
+			stopping[i].disconnect();
+		}
+	}
+}
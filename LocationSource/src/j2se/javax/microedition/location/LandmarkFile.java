@@ -0,0 +1,1867 @@
+package javax.microedition.location;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Vector;
+import java.util.zip.CRC32;
+
+/**
+ * The file behind a <code>LandmarkStore</code>.
+ * <p>
+ * A file is a read-only <i>base</i> followed by an append-only <i>journal</i>.
+ * The base is memory mapped when the file is opened and is never read in
+ * full: opening only reads its header and category names, and queries only
+ * touch the pages of the index entries and records they need.  The base
+ * holds, in order:
+ * <ul>
+ *  <li>a header of offsets and counts,
+ *  <li>the <i>leaves</i>, one 16 byte entry per landmark with its latitude
+ *      and longitude in units of 10<sup>-7</sup> degrees and the offset of its
+ *      record; landmarks with coordinates come first in Sort-Tile-Recursive
+ *      order so neighbors are stored together,
+ *  <li>a packed R-tree over the leaves: each level groups <code>NODE_SIZE</code>
+ *      entries of the level below under one bounding box,
+ *  <li>an index of landmark ids sorted by id,
+ *  <li>an index of name hash codes sorted by hash,
+ *  <li>for each category the sorted positions of the leaves in it,
+ *  <li>the records, each a landmark and the ids of its categories,
+ *  <li>the category names and ids.
+ * </ul>
+ * Changes are appended to the journal as checksummed entries and kept in
+ * memory until the journal grows past a fraction of the base.  Then the
+ * base and journal are rewritten into a new base, which replaces the file
+ * atomically.  A journal entry torn by a crash fails its checksum and is
+ * dropped when the file is next opened.
+ * <p>
+ * The base is limited to 2 GB, several million landmarks.  A file may only
+ * be open in one process at a time.
+ *
+ * @see LandmarkStore
+ */
+final class LandmarkFile
+	implements Closeable
+{
+	/**
+	 * The longest landmark name, in characters.
+	 */
+	static final int MAX_NAME_LENGTH = 255;
+
+	/**
+	 * The longest landmark description, in characters.
+	 */
+	static final int MAX_DESCRIPTION_LENGTH = 1024;
+
+	/**
+	 * The longest address field or category name, in characters.
+	 */
+	static final int MAX_FIELD_LENGTH = 255;
+
+	/**
+	 * Identifies a landmark store file: "LMKS".
+	 */
+	private static final int MAGIC = 0x4C4D4B53;
+
+	/**
+	 * The version of the file format.
+	 */
+	private static final int VERSION = 1;
+
+	/**
+	 * The number of bytes reserved for the header.
+	 */
+	private static final int HEADER_SIZE = 128;
+
+	/**
+	 * The number of entries grouped under each R-tree node.
+	 */
+	private static final int NODE_SIZE = 16;
+
+	/**
+	 * The bytes in a leaf: latitude, longitude, record offset.
+	 */
+	private static final int LEAF_SIZE = 16;
+
+	/**
+	 * The bytes in an R-tree node: minimum and maximum latitude and longitude.
+	 */
+	private static final int NODE_BYTES = 16;
+
+	/**
+	 * The bytes in an id or name index entry: key and leaf position.
+	 */
+	private static final int INDEX_ENTRY_SIZE = 8;
+
+	/**
+	 * Leaf latitude marking a landmark without coordinates.
+	 */
+	private static final int NO_COORDINATES = Integer.MIN_VALUE;
+
+	/**
+	 * Converts degrees to the units stored in the leaves.
+	 */
+	private static final double UNITS_PER_DEGREE = 1e7;
+
+	/**
+	 * Journal operations.
+	 */
+	private static final byte PUT = 1;
+	private static final byte DELETE = 2;
+	private static final byte ADD_CATEGORY = 3;
+	private static final byte DELETE_CATEGORY = 4;
+
+	/**
+	 * The fewest journal entries that trigger rewriting the base.
+	 */
+	private static final int MIN_COMPACTION_ENTRIES = 1024;
+
+	/**
+	 * The base is rewritten when the journal has more than one entry for
+	 * this many landmarks in the base.
+	 */
+	private static final int COMPACTION_RATIO = 16;
+
+	/**
+	 * The file's path.
+	 */
+	private final File file;
+
+	/**
+	 * Set on the <code>Landmark</code>s returned so the store can recognize them.
+	 */
+	private final Object owner;
+
+	/**
+	 * The open file.
+	 */
+	private RandomAccessFile randomAccessFile;
+
+	/**
+	 * The channel of <code>randomAccessFile</code>.
+	 */
+	private FileChannel channel;
+
+	/**
+	 * The mapped base.
+	 */
+	private Base base;
+
+	/**
+	 * The id and name of each category keyed by name.
+	 */
+	private final HashMap<String, Integer> categories = new HashMap<String, Integer>();
+
+	/**
+	 * Landmarks added or changed since the base was written, keyed by id.
+	 */
+	private final HashMap<Integer, Record> journal = new HashMap<Integer, Record>();
+
+	/**
+	 * Positions of the base leaves changed or deleted by the journal.
+	 */
+	private final BitSet superseded = new BitSet();
+
+	/**
+	 * The id given to the next new landmark.
+	 */
+	private int nextId;
+
+	/**
+	 * The id given to the next new category.
+	 */
+	private int nextCategoryId;
+
+	/**
+	 * The file position the next journal entry is written at.
+	 */
+	private long journalEnd;
+
+	/**
+	 * The number of entries in the journal.
+	 */
+	private int journalEntries;
+
+	/**
+	 * Opens an existing file.
+	 *
+	 * @param file is the file written by <code>create</code>.
+	 * @param owner is set on the <code>Landmark</code>s read.
+	 * @throws IOException if the file cannot be read or is not a landmark store.
+	 */
+	LandmarkFile (File file, Object owner)
+		throws IOException
+	{
+		this.file = file;
+		this.owner = owner;
+		open();
+	}
+
+	/**
+	 * Creates a file with no landmarks or categories.
+	 *
+	 * @param file is where to create it.
+	 * @throws IOException if it cannot be written.
+	 */
+	static void create (File file)
+		throws IOException
+	{
+		new Writer( 0 ).write( file, new HashMap<String, Integer>(), 1, 1 );
+	}
+
+	/**
+	 * @return The names of the categories.
+	 */
+	synchronized Enumeration<String> getCategories ()
+	{
+		return new Vector<String>( categories.keySet() ).elements();
+	}
+
+	/**
+	 * Adds a category.
+	 *
+	 * @param name is the new category's name.
+	 * @throws IllegalArgumentException if the category already exists or the
+	 *  name is too long.
+	 * @throws IOException if the journal cannot be written.
+	 */
+	synchronized void addCategory (String name)
+		throws IOException
+	{
+		if ( categories.containsKey(name) )
+		{
+			throw new IllegalArgumentException( "Category " + name + " already exists." );
+		}
+
+		checkLength( name, MAX_FIELD_LENGTH, "Category name" );
+
+		int id = nextCategoryId++;
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream( bytes );
+		out.writeInt( id );
+		writeString( out, name );
+
+		append( ADD_CATEGORY, bytes.toByteArray() );
+		categories.put( name, Integer.valueOf(id) );
+		compactIfNeeded();
+	}
+
+	/**
+	 * Deletes a category.  Its landmarks are kept.
+	 *
+	 * @param name is the category's name.
+	 * @throws IOException if the journal cannot be written.
+	 */
+	synchronized void deleteCategory (String name)
+		throws IOException
+	{
+		if ( categories.containsKey(name) )
+		{
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			writeString( new DataOutputStream(bytes), name );
+
+			append( DELETE_CATEGORY, bytes.toByteArray() );
+			categories.remove( name );
+			compactIfNeeded();
+		}
+	}
+
+	/**
+	 * @return <code>true</code> if the category exists.
+	 */
+	synchronized boolean hasCategory (String name)
+	{
+		return categories.containsKey( name );
+	}
+
+	/**
+	 * @return <code>true</code> if a landmark with <code>id</code> is stored.
+	 */
+	synchronized boolean contains (int id)
+	{
+		return get( id ) != null;
+	}
+
+	/**
+	 * Stores a new landmark.
+	 *
+	 * @param landmark is the landmark.
+	 * @param category is the category to put it in or <code>null</code> for none.
+	 * @return The landmark's id.
+	 * @throws IllegalArgumentException if <code>category</code> does not exist
+	 *  or a field of the landmark is too long.
+	 * @throws IOException if the journal cannot be written.
+	 */
+	synchronized int add (Landmark landmark, String category)
+		throws IOException
+	{
+		int[] categoryIds = new int[0];
+
+		if ( category != null )
+		{
+			categoryIds = new int[] { categoryId(category) };
+		}
+
+		int id = nextId;
+		put( new Record(id, categoryIds, landmark) );
+		nextId++;
+
+		return id;
+	}
+
+	/**
+	 * Adds a stored landmark to a category.
+	 *
+	 * @param id identifies the landmark.
+	 * @param category is the category.
+	 * @return <code>false</code> if the landmark is not stored.
+	 * @throws IllegalArgumentException if <code>category</code> does not exist.
+	 * @throws IOException if the journal cannot be written.
+	 */
+	synchronized boolean addToCategory (int id, String category)
+		throws IOException
+	{
+		int categoryId = categoryId( category );
+		Record record = get( id );
+
+		if ( record == null )
+		{
+			return false;
+		}
+
+		if ( record.isIn(categoryId) == false )
+		{
+			int[] categoryIds = liveCategories( record );
+			int[] expanded = new int[categoryIds.length + 1];
+			System.arraycopy( categoryIds, 0, expanded, 0, categoryIds.length );
+			expanded[categoryIds.length] = categoryId;
+
+			put( new Record(id, expanded, record.toLandmark()) );
+		}
+
+		return true;
+	}
+
+	/**
+	 * Removes a stored landmark from a category.  Nothing happens if the
+	 * landmark or category do not exist.
+	 *
+	 * @param id identifies the landmark.
+	 * @param category is the category.
+	 * @throws IOException if the journal cannot be written.
+	 */
+	synchronized void removeFromCategory (int id, String category)
+		throws IOException
+	{
+		Integer categoryId = categories.get( category );
+		Record record = get( id );
+
+		if ( (categoryId != null) && (record != null) && record.isIn(categoryId.intValue()) )
+		{
+			int[] categoryIds = liveCategories( record );
+			int[] reduced = new int[categoryIds.length - 1];
+			int j = 0;
+
+			for ( int i = 0; i < categoryIds.length; i++ )
+			{
+				if ( categoryIds[i] != categoryId.intValue() )
+				{
+					reduced[j++] = categoryIds[i];
+				}
+			}
+
+			put( new Record(id, reduced, record.toLandmark()) );
+		}
+	}
+
+	/**
+	 * Replaces the information of a stored landmark, keeping its categories.
+	 *
+	 * @param id identifies the landmark.
+	 * @param landmark holds the new information.
+	 * @return <code>false</code> if the landmark is not stored.
+	 * @throws IllegalArgumentException if a field of the landmark is too long.
+	 * @throws IOException if the journal cannot be written.
+	 */
+	synchronized boolean update (int id, Landmark landmark)
+		throws IOException
+	{
+		Record record = get( id );
+
+		if ( record == null )
+		{
+			return false;
+		}
+
+		put( new Record(id, liveCategories(record), landmark) );
+		return true;
+	}
+
+	/**
+	 * Deletes a stored landmark.  Nothing happens if it does not exist.
+	 *
+	 * @param id identifies the landmark.
+	 * @throws IOException if the journal cannot be written.
+	 */
+	synchronized void delete (int id)
+		throws IOException
+	{
+		if ( get(id) != null )
+		{
+			append( DELETE, ByteBuffer.allocate(4).putInt(id).array() );
+			journal.remove( Integer.valueOf(id) );
+			supersede( id );
+			compactIfNeeded();
+		}
+	}
+
+	/**
+	 * Finds the landmarks in a category with a name.
+	 *
+	 * @param category is the category or <code>null</code> for any.
+	 * @param name is the exact name or <code>null</code> for any.
+	 * @return The landmarks or <code>null</code> if none match.
+	 */
+	synchronized Enumeration<Landmark> find (String category, String name)
+	{
+		int categoryId = -1;
+
+		if ( category != null )
+		{
+			Integer id = categories.get( category );
+
+			if ( id == null )
+			{
+				return null;
+			}
+
+			categoryId = id.intValue();
+		}
+
+		IntList positions = new IntList();
+
+		if ( name != null )
+		{
+			// Look the name up by its hash and confirm each match.
+			int hash = name.hashCode();
+
+			for ( int i = base.firstNameEntry(hash); (i < base.count) && (base.nameHash(i) == hash); i++ )
+			{
+				int position = base.namePosition( i );
+
+				if ( (superseded.get(position) == false) &&
+					 ((categoryId < 0) || base.isInCategory(position, categoryId)) &&
+					 name.equals(base.record(position).name) )
+				{
+					positions.add( position );
+				}
+			}
+		}
+		else if ( categoryId >= 0 )
+		{
+			base.addCategory( categoryId, superseded, positions );
+		}
+		else
+		{
+			for ( int i = 0; i < base.count; i++ )
+			{
+				if ( superseded.get(i) == false )
+				{
+					positions.add( i );
+				}
+			}
+		}
+
+		Vector<Record> records = new Vector<Record>();
+
+		for ( Record record : journal.values() )
+		{
+			if ( ((categoryId < 0) || record.isIn(categoryId)) &&
+				 ((name == null) || name.equals(record.name)) )
+			{
+				records.addElement( record );
+			}
+		}
+
+		return results( positions, records );
+	}
+
+	/**
+	 * Finds the landmarks in a category within an area.  The bounds are
+	 * inside the area.
+	 *
+	 * @param category is the category or <code>null</code> for any.
+	 * @param minLatitude is the southern edge in degrees.
+	 * @param maxLatitude is the northern edge in degrees.
+	 * @param minLongitude is the western edge in degrees.
+	 * @param maxLongitude is the eastern edge in degrees.  When it is less
+	 *  than <code>minLongitude</code> the area crosses the antimeridian.
+	 * @return The landmarks or <code>null</code> if none match.
+	 */
+	synchronized Enumeration<Landmark> find (String category,
+			double minLatitude, double maxLatitude, double minLongitude, double maxLongitude)
+	{
+		int categoryId = -1;
+
+		if ( category != null )
+		{
+			Integer id = categories.get( category );
+
+			if ( id == null )
+			{
+				return null;
+			}
+
+			categoryId = id.intValue();
+		}
+
+		IntList positions = new IntList();
+
+		if ( minLongitude <= maxLongitude )
+		{
+			base.search( minLatitude, maxLatitude, minLongitude, maxLongitude, categoryId, superseded, positions );
+		}
+		else
+		{
+			base.search( minLatitude, maxLatitude, -180.0, maxLongitude, categoryId, superseded, positions );
+			base.search( minLatitude, maxLatitude, minLongitude, 180.0, categoryId, superseded, positions );
+		}
+
+		Vector<Record> records = new Vector<Record>();
+
+		for ( Record record : journal.values() )
+		{
+			if ( record.located &&
+				 ((categoryId < 0) || record.isIn(categoryId)) &&
+				 (record.latitude >= minLatitude) && (record.latitude <= maxLatitude) &&
+				 within(record.longitude, minLongitude, maxLongitude) )
+			{
+				records.addElement( record );
+			}
+		}
+
+		return results( positions, records );
+	}
+
+	/**
+	 * Closes the file.  Enumerations already returned keep working.
+	 *
+	 * @see java.io.Closeable#close()
+	 */
+	public synchronized void close ()
+		throws IOException
+	{
+		if ( randomAccessFile != null )
+		{
+			randomAccessFile.close();
+			randomAccessFile = null;
+			channel = null;
+		}
+	}
+
+	/**
+	 * Maps the base and replays the journal.
+	 */
+	private void open ()
+		throws IOException
+	{
+		randomAccessFile = new RandomAccessFile( file, "rw" );
+		channel = randomAccessFile.getChannel();
+
+		try
+		{
+			ByteBuffer header = ByteBuffer.allocate( HEADER_SIZE );
+			channel.read( header, 0 );
+			header.flip();
+
+			if ( (header.remaining() < HEADER_SIZE) || (header.getInt(0) != MAGIC) )
+			{
+				throw new IOException( file + " is not a landmark store." );
+			}
+
+			if ( header.getInt(4) != VERSION )
+			{
+				throw new IOException( file + " is landmark store version " + header.getInt(4) + "." );
+			}
+
+			long end = header.getLong( 80 );
+
+			if ( (end > Integer.MAX_VALUE) || (end > channel.size()) )
+			{
+				throw new IOException( file + " is corrupt." );
+			}
+
+			base = new Base( channel.map(FileChannel.MapMode.READ_ONLY, 0, end) );
+			nextId = base.buffer.getInt( 20 );
+			nextCategoryId = base.buffer.getInt( 24 );
+
+			categories.clear();
+			categories.putAll( base.categoryIds );
+			journal.clear();
+			superseded.clear();
+			journalEntries = 0;
+
+			replay( end );
+		}
+		catch (IOException e)
+		{
+			close();
+			throw e;
+		}
+		catch (RuntimeException e)  // BufferUnderflowException, IndexOutOfBoundsException, ...
+		{
+			close();
+			throw new IOException( file + " is corrupt.", e );
+		}
+	}
+
+	/**
+	 * Applies the journal entries to the state read from the base.  A
+	 * torn entry at the end is cut off.
+	 *
+	 * @param start is the file position of the journal.
+	 */
+	private void replay (long start)
+		throws IOException
+	{
+		long size = channel.size();
+		ByteBuffer entries = ByteBuffer.allocate( (int)Math.min(size - start, Integer.MAX_VALUE) );
+
+		while ( entries.hasRemaining() && (channel.read(entries, start + entries.position()) > 0) )
+		{
+		}
+
+		entries.flip();
+		CRC32 crc = new CRC32();
+		int good = 0;
+
+		while ( entries.remaining() >= 4 )
+		{
+			int length = entries.getInt();
+
+			if ( (length < 1) || (length + 4 > entries.remaining()) )
+			{
+				break;
+			}
+
+			byte[] entry = new byte[length];
+			entries.get( entry );
+			crc.reset();
+			crc.update( entry );
+
+			if ( entries.getInt() != (int)crc.getValue() )
+			{
+				break;
+			}
+
+			apply( entry[0], ByteBuffer.wrap(entry, 1, length - 1).slice() );
+			journalEntries++;
+			good = entries.position();
+		}
+
+		journalEnd = start + good;
+
+		if ( journalEnd < size )
+		{
+			channel.truncate( journalEnd );
+		}
+	}
+
+	/**
+	 * Applies one journal entry to the state in memory.
+	 */
+	private void apply (byte operation, ByteBuffer payload)
+	{
+		switch ( operation )
+		{
+		case PUT:
+		{
+			byte[] bytes = new byte[payload.remaining()];
+			payload.get( bytes );
+			Record record = new Record( bytes );
+
+			journal.put( Integer.valueOf(record.id), record );
+			supersede( record.id );
+			nextId = Math.max( nextId, record.id + 1 );
+			break;
+		}
+
+		case DELETE:
+		{
+			int id = payload.getInt();
+			journal.remove( Integer.valueOf(id) );
+			supersede( id );
+			break;
+		}
+
+		case ADD_CATEGORY:
+		{
+			int id = payload.getInt();
+			categories.put( readString(payload), Integer.valueOf(id) );
+			nextCategoryId = Math.max( nextCategoryId, id + 1 );
+			break;
+		}
+
+		case DELETE_CATEGORY:
+			categories.remove( readString(payload) );
+			break;
+
+		default:
+			throw new IllegalStateException( "Unknown journal entry " + operation );
+		}
+	}
+
+	/**
+	 * Writes a landmark to the journal.
+	 */
+	private void put (Record record)
+		throws IOException
+	{
+		append( PUT, record.bytes );
+		journal.put( Integer.valueOf(record.id), record );
+		supersede( record.id );
+		compactIfNeeded();
+	}
+
+	/**
+	 * Writes a checksummed entry to the end of the journal.
+	 */
+	private void append (byte operation, byte[] payload)
+		throws IOException
+	{
+		if ( channel == null )
+		{
+			throw new IOException( "Landmark store has been deleted." );
+		}
+
+		CRC32 crc = new CRC32();
+		crc.update( operation );
+		crc.update( payload );
+
+		ByteBuffer entry = ByteBuffer.allocate( 4 + 1 + payload.length + 4 );
+		entry.putInt( 1 + payload.length );
+		entry.put( operation );
+		entry.put( payload );
+		entry.putInt( (int)crc.getValue() );
+		entry.flip();
+
+		while ( entry.hasRemaining() )
+		{
+			journalEnd += channel.write( entry, journalEnd );
+		}
+
+		journalEntries++;
+	}
+
+	/**
+	 * Hides the base copy of a landmark that was changed or deleted.
+	 */
+	private void supersede (int id)
+	{
+		int position = base.find( id );
+
+		if ( position >= 0 )
+		{
+			superseded.set( position );
+		}
+	}
+
+	/**
+	 * @return The current record of a landmark or <code>null</code> if it is
+	 *  not stored.
+	 */
+	private Record get (int id)
+	{
+		Record record = journal.get( Integer.valueOf(id) );
+
+		if ( record == null )
+		{
+			int position = base.find( id );
+
+			if ( (position >= 0) && (superseded.get(position) == false) )
+			{
+				record = base.record( position );
+			}
+		}
+
+		return record;
+	}
+
+	/**
+	 * @return The id of an existing category.
+	 * @throws IllegalArgumentException if it does not exist.
+	 */
+	private int categoryId (String category)
+	{
+		Integer id = categories.get( category );
+
+		if ( id == null )
+		{
+			throw new IllegalArgumentException( "Category " + category + " does not exist." );
+		}
+
+		return id.intValue();
+	}
+
+	/**
+	 * @return The ids of the categories a record is in that have not been deleted.
+	 */
+	private int[] liveCategories (Record record)
+	{
+		IntList live = new IntList();
+
+		for ( int i = 0; i < record.categories.length; i++ )
+		{
+			if ( categories.containsValue(Integer.valueOf(record.categories[i])) )
+			{
+				live.add( record.categories[i] );
+			}
+		}
+
+		return live.toArray();
+	}
+
+	/**
+	 * Rewrites the base once the journal is large enough that queries spend
+	 * noticeable time in it.
+	 */
+	private void compactIfNeeded ()
+		throws IOException
+	{
+		if ( journalEntries > Math.max(MIN_COMPACTION_ENTRIES, base.count / COMPACTION_RATIO) )
+		{
+			compact();
+		}
+	}
+
+	/**
+	 * Writes the landmarks of the base and journal into a new base and
+	 * replaces the file with it.
+	 */
+	private void compact ()
+		throws IOException
+	{
+		int n = base.count - superseded.cardinality() + journal.size();
+		Writer writer = new Writer( n );
+
+		for ( int i = 0; i < base.count; i++ )
+		{
+			if ( superseded.get(i) == false )
+			{
+				writer.add( base.record(i), i );
+			}
+		}
+
+		for ( Record record : journal.values() )
+		{
+			writer.add( record, -1 );
+		}
+
+		File temporary = new File( file.getPath() + ".tmp" );
+		writer.write( temporary, categories, nextId, nextCategoryId );
+
+		close();
+		Files.move( temporary.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE );
+		open();
+	}
+
+	/**
+	 * @return An enumeration of the landmarks or <code>null</code> if there are none.
+	 */
+	private Enumeration<Landmark> results (IntList positions, Vector<Record> records)
+	{
+		if ( (positions.size == 0) && records.isEmpty() )
+		{
+			return null;
+		}
+
+		return new Results( base, positions, records );
+	}
+
+	/**
+	 * @return <code>true</code> if <code>longitude</code> is in the range, which
+	 *  crosses the antimeridian when <code>min</code> is more than <code>max</code>.
+	 */
+	private static boolean within (double longitude, double min, double max)
+	{
+		if ( min <= max )
+		{
+			return (longitude >= min) && (longitude <= max);
+		}
+		else
+		{
+			return (longitude >= min) || (longitude <= max);
+		}
+	}
+
+	/**
+	 * @throws IllegalArgumentException if <code>value</code> is longer than <code>max</code>.
+	 */
+	static void checkLength (String value, int max, String what)
+	{
+		if ( (value != null) && (value.length() > max) )
+		{
+			throw new IllegalArgumentException( what + " is longer than " + max + " characters." );
+		}
+	}
+
+	/**
+	 * Writes a string as its UTF-8 length and bytes.  <code>null</code> is a
+	 * length of -1.
+	 */
+	private static void writeString (DataOutputStream out, String value)
+		throws IOException
+	{
+		if ( value == null )
+		{
+			out.writeInt( -1 );
+		}
+		else
+		{
+			byte[] bytes = value.getBytes( StandardCharsets.UTF_8 );
+			out.writeInt( bytes.length );
+			out.write( bytes );
+		}
+	}
+
+	/**
+	 * Reads a string written by <code>writeString</code>.
+	 */
+	private static String readString (ByteBuffer in)
+	{
+		int length = in.getInt();
+
+		if ( length < 0 )
+		{
+			return null;
+		}
+
+		byte[] bytes = new byte[length];
+		in.get( bytes );
+		return new String( bytes, StandardCharsets.UTF_8 );
+	}
+
+	/**
+	 * One stored landmark.  The encoded bytes are what is written to the
+	 * journal and the base; the fields needed to search are decoded up front.
+	 */
+	private static final class Record
+	{
+		final int id;
+		final int[] categories;
+		final String name;
+		final boolean located;
+		final double latitude;
+		final double longitude;
+		final byte[] bytes;
+
+		/**
+		 * Encodes a landmark.
+		 *
+		 * @throws IllegalArgumentException if a field is too long.
+		 */
+		Record (int id, int[] categories, Landmark landmark)
+			throws IOException
+		{
+			checkLength( landmark.getName(), MAX_NAME_LENGTH, "Landmark name" );
+			checkLength( landmark.getDescription(), MAX_DESCRIPTION_LENGTH, "Landmark description" );
+
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			DataOutputStream out = new DataOutputStream( bytes );
+
+			out.writeInt( id );
+			out.writeInt( categories.length );
+
+			for ( int i = 0; i < categories.length; i++ )
+			{
+				out.writeInt( categories[i] );
+			}
+
+			writeString( out, landmark.getName() );
+			writeString( out, landmark.getDescription() );
+
+			QualifiedCoordinates coordinates = landmark.getQualifiedCoordinates();
+			out.writeBoolean( coordinates != null );
+
+			if ( coordinates != null )
+			{
+				out.writeDouble( coordinates.getLatitude() );
+				out.writeDouble( coordinates.getLongitude() );
+				out.writeFloat( coordinates.getAltitude() );
+				out.writeFloat( coordinates.getHorizontalAccuracy() );
+				out.writeFloat( coordinates.getVerticalAccuracy() );
+			}
+
+			AddressInfo address = landmark.getAddressInfo();
+
+			if ( address == null )
+			{
+				out.writeByte( -1 );
+			}
+			else
+			{
+				int fields = 0;
+
+				for ( int field = AddressInfo.EXTENSION; field <= AddressInfo.PHONE_NUMBER; field++ )
+				{
+					if ( address.getField(field) != null )
+					{
+						fields++;
+					}
+				}
+
+				out.writeByte( fields );
+
+				for ( int field = AddressInfo.EXTENSION; field <= AddressInfo.PHONE_NUMBER; field++ )
+				{
+					String value = address.getField( field );
+
+					if ( value != null )
+					{
+						checkLength( value, MAX_FIELD_LENGTH, "Address field" );
+						out.writeByte( field );
+						writeString( out, value );
+					}
+				}
+			}
+
+			this.id = id;
+			this.categories = categories;
+			this.name = landmark.getName();
+			this.located = (coordinates != null);
+			this.latitude = located ? coordinates.getLatitude() : Double.NaN;
+			this.longitude = located ? coordinates.getLongitude() : Double.NaN;
+			this.bytes = bytes.toByteArray();
+		}
+
+		/**
+		 * Decodes the fields needed to search an encoded landmark.
+		 */
+		Record (byte[] bytes)
+		{
+			ByteBuffer in = ByteBuffer.wrap( bytes );
+
+			this.id = in.getInt();
+			this.categories = new int[in.getInt()];
+
+			for ( int i = 0; i < categories.length; i++ )
+			{
+				categories[i] = in.getInt();
+			}
+
+			this.name = readString( in );
+			readString( in );  // Description
+			this.located = (in.get() != 0);
+			this.latitude = located ? in.getDouble() : Double.NaN;
+			this.longitude = located ? in.getDouble() : Double.NaN;
+			this.bytes = bytes;
+		}
+
+		/**
+		 * @return <code>true</code> if the landmark is in the category.
+		 */
+		boolean isIn (int categoryId)
+		{
+			for ( int i = 0; i < categories.length; i++ )
+			{
+				if ( categories[i] == categoryId )
+				{
+					return true;
+				}
+			}
+
+			return false;
+		}
+
+		/**
+		 * @return A new <code>Landmark</code> decoded from the bytes.
+		 */
+		Landmark toLandmark ()
+		{
+			ByteBuffer in = ByteBuffer.wrap( bytes );
+			in.position( 8 + 4 * categories.length );
+
+			String name = readString( in );
+			String description = readString( in );
+			QualifiedCoordinates coordinates = null;
+
+			if ( in.get() != 0 )
+			{
+				double latitude = in.getDouble();
+				double longitude = in.getDouble();
+				coordinates = new QualifiedCoordinates( latitude, longitude, in.getFloat(), in.getFloat(), in.getFloat() );
+			}
+
+			AddressInfo address = null;
+			int fields = in.get();
+
+			if ( fields >= 0 )
+			{
+				address = new AddressInfo();
+
+				for ( int i = 0; i < fields; i++ )
+				{
+					int field = in.get();
+					address.setField( field, readString(in) );
+				}
+			}
+
+			return new Landmark( name, description, coordinates, address );
+		}
+	}
+
+	/**
+	 * The mapped base of a file.  Compaction replaces it with a new one;
+	 * enumerations keep reading the one they were created from.
+	 */
+	private static final class Base
+	{
+		final ByteBuffer buffer;
+		final int count;
+		final int located;
+		final int leaves;
+		final int nodes;
+		final int idIndex;
+		final int nameIndex;
+		final int records;
+		final int categoryTable;
+
+		/**
+		 * The number of nodes in each level of the R-tree, from the one above
+		 * the leaves to the root.
+		 */
+		final int[] levelCounts;
+
+		/**
+		 * The index of the first node of each level.
+		 */
+		final int[] levelStarts;
+
+		/**
+		 * The categories of the base keyed by name.
+		 */
+		final HashMap<String, Integer> categoryIds = new HashMap<String, Integer>();
+
+		/**
+		 * The number of leaves in each category and the offset of their
+		 * positions, keyed by category id.
+		 */
+		final HashMap<Integer, int[]> postings = new HashMap<Integer, int[]>();
+
+		Base (ByteBuffer buffer)
+		{
+			this.buffer = buffer;
+			this.count = buffer.getInt( 8 );
+			this.located = buffer.getInt( 12 );
+			this.leaves = (int)buffer.getLong( 32 );
+			this.nodes = (int)buffer.getLong( 40 );
+			this.idIndex = (int)buffer.getLong( 48 );
+			this.nameIndex = (int)buffer.getLong( 56 );
+			this.records = (int)buffer.getLong( 64 );
+			this.categoryTable = (int)buffer.getLong( 72 );
+
+			int levels = 0;
+
+			for ( int c = located; c > 1; c = (c + NODE_SIZE - 1) / NODE_SIZE )
+			{
+				levels++;
+			}
+
+			levelCounts = new int[levels];
+			levelStarts = new int[levels];
+
+			for ( int level = 0, c = located, start = 0; level < levels; level++ )
+			{
+				c = (c + NODE_SIZE - 1) / NODE_SIZE;
+				levelCounts[level] = c;
+				levelStarts[level] = start;
+				start += c;
+			}
+
+			ByteBuffer in = buffer.duplicate();
+			in.position( categoryTable );
+			int categories = in.getInt();
+
+			for ( int i = 0; i < categories; i++ )
+			{
+				Integer id = Integer.valueOf( in.getInt() );
+				int members = in.getInt();
+				int offset = in.getInt();
+
+				categoryIds.put( readString(in), id );
+				postings.put( id, new int[] { members, offset } );
+			}
+		}
+
+		int latitude (int position)
+		{
+			return buffer.getInt( leaves + position * LEAF_SIZE );
+		}
+
+		int longitude (int position)
+		{
+			return buffer.getInt( leaves + position * LEAF_SIZE + 4 );
+		}
+
+		int recordStart (int position)
+		{
+			return records + (int)buffer.getLong( leaves + position * LEAF_SIZE + 8 );
+		}
+
+		int recordEnd (int position)
+		{
+			return (position + 1 < count) ? recordStart( position + 1 ) : categoryTable;
+		}
+
+		Record record (int position)
+		{
+			ByteBuffer in = buffer.duplicate();
+			in.position( recordStart(position) );
+
+			byte[] bytes = new byte[recordEnd(position) - in.position()];
+			in.get( bytes );
+			return new Record( bytes );
+		}
+
+		/**
+		 * @return The position of the leaf of landmark <code>id</code> or -1.
+		 */
+		int find (int id)
+		{
+			int low = 0;
+			int high = count - 1;
+
+			while ( low <= high )
+			{
+				int middle = (low + high) >>> 1;
+				int key = buffer.getInt( idIndex + middle * INDEX_ENTRY_SIZE );
+
+				if ( key < id )
+				{
+					low = middle + 1;
+				}
+				else if ( key > id )
+				{
+					high = middle - 1;
+				}
+				else
+				{
+					return buffer.getInt( idIndex + middle * INDEX_ENTRY_SIZE + 4 );
+				}
+			}
+
+			return -1;
+		}
+
+		int nameHash (int entry)
+		{
+			return buffer.getInt( nameIndex + entry * INDEX_ENTRY_SIZE );
+		}
+
+		int namePosition (int entry)
+		{
+			return buffer.getInt( nameIndex + entry * INDEX_ENTRY_SIZE + 4 );
+		}
+
+		/**
+		 * @return The first name index entry with <code>hash</code> or later.
+		 */
+		int firstNameEntry (int hash)
+		{
+			int low = 0;
+			int high = count;
+
+			while ( low < high )
+			{
+				int middle = (low + high) >>> 1;
+
+				if ( nameHash(middle) < hash )
+				{
+					low = middle + 1;
+				}
+				else
+				{
+					high = middle;
+				}
+			}
+
+			return low;
+		}
+
+		/**
+		 * @return <code>true</code> if the leaf is in the category.
+		 */
+		boolean isInCategory (int position, int categoryId)
+		{
+			int[] posting = postings.get( Integer.valueOf(categoryId) );
+
+			if ( posting == null )
+			{
+				return false;
+			}
+
+			int low = 0;
+			int high = posting[0] - 1;
+
+			while ( low <= high )
+			{
+				int middle = (low + high) >>> 1;
+				int member = buffer.getInt( posting[1] + middle * 4 );
+
+				if ( member < position )
+				{
+					low = middle + 1;
+				}
+				else if ( member > position )
+				{
+					high = middle - 1;
+				}
+				else
+				{
+					return true;
+				}
+			}
+
+			return false;
+		}
+
+		/**
+		 * Adds the leaves in a category to <code>positions</code>.
+		 */
+		void addCategory (int categoryId, BitSet superseded, IntList positions)
+		{
+			int[] posting = postings.get( Integer.valueOf(categoryId) );
+
+			if ( posting != null )
+			{
+				for ( int i = 0; i < posting[0]; i++ )
+				{
+					int position = buffer.getInt( posting[1] + i * 4 );
+
+					if ( superseded.get(position) == false )
+					{
+						positions.add( position );
+					}
+				}
+			}
+		}
+
+		/**
+		 * Adds the leaves within an area that does not cross the antimeridian
+		 * to <code>positions</code>.
+		 */
+		void search (double minLatitude, double maxLatitude, double minLongitude, double maxLongitude,
+				int categoryId, BitSet superseded, IntList positions)
+		{
+			// Search with the bounds rounded outward and check leaves on them exactly.
+			int south = (int)Math.floor( minLatitude * UNITS_PER_DEGREE );
+			int north = (int)Math.ceil( maxLatitude * UNITS_PER_DEGREE );
+			int west = (int)Math.floor( minLongitude * UNITS_PER_DEGREE );
+			int east = (int)Math.ceil( maxLongitude * UNITS_PER_DEGREE );
+
+			if ( levelCounts.length == 0 )
+			{
+				searchLeaves( 0, located, south, north, west, east,
+					minLatitude, maxLatitude, minLongitude, maxLongitude, categoryId, superseded, positions );
+				return;
+			}
+
+			// Walk down the R-tree from the root.
+			int[] stackLevels = new int[64];
+			int[] stackNodes = new int[64];
+			int top = 0;
+
+			stackLevels[top] = levelCounts.length - 1;
+			stackNodes[top] = 0;
+			top++;
+
+			while ( top > 0 )
+			{
+				top--;
+				int level = stackLevels[top];
+				int node = stackNodes[top];
+
+				int first = node * NODE_SIZE;
+
+				if ( level == 0 )
+				{
+					int last = Math.min( first + NODE_SIZE, located );
+					searchLeaves( first, last, south, north, west, east,
+						minLatitude, maxLatitude, minLongitude, maxLongitude, categoryId, superseded, positions );
+				}
+				else
+				{
+					int last = Math.min( first + NODE_SIZE, levelCounts[level - 1] );
+
+					for ( int child = first; child < last; child++ )
+					{
+						int box = nodes + (levelStarts[level - 1] + child) * NODE_BYTES;
+
+						if ( (buffer.getInt(box) <= north) && (buffer.getInt(box + 8) >= south) &&
+							 (buffer.getInt(box + 4) <= east) && (buffer.getInt(box + 12) >= west) )
+						{
+							if ( top == stackLevels.length )
+							{
+								stackLevels = Arrays.copyOf( stackLevels, top * 2 );
+								stackNodes = Arrays.copyOf( stackNodes, top * 2 );
+							}
+
+							stackLevels[top] = level - 1;
+							stackNodes[top] = child;
+							top++;
+						}
+					}
+				}
+			}
+		}
+
+		/**
+		 * Adds the leaves from <code>first</code> up to <code>last</code> that
+		 * are within an area to <code>positions</code>.
+		 */
+		private void searchLeaves (int first, int last, int south, int north, int west, int east,
+				double minLatitude, double maxLatitude, double minLongitude, double maxLongitude,
+				int categoryId, BitSet superseded, IntList positions)
+		{
+			for ( int position = first; position < last; position++ )
+			{
+				int latitude = latitude( position );
+				int longitude = longitude( position );
+
+				if ( (latitude < south) || (latitude > north) || (longitude < west) || (longitude > east) ||
+					 superseded.get(position) ||
+					 ((categoryId >= 0) && (isInCategory(position, categoryId) == false)) )
+				{
+					continue;
+				}
+
+				if ( (latitude <= south + 1) || (latitude >= north - 1) || (longitude <= west + 1) || (longitude >= east - 1) )
+				{
+					// Near an edge; check the exact coordinates.
+					Record record = record( position );
+
+					if ( (record.latitude < minLatitude) || (record.latitude > maxLatitude) ||
+						 (record.longitude < minLongitude) || (record.longitude > maxLongitude) )
+					{
+						continue;
+					}
+				}
+
+				positions.add( position );
+			}
+		}
+	}
+
+	/**
+	 * Builds a new base.
+	 */
+	private static final class Writer
+	{
+		private final Record[] records;
+		private final int[] basePositions;
+		private int size;
+
+		Writer (int capacity)
+		{
+			records = new Record[capacity];
+			basePositions = new int[capacity];
+		}
+
+		/**
+		 * Adds a landmark to write.
+		 *
+		 * @param record is the landmark.
+		 * @param basePosition is the leaf of the landmark in the current base or -1.
+		 */
+		void add (Record record, int basePosition)
+		{
+			records[size] = record;
+			basePositions[size] = basePosition;
+			size++;
+		}
+
+		/**
+		 * Writes the base.
+		 *
+		 * @param target is the file to write.
+		 * @param categories are the ids of the categories keyed by name.
+		 * @param nextId is the id of the next new landmark.
+		 * @param nextCategoryId is the id of the next new category.
+		 */
+		void write (File target, Map<String, Integer> categories, int nextId, int nextCategoryId)
+			throws IOException
+		{
+			// Landmarks with coordinates come first in Sort-Tile-Recursive order.
+			int[] latitudes = new int[size];
+			int[] longitudes = new int[size];
+			int located = 0;
+
+			for ( int i = 0; i < size; i++ )
+			{
+				if ( records[i].located )
+				{
+					latitudes[i] = (int)Math.round( records[i].latitude * UNITS_PER_DEGREE );
+					longitudes[i] = (int)Math.round( records[i].longitude * UNITS_PER_DEGREE );
+					located++;
+				}
+				else
+				{
+					latitudes[i] = NO_COORDINATES;
+				}
+			}
+
+			long[] keys = new long[located];
+
+			for ( int i = 0, j = 0; i < size; i++ )
+			{
+				if ( latitudes[i] != NO_COORDINATES )
+				{
+					keys[j++] = ((long)longitudes[i] << 32) | i;
+				}
+			}
+
+			Arrays.sort( keys );
+
+			int leafNodes = (located + NODE_SIZE - 1) / NODE_SIZE;
+			int slab = (int)Math.ceil( Math.sqrt(leafNodes) ) * NODE_SIZE;
+
+			for ( int start = 0; start < located; start += slab )
+			{
+				int end = Math.min( start + slab, located );
+
+				for ( int j = start; j < end; j++ )
+				{
+					int i = (int)keys[j];
+					keys[j] = ((long)latitudes[i] << 32) | i;
+				}
+
+				Arrays.sort( keys, start, end );
+			}
+
+			int[] order = new int[size];
+
+			for ( int j = 0; j < located; j++ )
+			{
+				order[j] = (int)keys[j];
+			}
+
+			for ( int i = 0, j = located; i < size; i++ )
+			{
+				if ( latitudes[i] == NO_COORDINATES )
+				{
+					order[j++] = i;
+				}
+			}
+
+			// Bounding boxes of the R-tree, level by level.
+			IntList boxes = new IntList();
+			int levelStart = 0;
+			int levelCount = located;
+
+			for ( int level = 0; levelCount > 1; level++ )
+			{
+				int parents = (levelCount + NODE_SIZE - 1) / NODE_SIZE;
+				int childStart = boxes.size / 4;
+
+				for ( int parent = 0; parent < parents; parent++ )
+				{
+					int minLatitude = Integer.MAX_VALUE;
+					int minLongitude = Integer.MAX_VALUE;
+					int maxLatitude = Integer.MIN_VALUE;
+					int maxLongitude = Integer.MIN_VALUE;
+
+					for ( int child = parent * NODE_SIZE; child < Math.min((parent + 1) * NODE_SIZE, levelCount); child++ )
+					{
+						if ( level == 0 )
+						{
+							int i = order[child];
+							minLatitude = Math.min( minLatitude, latitudes[i] );
+							maxLatitude = Math.max( maxLatitude, latitudes[i] );
+							minLongitude = Math.min( minLongitude, longitudes[i] );
+							maxLongitude = Math.max( maxLongitude, longitudes[i] );
+						}
+						else
+						{
+							int box = (levelStart + child) * 4;
+							minLatitude = Math.min( minLatitude, boxes.values[box] );
+							minLongitude = Math.min( minLongitude, boxes.values[box + 1] );
+							maxLatitude = Math.max( maxLatitude, boxes.values[box + 2] );
+							maxLongitude = Math.max( maxLongitude, boxes.values[box + 3] );
+						}
+					}
+
+					boxes.add( minLatitude );
+					boxes.add( minLongitude );
+					boxes.add( maxLatitude );
+					boxes.add( maxLongitude );
+				}
+
+				levelStart = childStart;
+				levelCount = parents;
+			}
+
+			// Lay out the sections.
+			long leaves = HEADER_SIZE;
+			long nodes = leaves + (long)size * LEAF_SIZE;
+			long idIndex = nodes + (long)(boxes.size / 4) * NODE_BYTES;
+			long nameIndex = idIndex + (long)size * INDEX_ENTRY_SIZE;
+			long postings = nameIndex + (long)size * INDEX_ENTRY_SIZE;
+
+			HashMap<Integer, IntList> members = new HashMap<Integer, IntList>();
+
+			for ( Integer id : categories.values() )
+			{
+				members.put( id, new IntList() );
+			}
+
+			long postingsSize = 0;
+
+			for ( int position = 0; position < size; position++ )
+			{
+				int[] ids = records[order[position]].categories;
+
+				for ( int k = 0; k < ids.length; k++ )
+				{
+					IntList list = members.get( Integer.valueOf(ids[k]) );
+
+					if ( list != null )
+					{
+						list.add( position );
+						postingsSize += 4;
+					}
+				}
+			}
+
+			long recordsStart = postings + postingsSize;
+			long recordsSize = 0;
+
+			for ( int i = 0; i < size; i++ )
+			{
+				recordsSize += records[i].bytes.length;
+			}
+
+			long categoryTable = recordsStart + recordsSize;
+
+			if ( categoryTable > Integer.MAX_VALUE )
+			{
+				throw new IOException( "Landmark store is too large." );
+			}
+
+			DataOutputStream out = new DataOutputStream( new BufferedOutputStream(new FileOutputStream(target), 1 << 16) );
+
+			try
+			{
+				out.write( new byte[HEADER_SIZE] );
+
+				long offset = 0;
+
+				for ( int position = 0; position < size; position++ )
+				{
+					int i = order[position];
+					out.writeInt( latitudes[i] );
+					out.writeInt( longitudes[i] );
+					out.writeLong( offset );
+					offset += records[i].bytes.length;
+				}
+
+				for ( int k = 0; k < boxes.size; k++ )
+				{
+					out.writeInt( boxes.values[k] );
+				}
+
+				long[] entries = new long[size];
+
+				for ( int position = 0; position < size; position++ )
+				{
+					entries[position] = ((long)records[order[position]].id << 32) | position;
+				}
+
+				Arrays.sort( entries );
+
+				for ( int k = 0; k < size; k++ )
+				{
+					out.writeLong( entries[k] );
+				}
+
+				for ( int position = 0; position < size; position++ )
+				{
+					entries[position] = ((long)records[order[position]].name.hashCode() << 32) | position;
+				}
+
+				Arrays.sort( entries );
+
+				for ( int k = 0; k < size; k++ )
+				{
+					out.writeLong( entries[k] );
+				}
+
+				HashMap<Integer, Long> postingOffsets = new HashMap<Integer, Long>();
+				offset = postings;
+
+				for ( Iterator<Map.Entry<Integer, IntList>> e = members.entrySet().iterator(); e.hasNext(); )
+				{
+					Map.Entry<Integer, IntList> entry = e.next();
+					IntList list = entry.getValue();
+
+					postingOffsets.put( entry.getKey(), Long.valueOf(offset) );
+
+					for ( int k = 0; k < list.size; k++ )
+					{
+						out.writeInt( list.values[k] );
+					}
+
+					offset += list.size * 4L;
+				}
+
+				for ( int position = 0; position < size; position++ )
+				{
+					out.write( records[order[position]].bytes );
+				}
+
+				out.writeInt( categories.size() );
+
+				for ( Map.Entry<String, Integer> entry : categories.entrySet() )
+				{
+					Integer id = entry.getValue();
+					out.writeInt( id.intValue() );
+					out.writeInt( members.get(id).size );
+					out.writeInt( postingOffsets.get(id).intValue() );
+					writeString( out, entry.getKey() );
+				}
+
+				// DataOutputStream stops counting at Integer.MAX_VALUE.
+				long end = out.size();
+				out.close();
+				out = null;
+
+				if ( end >= Integer.MAX_VALUE )
+				{
+					throw new IOException( "Landmark store is too large." );
+				}
+
+				RandomAccessFile header = new RandomAccessFile( target, "rw" );
+
+				try
+				{
+					header.writeInt( MAGIC );
+					header.writeInt( VERSION );
+					header.writeInt( size );
+					header.writeInt( located );
+					header.writeInt( NODE_SIZE );
+					header.writeInt( nextId );
+					header.writeInt( nextCategoryId );
+					header.writeInt( 0 );
+					header.writeLong( leaves );
+					header.writeLong( nodes );
+					header.writeLong( idIndex );
+					header.writeLong( nameIndex );
+					header.writeLong( recordsStart );
+					header.writeLong( categoryTable );
+					header.writeLong( end );
+					header.getChannel().force( true );
+				}
+				finally
+				{
+					header.close();
+				}
+			}
+			finally
+			{
+				if ( out != null )
+				{
+					out.close();
+				}
+			}
+		}
+	}
+
+	/**
+	 * Enumerates the landmarks found by a query, decoding each as it is
+	 * returned.
+	 */
+	private final class Results
+		implements Enumeration<Landmark>
+	{
+		private final Base source;
+		private final IntList positions;
+		private final Vector<Record> records;
+		private int next;
+
+		Results (Base source, IntList positions, Vector<Record> records)
+		{
+			this.source = source;
+			this.positions = positions;
+			this.records = records;
+		}
+
+		public boolean hasMoreElements ()
+		{
+			return next < positions.size + records.size();
+		}
+
+		public Landmark nextElement ()
+		{
+			Record record;
+
+			if ( next < positions.size )
+			{
+				record = source.record( positions.values[next] );
+			}
+			else if ( next < positions.size + records.size() )
+			{
+				record = records.elementAt( next - positions.size );
+			}
+			else
+			{
+				throw new NoSuchElementException();
+			}
+
+			next++;
+
+			Landmark landmark = record.toLandmark();
+			landmark.store = owner;
+			landmark.id = record.id;
+			return landmark;
+		}
+	}
+
+	/**
+	 * A growable array of <code>int</code>s.
+	 */
+	private static final class IntList
+	{
+		int[] values = new int[16];
+		int size;
+
+		void add (int value)
+		{
+			if ( size == values.length )
+			{
+				values = Arrays.copyOf( values, size * 2 );
+			}
+
+			values[size++] = value;
+		}
+
+		int[] toArray ()
+		{
+			return Arrays.copyOf( values, size );
+		}
+	}
+}
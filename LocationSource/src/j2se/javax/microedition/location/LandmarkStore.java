@@ -0,0 +1,630 @@
+package javax.microedition.location;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Enumeration;
+import java.util.HashMap;
+
+/**
+ * The <code>LandmarkStore</code> class provides methods to store, delete and
+ * retrieve landmarks from a persistent landmark store. There is one default
+ * landmark store and there may be multiple other named landmark stores. All
+ * landmark stores share the same namespace of names; the names are case
+ * sensitive.
+ * <p>
+ * Landmarks can be in categories. A landmark can belong to zero or more
+ * categories, and each landmark store has its own set of categories.
+ * <p>
+ * Each store is a file, written by <code>LandmarkFile</code>, in the
+ * directory named by the <code>locationsource.landmarks.dir</code> system
+ * property or <code>.locationsource/landmarks</code> in the user's home
+ * directory.  The file is memory mapped when the store is opened, so opening
+ * a store does not read its landmarks, and area queries use its R-tree to
+ * read only the landmarks near the area.  Name and category queries use
+ * their own indexes.
+ * <p>
+ * Names and descriptions longer than 255 and 1024 characters, and address
+ * fields and category names longer than 255 characters, are rejected with
+ * <code>IllegalArgumentException</code>.
+ *
+ * @see Landmark
+ */
+public class LandmarkStore
+{
+	/**
+	 * System property holding the directory the stores are kept in.
+	 */
+	public static final String DIRECTORY_PROPERTY = "locationsource.landmarks.dir";
+
+	/**
+	 * The extension of store files.
+	 */
+	private static final String EXTENSION = ".lms";
+
+	/**
+	 * The file name of the default store.  Named stores' file names start
+	 * with <code>NAMED_PREFIX</code> so they cannot clash with it.
+	 */
+	private static final String DEFAULT_FILE = "default" + EXTENSION;
+
+	/**
+	 * The start of the file name of every named store.
+	 */
+	private static final String NAMED_PREFIX = "store-";
+
+	/**
+	 * The open stores keyed by name.  The default store's key is <code>null</code>.
+	 */
+	private static final HashMap<String, LandmarkStore> stores = new HashMap<String, LandmarkStore>();
+
+	/**
+	 * The store's file.
+	 */
+	private final LandmarkFile file;
+
+	/**
+	 * Opens a store.
+	 */
+	private LandmarkStore (File path)
+		throws IOException
+	{
+		this.file = new LandmarkFile( path, this );
+	}
+
+	/**
+	 * Gets a <code>LandmarkStore</code> instance for storing, deleting and
+	 * retrieving landmarks. There must be one default landmark store used by
+	 * all applications, which is obtained by passing <code>null</code> as the
+	 * parameter.
+	 *
+	 * @param storeName - the name of the landmark store to open. If
+	 *        <code>null</code>, the default landmark store will be returned.
+	 * @return the <code>LandmarkStore</code> object representing the specified
+	 *         landmark store or <code>null</code> if a landmark store with the
+	 *         specified name does not exist.
+	 * @throws java.lang.SecurityException - if the application does not have a
+	 *         permission to read landmark stores
+	 */
+	public static synchronized LandmarkStore getInstance (String storeName)
+	{
+		LandmarkStore store = stores.get( storeName );
+
+		if ( store == null )
+		{
+			File path = path( storeName );
+
+			try
+			{
+				if ( storeName == null )
+				{
+					// The default store always exists.
+					directory().mkdirs();
+
+					if ( path.exists() == false )
+					{
+						LandmarkFile.create( path );
+					}
+				}
+				else if ( path.exists() == false )
+				{
+					return null;
+				}
+
+				store = new LandmarkStore( path );
+				stores.put( storeName, store );
+			}
+			catch (IOException e)
+			{
+				System.out.println( "Could not open landmark store " + path + ": " + e.getMessage() );
+				return null;
+			}
+		}
+
+		return store;
+	}
+
+	/**
+	 * Creates a new landmark store with a specified name.
+	 *
+	 * @param storeName - the name of the landmark store to create
+	 * @throws java.lang.NullPointerException - if the parameter is <code>null</code>
+	 * @throws java.lang.IllegalArgumentException - if the name is too long or
+	 *         if a landmark store with the specified name already exists
+	 * @throws java.io.IOException - if the landmark store couldn't be created
+	 *         due to an I/O error
+	 * @throws java.lang.SecurityException - if the application does not have
+	 *         permissions to create a new landmark store
+	 * @throws LandmarkException - if the implementation does not support
+	 *         creating new landmark stores
+	 */
+	public static synchronized void createLandmarkStore (String storeName)
+		throws IOException, LandmarkException
+	{
+		if ( storeName == null )
+		{
+			throw new NullPointerException();
+		}
+
+		LandmarkFile.checkLength( storeName, LandmarkFile.MAX_FIELD_LENGTH, "Landmark store name" );
+		File path = path( storeName );
+
+		if ( path.exists() )
+		{
+			throw new IllegalArgumentException( "Landmark store " + storeName + " already exists." );
+		}
+
+		directory().mkdirs();
+		LandmarkFile.create( path );
+	}
+
+	/**
+	 * Deletes a landmark store with a specified name. All the landmarks and
+	 * categories defined in the named landmark store are irrevocably removed.
+	 * If a landmark store with the specified name does not exist, this method
+	 * returns silently without any error.
+	 *
+	 * @param storeName - the name of the landmark store to delete
+	 * @throws java.lang.NullPointerException - if the parameter is <code>null</code>
+	 *         (the default landmark store can't be deleted)
+	 * @throws java.io.IOException - if the landmark store couldn't be deleted
+	 *         due to an I/O error
+	 * @throws java.lang.SecurityException - if the application does not have
+	 *         permissions to delete a landmark store
+	 * @throws LandmarkException - if the implementation does not support
+	 *         deleting landmark stores
+	 */
+	public static synchronized void deleteLandmarkStore (String storeName)
+		throws IOException, LandmarkException
+	{
+		if ( storeName == null )
+		{
+			throw new NullPointerException();
+		}
+
+		LandmarkStore store = stores.remove( storeName );
+
+		if ( store != null )
+		{
+			store.file.close();
+		}
+
+		File path = path( storeName );
+
+		if ( path.exists() && (path.delete() == false) )
+		{
+			throw new IOException( "Could not delete " + path );
+		}
+	}
+
+	/**
+	 * Lists the names of all the available landmark stores. The default
+	 * landmark store is not included in the list returned by this method.
+	 *
+	 * @return an array of landmark store names. If there are no named landmark
+	 *         stores, other than the default landmark store, this method
+	 *         returns <code>null</code>.
+	 * @throws java.lang.SecurityException - if the application does not have
+	 *         the permission to access landmark stores
+	 * @throws java.io.IOException - if an I/O error occurred when trying to
+	 *         access the landmark store
+	 */
+	public static synchronized String[] listLandmarkStores ()
+		throws IOException
+	{
+		String[] files = directory().list();
+
+		if ( files == null )
+		{
+			return null;
+		}
+
+		String[] names = new String[files.length];
+		int count = 0;
+
+		for ( int i = 0; i < files.length; i++ )
+		{
+			if ( files[i].startsWith(NAMED_PREFIX) && files[i].endsWith(EXTENSION) )
+			{
+				names[count++] = decode( files[i].substring(NAMED_PREFIX.length(), files[i].length() - EXTENSION.length()) );
+			}
+		}
+
+		if ( count == 0 )
+		{
+			return null;
+		}
+
+		return Arrays.copyOf( names, count );
+	}
+
+	/**
+	 * Adds a landmark to the specified group in the landmark store.
+	 * <p>
+	 * If the landmark object that is passed as a parameter is an instance that
+	 * belongs to this <code>LandmarkStore</code>, the same landmark instance
+	 * will be added to the specified category in addition to the categories it
+	 * already belongs to. If the landmark already belongs to the specified
+	 * category, this method returns with no effect.
+	 * <p>
+	 * If the landmark object does not belong to this <code>LandmarkStore</code>,
+	 * the landmark will be added as a new landmark and the instance will
+	 * belong to this store from then on.
+	 *
+	 * @param landmark - the landmark to be added
+	 * @param category - category where the landmark is added. <code>null</code>
+	 *        can be used to indicate that the landmark does not belong to a
+	 *        category
+	 * @throws java.lang.SecurityException - if the application is not allowed
+	 *         to add landmarks
+	 * @throws java.lang.IllegalArgumentException - if the landmark has a longer
+	 *         name field than the implementation can support or if the
+	 *         category is not <code>null</code> or one of the categories
+	 *         defined in this <code>LandmarkStore</code>
+	 * @throws java.io.IOException - if an I/O error happened when accessing the
+	 *         landmark store
+	 * @throws java.lang.NullPointerException - if the landmark parameter is
+	 *         <code>null</code>
+	 */
+	public void addLandmark (Landmark landmark, String category)
+		throws IOException
+	{
+		if ( landmark == null )
+		{
+			throw new NullPointerException();
+		}
+
+		synchronized ( file )
+		{
+			if ( (landmark.store == this) && file.contains(landmark.id) )
+			{
+				if ( category != null )
+				{
+					file.addToCategory( landmark.id, category );
+				}
+			}
+			else
+			{
+				landmark.id = file.add( landmark, category );
+				landmark.store = this;
+			}
+		}
+	}
+
+	/**
+	 * Gets the landmarks from the storage where the category and/or name
+	 * matches the given parameters.
+	 *
+	 * @param category - the category of the landmark. <code>null</code>
+	 *        implies a wildcard that matches all categories
+	 * @param name - the name of the desired landmark. <code>null</code> implies
+	 *        a wildcard that matches all the names within the category
+	 *        indicated by the category parameter
+	 * @return an <code>Enumeration</code> containing all the matching
+	 *         <code>Landmark</code>s or <code>null</code> if no landmark
+	 *         matched the given parameters
+	 * @throws java.io.IOException - if an I/O error happened when accessing the
+	 *         landmark store
+	 */
+	public Enumeration getLandmarks (String category, String name)
+		throws IOException
+	{
+		return file.find( category, name );
+	}
+
+	/**
+	 * Lists all landmarks stored in the store.
+	 *
+	 * @return an <code>Enumeration</code> object containing <code>Landmark</code>
+	 *         objects representing all the landmarks stored in this
+	 *         <code>LandmarkStore</code> or <code>null</code> if there are no
+	 *         landmarks in the store
+	 * @throws java.io.IOException - if an I/O error happened when accessing the
+	 *         landmark store
+	 */
+	public Enumeration getLandmarks ()
+		throws IOException
+	{
+		return file.find( null, null );
+	}
+
+	/**
+	 * Lists all the landmarks that are within an area defined by bounding
+	 * minimum and maximum latitude and longitude and belong to the defined
+	 * category, if specified. The bounds are considered to belong to the
+	 * area.
+	 * <p>
+	 * If <code>minLongitude</code> &lt;= <code>maxLongitude</code>, this area
+	 * covers the longitude range [<code>minLongitude</code>,
+	 * <code>maxLongitude</code>]. If <code>minLongitude</code> &gt;
+	 * <code>maxLongitude</code>, this area covers the longitude range [-180.0,
+	 * <code>maxLongitude</code>] and [<code>minLongitude</code>, 180.0).
+	 * <p>
+	 * Landmarks without coordinates are never in an area.
+	 *
+	 * @param category - the category of the landmark. <code>null</code>
+	 *        implies a wildcard that matches all categories
+	 * @param minLatitude - minimum latitude of the area. Must be within the
+	 *        range [-90.0, 90.0]
+	 * @param maxLatitude - maximum latitude of the area. Must be within the
+	 *        range [<code>minLatitude</code>, 90.0]
+	 * @param minLongitude - minimum longitude of the area. Must be within the
+	 *        range [-180.0, 180.0)
+	 * @param maxLongitude - maximum longitude of the area. Must be within the
+	 *        range [-180.0, 180.0)
+	 * @return an <code>Enumeration</code> containing all the matching
+	 *         <code>Landmark</code>s or <code>null</code> if no landmark
+	 *         matched the given parameters
+	 * @throws java.io.IOException - if an I/O error happened when accessing the
+	 *         landmark store
+	 * @throws java.lang.IllegalArgumentException - if the
+	 *         <code>minLongitude</code> or <code>maxLongitude</code> is out of
+	 *         the range [-180.0, 180.0), or <code>minLatitude</code> or
+	 *         <code>maxLatitude</code> is out of the range [-90.0,90.0], or if
+	 *         <code>minLatitude</code> &gt; <code>maxLatitude</code>
+	 */
+	public Enumeration getLandmarks (String category, double minLatitude, double maxLatitude,
+			double minLongitude, double maxLongitude)
+		throws IOException
+	{
+		if ( ((minLatitude >= -90.0) && (minLatitude <= maxLatitude) && (maxLatitude <= 90.0) &&
+			  (minLongitude >= -180.0) && (minLongitude < 180.0) &&
+			  (maxLongitude >= -180.0) && (maxLongitude < 180.0)) == false )
+		{
+			throw new IllegalArgumentException( "Area [" + minLatitude + ", " + maxLatitude + "] x [" +
+				minLongitude + ", " + maxLongitude + "] is invalid." );
+		}
+
+		return file.find( category, minLatitude, maxLatitude, minLongitude, maxLongitude );
+	}
+
+	/**
+	 * Removes the named landmark from the specified category. The
+	 * <code>Landmark</code> instance passed in as the parameter must be an
+	 * instance that belongs to this <code>LandmarkStore</code>.
+	 * <p>
+	 * If the <code>Landmark</code> is not found in this <code>LandmarkStore</code>
+	 * in the specified category or if the parameter is a <code>Landmark</code>
+	 * instance that does not belong to this <code>LandmarkStore</code>, then
+	 * the request is silently ignored and the method call returns with no
+	 * error.
+	 *
+	 * @param lm - the landmark to be removed
+	 * @param category - the category from which it will be removed
+	 * @throws java.lang.SecurityException - if the application is not allowed
+	 *         to delete the landmark
+	 * @throws java.io.IOException - if an I/O error happened when accessing the
+	 *         landmark store
+	 * @throws java.lang.NullPointerException - if either parameter is
+	 *         <code>null</code>
+	 */
+	public void removeLandmarkFromCategory (Landmark lm, String category)
+		throws IOException
+	{
+		if ( (lm == null) || (category == null) )
+		{
+			throw new NullPointerException();
+		}
+
+		if ( lm.store == this )
+		{
+			file.removeFromCategory( lm.id, category );
+		}
+	}
+
+	/**
+	 * Updates the information about a landmark. This method only updates the
+	 * information about a landmark and does not modify the categories the
+	 * landmark belongs to.
+	 * <p>
+	 * The <code>Landmark</code> instance passed in as the parameter must be an
+	 * instance that belongs to this <code>LandmarkStore</code>.
+	 *
+	 * @param lm - the landmark to be updated
+	 * @throws java.lang.SecurityException - if the application is not allowed
+	 *         to update the landmark
+	 * @throws LandmarkException - if the landmark instance passed as the
+	 *         parameter does not belong to this <code>LandmarkStore</code> or
+	 *         does not exist in the store any more
+	 * @throws java.io.IOException - if an I/O error happened when accessing the
+	 *         landmark store
+	 * @throws java.lang.IllegalArgumentException - if the landmark has a longer
+	 *         name field than the implementation can support
+	 * @throws java.lang.NullPointerException - if the parameter is <code>null</code>
+	 */
+	public void updateLandmark (Landmark lm)
+		throws IOException, LandmarkException
+	{
+		if ( lm == null )
+		{
+			throw new NullPointerException();
+		}
+
+		if ( (lm.store != this) || (file.update(lm.id, lm) == false) )
+		{
+			throw new LandmarkException( "Landmark " + lm.getName() + " does not belong to this store." );
+		}
+	}
+
+	/**
+	 * Deletes a landmark from this <code>LandmarkStore</code>. This method
+	 * removes the specified landmark from all categories and deletes the
+	 * information from this <code>LandmarkStore</code>.
+	 * <p>
+	 * The <code>Landmark</code> instance passed in as the parameter must be an
+	 * instance that belongs to this <code>LandmarkStore</code>. If the
+	 * <code>Landmark</code> is not found in this <code>LandmarkStore</code>,
+	 * then the request is silently ignored and the method call returns with no
+	 * error.
+	 *
+	 * @param lm - the landmark to be deleted
+	 * @throws java.lang.SecurityException - if the application is not allowed
+	 *         to delete the landmark
+	 * @throws LandmarkException - if the landmark instance passed as the
+	 *         parameter does not belong to this <code>LandmarkStore</code>
+	 * @throws java.io.IOException - if an I/O error happened when accessing the
+	 *         landmark store
+	 * @throws java.lang.NullPointerException - if the parameter is <code>null</code>
+	 */
+	public void deleteLandmark (Landmark lm)
+		throws IOException, LandmarkException
+	{
+		if ( lm == null )
+		{
+			throw new NullPointerException();
+		}
+
+		if ( lm.store != this )
+		{
+			throw new LandmarkException( "Landmark " + lm.getName() + " does not belong to this store." );
+		}
+
+		file.delete( lm.id );
+	}
+
+	/**
+	 * Returns the category names that are defined in this
+	 * <code>LandmarkStore</code>.
+	 *
+	 * @return an <code>Enumeration</code> containing <code>String</code>s
+	 *         representing the category names. If there are no categories
+	 *         defined in this <code>LandmarkStore</code>, an empty
+	 *         <code>Enumeration</code> is returned.
+	 */
+	public Enumeration getCategories ()
+	{
+		return file.getCategories();
+	}
+
+	/**
+	 * Adds a category to this <code>LandmarkStore</code>.
+	 *
+	 * @param categoryName - name for the category to be added
+	 * @throws java.lang.IllegalArgumentException - if a category with the
+	 *         specified name already exists or the name is too long
+	 * @throws java.lang.NullPointerException - if the parameter is <code>null</code>
+	 * @throws LandmarkException - if this <code>LandmarkStore</code> does not
+	 *         support adding new categories
+	 * @throws java.io.IOException - if an I/O error occurs or there are no
+	 *         resources to add a new category
+	 * @throws java.lang.SecurityException - if the application does not have
+	 *         the permission to manage categories
+	 */
+	public void addCategory (String categoryName)
+		throws LandmarkException, IOException
+	{
+		if ( categoryName == null )
+		{
+			throw new NullPointerException();
+		}
+
+		file.addCategory( categoryName );
+	}
+
+	/**
+	 * Removes a category from this <code>LandmarkStore</code>. The landmarks
+	 * in that category are not removed, but they will not belong to the
+	 * deleted category anymore. If the category doesn't exist, the request is
+	 * silently ignored.
+	 *
+	 * @param categoryName - name for the category to be removed
+	 * @throws java.lang.NullPointerException - if the parameter is <code>null</code>
+	 * @throws LandmarkException - if this <code>LandmarkStore</code> does not
+	 *         support deleting categories
+	 * @throws java.io.IOException - if an I/O error occurs
+	 * @throws java.lang.SecurityException - if the application does not have
+	 *         the permission to manage categories
+	 */
+	public void deleteCategory (String categoryName)
+		throws LandmarkException, IOException
+	{
+		if ( categoryName == null )
+		{
+			throw new NullPointerException();
+		}
+
+		file.deleteCategory( categoryName );
+	}
+
+	/**
+	 * @return The directory the store files are kept in.
+	 */
+	private static File directory ()
+	{
+		String directory = System.getProperty( DIRECTORY_PROPERTY );
+
+		if ( directory == null )
+		{
+			directory = System.getProperty( "user.home" ) + File.separator + ".locationsource" + File.separator + "landmarks";
+		}
+
+		return new File( directory );
+	}
+
+	/**
+	 * @return The file of a store.
+	 */
+	private static File path (String storeName)
+	{
+		if ( storeName == null )
+		{
+			return new File( directory(), DEFAULT_FILE );
+		}
+
+		return new File( directory(), NAMED_PREFIX + encode(storeName) + EXTENSION );
+	}
+
+	/**
+	 * Makes a store name safe to use in a file name.  Letters, digits, '-',
+	 * and '.' are kept; every other character becomes '_' and four hex digits.
+	 */
+	private static String encode (String storeName)
+	{
+		StringBuffer encoded = new StringBuffer( storeName.length() );
+
+		for ( int i = 0; i < storeName.length(); i++ )
+		{
+			char c = storeName.charAt( i );
+
+			if ( ((c >= 'a') && (c <= 'z')) || ((c >= 'A') && (c <= 'Z')) ||
+				 ((c >= '0') && (c <= '9')) || (c == '-') || (c == '.') )
+			{
+				encoded.append( c );
+			}
+			else
+			{
+				String hex = Integer.toHexString( c );
+				encoded.append( '_' );
+				encoded.append( "0000".substring(hex.length()) );
+				encoded.append( hex );
+			}
+		}
+
+		return encoded.toString();
+	}
+
+	/**
+	 * Reverses <code>encode</code>.
+	 */
+	private static String decode (String encoded)
+	{
+		StringBuffer storeName = new StringBuffer( encoded.length() );
+
+		for ( int i = 0; i < encoded.length(); i++ )
+		{
+			char c = encoded.charAt( i );
+
+			if ( (c == '_') && (i + 4 < encoded.length()) )
+			{
+				storeName.append( (char)Integer.parseInt(encoded.substring(i + 1, i + 5), 16) );
+				i += 4;
+			}
+			else
+			{
+				storeName.append( c );
+			}
+		}
+
+		return storeName.toString();
+	}
+}
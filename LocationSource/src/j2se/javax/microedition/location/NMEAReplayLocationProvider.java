@@ -0,0 +1,435 @@
+package javax.microedition.location;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Location provider that plays back a file of recorded NMEA 0183 sentences.
+ * It lets applications and their listeners be exercised on any J2SE machine
+ * without a GPS receiver.
+ * <p>
+ * The file is read through memory mapped windows of a <code>FileChannel</code>
+ * so captures of many gigabytes can be replayed without copying them onto
+ * the heap.  Sentences are parsed by <code>NMEAParser</code> and every
+ * receiver epoch (the sentences sharing one UTC time) becomes one
+ * <code>Location</code>.
+ * <p>
+ * Playback is paced by the UTC times in the recording.  A speed of 1.0
+ * replays in real time, 10.0 replays ten times faster, and
+ * <code>AS_FAST_AS_POSSIBLE</code> does not wait at all.  The registered
+ * listener's interval is measured in recording time, so an interval of one
+ * second delivers one fix per recorded second at any speed.
+ *
+ * @see NMEAParser
+ */
+public class NMEAReplayLocationProvider
+	extends AbstractLocationProvider
+	implements Runnable, Closeable
+{
+	/**
+	 * Speed that replays the recording without waiting between fixes.
+	 */
+	public static final double AS_FAST_AS_POSSIBLE = 0.0;
+
+	/**
+	 * The number of bytes of the file mapped at a time.  Keeping the window
+	 * well under 2 GB lets files of any size be replayed.
+	 */
+	private static final long WINDOW_SIZE = 64L * 1024 * 1024;
+
+	/**
+	 * The longest line considered a sentence.  NMEA limits sentences to 82
+	 * characters; anything longer is corrupt and skipped.
+	 */
+	private static final int MAX_SENTENCE_LENGTH = 128;
+
+	/**
+	 * Gaps in the recording longer than this, in milliseconds, are not
+	 * waited out.  They happen when a capture was paused or files were joined.
+	 */
+	private static final long MAX_GAP = 10000;
+
+	/**
+	 * The number of milliseconds in a day.  UTC times wrap at midnight.
+	 */
+	private static final long MILLIS_PER_DAY = 24L * 60 * 60 * 1000;
+
+	/**
+	 * The file being replayed.
+	 */
+	private final FileChannel channel;
+
+	/**
+	 * How many times faster than real time to replay.
+	 */
+	private final double speed;
+
+	/**
+	 * When <code>true</code> playback restarts at the beginning of the file
+	 * when it reaches the end.
+	 */
+	private final boolean loop;
+
+	/**
+	 * The thread reading the file and raising events.
+	 */
+	private final Thread worker;
+
+	/**
+	 * Monitor used to wait between fixes and to wake the worker on
+	 * <code>close</code>.
+	 */
+	private final Object lock = new Object();
+
+	/**
+	 * Set when the provider has been closed.
+	 */
+	private volatile boolean closed;
+
+	/**
+	 * Parses each line of the file.
+	 */
+	private final NMEAParser parser = new NMEAParser();
+
+	/**
+	 * The epoch currently being assembled from sentences.
+	 */
+	private final GPSRecord record = new GPSRecord();
+
+	/**
+	 * A copy of <code>record</code> from before the latest sentence was parsed.
+	 * This holds the completed epoch when a sentence starts the next one.
+	 */
+	private final GPSRecord previous = new GPSRecord();
+
+	/**
+	 * The bytes of the line being parsed, copied out of the mapped window.
+	 */
+	private final byte[] line = new byte[MAX_SENTENCE_LENGTH];
+
+	/**
+	 * The wall clock time when this provider was created.  Location timestamps
+	 * are this plus <code>replayTime</code>.
+	 */
+	private final long origin = System.currentTimeMillis();
+
+	/**
+	 * Milliseconds of recording replayed so far.  This only moves forward,
+	 * even across loops, and is the clock for the listener's interval.
+	 */
+	private volatile long replayTime;
+
+	/**
+	 * The recording time, in milliseconds since the first midnight, of the
+	 * last epoch replayed in this pass.  -1 before the first epoch.
+	 */
+	private long lastEpochTime;
+
+	/**
+	 * Milliseconds added to the UTC times of this pass for each midnight
+	 * the recording has crossed.
+	 */
+	private long dayOffset;
+
+	/**
+	 * The wall clock time the pacing is measured from.
+	 */
+	private long wallStart;
+
+	/**
+	 * The <code>replayTime</code> at <code>wallStart</code>.
+	 */
+	private long replayStart;
+
+	/**
+	 * Opens a recording and starts playing it back.
+	 *
+	 * @param file is the NMEA recording.
+	 * @param speed is how many times faster than real time to play back or
+	 *  <code>AS_FAST_AS_POSSIBLE</code>.
+	 * @param loop when <code>true</code> the recording is replayed endlessly;
+	 *  otherwise the provider goes <code>OUT_OF_SERVICE</code> at its end.
+	 * @throws IOException if the file cannot be opened.
+	 * @throws IllegalArgumentException if <code>speed</code> is negative.
+	 */
+	public NMEAReplayLocationProvider (File file, double speed, boolean loop)
+		throws IOException
+	{
+		if ( (speed < 0.0) || Double.isNaN(speed) )
+		{
+			throw new IllegalArgumentException( "Speed (" + speed + ") is invalid." );
+		}
+
+		this.channel = new RandomAccessFile( file, "r" ).getChannel();
+		this.speed = speed;
+		this.loop = loop;
+
+		this.worker = new Thread( this, "NMEA replay of " + file.getName() );
+		this.worker.setDaemon( true );
+		this.worker.start();
+	}
+
+	/**
+	 * Stops playback and closes the file.
+	 */
+	public void close ()
+		throws IOException
+	{
+		closed = true;
+
+		synchronized ( lock )
+		{
+			lock.notifyAll();
+		}
+
+		channel.close();
+	}
+
+	/**
+	 * Replays the file, once or endlessly, raising events to the listener.
+	 *
+	 * @see Runnable#run()
+	 */
+	public void run ()
+	{
+		try
+		{
+			do
+			{
+				replay();
+			}
+			while ( loop && (closed == false) );
+
+			if ( closed == false )
+			{
+				// The recording has ended.
+				raiseStateChangeEvent( OUT_OF_SERVICE );
+			}
+		}
+		catch (IOException e)
+		{
+			if ( closed == false )
+			{
+				System.out.println( e.getMessage() );
+				raiseStateChangeEvent( OUT_OF_SERVICE );
+			}
+		}
+	}
+
+	/**
+	 * Makes one pass through the file.
+	 *
+	 * @throws IOException if the file cannot be read.
+	 */
+	private void replay ()
+		throws IOException
+	{
+		long size = channel.size();
+		long position = 0;
+
+		record.reset();
+		lastEpochTime = -1;
+		dayOffset = 0;
+
+		while ( (position < size) && (closed == false) )
+		{
+			long length = Math.min( WINDOW_SIZE, size - position );
+			MappedByteBuffer window = channel.map( FileChannel.MapMode.READ_ONLY, position, length );
+			int limit = (int)length;
+			int lineStart = 0;
+
+			for ( int i = 0; (i < limit) && (closed == false); i++ )
+			{
+				if ( window.get(i) == '\n' )
+				{
+					sentence( window, lineStart, i + 1 );
+					lineStart = i + 1;
+				}
+			}
+
+			if ( position + length == size )
+			{
+				// The last line of the file may not be terminated.
+				if ( lineStart < limit )
+				{
+					sentence( window, lineStart, limit );
+				}
+
+				position = size;
+			}
+			else if ( lineStart == 0 )
+			{
+				// A whole window without a line break is not NMEA.
+				position += length;
+			}
+			else
+			{
+				// Map the next window from the start of the unfinished line.
+				position += lineStart;
+			}
+		}
+
+		// The last epoch is complete when the file ends.
+		if ( (record.sentences != 0) && (closed == false) )
+		{
+			epoch( record );
+		}
+	}
+
+	/**
+	 * Parses one line of the file.  When it starts a new epoch the previous
+	 * one is raised as a location event.
+	 *
+	 * @param window is the mapped part of the file holding the line.
+	 * @param start is the index of the line's first byte.
+	 * @param end is the index just past the line's last byte.
+	 */
+	private void sentence (MappedByteBuffer window, int start, int end)
+	{
+		int length = end - start;
+
+		if ( length > MAX_SENTENCE_LENGTH )
+		{
+			return;
+		}
+
+		for ( int i = 0; i < length; i++ )
+		{
+			line[i] = window.get( start + i );
+		}
+
+		previous.copy( record );
+		int type = parser.parse( line, 0, length, record );
+
+		if ( (type == GPSRecord.GGA) || (type == GPSRecord.RMC) )
+		{
+			// Sentences with a different UTC time belong to the next epoch.
+			if ( (previous.sentences != 0) && (previous.secondsSinceMidnight >= 0) &&
+				 ((previous.secondsSinceMidnight != record.secondsSinceMidnight) ||
+				  (previous.milliseconds != record.milliseconds)) )
+			{
+				epoch( previous );
+
+				// Start the next epoch from only this sentence so values of
+				// the last epoch's sentences are not carried into it.
+				record.reset();
+				parser.parse( line, 0, length, record );
+			}
+		}
+	}
+
+	/**
+	 * Waits until a completed epoch is due and then raises it.
+	 *
+	 * @param epoch holds the values of all the sentences in the epoch.
+	 */
+	private void epoch (GPSRecord epoch)
+	{
+		if ( epoch.secondsSinceMidnight >= 0 )
+		{
+			long time = epoch.secondsSinceMidnight * 1000L + epoch.milliseconds + dayOffset;
+
+			if ( (lastEpochTime >= 0) && (time < lastEpochTime - MILLIS_PER_DAY / 2) )
+			{
+				// The recording crossed midnight.
+				dayOffset += MILLIS_PER_DAY;
+				time += MILLIS_PER_DAY;
+			}
+
+			long elapsed = time - lastEpochTime;
+
+			if ( (lastEpochTime < 0) || (elapsed < 0) || (elapsed > MAX_GAP) )
+			{
+				// Start pacing again from here.
+				elapsed = 0;
+				wallStart = System.currentTimeMillis();
+				replayStart = replayTime;
+			}
+
+			lastEpochTime = time;
+			replayTime += elapsed;
+			pace();
+		}
+
+		Location location;
+
+		try
+		{
+			location = newLocation( epoch, origin + replayTime );
+		}
+		catch (IllegalArgumentException e)
+		{
+			// The recording has coordinates out of range.  Skip the fix.
+			return;
+		}
+
+		if ( location.isValid() )
+		{
+			if ( getState() != AVAILABLE )
+			{
+				raiseStateChangeEvent( AVAILABLE );
+			}
+		}
+		else if ( getState() == AVAILABLE )
+		{
+			raiseStateChangeEvent( TEMPORARILY_UNAVAILABLE );
+		}
+
+		raiseLocationEvent( location );
+	}
+
+	/**
+	 * Blocks until the wall clock catches up with <code>replayTime</code>
+	 * at the playback speed.
+	 */
+	private void pace ()
+	{
+		if ( speed == AS_FAST_AS_POSSIBLE )
+		{
+			return;
+		}
+
+		long due = wallStart + (long)((replayTime - replayStart) / speed);
+
+		synchronized ( lock )
+		{
+			long wait = due - System.currentTimeMillis();
+
+			while ( (wait > 0) && (closed == false) )
+			{
+				try
+				{
+					lock.wait( wait );
+				}
+				catch (InterruptedException e)
+				{
+					return;
+				}
+
+				wait = due - System.currentTimeMillis();
+			}
+		}
+	}
+
+	/**
+	 * Measures the listener's interval in recording time.
+	 *
+	 * @see AbstractLocationProvider#currentTimeMillis()
+	 */
+	protected long currentTimeMillis ()
+	{
+		return origin + replayTime;
+	}
+
+	/**
+	 * @return The name of this location provider.
+	 */
+	public String toString ()
+	{
+		return "NMEA replay";
+	}
+}
@@ -0,0 +1,156 @@
+package javax.microedition.location;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Registers an <code>NMEAReplayLocationProvider</code> so it can be chosen by
+ * <code>LocationProvider.getInstance</code>.  Name this class in the
+ * <code>locationsource.providers</code> system property and set:
+ * <ul>
+ *  <li><code>locationsource.replay.file</code> to the NMEA recording,
+ *  <li><code>locationsource.replay.speed</code> to the playback speed, 1.0
+ *      by default and 0 for as fast as possible, and
+ *  <li><code>locationsource.replay.loop</code> to <code>true</code> to
+ *      replay the recording endlessly.
+ * </ul>
+ * The recording is not opened until the provider is chosen.
+ *
+ * @see LocationProviderRegistry
+ */
+public class NMEAReplayLocationProviderFactory
+	extends LocationProviderFactory
+{
+	/**
+	 * The NMEA recording to play back.
+	 */
+	private final File file;
+
+	/**
+	 * How many times faster than real time to replay.
+	 */
+	private final double speed;
+
+	/**
+	 * Whether the recording is replayed endlessly.
+	 */
+	private final boolean loop;
+
+	/**
+	 * Constructs a factory configured by system properties.
+	 *
+	 * @throws IllegalArgumentException if <code>locationsource.replay.file</code>
+	 *  is not set.
+	 */
+	public NMEAReplayLocationProviderFactory ()
+	{
+		this( fileProperty(),
+			Double.parseDouble( System.getProperty("locationsource.replay.speed", "1.0") ),
+			Boolean.getBoolean( "locationsource.replay.loop" ) );
+	}
+
+	/**
+	 * Constructs a factory for a recording.
+	 *
+	 * @param file is the NMEA recording.
+	 * @param speed is how many times faster than real time to play back or
+	 *  <code>NMEAReplayLocationProvider.AS_FAST_AS_POSSIBLE</code>.
+	 * @param loop when <code>true</code> the recording is replayed endlessly.
+	 */
+	public NMEAReplayLocationProviderFactory (File file, double speed, boolean loop)
+	{
+		this.file = file;
+		this.speed = speed;
+		this.loop = loop;
+	}
+
+	/**
+	 * @return The recording named by the <code>locationsource.replay.file</code>
+	 *  system property.
+	 */
+	private static File fileProperty ()
+	{
+		String name = System.getProperty( "locationsource.replay.file" );
+
+		if ( name == null )
+		{
+			throw new IllegalArgumentException( "locationsource.replay.file is not set." );
+		}
+
+		return new File( name );
+	}
+
+	/**
+	 * @see javax.microedition.location.LocationProviderFactory#getHorizontalAccuracy()
+	 */
+	public int getHorizontalAccuracy ()
+	{
+		return 10;
+	}
+
+	/**
+	 * @see javax.microedition.location.LocationProviderFactory#getVerticalAccuracy()
+	 */
+	public int getVerticalAccuracy ()
+	{
+		return 20;
+	}
+
+	/**
+	 * @see javax.microedition.location.LocationProviderFactory#getResponseTime()
+	 */
+	public int getResponseTime ()
+	{
+		return 1000;
+	}
+
+	/**
+	 * Reading a file uses no receiver.
+	 *
+	 * @see javax.microedition.location.LocationProviderFactory#getPowerConsumption()
+	 */
+	public int getPowerConsumption ()
+	{
+		return Criteria.POWER_USAGE_LOW;
+	}
+
+	/**
+	 * @see javax.microedition.location.LocationProviderFactory#isCostIncurred()
+	 */
+	public boolean isCostIncurred ()
+	{
+		return false;
+	}
+
+	/**
+	 * @see javax.microedition.location.LocationProviderFactory#isSpeedAndCourseSupported()
+	 */
+	public boolean isSpeedAndCourseSupported ()
+	{
+		return true;
+	}
+
+	/**
+	 * @see javax.microedition.location.LocationProviderFactory#isAltitudeSupported()
+	 */
+	public boolean isAltitudeSupported ()
+	{
+		return true;
+	}
+
+	/**
+	 * @see javax.microedition.location.LocationProviderFactory#createProvider()
+	 */
+	protected LocationProvider createProvider ()
+		throws LocationException
+	{
+		try
+		{
+			return new NMEAReplayLocationProvider( file, speed, loop );
+		}
+		catch (IOException e)
+		{
+			throw new LocationException( "Could not open " + file + ": " + e.getMessage() );
+		}
+	}
+}
@@ -0,0 +1,297 @@
+package javax.microedition.location;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Runs the <code>CoordinatesBatch</code> calculations across all the
+ * processors of a fork-join pool.  The arrays are split into ranges of at
+ * least <code>MIN_SPLIT</code> points and each range is handed to the
+ * sequential kernel, so the results are identical to <code>CoordinatesBatch</code>.
+ * Batches smaller than <code>PARALLEL_THRESHOLD</code> are not split at all.
+ * <p>
+ * The common fork-join pool is used unless a pool is passed in.
+ *
+ * @see CoordinatesBatch
+ */
+public final class ParallelCoordinatesBatch
+{
+	/**
+	 * Batches with fewer points than this are computed on the calling thread.
+	 */
+	public static final int PARALLEL_THRESHOLD = 32 * 1024;
+
+	/**
+	 * The fewest points computed by a single task.
+	 */
+	private static final int MIN_SPLIT = 8 * 1024;
+
+	/**
+	 * Task kind for one origin to many distances.
+	 */
+	private static final int DISTANCES_FROM_ORIGIN = 0;
+
+	/**
+	 * Task kind for pairwise distances.
+	 */
+	private static final int DISTANCES_BETWEEN_PAIRS = 1;
+
+	/**
+	 * Task kind for one origin to many azimuths.
+	 */
+	private static final int AZIMUTHS_FROM_ORIGIN = 2;
+
+	/**
+	 * Task kind for pairwise azimuths.
+	 */
+	private static final int AZIMUTHS_BETWEEN_PAIRS = 3;
+
+	/**
+	 * This class is not instantiated.
+	 */
+	private ParallelCoordinatesBatch ()
+	{
+	}
+
+	/**
+	 * @see CoordinatesBatch#distances(double, double, double[], double[], float[], int, int)
+	 */
+	public static void distances (double latitude, double longitude,
+			double[] latitudes, double[] longitudes, float[] results, int offset, int length)
+	{
+		distances( ForkJoinPool.commonPool(), latitude, longitude, latitudes, longitudes, results, offset, length );
+	}
+
+	/**
+	 * Same as <code>distances</code> but uses <code>pool</code>.
+	 *
+	 * @see CoordinatesBatch#distances(double, double, double[], double[], float[], int, int)
+	 */
+	public static void distances (ForkJoinPool pool, double latitude, double longitude,
+			double[] latitudes, double[] longitudes, float[] results, int offset, int length)
+	{
+		distances( pool, latitude, longitude, latitudes, longitudes, results, offset, length, CoordinatesBatch.MATH_PRECISE );
+	}
+
+	/**
+	 * Same as <code>distances</code> but uses <code>pool</code> and calculates
+	 * with the given math mode.
+	 *
+	 * @see CoordinatesBatch#distances(double, double, double[], double[], float[], int, int, int)
+	 */
+	public static void distances (ForkJoinPool pool, double latitude, double longitude,
+			double[] latitudes, double[] longitudes, float[] results, int offset, int length, int mathMode)
+	{
+		// Reject a bad mode before any work is split up.
+		CoordinatesBatch.isFast( mathMode );
+
+		if ( length < PARALLEL_THRESHOLD )
+		{
+			CoordinatesBatch.distances( latitude, longitude, latitudes, longitudes, results, offset, length, mathMode );
+		}
+		else
+		{
+			pool.invoke( new Batch(DISTANCES_FROM_ORIGIN, latitude, longitude, null, null, latitudes, longitudes, results, offset, length, mathMode) );
+		}
+	}
+
+	/**
+	 * @see CoordinatesBatch#distances(double[], double[], double[], double[], float[], int, int)
+	 */
+	public static void distances (double[] fromLatitudes, double[] fromLongitudes,
+			double[] toLatitudes, double[] toLongitudes, float[] results, int offset, int length)
+	{
+		distances( ForkJoinPool.commonPool(), fromLatitudes, fromLongitudes, toLatitudes, toLongitudes, results, offset, length );
+	}
+
+	/**
+	 * Same as <code>distances</code> but uses <code>pool</code>.
+	 *
+	 * @see CoordinatesBatch#distances(double[], double[], double[], double[], float[], int, int)
+	 */
+	public static void distances (ForkJoinPool pool, double[] fromLatitudes, double[] fromLongitudes,
+			double[] toLatitudes, double[] toLongitudes, float[] results, int offset, int length)
+	{
+		distances( pool, fromLatitudes, fromLongitudes, toLatitudes, toLongitudes, results, offset, length, CoordinatesBatch.MATH_PRECISE );
+	}
+
+	/**
+	 * Same as <code>distances</code> but uses <code>pool</code> and calculates
+	 * with the given math mode.
+	 *
+	 * @see CoordinatesBatch#distances(double[], double[], double[], double[], float[], int, int, int)
+	 */
+	public static void distances (ForkJoinPool pool, double[] fromLatitudes, double[] fromLongitudes,
+			double[] toLatitudes, double[] toLongitudes, float[] results, int offset, int length, int mathMode)
+	{
+		// Reject a bad mode before any work is split up.
+		CoordinatesBatch.isFast( mathMode );
+
+		if ( length < PARALLEL_THRESHOLD )
+		{
+			CoordinatesBatch.distances( fromLatitudes, fromLongitudes, toLatitudes, toLongitudes, results, offset, length, mathMode );
+		}
+		else
+		{
+			pool.invoke( new Batch(DISTANCES_BETWEEN_PAIRS, 0.0, 0.0, fromLatitudes, fromLongitudes, toLatitudes, toLongitudes, results, offset, length, mathMode) );
+		}
+	}
+
+	/**
+	 * @see CoordinatesBatch#azimuths(double, double, double[], double[], float[], int, int)
+	 */
+	public static void azimuths (double latitude, double longitude,
+			double[] latitudes, double[] longitudes, float[] results, int offset, int length)
+	{
+		azimuths( ForkJoinPool.commonPool(), latitude, longitude, latitudes, longitudes, results, offset, length );
+	}
+
+	/**
+	 * Same as <code>azimuths</code> but uses <code>pool</code>.
+	 *
+	 * @see CoordinatesBatch#azimuths(double, double, double[], double[], float[], int, int)
+	 */
+	public static void azimuths (ForkJoinPool pool, double latitude, double longitude,
+			double[] latitudes, double[] longitudes, float[] results, int offset, int length)
+	{
+		azimuths( pool, latitude, longitude, latitudes, longitudes, results, offset, length, CoordinatesBatch.MATH_PRECISE );
+	}
+
+	/**
+	 * Same as <code>azimuths</code> but uses <code>pool</code> and calculates
+	 * with the given math mode.
+	 *
+	 * @see CoordinatesBatch#azimuths(double, double, double[], double[], float[], int, int, int)
+	 */
+	public static void azimuths (ForkJoinPool pool, double latitude, double longitude,
+			double[] latitudes, double[] longitudes, float[] results, int offset, int length, int mathMode)
+	{
+		// Reject a bad mode before any work is split up.
+		CoordinatesBatch.isFast( mathMode );
+
+		if ( length < PARALLEL_THRESHOLD )
+		{
+			CoordinatesBatch.azimuths( latitude, longitude, latitudes, longitudes, results, offset, length, mathMode );
+		}
+		else
+		{
+			pool.invoke( new Batch(AZIMUTHS_FROM_ORIGIN, latitude, longitude, null, null, latitudes, longitudes, results, offset, length, mathMode) );
+		}
+	}
+
+	/**
+	 * @see CoordinatesBatch#azimuths(double[], double[], double[], double[], float[], int, int)
+	 */
+	public static void azimuths (double[] fromLatitudes, double[] fromLongitudes,
+			double[] toLatitudes, double[] toLongitudes, float[] results, int offset, int length)
+	{
+		azimuths( ForkJoinPool.commonPool(), fromLatitudes, fromLongitudes, toLatitudes, toLongitudes, results, offset, length );
+	}
+
+	/**
+	 * Same as <code>azimuths</code> but uses <code>pool</code>.
+	 *
+	 * @see CoordinatesBatch#azimuths(double[], double[], double[], double[], float[], int, int)
+	 */
+	public static void azimuths (ForkJoinPool pool, double[] fromLatitudes, double[] fromLongitudes,
+			double[] toLatitudes, double[] toLongitudes, float[] results, int offset, int length)
+	{
+		azimuths( pool, fromLatitudes, fromLongitudes, toLatitudes, toLongitudes, results, offset, length, CoordinatesBatch.MATH_PRECISE );
+	}
+
+	/**
+	 * Same as <code>azimuths</code> but uses <code>pool</code> and calculates
+	 * with the given math mode.
+	 *
+	 * @see CoordinatesBatch#azimuths(double[], double[], double[], double[], float[], int, int, int)
+	 */
+	public static void azimuths (ForkJoinPool pool, double[] fromLatitudes, double[] fromLongitudes,
+			double[] toLatitudes, double[] toLongitudes, float[] results, int offset, int length, int mathMode)
+	{
+		// Reject a bad mode before any work is split up.
+		CoordinatesBatch.isFast( mathMode );
+
+		if ( length < PARALLEL_THRESHOLD )
+		{
+			CoordinatesBatch.azimuths( fromLatitudes, fromLongitudes, toLatitudes, toLongitudes, results, offset, length, mathMode );
+		}
+		else
+		{
+			pool.invoke( new Batch(AZIMUTHS_BETWEEN_PAIRS, 0.0, 0.0, fromLatitudes, fromLongitudes, toLatitudes, toLongitudes, results, offset, length, mathMode) );
+		}
+	}
+
+	/**
+	 * Splits a range of a batch in half until it is small enough to compute
+	 * with <code>CoordinatesBatch</code>.
+	 */
+	private static final class Batch
+		extends RecursiveAction
+	{
+		private final int kind;
+		private final double latitude;
+		private final double longitude;
+		private final double[] fromLatitudes;
+		private final double[] fromLongitudes;
+		private final double[] toLatitudes;
+		private final double[] toLongitudes;
+		private final float[] results;
+		private final int offset;
+		private final int length;
+		private final int mathMode;
+
+		Batch (int kind, double latitude, double longitude,
+				double[] fromLatitudes, double[] fromLongitudes,
+				double[] toLatitudes, double[] toLongitudes,
+				float[] results, int offset, int length, int mathMode)
+		{
+			this.kind = kind;
+			this.latitude = latitude;
+			this.longitude = longitude;
+			this.fromLatitudes = fromLatitudes;
+			this.fromLongitudes = fromLongitudes;
+			this.toLatitudes = toLatitudes;
+			this.toLongitudes = toLongitudes;
+			this.results = results;
+			this.offset = offset;
+			this.length = length;
+			this.mathMode = mathMode;
+		}
+
+		/**
+		 * @see java.util.concurrent.RecursiveAction#compute()
+		 */
+		protected void compute ()
+		{
+			if ( length < 2 * MIN_SPLIT )
+			{
+				switch ( kind )
+				{
+				case DISTANCES_FROM_ORIGIN:
+					CoordinatesBatch.distances( latitude, longitude, toLatitudes, toLongitudes, results, offset, length, mathMode );
+					break;
+
+				case DISTANCES_BETWEEN_PAIRS:
+					CoordinatesBatch.distances( fromLatitudes, fromLongitudes, toLatitudes, toLongitudes, results, offset, length, mathMode );
+					break;
+
+				case AZIMUTHS_FROM_ORIGIN:
+					CoordinatesBatch.azimuths( latitude, longitude, toLatitudes, toLongitudes, results, offset, length, mathMode );
+					break;
+
+				default:
+					CoordinatesBatch.azimuths( fromLatitudes, fromLongitudes, toLatitudes, toLongitudes, results, offset, length, mathMode );
+					break;
+				}
+			}
+			else
+			{
+				int half = length / 2;
+
+				invokeAll(
+					new Batch(kind, latitude, longitude, fromLatitudes, fromLongitudes, toLatitudes, toLongitudes, results, offset, half, mathMode),
+					new Batch(kind, latitude, longitude, fromLatitudes, fromLongitudes, toLatitudes, toLongitudes, results, offset + half, length - half, mathMode) );
+			}
+		}
+	}
+}
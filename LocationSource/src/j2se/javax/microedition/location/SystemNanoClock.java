@@ -0,0 +1,18 @@
+package javax.microedition.location;
+
+/**
+ * The J2SE <code>MonotonicClock</code>.
+ *
+ * @see MonotonicClock
+ */
+final class SystemNanoClock
+	extends MonotonicClock
+{
+	/**
+	 * @see javax.microedition.location.MonotonicClock#now()
+	 */
+	long now ()
+	{
+		return System.nanoTime();
+	}
+}
@@ -0,0 +1,145 @@
+package javax.microedition.location;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+
+/**
+ * Decodes the locations of a track log one at a time.  The format is
+ * described by <code>TrackReader</code>.  Each location's fields are
+ * differences from the previous location's, so a decoder is kept for each
+ * log or stream being read.
+ * <p>
+ * A location cut short leaves the buffer and the decoder as they were, so
+ * decoding can be tried again once more bytes have arrived.  The decoded
+ * values are left in the fields, like <code>GPSRecord</code>, so nothing
+ * is created per location.
+ *
+ * @see TrackReader
+ */
+final class TrackDecoder
+{
+	/**
+	 * <code>true</code> if the last location decoded was valid.  Only the
+	 * timestamp is set for invalid locations.
+	 */
+	boolean valid;
+
+	/**
+	 * The values of the last location decoded.  Fields it did not have are
+	 * <code>Float.NaN</code>.
+	 */
+	long timestamp;
+	double latitude;
+	double longitude;
+	float altitude;
+	float speed;
+	float course;
+	float horizontalAccuracy;
+	float verticalAccuracy;
+
+	/**
+	 * The fields of the previous location, in their stored units.
+	 */
+	private long storedTimestamp;
+	private int storedLatitude;
+	private int storedLongitude;
+	private int storedAltitude;
+	private int storedSpeed;
+	private int storedCourse;
+	private int storedHorizontalAccuracy;
+	private int storedVerticalAccuracy;
+
+	/**
+	 * Decodes the next location.
+	 *
+	 * @param in holds the encoded locations from its position.
+	 * @return <code>true</code> if a location was decoded; <code>false</code>
+	 *  if <code>in</code> ends part way through one, in which case its
+	 *  position is not changed.
+	 */
+	boolean decode (ByteBuffer in)
+	{
+		int start = in.position();
+
+		try
+		{
+			int flags = in.get();
+			boolean reset = (flags & TrackReader.RESET) != 0;
+
+			long timestamp = (reset ? 0 : storedTimestamp) + TrackReader.readLong( in );
+
+			if ( (flags & TrackReader.VALID) == 0 )
+			{
+				if ( reset )
+				{
+					storedLatitude = storedLongitude = storedAltitude = storedSpeed = storedCourse = 0;
+					storedHorizontalAccuracy = storedVerticalAccuracy = 0;
+				}
+
+				storedTimestamp = timestamp;
+				this.timestamp = timestamp;
+				this.valid = false;
+				return true;
+			}
+
+			int latitude = (reset ? 0 : storedLatitude) + TrackReader.readInt( in );
+			int longitude = (reset ? 0 : storedLongitude) + TrackReader.readInt( in );
+			int altitude = (reset ? 0 : storedAltitude);
+			int speed = (reset ? 0 : storedSpeed);
+			int course = (reset ? 0 : storedCourse);
+			int horizontalAccuracy = (reset ? 0 : storedHorizontalAccuracy);
+			int verticalAccuracy = (reset ? 0 : storedVerticalAccuracy);
+
+			if ( (flags & TrackReader.ALTITUDE) != 0 )
+			{
+				altitude += TrackReader.readInt( in );
+			}
+
+			if ( (flags & TrackReader.SPEED) != 0 )
+			{
+				speed += TrackReader.readInt( in );
+			}
+
+			if ( (flags & TrackReader.COURSE) != 0 )
+			{
+				course += TrackReader.readInt( in );
+			}
+
+			if ( (flags & TrackReader.HORIZONTAL_ACCURACY) != 0 )
+			{
+				horizontalAccuracy += TrackReader.readInt( in );
+			}
+
+			if ( (flags & TrackReader.VERTICAL_ACCURACY) != 0 )
+			{
+				verticalAccuracy += TrackReader.readInt( in );
+			}
+
+			// The whole location is here.
+			storedTimestamp = timestamp;
+			storedLatitude = latitude;
+			storedLongitude = longitude;
+			storedAltitude = altitude;
+			storedSpeed = speed;
+			storedCourse = course;
+			storedHorizontalAccuracy = horizontalAccuracy;
+			storedVerticalAccuracy = verticalAccuracy;
+
+			this.valid = true;
+			this.timestamp = timestamp;
+			this.latitude = latitude / TrackReader.UNITS_PER_DEGREE;
+			this.longitude = longitude / TrackReader.UNITS_PER_DEGREE;
+			this.altitude = ((flags & TrackReader.ALTITUDE) != 0) ? altitude / 10.0f : Float.NaN;
+			this.speed = ((flags & TrackReader.SPEED) != 0) ? speed / 100.0f : Float.NaN;
+			this.course = ((flags & TrackReader.COURSE) != 0) ? course / 100.0f : Float.NaN;
+			this.horizontalAccuracy = ((flags & TrackReader.HORIZONTAL_ACCURACY) != 0) ? horizontalAccuracy / 10.0f : Float.NaN;
+			this.verticalAccuracy = ((flags & TrackReader.VERTICAL_ACCURACY) != 0) ? verticalAccuracy / 10.0f : Float.NaN;
+			return true;
+		}
+		catch (BufferUnderflowException e)
+		{
+			in.position( start );
+			return false;
+		}
+	}
+}
@@ -0,0 +1,254 @@
+package javax.microedition.location;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Reads the <code>Location</code>s written by a <code>TrackRecorder</code>.
+ * <p>
+ * A track log starts with the four bytes "LTRK" and a version byte.  Each
+ * location follows as a flags byte and then its fields, each the difference
+ * from the same field of the previous location that had it, zigzag encoded
+ * as a variable length integer of 7 bits per byte.  The fields, in order
+ * and with the units they are stored in, are:
+ * <ul>
+ *  <li>timestamp, milliseconds (always present),
+ *  <li>latitude and longitude, 10<sup>-7</sup> degrees,
+ *  <li>altitude, decimeters,
+ *  <li>speed, centimeters per second,
+ *  <li>course, hundredths of a degree,
+ *  <li>horizontal and vertical accuracy, decimeters.
+ * </ul>
+ * The flags say if the location is valid and which of the fields other than
+ * the timestamp are present; a field that is <code>Float.NaN</code> is left
+ * out.  Invalid locations have only a timestamp.  The <code>RESET</code> flag
+ * marks a location whose fields are differences from zero; recorders set it
+ * on the first location they write so a log can be appended to without
+ * reading it.
+ * <p>
+ * A location cut short at the end of the file, as when the recording
+ * process died, ends the log.
+ *
+ * @see TrackRecorder
+ */
+public class TrackReader
+	implements Closeable
+{
+	/**
+	 * The bytes every track log starts with.
+	 */
+	static final byte[] MAGIC = { 'L', 'T', 'R', 'K', 1 };
+
+	/**
+	 * Flags of each location.
+	 */
+	static final int VALID = 0x01;
+	static final int ALTITUDE = 0x02;
+	static final int SPEED = 0x04;
+	static final int COURSE = 0x08;
+	static final int HORIZONTAL_ACCURACY = 0x10;
+	static final int VERTICAL_ACCURACY = 0x20;
+	static final int RESET = 0x40;
+
+	/**
+	 * Converts degrees to the units latitude and longitude are stored in.
+	 */
+	static final double UNITS_PER_DEGREE = 1e7;
+
+	/**
+	 * The most bytes one location takes: the flags and ten bytes for each of
+	 * the eight fields.
+	 */
+	static final int MAX_RECORD_SIZE = 1 + 8 * 10;
+
+	/**
+	 * The number of bytes read from the file at a time.
+	 */
+	private static final int BUFFER_SIZE = 64 * 1024;
+
+	/**
+	 * The log.
+	 */
+	private final FileChannel channel;
+
+	/**
+	 * Bytes read from the file not yet decoded.
+	 */
+	private final ByteBuffer buffer = ByteBuffer.allocateDirect( BUFFER_SIZE );
+
+	/**
+	 * The file position of the first byte of <code>buffer</code>.
+	 */
+	private long bufferPosition;
+
+	/**
+	 * Set when the whole file has been read into <code>buffer</code>.
+	 */
+	private boolean endOfFile;
+
+	/**
+	 * Decodes the locations, keeping the fields of the previous one.
+	 */
+	private final TrackDecoder decoder = new TrackDecoder();
+
+	/**
+	 * Opens a track log.
+	 *
+	 * @param file is the log written by a <code>TrackRecorder</code>.
+	 * @throws IOException if it cannot be read or is not a track log.
+	 */
+	public TrackReader (File file)
+		throws IOException
+	{
+		channel = FileChannel.open( file.toPath(), StandardOpenOption.READ );
+		buffer.flip();
+
+		try
+		{
+			fill();
+
+			for ( int i = 0; i < MAGIC.length; i++ )
+			{
+				if ( (buffer.remaining() == 0) || (buffer.get() != MAGIC[i]) )
+				{
+					throw new IOException( file + " is not a track log." );
+				}
+			}
+		}
+		catch (IOException e)
+		{
+			channel.close();
+			throw e;
+		}
+	}
+
+	/**
+	 * Reads the next location.
+	 *
+	 * @return The location or <code>null</code> at the end of the log.
+	 * @throws IOException if the file cannot be read.
+	 */
+	public Location read ()
+		throws IOException
+	{
+		fill();
+
+		if ( buffer.hasRemaining() == false )
+		{
+			return null;
+		}
+
+		int start = buffer.position();
+
+		if ( decoder.decode(buffer) == false )
+		{
+			// The last location was cut short.
+			buffer.limit( start );
+			return null;
+		}
+
+		if ( decoder.valid == false )
+		{
+			return new LocationImpl( decoder.timestamp );
+		}
+
+		return new LocationImpl( decoder.latitude, decoder.longitude,
+			decoder.altitude, decoder.horizontalAccuracy, decoder.verticalAccuracy,
+			decoder.speed, decoder.course, decoder.timestamp, -1, 0 );
+	}
+
+	/**
+	 * Returns the file position after the last location read.  When
+	 * <code>read</code> has returned <code>null</code> this is the end of the
+	 * last whole location in the log.
+	 *
+	 * @return The file position in bytes.
+	 */
+	public long position ()
+	{
+		return bufferPosition + buffer.position();
+	}
+
+	/**
+	 * @see java.io.Closeable#close()
+	 */
+	public void close ()
+		throws IOException
+	{
+		channel.close();
+	}
+
+	/**
+	 * Reads more of the file when fewer than <code>MAX_RECORD_SIZE</code>
+	 * bytes are left in the buffer.
+	 */
+	private void fill ()
+		throws IOException
+	{
+		if ( (buffer.remaining() < MAX_RECORD_SIZE) && (endOfFile == false) )
+		{
+			bufferPosition += buffer.position();
+			buffer.compact();
+
+			while ( buffer.hasRemaining() )
+			{
+				if ( channel.read(buffer) < 0 )
+				{
+					endOfFile = true;
+					break;
+				}
+			}
+
+			buffer.flip();
+		}
+	}
+
+	/**
+	 * Reads a zigzag encoded variable length <code>long</code>.
+	 */
+	static long readLong (ByteBuffer in)
+	{
+		long value = 0;
+		int shift = 0;
+		int b;
+
+		do
+		{
+			b = in.get();
+			value |= (long)(b & 0x7F) << shift;
+			shift += 7;
+		}
+		while ( (b & 0x80) != 0 );
+
+		return (value >>> 1) ^ -(value & 1);
+	}
+
+	/**
+	 * Reads a zigzag encoded variable length <code>int</code>.
+	 */
+	static int readInt (ByteBuffer in)
+	{
+		return (int)readLong( in );
+	}
+
+	/**
+	 * Writes a <code>long</code> zigzag encoded with 7 bits per byte, so
+	 * small positive and negative numbers both take few bytes.
+	 */
+	static void writeLong (ByteBuffer out, long value)
+	{
+		long zigzag = (value << 1) ^ (value >> 63);
+
+		while ( (zigzag & ~0x7FL) != 0 )
+		{
+			out.put( (byte)((zigzag & 0x7F) | 0x80) );
+			zigzag >>>= 7;
+		}
+
+		out.put( (byte)zigzag );
+	}
+}
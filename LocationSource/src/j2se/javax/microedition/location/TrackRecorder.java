@@ -0,0 +1,318 @@
+package javax.microedition.location;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.Flushable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Records the <code>Location</code>s given to a <code>LocationListener</code>
+ * in an append-only track log.  Register it with a provider directly or
+ * construct it around the application's listener, which it passes every
+ * event on to.
+ * <p>
+ * Each field is stored as the difference from the previous location in a
+ * variable length integer, so a typical fix takes 10 to 15 bytes.  The format
+ * and the resolution each field keeps are described by <code>TrackReader</code>.
+ * <p>
+ * Locations are gathered in a direct buffer and written through a
+ * <code>FileChannel</code> when it fills, on <code>flush</code>, and on
+ * <code>close</code>.  Locations still in the buffer are lost if the process
+ * dies.  An existing log is appended to; any location cut short at its end is
+ * removed first.
+ *
+ * @see TrackReader
+ */
+public class TrackRecorder
+	implements LocationListener, Closeable, Flushable
+{
+	/**
+	 * The number of bytes gathered before they are written.
+	 */
+	private static final int BUFFER_SIZE = 64 * 1024;
+
+	/**
+	 * The log.
+	 */
+	private final FileChannel channel;
+
+	/**
+	 * The application's listener or <code>null</code>.
+	 */
+	private final LocationListener listener;
+
+	/**
+	 * Locations encoded but not yet written.
+	 */
+	private final ByteBuffer buffer = ByteBuffer.allocateDirect( BUFFER_SIZE );
+
+	/**
+	 * <code>true</code> until the first location is written.  It is written
+	 * with the <code>RESET</code> flag.
+	 */
+	private boolean reset = true;
+
+	/**
+	 * The fields of the previous location, in their stored units.
+	 */
+	private long timestamp;
+	private int latitude;
+	private int longitude;
+	private int altitude;
+	private int speed;
+	private int course;
+	private int horizontalAccuracy;
+	private int verticalAccuracy;
+
+	/**
+	 * Records to a track log.
+	 *
+	 * @param file is the log.  It is created if it does not exist.
+	 * @throws IOException if the file cannot be opened or is not a track log.
+	 */
+	public TrackRecorder (File file)
+		throws IOException
+	{
+		this( file, null );
+	}
+
+	/**
+	 * Records to a track log and passes the events on.
+	 *
+	 * @param file is the log.  It is created if it does not exist.
+	 * @param listener is the application's listener or <code>null</code>.
+	 * @throws IOException if the file cannot be opened or is not a track log.
+	 */
+	public TrackRecorder (File file, LocationListener listener)
+		throws IOException
+	{
+		this.listener = listener;
+
+		long end = 0;
+
+		if ( file.length() > 0 )
+		{
+			// Find the end of the last whole location.
+			TrackReader reader = new TrackReader( file );
+
+			try
+			{
+				while ( reader.read() != null )
+				{
+				}
+
+				end = reader.position();
+			}
+			finally
+			{
+				reader.close();
+			}
+		}
+
+		channel = FileChannel.open( file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE );
+
+		if ( end == 0 )
+		{
+			channel.truncate( 0 );
+			buffer.put( TrackReader.MAGIC );
+		}
+		else
+		{
+			channel.truncate( end );
+			channel.position( end );
+		}
+	}
+
+	/**
+	 * Records the location and passes it on to the application's listener.
+	 *
+	 * @see javax.microedition.location.LocationListener#locationUpdated(javax.microedition.location.LocationProvider, javax.microedition.location.Location)
+	 */
+	public void locationUpdated (LocationProvider provider, Location location)
+	{
+		try
+		{
+			record( location );
+		}
+		catch (IOException e)
+		{
+			System.out.println( e.getMessage() );
+		}
+
+		if ( listener != null )
+		{
+			listener.locationUpdated( provider, location );
+		}
+	}
+
+	/**
+	 * Passes the state change on to the application's listener.
+	 *
+	 * @see javax.microedition.location.LocationListener#providerStateChanged(javax.microedition.location.LocationProvider, int)
+	 */
+	public void providerStateChanged (LocationProvider provider, int newState)
+	{
+		if ( listener != null )
+		{
+			listener.providerStateChanged( provider, newState );
+		}
+	}
+
+	/**
+	 * Adds a location to the log.
+	 *
+	 * @param location is the location to record.
+	 * @throws IOException if the buffer is full and cannot be written.
+	 */
+	public synchronized void record (Location location)
+		throws IOException
+	{
+		if ( buffer.remaining() < TrackReader.MAX_RECORD_SIZE )
+		{
+			write();
+		}
+
+		int flags = reset ? TrackReader.RESET : 0;
+
+		if ( reset )
+		{
+			timestamp = 0;
+			latitude = longitude = altitude = speed = course = horizontalAccuracy = verticalAccuracy = 0;
+			reset = false;
+		}
+
+		double latitudeDegrees = location.isValid() ? location.latitude() : Double.NaN;
+
+		if ( Double.isNaN(latitudeDegrees) )
+		{
+			buffer.put( (byte)flags );
+			timestamp = put( location.getTimestamp(), timestamp );
+			return;
+		}
+
+		float altitudeMeters = location.altitude();
+		float speedMetersPerSecond = location.getSpeed();
+		float courseDegrees = location.getCourse();
+		float horizontalMeters = location.horizontalAccuracy();
+		float verticalMeters = location.verticalAccuracy();
+
+		flags |= TrackReader.VALID;
+		flags |= Float.isNaN( altitudeMeters ) ? 0 : TrackReader.ALTITUDE;
+		flags |= Float.isNaN( speedMetersPerSecond ) ? 0 : TrackReader.SPEED;
+		flags |= Float.isNaN( courseDegrees ) ? 0 : TrackReader.COURSE;
+		flags |= Float.isNaN( horizontalMeters ) ? 0 : TrackReader.HORIZONTAL_ACCURACY;
+		flags |= Float.isNaN( verticalMeters ) ? 0 : TrackReader.VERTICAL_ACCURACY;
+
+		buffer.put( (byte)flags );
+		timestamp = put( location.getTimestamp(), timestamp );
+		latitude = put( latitudeDegrees * TrackReader.UNITS_PER_DEGREE, latitude );
+		longitude = put( location.longitude() * TrackReader.UNITS_PER_DEGREE, longitude );
+
+		if ( (flags & TrackReader.ALTITUDE) != 0 )
+		{
+			altitude = put( altitudeMeters * 10.0, altitude );
+		}
+
+		if ( (flags & TrackReader.SPEED) != 0 )
+		{
+			speed = put( speedMetersPerSecond * 100.0, speed );
+		}
+
+		if ( (flags & TrackReader.COURSE) != 0 )
+		{
+			course = put( courseDegrees * 100.0, course );
+		}
+
+		if ( (flags & TrackReader.HORIZONTAL_ACCURACY) != 0 )
+		{
+			horizontalAccuracy = put( horizontalMeters * 10.0, horizontalAccuracy );
+		}
+
+		if ( (flags & TrackReader.VERTICAL_ACCURACY) != 0 )
+		{
+			verticalAccuracy = put( verticalMeters * 10.0, verticalAccuracy );
+		}
+	}
+
+	/**
+	 * Writes the buffered locations to the file.
+	 *
+	 * @see java.io.Flushable#flush()
+	 */
+	public synchronized void flush ()
+		throws IOException
+	{
+		write();
+	}
+
+	/**
+	 * Writes the buffered locations and closes the file.
+	 *
+	 * @see java.io.Closeable#close()
+	 */
+	public synchronized void close ()
+		throws IOException
+	{
+		if ( channel.isOpen() )
+		{
+			try
+			{
+				write();
+			}
+			finally
+			{
+				channel.close();
+			}
+		}
+	}
+
+	/**
+	 * Writes the buffer to the file and empties it.  If a write fails the
+	 * bytes not yet written stay in the buffer, ahead of the next location,
+	 * to be written next time.
+	 */
+	private void write ()
+		throws IOException
+	{
+		buffer.flip();
+
+		try
+		{
+			while ( buffer.hasRemaining() )
+			{
+				channel.write( buffer );
+			}
+		}
+		finally
+		{
+			buffer.compact();
+		}
+	}
+
+	/**
+	 * Writes the difference between a value and the previous one.
+	 *
+	 * @return The value written, to be the next previous value.
+	 */
+	private long put (long value, long previous)
+	{
+		TrackReader.writeLong( buffer, value - previous );
+		return value;
+	}
+
+	/**
+	 * Rounds a value to its stored units and writes the difference from the
+	 * previous one.
+	 *
+	 * @return The rounded value, to be the next previous value.
+	 */
+	private int put (double value, int previous)
+	{
+		int rounded = (int)Math.round( value );
+		TrackReader.writeLong( buffer, (long)rounded - previous );
+		return rounded;
+	}
+}
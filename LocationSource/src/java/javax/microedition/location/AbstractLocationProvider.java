@@ -0,0 +1,1189 @@
+package javax.microedition.location;
+
+/**
+ * Base class for location providers that raise events to registered
+ * <code>LocationListener</code>s.  It tracks the listeners, their update
+ * intervals, the provider's state, and the last known location.  Subclasses
+ * read from their location source and call <code>raiseLocationEvent</code>
+ * and <code>raiseStateChangeEvent</code> as data arrives.
+ * <p>
+ * JSR-179 allows one listener per provider, set by
+ * <code>setLocationListener</code>.  Any number of other listeners can be
+ * added with <code>addLocationListener</code>, each with its own interval,
+ * timeout, and maximum age.  The provider is asked for locations as often
+ * as the most demanding of them needs.  The listeners are kept in a heap
+ * ordered by when each is next due, so a location only costs work for the
+ * listeners it is given to no matter how many are registered.  Listeners
+ * added with the interval <code>EVERY_LOCATION</code> are kept apart and
+ * given every location raised, for stages that must see each fix.
+ * <p>
+ * Events are raised without holding any lock.  Each listener and its
+ * parameters are kept together in an immutable <code>Registration</code>
+ * and the registrations in an immutable <code>Registrations</code> that is
+ * replaced in a single write whenever a listener is set, added, or removed.
+ * A slow listener never blocks the application's threads and each event
+ * sees one consistent set of listeners.  The last location and state are
+ * <code>volatile</code> so any thread reads the newest without waiting.
+ * Threads blocked in <code>getLocation</code> wait on a separate monitor
+ * that is only touched while someone is waiting.
+ * Events must be raised from one thread at a time, normally the subclass's
+ * worker thread.
+ * <p>
+ * Listeners are called on that thread, so a slow listener delays reading
+ * the next fix.  A listener added with its own thread is instead given its
+ * events through a <code>ListenerMailbox</code> holding only the newest
+ * location; the provider's thread never waits for it, and the locations it
+ * falls behind on are conflated and counted in the metrics.
+ * <p>
+ * Receivers reporting many times a second create a lot of garbage when every
+ * fix is a new <code>Location</code>.  With <code>setReuseLocations</code> the
+ * provider fills in the same objects for each fix instead; see
+ * <code>MutableLocation</code> for what listeners may then do with them.
+ *
+ * @see LocationProvider
+ */
+abstract class AbstractLocationProvider
+	extends LocationProvider
+{
+	/**
+	 * System property that turns smoothing on for every provider when it
+	 * is "true".
+	 */
+	static final String SMOOTHING_PROPERTY = "locationsource.smoothing";
+
+	/**
+	 * System property that makes every provider reuse its locations when it
+	 * is "true".
+	 */
+	static final String REUSE_LOCATIONS_PROPERTY = "locationsource.reuseLocations";
+
+	/**
+	 * The interval to give <code>addLocationListener</code> for a listener
+	 * that gets every location raised, however often, rather than at most
+	 * one a second.  This is not part of JSR-179.
+	 */
+	static final int EVERY_LOCATION = -2;
+
+	/**
+	 * The timeout, in seconds, used when the application asks for the
+	 * default.
+	 */
+	private static final int DEFAULT_TIMEOUT = 10;
+
+	/**
+	 * A listener's registration for location updates.  It is never changed
+	 * once constructed; new parameters replace the whole object.
+	 */
+	private static final class Registration
+	{
+		/**
+		 * The application's object registered to listen to location updates.
+		 */
+		final LocationListener listener;
+
+		/**
+		 * The time between location updates in milliseconds.  If this is 0
+		 * then no location events should be raised.
+		 */
+		final int interval;
+
+		/**
+		 * <code>true</code> if every location is given to the listener no
+		 * matter <code>interval</code>.
+		 */
+		final boolean everyLocation;
+
+		/**
+		 * The maximum wait time, in milliseconds, for GPS data.
+		 */
+		final int timeout;
+
+		/**
+		 * The maximum age, in milliseconds, GPS data can be.
+		 */
+		final int maxAge;
+
+		/**
+		 * <code>true</code> for the listener set by <code>setLocationListener</code>.
+		 */
+		final boolean primary;
+
+		/**
+		 * Gives the listener its events on its own thread or <code>null</code>
+		 * to call it on the thread raising events.
+		 */
+		final ListenerMailbox mailbox;
+
+		/**
+		 * Constructs a registration from the parameters of
+		 * <code>setLocationListener</code>.
+		 *
+		 * @param interval is the time between updates in seconds, -1, or
+		 *  <code>EVERY_LOCATION</code>.
+		 * @param timeout is the wait time in seconds or -1.
+		 * @param maxAge is the maximum age in seconds or -1.
+		 * @param mailbox is the listener's mailbox or <code>null</code>.
+		 */
+		Registration (LocationListener listener, int interval, int timeout, int maxAge, boolean primary, ListenerMailbox mailbox)
+		{
+			// Set the interval between location updates.  Every location
+			// asks the provider for them as often as the default.
+			this.everyLocation = (interval == EVERY_LOCATION);
+
+			if ( interval < 0 )
+			{
+				interval = 1;
+			}
+
+			// Set the timeout for waiting for GPS data.
+			if ( timeout < 1 )
+			{
+				timeout = DEFAULT_TIMEOUT;
+			}
+
+			// Set the maximum age of usuable GPS data.
+			if ( maxAge < 1 )
+			{
+				maxAge = 3;
+			}
+
+			// Convert seconds to milliseconds.
+			this.listener = listener;
+			this.interval = interval * 1000;
+			this.timeout = timeout * 1000;
+			this.maxAge = maxAge * 1000;
+			this.primary = primary;
+			this.mailbox = mailbox;
+		}
+	}
+
+	/**
+	 * All the registrations and the parameters the provider should get
+	 * locations with to satisfy them.  It is never changed once constructed.
+	 */
+	private static final class Registrations
+	{
+		/**
+		 * Every registration.
+		 */
+		final Registration[] entries;
+
+		/**
+		 * The shortest interval of the registrations in milliseconds or 0
+		 * if none want location updates.
+		 */
+		final int interval;
+
+		/**
+		 * The shortest timeout of the registrations in milliseconds.
+		 */
+		final int timeout;
+
+		/**
+		 * The shortest maximum age of the registrations in milliseconds.
+		 */
+		final int maxAge;
+
+		Registrations (Registration[] entries)
+		{
+			int interval = 0;
+			int timeout = 0;
+			int maxAge = 0;
+
+			for ( int i = 0; i < entries.length; i++ )
+			{
+				Registration r = entries[i];
+
+				if ( r.interval != 0 )
+				{
+					if ( (interval == 0) || (r.interval < interval) )
+					{
+						interval = r.interval;
+					}
+
+					if ( (timeout == 0) || (r.timeout < timeout) )
+					{
+						timeout = r.timeout;
+					}
+
+					if ( (maxAge == 0) || (r.maxAge < maxAge) )
+					{
+						maxAge = r.maxAge;
+					}
+				}
+			}
+
+			if ( interval == 0 )
+			{
+				// Same as a reset provider.
+				timeout = DEFAULT_TIMEOUT * 1000;
+				maxAge = 3000;
+			}
+
+			this.entries = entries;
+			this.interval = interval;
+			this.timeout = timeout;
+			this.maxAge = maxAge;
+		}
+
+		/**
+		 * Returns new registrations without any for <code>listener</code>
+		 * of the given kind and with <code>registration</code> added.
+		 *
+		 * @param listener is the listener whose registrations are removed.
+		 * @param primary is the kind of registration removed.
+		 * @param registration is added if not <code>null</code>.
+		 * @return The new registrations.
+		 */
+		Registrations replace (LocationListener listener, boolean primary, Registration registration)
+		{
+			Registration[] replaced = new Registration[entries.length + 1];
+			int count = 0;
+
+			for ( int i = 0; i < entries.length; i++ )
+			{
+				Registration r = entries[i];
+
+				if ( (r.primary != primary) || ((primary == false) && (r.listener != listener)) )
+				{
+					replaced[count++] = r;
+				}
+			}
+
+			if ( registration != null )
+			{
+				replaced[count++] = registration;
+			}
+
+			Registration[] trimmed = new Registration[count];
+			System.arraycopy( replaced, 0, trimmed, 0, count );
+			return new Registrations( trimmed );
+		}
+
+		/**
+		 * Stops the mailboxes of the registrations not in <code>current</code>.
+		 *
+		 * @param current are the registrations that replaced these.
+		 */
+		void closeRemoved (Registrations current)
+		{
+			for ( int i = 0; i < entries.length; i++ )
+			{
+				ListenerMailbox mailbox = entries[i].mailbox;
+				boolean removed = (mailbox != null);
+
+				for ( int j = 0; (j < current.entries.length) && removed; j++ )
+				{
+					removed = (current.entries[j] != entries[i]);
+				}
+
+				if ( removed )
+				{
+					mailbox.close();
+				}
+			}
+		}
+	}
+
+	/**
+	 * The current registrations.  They are replaced, never changed.
+	 */
+	private volatile Registrations registrations = new Registrations( new Registration[0] );
+
+	/**
+	 * The last valid <code>Location</code> raised by the provider.
+	 */
+	private volatile Location lastLocation;
+
+	/**
+	 * The last known state of the location provider.
+	 */
+	private volatile int state = TEMPORARILY_UNAVAILABLE;
+
+	/**
+	 * Smooths locations before they are raised.  <code>null</code> when
+	 * smoothing is off.
+	 */
+	private volatile KalmanFilter filter;
+
+	/**
+	 * When <code>true</code> <code>newLocation</code> fills in the same
+	 * object for every fix.
+	 */
+	private volatile boolean reuse;
+
+	/**
+	 * What this provider has done.  Only changed by the thread raising events.
+	 */
+	private final LocationProviderMetrics metrics = new LocationProviderMetrics();
+
+	/**
+	 * The location <code>newLocation</code> fills in when reusing locations.
+	 * This and <code>smoothed</code> are only used by the thread raising events.
+	 */
+	private final MutableLocation current = new MutableLocation();
+
+	/**
+	 * The location the filter smooths reused locations into.
+	 */
+	private final MutableLocation smoothed = new MutableLocation();
+
+	/**
+	 * A copy of the last valid reused location.  <code>lastLocation</code>
+	 * refers to it when the last valid location was reused.  It is written
+	 * by the thread raising events and copied by others while holding its
+	 * lock.
+	 */
+	private final MutableLocation lastValid = new MutableLocation();
+
+	/**
+	 * The registrations <code>heap</code> was built from.  This and the
+	 * other scheduling fields are only used by the thread raising events.
+	 */
+	private Registrations scheduled;
+
+	/**
+	 * The registrations that want location updates, as a binary heap
+	 * ordered by <code>due</code>.
+	 */
+	private Registration[] heap = new Registration[0];
+
+	/**
+	 * The time, in milliseconds, the next location update is due to the
+	 * registration at the same index of <code>heap</code>.
+	 */
+	private long[] due = new long[0];
+
+	/**
+	 * The number of registrations in <code>heap</code>.
+	 */
+	private int heapSize;
+
+	/**
+	 * The registrations that want every location.
+	 */
+	private Registration[] everyLocation = new Registration[0];
+
+	/**
+	 * Monitor <code>getLocation</code> callers wait on.  The thread raising
+	 * events notifies it once per valid location while anyone is waiting,
+	 * however many are.
+	 */
+	private final Object fixLock = new Object();
+
+	/**
+	 * The number of threads blocked in <code>getLocation</code>.  Only changed
+	 * while holding <code>fixLock</code>.
+	 */
+	private volatile int waiters;
+
+	/**
+	 * Counts the valid locations given to waiters.  Guarded by <code>fixLock</code>.
+	 */
+	private long fixCount;
+
+	/**
+	 * The last valid location given to waiters.  Guarded by <code>fixLock</code>.
+	 */
+	private Location fix;
+
+	/**
+	 * Counts calls to <code>reset</code>.  Guarded by <code>fixLock</code>.
+	 */
+	private int resetCount;
+
+	/**
+	 * Constructs the provider with smoothing on if the
+	 * <code>locationsource.smoothing</code> system property is "true" and
+	 * reusing locations on if <code>locationsource.reuseLocations</code> is.
+	 */
+	protected AbstractLocationProvider ()
+	{
+		if ( "true".equals(System.getProperty(SMOOTHING_PROPERTY)) )
+		{
+			filter = new KalmanFilter();
+		}
+
+		reuse = "true".equals( System.getProperty(REUSE_LOCATIONS_PROPERTY) );
+	}
+
+	/**
+	 * Sets a new listener object created by the API user.  It will start getting
+	 * location updates on the thread that raises events.  It replaces the
+	 * previous listener set by this method but not the listeners added by
+	 * <code>addLocationListener</code>.
+	 * <p>
+	 * This does not wait for an event being raised to the previous listener
+	 * to finish.
+	 *
+	 * @see javax.microedition.location.LocationProvider#setLocationListener(javax.microedition.location.LocationListener, int, int, int)
+	 */
+	public synchronized void setLocationListener (LocationListener locationlistener, int interval, int timeout, int maxAge)
+	{
+		Registration registration = null;
+
+		if ( locationlistener != null )
+		{
+			registration = new Registration( locationlistener, interval, timeout, maxAge, true, null );
+		}
+
+		registrations = registrations.replace( null, true, registration );
+	}
+
+	/**
+	 * Adds a listener for updates at its own interval.  It gets location
+	 * updates and state changes alongside the listener set by
+	 * <code>setLocationListener</code> and any others added.  Adding a
+	 * listener already added replaces its parameters.
+	 * <p>
+	 * The parameters are the same as <code>setLocationListener</code>'s.  The
+	 * <code>maxAge</code> lets an update that falls due when the provider has
+	 * only an invalid location be given the last valid location instead, if it
+	 * is no older than <code>maxAge</code>.
+	 *
+	 * @param locationListener is the listener to add.
+	 * @param interval is the interval in seconds.  -1 is the default interval,
+	 *  0 gives only provider state changes, and <code>EVERY_LOCATION</code>
+	 *  gives every location raised.
+	 * @param timeout is the timeout in seconds or -1 for the default.
+	 * @param maxAge is the maximum age of locations in seconds or -1 for the
+	 *  default.
+	 * @throws NullPointerException if <code>locationListener</code> is <code>null</code>.
+	 * @see #setLocationListener(LocationListener, int, int, int)
+	 */
+	public void addLocationListener (LocationListener locationListener, int interval, int timeout, int maxAge)
+	{
+		addLocationListener( locationListener, interval, timeout, maxAge, false );
+	}
+
+	/**
+	 * Adds a listener for updates at its own interval, optionally called on
+	 * a thread of its own.
+	 * <p>
+	 * With <code>ownThread</code> the provider's thread only leaves each
+	 * event in the listener's mailbox and goes back to reading the receiver,
+	 * however long the listener takes.  The mailbox holds just the newest
+	 * location: one the listener has not taken by the time the next is due is
+	 * replaced and counted by <code>LocationProviderMetrics.getConflatedLocationCount</code>.
+	 * Use it for listeners that only need the current position, such as a
+	 * display, and not for ones that must see every fix, such as a track
+	 * recorder.  The thread runs until the listener is removed.
+	 *
+	 * @param locationListener is the listener to add.
+	 * @param interval is the interval in seconds.  -1 is the default interval,
+	 *  0 gives only provider state changes, and <code>EVERY_LOCATION</code>
+	 *  gives every location raised.
+	 * @param timeout is the timeout in seconds or -1 for the default.
+	 * @param maxAge is the maximum age of locations in seconds or -1 for the
+	 *  default.
+	 * @param ownThread is <code>true</code> to call the listener on its own
+	 *  thread and <code>false</code> to call it on the thread raising events.
+	 * @throws NullPointerException if <code>locationListener</code> is <code>null</code>.
+	 * @see #addLocationListener(LocationListener, int, int, int)
+	 */
+	public synchronized void addLocationListener (LocationListener locationListener, int interval, int timeout, int maxAge, boolean ownThread)
+	{
+		if ( locationListener == null )
+		{
+			throw new NullPointerException();
+		}
+
+		ListenerMailbox mailbox = ownThread ? new ListenerMailbox( this, locationListener, metrics ) : null;
+		Registration registration = new Registration( locationListener, interval, timeout, maxAge, false, mailbox );
+		Registrations previous = registrations;
+		registrations = previous.replace( locationListener, false, registration );
+		previous.closeRemoved( registrations );
+	}
+
+	/**
+	 * Removes a listener added by <code>addLocationListener</code>.  If it is
+	 * not registered this does nothing.  A listener with its own thread is
+	 * not given the events still in its mailbox.
+	 *
+	 * @param locationListener is the listener to remove.
+	 */
+	public synchronized void removeLocationListener (LocationListener locationListener)
+	{
+		Registrations previous = registrations;
+		registrations = previous.replace( locationListener, false, null );
+		previous.closeRemoved( registrations );
+	}
+
+	/**
+	 * @see javax.microedition.location.LocationProvider#getLastKnownLocationToProvider()
+	 */
+	protected Location getLastKnownLocationToProvider ()
+	{
+		Location last = lastLocation;
+
+		if ( last == lastValid )
+		{
+			// Give the application its own copy of a reused location.
+			synchronized ( lastValid )
+			{
+				return lastValid.copy();
+			}
+		}
+
+		return last;
+	}
+
+	/**
+	 * Waits for the next valid location the provider raises.  The thread
+	 * raising it wakes every waiting caller at once.
+	 *
+	 * @see javax.microedition.location.LocationProvider#getLocation(int)
+	 */
+	public Location getLocation (int timeout)
+		throws LocationException, InterruptedException
+	{
+		if ( (timeout == 0) || (timeout < -1) )
+		{
+			throw new IllegalArgumentException( "Timeout (" + timeout + ") must be positive or -1." );
+		}
+
+		if ( timeout == -1 )
+		{
+			timeout = DEFAULT_TIMEOUT;
+		}
+
+		synchronized ( fixLock )
+		{
+			long startFix = fixCount;
+			int startReset = resetCount;
+			long deadline = System.currentTimeMillis() + timeout * 1000L;
+
+			waiters++;
+
+			try
+			{
+				while ( fixCount == startFix )
+				{
+					if ( resetCount != startReset )
+					{
+						throw new InterruptedException( "The location provider was reset." );
+					}
+
+					if ( state == OUT_OF_SERVICE )
+					{
+						throw new LocationException( "The location provider is out of service." );
+					}
+
+					long wait = deadline - System.currentTimeMillis();
+
+					if ( wait <= 0 )
+					{
+						throw new LocationException( "No location was found within " + timeout + " seconds." );
+					}
+
+					fixLock.wait( wait );
+				}
+
+				return fix;
+			}
+			finally
+			{
+				waiters--;
+			}
+		}
+	}
+
+	/**
+	 * Removes the location listener set by <code>setLocationListener</code>
+	 * and makes blocked <code>getLocation</code> calls throw
+	 * <code>InterruptedException</code>.
+	 *
+	 * @see javax.microedition.location.LocationProvider#reset()
+	 */
+	public void reset ()
+	{
+		// No more location listener.
+		setLocationListener( null, 0, -1, -1 );
+
+		// Release threads waiting for a location.
+		synchronized ( fixLock )
+		{
+			resetCount++;
+			fixLock.notifyAll();
+		}
+	}
+
+	/**
+	 * Turns smoothing of this provider's locations on or off.  Smoothed
+	 * locations come from a Kalman filter that weighs each fix by its
+	 * dilution of precision against the speed and course of the fixes before
+	 * it.  They jitter far less than raw fixes, so a stationary receiver stays
+	 * put and proximity is not detected over and over, at the cost of lagging
+	 * a little behind sudden turns.
+	 * <p>
+	 * Everything downstream of the provider gets the smoothed locations:
+	 * its listeners, <code>getLastKnownLocation</code>, and proximity listeners.
+	 * Smoothing starts off unless the <code>locationsource.smoothing</code>
+	 * system property is "true".
+	 * <p>
+	 * Unless locations are reused each smoothed fix is a new
+	 * <code>Location</code>, as listeners may keep it, in addition to the raw
+	 * one from the receiver.  Turn on <code>setReuseLocations</code> too for
+	 * smoothing without garbage.
+	 *
+	 * @param smoothing is <code>true</code> to smooth locations and
+	 *  <code>false</code> to raise them as the receiver gives them.
+	 */
+	public void setSmoothing (boolean smoothing)
+	{
+		if ( smoothing == false )
+		{
+			filter = null;
+		}
+		else if ( filter == null )
+		{
+			filter = new KalmanFilter();
+		}
+	}
+
+	/**
+	 * @return <code>true</code> if this provider's locations are smoothed.
+	 * @see #setSmoothing(boolean)
+	 */
+	public boolean isSmoothing ()
+	{
+		return (filter != null);
+	}
+
+	/**
+	 * Turns reusing locations on or off.  When on, every location given to
+	 * this provider's listeners is the same object, filled in again for each
+	 * fix, so a receiver reporting many times a second creates no garbage.
+	 * <p>
+	 * Listeners then own a location only until their
+	 * <code>locationUpdated</code> call returns.  A listener that needs one
+	 * afterwards must copy the values it uses.  Locations returned by
+	 * <code>getLocation</code> and <code>getLastKnownLocation</code>, and
+	 * given to proximity listeners, are always copies the application can
+	 * keep.  Reusing starts off unless the <code>locationsource.reuseLocations</code>
+	 * system property is "true".
+	 *
+	 * @param reuse is <code>true</code> to reuse locations and
+	 *  <code>false</code> to create a new one for each fix.
+	 */
+	public void setReuseLocations (boolean reuse)
+	{
+		this.reuse = reuse;
+	}
+
+	/**
+	 * @return <code>true</code> if this provider reuses its locations.
+	 * @see #setReuseLocations(boolean)
+	 */
+	public boolean isReusingLocations ()
+	{
+		return reuse;
+	}
+
+	/**
+	 * Creates the location for a fix parsed by the subclass.  When reusing
+	 * locations this fills in and returns the same object every time, so it
+	 * must be called on the thread raising events and its result passed
+	 * straight to <code>raiseLocationEvent</code>.  It records the location
+	 * arriving with the <code>EventRecorder</code>.
+	 *
+	 * @param record holds the parsed GPS values.
+	 * @param timestamp is the time the location was taken relative to
+	 *  <code>System.currentTimeMillis</code>.
+	 * @return The location, which is invalid if the receiver had no fix.
+	 */
+	protected Location newLocation (GPSRecord record, long timestamp)
+	{
+		Location location;
+
+		if ( reuse )
+		{
+			current.set( record, timestamp );
+			location = current;
+		}
+		else
+		{
+			location = new LocationImpl( record, timestamp );
+		}
+
+		if ( EventRecorder.recorder != null )
+		{
+			EventRecorder.recorder.locationArrived( this, location );
+		}
+
+		return location;
+	}
+
+	/**
+	 * Creates the location for a fix whose values the subclass decoded
+	 * itself.  It is otherwise the same as <code>newLocation(GPSRecord, long)</code>.
+	 *
+	 * @param latitude is in degrees.
+	 * @param longitude is in degrees.
+	 * @param altitude is in meters or <code>Float.NaN</code>.
+	 * @param horizontalAccuracy is in meters or <code>Float.NaN</code>.
+	 * @param verticalAccuracy is in meters or <code>Float.NaN</code>.
+	 * @param speed is in meters per second or <code>Float.NaN</code>.
+	 * @param course is in degrees or <code>Float.NaN</code>.
+	 * @param timestamp is the time the location was taken relative to
+	 *  <code>System.currentTimeMillis</code>.
+	 * @param gpsTime is the receiver's UTC time in milliseconds or -1.
+	 * @return The location.
+	 * @throws IllegalArgumentException if the latitude or longitude is
+	 *  out of range.
+	 * @see #newLocation(GPSRecord, long)
+	 */
+	protected Location newLocation (double latitude, double longitude, float altitude,
+		float horizontalAccuracy, float verticalAccuracy, float speed, float course,
+		long timestamp, long gpsTime)
+	{
+		Location location;
+		long arrivalNanoTime = MonotonicClock.nanoTime();
+
+		if ( reuse )
+		{
+			current.set( latitude, longitude, altitude, horizontalAccuracy, verticalAccuracy,
+				speed, course, timestamp, gpsTime, arrivalNanoTime );
+			location = current;
+		}
+		else
+		{
+			location = new LocationImpl( latitude, longitude, altitude, horizontalAccuracy, verticalAccuracy,
+				speed, course, timestamp, gpsTime, arrivalNanoTime );
+		}
+
+		if ( EventRecorder.recorder != null )
+		{
+			EventRecorder.recorder.locationArrived( this, location );
+		}
+
+		return location;
+	}
+
+	/**
+	 * @see javax.microedition.location.LocationProvider#getMetrics()
+	 */
+	public LocationProviderMetrics getMetrics ()
+	{
+		return metrics;
+	}
+
+	/**
+	 * Call when the location provider drops a location instead of raising it,
+	 * such as one arriving too soon after the last, so it is counted.
+	 */
+	protected void locationDropped ()
+	{
+		metrics.locationDropped();
+		metrics.publish();
+
+		if ( EventRecorder.recorder != null )
+		{
+			EventRecorder.recorder.locationDropped( this, false );
+		}
+	}
+
+	/**
+	 * @see javax.microedition.location.LocationProvider#getState()
+	 */
+	public int getState ()
+	{
+		return state;
+	}
+
+	/**
+	 * @return The shortest time between location updates of the registered
+	 *  listeners in milliseconds.  0 means no location events should be raised.
+	 */
+	protected int getInterval ()
+	{
+		return registrations.interval;
+	}
+
+	/**
+	 * @return The shortest maximum wait time, in milliseconds, for GPS data of
+	 *  the registered listeners.
+	 */
+	protected int getTimeout ()
+	{
+		return registrations.timeout;
+	}
+
+	/**
+	 * @return The shortest maximum age, in milliseconds, GPS data can be for
+	 *  the registered listeners.
+	 */
+	protected int getMaxAge ()
+	{
+		return registrations.maxAge;
+	}
+
+	/**
+	 * Returns the clock used to space location updates at the registered
+	 * interval.  Providers that replay recorded data override this so the
+	 * interval is measured in the recording's time.
+	 *
+	 * @return The current time in milliseconds.
+	 */
+	protected long currentTimeMillis ()
+	{
+		return System.currentTimeMillis();
+	}
+
+	/**
+	 * Tells if this provider's locations are checked against the proximity
+	 * listeners registered with <code>addProximityListener</code>, and its
+	 * state counts toward whether they are being monitored.  That is the
+	 * case for receivers that give this device's own position.  Providers
+	 * that track something else, such as another vehicle, override this.
+	 *
+	 * @return <code>true</code> if proximity listeners are monitored with
+	 *  this provider's locations.
+	 */
+	protected boolean isProximityMonitored ()
+	{
+		return true;
+	}
+
+	/**
+	 * Call when the location provider gives us a new state.
+	 *
+	 * @param newState is the <code>javax.microedition.location.LocationProvider</code>
+	 *  state code.
+	 */
+	protected void raiseStateChangeEvent (int newState)
+	{
+		// Record the unavailable state.
+		int oldState = state;
+		state = newState;
+		metrics.stateChanged( newState );
+
+		if ( EventRecorder.recorder != null )
+		{
+			EventRecorder.recorder.stateChanged( this, oldState, newState );
+		}
+
+		// A receiver coming back into service may have been moved.
+		KalmanFilter filter = this.filter;
+
+		if ( (filter != null) && (newState == OUT_OF_SERVICE) )
+		{
+			filter.reset();
+		}
+
+		// Waiters give up once the provider is out of service.
+		if ( (waiters > 0) && (newState == OUT_OF_SERVICE) )
+		{
+			synchronized ( fixLock )
+			{
+				fixLock.notifyAll();
+			}
+		}
+
+		// Tell proximity listeners if they are being monitored.
+		if ( isProximityMonitored() )
+		{
+			ProximityMonitor.providerStateChanged( oldState, newState );
+		}
+
+		// Forward to the application's listeners.
+		Registration[] entries = registrations.entries;
+
+		for ( int i = 0; i < entries.length; i++ )
+		{
+			if ( entries[i].mailbox != null )
+			{
+				entries[i].mailbox.offerState( newState );
+				continue;
+			}
+
+			try
+			{
+				entries[i].listener.providerStateChanged( this, newState );
+			}
+			catch (Throwable t)
+			{
+				// This is a programming error in the user's application.
+				metrics.listenerFailed();
+				System.out.println( t.getMessage() );
+			}
+		}
+
+		metrics.publish();
+	}
+
+	/**
+	 * Call when the location provider gives us a new location.
+	 *
+	 * @param location is the new location.
+	 */
+	protected void raiseLocationEvent (Location location)
+	{
+		long raised = LocationProviderMetrics.nanoTime();
+		metrics.locationRaised( location, raised );
+
+		// Smooth out the receiver's jitter.
+		KalmanFilter filter = this.filter;
+
+		if ( filter != null )
+		{
+			if ( location instanceof MutableLocation )
+			{
+				location = filter.filter( location, smoothed );
+			}
+			else
+			{
+				location = filter.filter( location );
+			}
+		}
+
+		// Record the last known location to the GPS.
+		if ( (location != null) && location.isValid() )
+		{
+			if ( location instanceof MutableLocation )
+			{
+				// Keep a copy that survives the next fix.
+				synchronized ( lastValid )
+				{
+					lastValid.set( location );
+				}
+
+				lastLocation = lastValid;
+			}
+			else
+			{
+				lastLocation = location;
+			}
+
+			// Wake threads blocked in getLocation.
+			if ( waiters > 0 )
+			{
+				Location copy = location;
+
+				if ( location instanceof MutableLocation )
+				{
+					copy = ((MutableLocation)location).copy();
+				}
+
+				synchronized ( fixLock )
+				{
+					fix = copy;
+					fixCount++;
+					fixLock.notifyAll();
+				}
+			}
+		}
+
+		// Check for proximity regardless of the listeners' intervals.
+		if ( isProximityMonitored() )
+		{
+			ProximityMonitor.locationUpdated( location );
+		}
+
+		// Forward to the application's listeners.
+		Registrations current = registrations;
+
+		if ( current != scheduled )
+		{
+			schedule( current );
+		}
+
+		if ( (heapSize == 0) && (everyLocation.length == 0) )
+		{
+			// Nobody wants location events.
+			metrics.publish();
+			return;
+		}
+
+		long now = currentTimeMillis();
+		Location last = lastLocation;
+
+		if ( (everyLocation.length == 0) && (due[0] > now) )
+		{
+			metrics.locationSuppressed();
+
+			if ( EventRecorder.recorder != null )
+			{
+				EventRecorder.recorder.locationDropped( this, true );
+			}
+		}
+
+		// Give the location to every listener whose interval has expired.
+		while ( (heapSize > 0) && (due[0] <= now) )
+		{
+			Registration registration = heap[0];
+			due[0] = now + registration.interval;
+			siftDown( 0 );
+
+			dispatch( registration, location, last, now, raised );
+		}
+
+		// And to those that want every location.
+		Registration[] every = everyLocation;
+
+		for ( int i = 0; i < every.length; i++ )
+		{
+			dispatch( every[i], location, last, now, raised );
+		}
+
+		metrics.publish();
+	}
+
+	/**
+	 * Gives a location to one listener.
+	 *
+	 * @param registration is the listener's registration.
+	 * @param location is the location raised.
+	 * @param last is the last valid location or <code>null</code>.
+	 * @param now is the time from <code>currentTimeMillis</code>.
+	 * @param raised is when the location was raised from <code>LocationProviderMetrics.nanoTime</code>.
+	 */
+	private void dispatch (Registration registration, Location location, Location last, long now, long raised)
+	{
+		Location update = location;
+
+		// Use a recent enough valid location instead of an invalid one.
+		if ( ((location == null) || (location.isValid() == false)) && (last != null) &&
+			 (now - last.getTimestamp() <= registration.maxAge) )
+		{
+			update = last;
+		}
+
+		if ( registration.mailbox != null )
+		{
+			// Its own thread gives it the location.
+			if ( registration.mailbox.offerLocation(update, raised) )
+			{
+				metrics.locationConflated();
+			}
+
+			return;
+		}
+
+		Object dispatch = (EventRecorder.recorder == null) ? null : EventRecorder.recorder.dispatchStarted();
+		boolean failed = false;
+
+		try
+		{
+			registration.listener.locationUpdated( this, update );
+		}
+		catch (Throwable t)
+		{
+			// This is a programming error in the user's application.
+			failed = true;
+			metrics.listenerFailed();
+			System.out.println( t.getMessage() );
+		}
+
+		metrics.listenerReturned( raised );
+
+		if ( dispatch != null )
+		{
+			EventRecorder.recorder.dispatchEnded( dispatch, this, registration.listener, update, failed );
+		}
+	}
+
+	/**
+	 * Rebuilds <code>heap</code> for new registrations.  Listeners that were
+	 * already registered keep their due times.  New listeners are due now
+	 * so they get the next location right away.  There are few listeners,
+	 * so each is looked for in the old heap by identity.
+	 *
+	 * @param current are the registrations to schedule.
+	 */
+	private void schedule (Registrations current)
+	{
+		Registration[] previous = heap;
+		long[] previousDue = due;
+		int previousSize = heapSize;
+
+		Registration[] entries = current.entries;
+		heap = new Registration[entries.length];
+		due = new long[entries.length];
+		heapSize = 0;
+
+		int everyCount = 0;
+
+		for ( int i = 0; i < entries.length; i++ )
+		{
+			if ( entries[i].everyLocation )
+			{
+				everyCount++;
+			}
+		}
+
+		everyLocation = new Registration[everyCount];
+		everyCount = 0;
+
+		for ( int i = 0; i < entries.length; i++ )
+		{
+			Registration r = entries[i];
+
+			if ( r.everyLocation )
+			{
+				everyLocation[everyCount++] = r;
+			}
+			else if ( r.interval != 0 )
+			{
+				long time = 0;
+
+				for ( int j = 0; j < previousSize; j++ )
+				{
+					if ( previous[j] == r )
+					{
+						time = previousDue[j];
+						break;
+					}
+				}
+
+				heap[heapSize] = r;
+				due[heapSize] = time;
+				heapSize++;
+			}
+		}
+
+		for ( int i = heapSize / 2 - 1; i >= 0; i-- )
+		{
+			siftDown( i );
+		}
+
+		scheduled = current;
+	}
+
+	/**
+	 * Moves the registration at index <code>i</code> of <code>heap</code>
+	 * down until it is due no earlier than its parent.
+	 */
+	private void siftDown (int i)
+	{
+		Registration registration = heap[i];
+		long time = due[i];
+
+		while ( true )
+		{
+			int child = 2 * i + 1;
+
+			if ( child >= heapSize )
+			{
+				break;
+			}
+
+			if ( (child + 1 < heapSize) && (due[child + 1] < due[child]) )
+			{
+				child++;
+			}
+
+			if ( time <= due[child] )
+			{
+				break;
+			}
+
+			heap[i] = heap[child];
+			due[i] = due[child];
+			i = child;
+		}
+
+		heap[i] = registration;
+		due[i] = time;
+	}
+}
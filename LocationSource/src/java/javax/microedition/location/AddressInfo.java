@@ -0,0 +1,154 @@
+package javax.microedition.location;
+
+/**
+ * The <code>AddressInfo</code> class holds textual address information about
+ * a location. Typically the information is e.g. street address. The
+ * information is divided into fields (e.g. street, postal code, city, etc.).
+ * Defined constants for the fields are provided. Unassigned values for the
+ * fields are <code>null</code>.
+ */
+public class AddressInfo
+{
+	/**
+	 * Address field denoting address extension, e.g. flat number.
+	 */
+	public static final int EXTENSION = 1;
+
+	/**
+	 * Address field denoting street name and number.
+	 */
+	public static final int STREET = 2;
+
+	/**
+	 * Address field denoting zip or postal code.
+	 */
+	public static final int POSTAL_CODE = 3;
+
+	/**
+	 * Address field denoting town or city name.
+	 */
+	public static final int CITY = 4;
+
+	/**
+	 * Address field denoting a county, which is an entity between a state and
+	 * a city.
+	 */
+	public static final int COUNTY = 5;
+
+	/**
+	 * Address field denoting state or province.
+	 */
+	public static final int STATE = 6;
+
+	/**
+	 * Address field denoting country.
+	 */
+	public static final int COUNTRY = 7;
+
+	/**
+	 * Address field denoting country as a two-letter ISO 3166-1 code.
+	 */
+	public static final int COUNTRY_CODE = 8;
+
+	/**
+	 * Address field denoting a municipal district.
+	 */
+	public static final int DISTRICT = 9;
+
+	/**
+	 * Address field denoting a building name.
+	 */
+	public static final int BUILDING_NAME = 10;
+
+	/**
+	 * Address field denoting a building floor.
+	 */
+	public static final int BUILDING_FLOOR = 11;
+
+	/**
+	 * Address field denoting a building room.
+	 */
+	public static final int BUILDING_ROOM = 12;
+
+	/**
+	 * Address field denoting a building zone.
+	 */
+	public static final int BUILDING_ZONE = 13;
+
+	/**
+	 * Address field denoting a street in a crossing.
+	 */
+	public static final int CROSSING1 = 14;
+
+	/**
+	 * Address field denoting a street in a crossing.
+	 */
+	public static final int CROSSING2 = 15;
+
+	/**
+	 * Address field denoting a URL for this place.
+	 */
+	public static final int URL = 16;
+
+	/**
+	 * Address field denoting a phone number for this place.
+	 */
+	public static final int PHONE_NUMBER = 17;
+
+	/**
+	 * The value of each field indexed by its constant minus one.
+	 */
+	private final String[] fields = new String[PHONE_NUMBER];
+
+	/**
+	 * Constructs an <code>AddressInfo</code> object with all the values of the
+	 * fields set to <code>null</code>.
+	 */
+	public AddressInfo ()
+	{
+	}
+
+	/**
+	 * Returns the value of an address field. If the field is not available
+	 * <code>null</code> is returned.
+	 * 
+	 * @param field - the address field to be returned
+	 * @return the address field string. If the field is not set, returns
+	 *         <code>null</code>.
+	 * @throws java.lang.IllegalArgumentException - if the parameter field ID
+	 *         is not one of the constant values defined in this class
+	 */
+	public String getField (int field)
+	{
+		checkField( field );
+		return fields[field - 1];
+	}
+
+	/**
+	 * Sets the value of an address field.
+	 * 
+	 * @param field - the address field to be set
+	 * @param value - the new value for the field. <code>null</code> is used to
+	 *        indicate that the field has no content.
+	 * @throws java.lang.IllegalArgumentException - if the parameter field ID
+	 *         is not one of the constant values defined in this class
+	 */
+	public void setField (int field, String value)
+	{
+		checkField( field );
+		fields[field - 1] = value;
+	}
+
+	/**
+	 * Makes sure <code>field</code> is one of the constants.
+	 * 
+	 * @throws IllegalArgumentException if it is not.
+	 */
+	private static void checkField (int field)
+	{
+		if ( (field < EXTENSION) || (field > PHONE_NUMBER) )
+		{
+			throw new IllegalArgumentException( "Address field (" + field + ") is invalid." );
+		}
+	}
+}
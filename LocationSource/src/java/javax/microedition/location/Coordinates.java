@@ -21,7 +21,22 @@ public class Coordinates
 	 * is 6,378,137 and the polar radius is 6,356,752.3142.  The FAI's definition
 	 * of 6,371,000 lies between them.
 	 */
-	private static final double METERS_PER_RADIAN = 6371000;
+	static final double METERS_PER_RADIAN = 6371000;
+
+	/**
+	 * The equatorial radius of the WGS84 ellipsoid in meters.
+	 */
+	static final double SEMI_MAJOR_AXIS = 6378137.0;
+
+	/**
+	 * The flattening of the WGS84 ellipsoid.
+	 */
+	static final double FLATTENING = 1.0 / 298.257223563;
+
+	/**
+	 * The third flattening, f / (2 - f), used to compute reduced latitudes.
+	 */
+	private static final double THIRD_FLATTENING = FLATTENING / (2.0 - FLATTENING);
 
 	/**
 	 * Identifier for string coordinate representation Degrees, Minutes, Seconds
@@ -249,9 +264,16 @@ public class Coordinates
 	 * <p>
 	 * The implementation shall calculate this as exactly as it can. However, it
 	 * is required that the result is within 0.35% of the correct result.
+	 * <p>
+	 * This implementation uses Lambert's formula, which corrects the distance
+	 * on a sphere for the flattening of the ellipsoid.  It is within 0.04% of
+	 * the geodesic distance, and much closer unless the points are nearly
+	 * antipodal.  <code>GeodesicCalculator</code> solves the geodesic to a
+	 * few centimeters.
 	 * 
 	 * @param to - the <code>Coordinates</code> of the destination
 	 * @return the distance to the destination in meters
+	 * @see GeodesicCalculator
 	 * @throws java.lang.NullPointerException - if the parameter is <code>null</code>
 	 */
 	public float distance (Coordinates to)
@@ -261,31 +283,88 @@ public class Coordinates
 			throw new IllegalArgumentException( "distance does not accept a null parameter." );
 		}
 		
-		// Convert from degrees to radians.
-		double lat1 = Math.toRadians( latitude );
+		// Convert from degrees to reduced latitudes and radians.
+		double beta1 = reducedLatitude( Math.toRadians(latitude) );
 		double lon1 = Math.toRadians( longitude );
-		double lat2 = Math.toRadians( to.latitude );
+		double beta2 = reducedLatitude( Math.toRadians(to.latitude) );
 		double lon2 = Math.toRadians( to.longitude );
 
-		// Use the Haversine formula for greater accuracy when measuring
+		// Use the Haversine formula on the reduced latitudes for the angle
+		// between the points on the auxiliary sphere.  It is accurate for
 		// short distances.  It is explained in detail here:
 		//   http://williams.best.vwh.net/avform.htm
 		//   http://www.movable-type.co.uk/scripts/LatLong.html
-		// d = 2*asin(sqrt(
-		//          (sin((lat1-lat2)/2))^2 +    // d2
-		//          cos(lat1)*cos(lat2) *       // d3
-		//          (sin((lon1-lon2)/2))^2) )   // d5
+		// h = (sin((lat1-lat2)/2))^2 +    // d2
+		//     cos(lat1)*cos(lat2) *       // d3
+		//     (sin((lon1-lon2)/2))^2      // d5
+		// sigma = 2*asin(sqrt(h))
 		
-		double d1 = Math.sin( (lat1 - lat2) / 2.0 );
+		double d1 = Math.sin( (beta1 - beta2) / 2.0 );
 		double d2 = d1 * d1;
-		double d3 = Math.cos( lat1 ) * Math.cos( lat2 );
+		double d3 = Math.cos( beta1 ) * Math.cos( beta2 );
 		double d4 = Math.sin( (lon1 - lon2) / 2.0 );
 		double d5 = d4 * d4;
-		double d6 = d2 + d3 * d5;
-		double distanceInRadians = 2.0 * asin( Math.sqrt(d6) );
+		double h = d2 + d3 * d5;
+		double sigma = 2.0 * asin( Math.sqrt(h) );
+		
+		return (float)lambert( beta1, beta2, h, sigma );
+	}
+
+	/**
+	 * Converts a geodetic latitude to the reduced latitude,
+	 * atan((1-f) tan(latitude)), with its series in the third flattening.
+	 * The series is within 2e-9 radians, or about a centimeter, and needs no
+	 * arc tangent.
+	 * 
+	 * @param latitude is the geodetic latitude in radians.
+	 * @return The reduced latitude in radians.
+	 */
+	static double reducedLatitude (double latitude)
+	{
+		double n = THIRD_FLATTENING;
+		return latitude - n * Math.sin( 2.0 * latitude ) + n * n / 2.0 * Math.sin( 4.0 * latitude );
+	}
+
+	/**
+	 * Lambert's formula for the distance on the ellipsoid.  It takes the
+	 * angle between two points on the auxiliary sphere and corrects it to
+	 * first order in the flattening.  See R. H. Rapp, "Geometric Geodesy
+	 * Part I", Ohio State University, 1991, section 6.5.
+	 * 
+	 * @param beta1 is the reduced latitude of one point in radians.
+	 * @param beta2 is the reduced latitude of the other point in radians.
+	 * @param h is the haversine of <code>sigma</code>, (sin(sigma/2))^2.
+	 * @param sigma is the angle between the points on the auxiliary sphere
+	 *  in radians.
+	 * @return The distance in meters.
+	 */
+	static double lambert (double beta1, double beta2, double h, double sigma)
+	{
+		if ( h <= 0.0 )
+		{
+			// The points coincide.
+			return 0.0;
+		}
+		
+		// x = (sigma - sin(sigma)) * (sin(P))^2 * (cos(Q))^2 / (cos(sigma/2))^2
+		// y = (sigma + sin(sigma)) * (cos(P))^2 * (sin(Q))^2 / (sin(sigma/2))^2
+		// where P = (beta1+beta2)/2 and Q = (beta2-beta1)/2.
+		
+		double sinSigma = 2.0 * Math.sqrt( h * (1.0 - h) );
+		double sinP = Math.sin( (beta1 + beta2) / 2.0 );
+		double sinP2 = sinP * sinP;
+		double sinQ = Math.sin( (beta2 - beta1) / 2.0 );
+		double sinQ2 = sinQ * sinQ;
+		double x = 0.0;
+		
+		if ( h < 1.0 )
+		{
+			x = (sigma - sinSigma) * sinP2 * (1.0 - sinQ2) / (1.0 - h);
+		}
+		
+		double y = (sigma + sinSigma) * (1.0 - sinP2) * sinQ2 / h;
 		
-		double distance = METERS_PER_RADIAN * distanceInRadians; 
-		return (float)distance;
+		return SEMI_MAJOR_AXIS * (sigma - FLATTENING / 2.0 * (x + y));
 	}
 	
 	/**
@@ -427,7 +506,7 @@ public class Coordinates
 	 * @param a - the value whose arc tangent is to be returned. 
 	 * @return the arc tangent of the argument.
 	 */
-	private static double atan (double a)
+	static double atan (double a)
 	{
 		// Special cases.
 		if ( Double.isNaN(a) )
@@ -540,7 +619,7 @@ public class Coordinates
 	 * @return the <i>theta</i> component of the point (r, <i>theta</i>) in polar
 	 *   coordinates that corresponds to the point (x, y) in Cartesian coordinates.
 	 */
-	private static double atan2 (double y, double x)
+	static double atan2 (double y, double x)
 	{
 		// Special cases.
 		if ( Double.isNaN(y) || Double.isNaN(x) )
@@ -688,7 +767,7 @@ public class Coordinates
 	 * @param a - the value whose arc sine is to be returned.
 	 * @return the arc sine of the argument.
 	 */
-	private static double asin (double a)
+	static double asin (double a)
 	{
 		// Special cases.
 		if ( Double.isNaN(a) || Math.abs(a) > 1.0 )
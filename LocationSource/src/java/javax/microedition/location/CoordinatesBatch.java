@@ -0,0 +1,327 @@
+package javax.microedition.location;
+
+/**
+ * Computes distances and azimuths for many points at once.  The points are
+ * given as parallel arrays of latitudes and longitudes, in degrees, rather than
+ * <code>Coordinates</code> objects, and the results are written into arrays
+ * supplied by the caller.  Nothing is allocated per point.
+ * <p>
+ * The results are the same as <code>Coordinates.distance</code> and
+ * <code>Coordinates.azimuthTo</code> give for each pair.  When every point is
+ * measured from the same origin the origin's trigonometry is only computed
+ * once.
+ * <p>
+ * Each method can also be passed a math mode.  <code>MATH_FAST</code>
+ * trades the last digits of the result for speed on hot paths that only need
+ * the accuracy the specification guarantees.  The mode applies only to that
+ * call; <code>Coordinates</code> itself always uses <code>MATH_PRECISE</code>.
+ * <p>
+ * Every method works on the elements <code>offset</code> through
+ * <code>offset + length - 1</code> of each array.  The inputs are not
+ * validated; latitudes and longitudes out of range give meaningless results.
+ *
+ * @see Coordinates#distance(Coordinates)
+ * @see Coordinates#azimuthTo(Coordinates)
+ */
+public final class CoordinatesBatch
+{
+	/**
+	 * Math mode that calculates distances and azimuths as exactly as the
+	 * implementation can.  It gives the same results as <code>Coordinates</code>.
+	 */
+	public static final int MATH_PRECISE = 1;
+
+	/**
+	 * Math mode that calculates distances and azimuths with fast polynomial
+	 * approximations.  Distances stay within 0.001% and azimuths within
+	 * 0.001 degrees of <code>MATH_PRECISE</code>, well inside what the
+	 * specification requires.
+	 *
+	 * @see FastTrig
+	 */
+	public static final int MATH_FAST = 2;
+
+	/**
+	 * This class is not instantiated.
+	 */
+	private CoordinatesBatch ()
+	{
+	}
+
+	/**
+	 * Calculates the distance from one origin to many destinations.
+	 *
+	 * @param latitude is the latitude of the origin in degrees.
+	 * @param longitude is the longitude of the origin in degrees.
+	 * @param latitudes are the latitudes of the destinations in degrees.
+	 * @param longitudes are the longitudes of the destinations in degrees.
+	 * @param results receives the distance to each destination in meters.
+	 * @param offset is the index of the first element of each array to use.
+	 * @param length is the number of destinations.
+	 * @throws ArrayIndexOutOfBoundsException if an array has fewer than
+	 *  <code>offset + length</code> elements.
+	 */
+	public static void distances (double latitude, double longitude,
+			double[] latitudes, double[] longitudes, float[] results, int offset, int length)
+	{
+		distances( latitude, longitude, latitudes, longitudes, results, offset, length, MATH_PRECISE );
+	}
+
+	/**
+	 * Same as <code>distances</code> but calculates with the given math mode.
+	 *
+	 * @param mathMode is either <code>MATH_PRECISE</code> or <code>MATH_FAST</code>.
+	 * @throws IllegalArgumentException if <code>mathMode</code> is not one of
+	 *  the math modes.
+	 * @see #distances(double, double, double[], double[], float[], int, int)
+	 */
+	public static void distances (double latitude, double longitude,
+			double[] latitudes, double[] longitudes, float[] results, int offset, int length, int mathMode)
+	{
+		boolean fast = isFast( mathMode );
+
+		checkBounds( latitudes.length, offset, length );
+		checkBounds( longitudes.length, offset, length );
+		checkBounds( results.length, offset, length );
+
+		double beta1 = Coordinates.reducedLatitude( Math.toRadians(latitude) );
+		double lon1 = Math.toRadians( longitude );
+		double cosBeta1 = Math.cos( beta1 );
+
+		for ( int i = offset; i < offset + length; i++ )
+		{
+			double beta2 = Coordinates.reducedLatitude( Math.toRadians(latitudes[i]) );
+			double lon2 = Math.toRadians( longitudes[i] );
+
+			results[i] = distance( beta1, lon1, cosBeta1, beta2, lon2, fast );
+		}
+	}
+
+	/**
+	 * Calculates the distance between pairs of points.
+	 *
+	 * @param fromLatitudes are the latitudes of the origins in degrees.
+	 * @param fromLongitudes are the longitudes of the origins in degrees.
+	 * @param toLatitudes are the latitudes of the destinations in degrees.
+	 * @param toLongitudes are the longitudes of the destinations in degrees.
+	 * @param results receives the distance between each pair in meters.
+	 * @param offset is the index of the first element of each array to use.
+	 * @param length is the number of pairs.
+	 * @throws ArrayIndexOutOfBoundsException if an array has fewer than
+	 *  <code>offset + length</code> elements.
+	 */
+	public static void distances (double[] fromLatitudes, double[] fromLongitudes,
+			double[] toLatitudes, double[] toLongitudes, float[] results, int offset, int length)
+	{
+		distances( fromLatitudes, fromLongitudes, toLatitudes, toLongitudes, results, offset, length, MATH_PRECISE );
+	}
+
+	/**
+	 * Same as <code>distances</code> but calculates with the given math mode.
+	 *
+	 * @param mathMode is either <code>MATH_PRECISE</code> or <code>MATH_FAST</code>.
+	 * @throws IllegalArgumentException if <code>mathMode</code> is not one of
+	 *  the math modes.
+	 * @see #distances(double[], double[], double[], double[], float[], int, int)
+	 */
+	public static void distances (double[] fromLatitudes, double[] fromLongitudes,
+			double[] toLatitudes, double[] toLongitudes, float[] results, int offset, int length, int mathMode)
+	{
+		boolean fast = isFast( mathMode );
+
+		checkBounds( fromLatitudes.length, offset, length );
+		checkBounds( fromLongitudes.length, offset, length );
+		checkBounds( toLatitudes.length, offset, length );
+		checkBounds( toLongitudes.length, offset, length );
+		checkBounds( results.length, offset, length );
+
+		for ( int i = offset; i < offset + length; i++ )
+		{
+			double beta1 = Coordinates.reducedLatitude( Math.toRadians(fromLatitudes[i]) );
+			double lon1 = Math.toRadians( fromLongitudes[i] );
+			double beta2 = Coordinates.reducedLatitude( Math.toRadians(toLatitudes[i]) );
+			double lon2 = Math.toRadians( toLongitudes[i] );
+
+			results[i] = distance( beta1, lon1, Math.cos(beta1), beta2, lon2, fast );
+		}
+	}
+
+	/**
+	 * Calculates the azimuth from one origin to many destinations.
+	 *
+	 * @param latitude is the latitude of the origin in degrees.
+	 * @param longitude is the longitude of the origin in degrees.
+	 * @param latitudes are the latitudes of the destinations in degrees.
+	 * @param longitudes are the longitudes of the destinations in degrees.
+	 * @param results receives the azimuth to each destination in degrees
+	 *  relative to true north.  Each is within the range [0.0, 360.0).
+	 * @param offset is the index of the first element of each array to use.
+	 * @param length is the number of destinations.
+	 * @throws ArrayIndexOutOfBoundsException if an array has fewer than
+	 *  <code>offset + length</code> elements.
+	 */
+	public static void azimuths (double latitude, double longitude,
+			double[] latitudes, double[] longitudes, float[] results, int offset, int length)
+	{
+		azimuths( latitude, longitude, latitudes, longitudes, results, offset, length, MATH_PRECISE );
+	}
+
+	/**
+	 * Same as <code>azimuths</code> but calculates with the given math mode.
+	 *
+	 * @param mathMode is either <code>MATH_PRECISE</code> or <code>MATH_FAST</code>.
+	 * @throws IllegalArgumentException if <code>mathMode</code> is not one of
+	 *  the math modes.
+	 * @see #azimuths(double, double, double[], double[], float[], int, int)
+	 */
+	public static void azimuths (double latitude, double longitude,
+			double[] latitudes, double[] longitudes, float[] results, int offset, int length, int mathMode)
+	{
+		boolean fast = isFast( mathMode );
+
+		checkBounds( latitudes.length, offset, length );
+		checkBounds( longitudes.length, offset, length );
+		checkBounds( results.length, offset, length );
+
+		double lat1 = Math.toRadians( latitude );
+		double lon1 = Math.toRadians( longitude );
+		double sinLat1 = Math.sin( lat1 );
+		double cosLat1 = Math.cos( lat1 );
+
+		for ( int i = offset; i < offset + length; i++ )
+		{
+			double lat2 = Math.toRadians( latitudes[i] );
+			double lon2 = Math.toRadians( longitudes[i] );
+
+			results[i] = course( lon1, sinLat1, cosLat1, lat2, lon2, fast );
+		}
+	}
+
+	/**
+	 * Calculates the azimuth between pairs of points.
+	 *
+	 * @param fromLatitudes are the latitudes of the origins in degrees.
+	 * @param fromLongitudes are the longitudes of the origins in degrees.
+	 * @param toLatitudes are the latitudes of the destinations in degrees.
+	 * @param toLongitudes are the longitudes of the destinations in degrees.
+	 * @param results receives the azimuth from each origin to its destination
+	 *  in degrees relative to true north.  Each is within the range [0.0, 360.0).
+	 * @param offset is the index of the first element of each array to use.
+	 * @param length is the number of pairs.
+	 * @throws ArrayIndexOutOfBoundsException if an array has fewer than
+	 *  <code>offset + length</code> elements.
+	 */
+	public static void azimuths (double[] fromLatitudes, double[] fromLongitudes,
+			double[] toLatitudes, double[] toLongitudes, float[] results, int offset, int length)
+	{
+		azimuths( fromLatitudes, fromLongitudes, toLatitudes, toLongitudes, results, offset, length, MATH_PRECISE );
+	}
+
+	/**
+	 * Same as <code>azimuths</code> but calculates with the given math mode.
+	 *
+	 * @param mathMode is either <code>MATH_PRECISE</code> or <code>MATH_FAST</code>.
+	 * @throws IllegalArgumentException if <code>mathMode</code> is not one of
+	 *  the math modes.
+	 * @see #azimuths(double[], double[], double[], double[], float[], int, int)
+	 */
+	public static void azimuths (double[] fromLatitudes, double[] fromLongitudes,
+			double[] toLatitudes, double[] toLongitudes, float[] results, int offset, int length, int mathMode)
+	{
+		boolean fast = isFast( mathMode );
+
+		checkBounds( fromLatitudes.length, offset, length );
+		checkBounds( fromLongitudes.length, offset, length );
+		checkBounds( toLatitudes.length, offset, length );
+		checkBounds( toLongitudes.length, offset, length );
+		checkBounds( results.length, offset, length );
+
+		for ( int i = offset; i < offset + length; i++ )
+		{
+			double lat1 = Math.toRadians( fromLatitudes[i] );
+			double lon1 = Math.toRadians( fromLongitudes[i] );
+			double lat2 = Math.toRadians( toLatitudes[i] );
+			double lon2 = Math.toRadians( toLongitudes[i] );
+
+			results[i] = course( lon1, Math.sin(lat1), Math.cos(lat1), lat2, lon2, fast );
+		}
+	}
+
+	/**
+	 * The distance formula used by <code>Coordinates.distance</code>.  All
+	 * angles are in radians.
+	 *
+	 * @param beta1 is the reduced latitude of the origin.
+	 * @param beta2 is the reduced latitude of the destination.
+	 * @param fast is <code>true</code> to use <code>FastTrig</code>.
+	 * @return The distance in meters.
+	 */
+	private static float distance (double beta1, double lon1, double cosBeta1, double beta2, double lon2, boolean fast)
+	{
+		double d1 = Math.sin( (beta1 - beta2) / 2.0 );
+		double d2 = d1 * d1;
+		double d3 = cosBeta1 * Math.cos( beta2 );
+		double d4 = Math.sin( (lon1 - lon2) / 2.0 );
+		double d5 = d4 * d4;
+		double h = d2 + d3 * d5;
+		double a = Math.sqrt( h );
+		double sigma = 2.0 * (fast ? FastTrig.asin(a) : Coordinates.asin(a));
+
+		return (float)Coordinates.lambert( beta1, beta2, h, sigma );
+	}
+
+	/**
+	 * The course formula used by <code>Coordinates.azimuthTo</code>.  All
+	 * angles are in radians.
+	 *
+	 * @param fast is <code>true</code> to use <code>FastTrig</code>.
+	 * @return The azimuth in degrees within the range [0.0, 360.0).
+	 */
+	private static float course (double lon1, double sinLat1, double cosLat1, double lat2, double lon2, boolean fast)
+	{
+		double deltaLon = lon2 - lon1;
+		double cosLat2 = Math.cos( lat2 );
+		double c1 = Math.sin(deltaLon) * cosLat2;
+		double c2 = cosLat1 * Math.sin(lat2) - sinLat1 * cosLat2 * Math.cos(deltaLon);
+		double courseInRadians = fast ? FastTrig.atan2( c1, c2 ) : Coordinates.atan2( c1, c2 );
+
+		double course = Math.toDegrees( courseInRadians );
+		course = (360.0 + course) % 360.0;  // Normalize to [0,360)
+		return (float)course;
+	}
+
+	/**
+	 * Checks a math mode before any results are written.
+	 *
+	 * @param mathMode is the mode passed by the caller.
+	 * @return <code>true</code> for <code>MATH_FAST</code> and <code>false</code>
+	 *  for <code>MATH_PRECISE</code>.
+	 * @throws IllegalArgumentException if <code>mathMode</code> is not one of
+	 *  the math modes.
+	 */
+	static boolean isFast (int mathMode)
+	{
+		if ( (mathMode != MATH_PRECISE) && (mathMode != MATH_FAST) )
+		{
+			throw new IllegalArgumentException( "Math mode (" + mathMode + ") is invalid." );
+		}
+
+		return (mathMode == MATH_FAST);
+	}
+
+	/**
+	 * Fails before any results are written if an array is too short.
+	 *
+	 * @param arrayLength is the length of an array.
+	 * @param offset is the index of the first element used.
+	 * @param length is the number of elements used.
+	 * @throws ArrayIndexOutOfBoundsException if the array is too short.
+	 */
+	private static void checkBounds (int arrayLength, int offset, int length)
+	{
+		if ( (offset < 0) || (length < 0) || (offset + length > arrayLength) )
+		{
+			throw new ArrayIndexOutOfBoundsException( "Range " + offset + "+" + length + " exceeds array length " + arrayLength );
+		}
+	}
+}
@@ -0,0 +1,85 @@
+package javax.microedition.location;
+
+/**
+ * Records what happens to locations on their way from the receiver to the
+ * listeners so stalls can be lined up with what the virtual machine was
+ * doing at the time.  On J2SE the records are Java Flight Recorder events
+ * through <code>FlightEventRecorder</code>, which is only compiled into the
+ * J2SE build and so is loaded by name.  CLDC has no such recorder.
+ * <p>
+ * Providers call <code>recorder</code> only when it is not <code>null</code>
+ * and the recorder checks whether each kind of event is being recorded
+ * before doing anything else, so events cost a branch or two when no one
+ * is recording.
+ *
+ * @see AbstractLocationProvider
+ */
+abstract class EventRecorder
+{
+	/**
+	 * The platform's recorder or <code>null</code> if it has none.
+	 */
+	static final EventRecorder recorder = load();
+
+	/**
+	 * Records a location arriving from the receiver, before it is raised.
+	 *
+	 * @param provider is the provider the location arrived at.
+	 * @param location is the location.
+	 */
+	abstract void locationArrived (LocationProvider provider, Location location);
+
+	/**
+	 * Records a location not given to any listener.
+	 *
+	 * @param provider is the provider that had the location.
+	 * @param suppressed is <code>true</code> if it was raised but no
+	 *  listener's interval had expired or <code>false</code> if the provider
+	 *  dropped it instead of raising it.
+	 */
+	abstract void locationDropped (LocationProvider provider, boolean suppressed);
+
+	/**
+	 * Records a provider changing state.
+	 *
+	 * @param provider is the provider.
+	 * @param oldState is the <code>LocationProvider</code> state it was in.
+	 * @param newState is the <code>LocationProvider</code> state it is now in.
+	 */
+	abstract void stateChanged (LocationProvider provider, int oldState, int newState);
+
+	/**
+	 * Starts timing a listener's <code>locationUpdated</code> call.
+	 *
+	 * @return What to pass to <code>dispatchEnded</code> or <code>null</code>
+	 *  if dispatches are not being recorded.
+	 */
+	abstract Object dispatchStarted ();
+
+	/**
+	 * Records a listener's <code>locationUpdated</code> call returning.
+	 *
+	 * @param dispatch is what <code>dispatchStarted</code> returned.  It is
+	 *  not <code>null</code>.
+	 * @param provider is the provider that raised the location.
+	 * @param listener is the listener called.
+	 * @param location is the location it was given.
+	 * @param failed is <code>true</code> if the listener threw.
+	 */
+	abstract void dispatchEnded (Object dispatch, LocationProvider provider, LocationListener listener, Location location, boolean failed);
+
+	/**
+	 * @return The J2SE recorder or <code>null</code> if it is not available.
+	 */
+	private static EventRecorder load ()
+	{
+		try
+		{
+			return (EventRecorder)Class.forName( "javax.microedition.location.FlightEventRecorder" ).newInstance();
+		}
+		catch (Throwable t)  // ClassNotFoundException, NoClassDefFoundError
+		{
+			return null;
+		}
+	}
+}
@@ -0,0 +1,144 @@
+package javax.microedition.location;
+
+/**
+ * Polynomial approximations of the inverse trigonometric functions CLDC
+ * lacks.  They are several times faster than the iterative versions in
+ * <code>Coordinates</code> and accurate enough for everything JSR-179 asks
+ * of distances and azimuths.
+ * <p>
+ * <code>atan</code> is reduced to [0, 1] and evaluated as x&middot;P(x<sup>2</sup>)
+ * where P is a degree 5 polynomial fitted to minimize the maximum relative
+ * error.  The error bounds are:
+ * <ul>
+ *  <li><code>atan</code>: relative error at most 4.4e-6, absolute error at
+ *      most 3.5e-6 radians.
+ *  <li><code>atan2</code> and <code>asin</code>: absolute error at most
+ *      3.5e-6 radians (0.0002 degrees) and relative error at most 4.4e-6.
+ * </ul>
+ * For distances that is a relative error of about 0.0005%, far inside the
+ * 0.35% the specification allows, and for azimuths it is far inside 1
+ * degree.  The functions do not handle infinite arguments.
+ *
+ * @see CoordinatesBatch#MATH_FAST
+ */
+final class FastTrig
+{
+	/**
+	 * Constant for PI divided by 2.
+	 */
+	private static final double PIover2 = Math.PI / 2;
+
+	/**
+	 * Coefficients of P, lowest order first.
+	 */
+	private static final double P0 = 0.9999956292965644;
+	private static final double P1 = -0.3329945812500105;
+	private static final double P2 = 0.19563579922154298;
+	private static final double P3 = -0.12123871756075354;
+	private static final double P4 = 0.05747690880300384;
+	private static final double P5 = -0.013480307289476204;
+
+	/**
+	 * This class is not instantiated.
+	 */
+	private FastTrig ()
+	{
+	}
+
+	/**
+	 * Returns the arc tangent of a value in the range of <code>-Math.PI/2</code>
+	 * through <code>Math.PI/2</code>.
+	 *
+	 * @param a - the value whose arc tangent is to be returned.
+	 * @return the arc tangent of the argument.
+	 */
+	static double atan (double a)
+	{
+		double x = Math.abs( a );
+		double arcTangent;
+
+		if ( x <= 1.0 )
+		{
+			arcTangent = reducedAtan( x );
+		}
+		else
+		{
+			arcTangent = PIover2 - reducedAtan( 1.0 / x );
+		}
+
+		return (a < 0.0) ? -arcTangent : arcTangent;
+	}
+
+	/**
+	 * Returns the angle <i>theta</i> of the point (x, y) in the range of
+	 * <i>-pi</i> to <i>pi</i>.  The origin (0, 0) returns 0.
+	 *
+	 * @param y - the ordinate coordinate
+	 * @param x - the abscissa coordinate
+	 * @return the <i>theta</i> component of the point (r, <i>theta</i>) in polar
+	 *   coordinates that corresponds to the point (x, y) in Cartesian coordinates.
+	 */
+	static double atan2 (double y, double x)
+	{
+		if ( Double.isNaN(y) || Double.isNaN(x) )
+		{
+			return Double.NaN;
+		}
+
+		double ax = Math.abs( x );
+		double ay = Math.abs( y );
+		double arcTangent;
+
+		if ( ax >= ay )
+		{
+			if ( ax == 0.0 )
+			{
+				return 0.0;
+			}
+
+			arcTangent = reducedAtan( ay / ax );
+		}
+		else
+		{
+			arcTangent = PIover2 - reducedAtan( ax / ay );
+		}
+
+		// Move the first quadrant angle into the point's quadrant.
+		if ( x < 0.0 )
+		{
+			arcTangent = Math.PI - arcTangent;
+		}
+
+		return (y < 0.0) ? -arcTangent : arcTangent;
+	}
+
+	/**
+	 * Returns the arc sine of a value in the range of <code>-Math.PI/2</code>
+	 * through <code>Math.PI/2</code>.
+	 *
+	 * @param a - the value whose arc sine is to be returned.
+	 * @return the arc sine of the argument or <code>Double.NaN</code> if its
+	 *  absolute value is greater than 1.
+	 */
+	static double asin (double a)
+	{
+		if ( Double.isNaN(a) || Math.abs(a) > 1.0 )
+		{
+			return Double.NaN;
+		}
+
+		return atan2( a, Math.sqrt(1.0 - a * a) );
+	}
+
+	/**
+	 * Evaluates the polynomial approximation of arc tangent.
+	 *
+	 * @param x must be in the range [0, 1].
+	 * @return the arc tangent of <code>x</code>.
+	 */
+	private static double reducedAtan (double x)
+	{
+		double t = x * x;
+		return x * (P0 + t * (P1 + t * (P2 + t * (P3 + t * (P4 + t * P5)))));
+	}
+}
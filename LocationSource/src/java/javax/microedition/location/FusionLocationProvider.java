@@ -0,0 +1,641 @@
+package javax.microedition.location;
+
+/**
+ * Location provider that merges the fixes of several receivers, such as two
+ * on the same vehicle, into one stream.  It listens to the providers it is
+ * given and, for each epoch, combines their latest fixes weighted by their
+ * horizontal accuracy and how fresh they are.
+ * <p>
+ * An epoch starts with the first fix to arrive after the last one.  The
+ * provider then waits until every available source has reported or the
+ * epoch window has passed, whichever is first, so a late or stalled receiver
+ * delays the merged fix by at most the window and never blocks the others.
+ * The sources' listeners only copy the fix into a slot and return; merging
+ * and raising events happen on this provider's own thread.
+ * <p>
+ * Each fix is weighted by the inverse square of its horizontal error
+ * grown by how far the receiver could have moved since it arrived, at its
+ * speed but no less than 1 meter per second.  The error is in meters: the
+ * horizontal accuracy, a dilution of precision, times the filter's
+ * <code>KalmanFilter.UERE</code>.  The merged fix's accuracy is converted
+ * back, so it is a dilution of precision like its sources'.  Fixes further from the most
+ * accurate one than three times their combined accuracy are left out rather
+ * than averaged in, so one receiver with multipath cannot drag the result.
+ * Fixes older than the stale time are not used at all.  The merged
+ * latitude and longitude are the weighted average; altitude, speed, and
+ * course come from the most accurate fix.
+ * <p>
+ * The provider is <code>AVAILABLE</code> while an epoch has a fix to use,
+ * <code>TEMPORARILY_UNAVAILABLE</code> when none does, and
+ * <code>OUT_OF_SERVICE</code> once every source is or it is closed.  An
+ * epoch whose fixes are all invalid raises an invalid location.
+ * <p>
+ * The sources that are <code>AbstractLocationProvider</code>s are listened
+ * to with <code>EVERY_LOCATION</code> so no fix is missed; others at the
+ * default interval of 1 second, the shortest JSR-179 allows.  Merging copies values into objects made up
+ * front, so with <code>setReuseLocations</code> an epoch creates no garbage.
+ * This class is not part of JSR-179.
+ *
+ * @see AbstractLocationProvider
+ */
+public class FusionLocationProvider
+	extends AbstractLocationProvider
+	implements Runnable
+{
+	/**
+	 * The default time, in milliseconds, to wait for the other sources
+	 * after the first fix of an epoch.
+	 */
+	public static final int DEFAULT_EPOCH_WINDOW = 250;
+
+	/**
+	 * The default age, in milliseconds, after which a fix is not used.
+	 */
+	public static final int DEFAULT_STALE_AFTER = 2000;
+
+	/**
+	 * The least speed, in meters per second, a fix's accuracy is assumed to
+	 * worsen by as it ages.
+	 */
+	private static final float MIN_DRIFT = 1.0f;
+
+	/**
+	 * Meters per degree of latitude, near enough for comparing fixes a few
+	 * hundred meters apart.
+	 */
+	private static final double METERS_PER_DEGREE = 111320.0;
+
+	/**
+	 * One of the providers being merged and the last fix it gave.  It is
+	 * the listener registered with the provider.
+	 */
+	private final class Source
+		implements LocationListener
+	{
+		/**
+		 * The provider listened to.
+		 */
+		final LocationProvider provider;
+
+		/**
+		 * The provider's last fix.  Guarded by <code>lock</code>.
+		 */
+		final MutableLocation latest = new MutableLocation();
+
+		/**
+		 * When <code>latest</code> arrived in milliseconds.  Guarded by
+		 * <code>lock</code>.
+		 */
+		long received;
+
+		/**
+		 * <code>true</code> if <code>latest</code> arrived in the current
+		 * epoch.  Guarded by <code>lock</code>.
+		 */
+		boolean reported;
+
+		/**
+		 * The provider's state.  Guarded by <code>lock</code>.
+		 */
+		int state;
+
+		Source (LocationProvider provider)
+		{
+			this.provider = provider;
+			this.state = provider.getState();
+		}
+
+		/**
+		 * Copies the fix for the next epoch.  Called on the source's thread.
+		 *
+		 * @see javax.microedition.location.LocationListener#locationUpdated(javax.microedition.location.LocationProvider, javax.microedition.location.Location)
+		 */
+		public void locationUpdated (LocationProvider provider, Location location)
+		{
+			if ( location == null )
+			{
+				return;
+			}
+
+			long now = System.currentTimeMillis();
+
+			synchronized ( lock )
+			{
+				// A listener is given the last valid fix again while the
+				// receiver has none.  It is not a new report.
+				if ( (location.getTimestamp() == latest.getTimestamp()) && (received != 0) )
+				{
+					return;
+				}
+
+				latest.set( location );
+				received = now;
+
+				if ( reported == false )
+				{
+					reported = true;
+
+					if ( reports++ == 0 )
+					{
+						epochStart = now;
+						lock.notify();
+					}
+					else if ( reports >= available() )
+					{
+						lock.notify();
+					}
+				}
+			}
+		}
+
+		/**
+		 * Records the source's state.  Called on the source's thread.
+		 *
+		 * @see javax.microedition.location.LocationListener#providerStateChanged(javax.microedition.location.LocationProvider, int)
+		 */
+		public void providerStateChanged (LocationProvider provider, int newState)
+		{
+			synchronized ( lock )
+			{
+				state = newState;
+				stateChanged = true;
+				lock.notify();
+			}
+		}
+	}
+
+	/**
+	 * Guards the fields the sources' threads hand over to this provider's
+	 * thread.  It is only held while copying values.
+	 */
+	private final Object lock = new Object();
+
+	/**
+	 * The providers being merged.
+	 */
+	private final Source[] sources;
+
+	/**
+	 * The time, in milliseconds, to wait for the other sources after the
+	 * first fix of an epoch.
+	 */
+	private final int epochWindow;
+
+	/**
+	 * The age, in milliseconds, after which a fix is not used.
+	 */
+	private final int staleAfter;
+
+	/**
+	 * The number of sources that have reported in the current epoch.
+	 * Guarded by <code>lock</code>.
+	 */
+	private int reports;
+
+	/**
+	 * When the first fix of the current epoch arrived in milliseconds.
+	 * Guarded by <code>lock</code>.
+	 */
+	private long epochStart;
+
+	/**
+	 * Set when a source changes state.  Guarded by <code>lock</code>.
+	 */
+	private boolean stateChanged;
+
+	/**
+	 * Set once the provider is closed.  Guarded by <code>lock</code>.
+	 */
+	private boolean closed;
+
+	/**
+	 * <code>true</code> if a source reported in the epoch just ended rather
+	 * than the wait for one timing out or a source changing state.  This and
+	 * the arrays below are only used by this provider's thread.
+	 */
+	private boolean newFixes;
+
+	/**
+	 * Each source's fix as of the current epoch.
+	 */
+	private final MutableLocation[] fixes;
+
+	/**
+	 * When each of <code>fixes</code> arrived in milliseconds or 0 if none
+	 * has.
+	 */
+	private final long[] arrived;
+
+	/**
+	 * Each source's state as of the current epoch.
+	 */
+	private final int[] states;
+
+	/**
+	 * Each fix's error, in meters, as of the current epoch or
+	 * <code>Float.NaN</code> if it is not used.
+	 */
+	private final float[] sigmas;
+
+	/**
+	 * The merged fix.
+	 */
+	private final MutableLocation fused = new MutableLocation();
+
+	/**
+	 * Merges providers with the default epoch window and stale time.
+	 *
+	 * @param providers are the providers to merge.
+	 * @throws NullPointerException if <code>providers</code> or one of them
+	 *  is <code>null</code>.
+	 * @throws IllegalArgumentException if <code>providers</code> is empty.
+	 */
+	public FusionLocationProvider (LocationProvider[] providers)
+	{
+		this( providers, DEFAULT_EPOCH_WINDOW, DEFAULT_STALE_AFTER );
+	}
+
+	/**
+	 * Merges providers.  The providers are listened to at once.  Providers
+	 * derived from <code>AbstractLocationProvider</code> keep their own
+	 * listeners; for others the listener set by
+	 * <code>setLocationListener</code> is replaced.
+	 *
+	 * @param providers are the providers to merge.
+	 * @param epochWindow is the time, in milliseconds, to wait for the
+	 *  other sources after the first fix of an epoch.
+	 * @param staleAfter is the age, in milliseconds, after which a fix is
+	 *  not used.
+	 * @throws NullPointerException if <code>providers</code> or one of them
+	 *  is <code>null</code>.
+	 * @throws IllegalArgumentException if <code>providers</code> is empty or
+	 *  a time is negative.
+	 */
+	public FusionLocationProvider (LocationProvider[] providers, int epochWindow, int staleAfter)
+	{
+		if ( providers.length == 0 )
+		{
+			throw new IllegalArgumentException( "There are no providers to merge." );
+		}
+
+		if ( (epochWindow < 0) || (staleAfter < 0) )
+		{
+			throw new IllegalArgumentException( "Times (" + epochWindow + ", " + staleAfter + ") must not be negative." );
+		}
+
+		this.epochWindow = epochWindow;
+		this.staleAfter = staleAfter;
+		this.sources = new Source[providers.length];
+		this.fixes = new MutableLocation[providers.length];
+		this.arrived = new long[providers.length];
+		this.states = new int[providers.length];
+		this.sigmas = new float[providers.length];
+
+		for ( int i = 0; i < providers.length; i++ )
+		{
+			if ( providers[i] == null )
+			{
+				throw new NullPointerException();
+			}
+
+			sources[i] = new Source( providers[i] );
+			fixes[i] = new MutableLocation();
+		}
+
+		new Thread( this, "Location fusion" ).start();
+
+		for ( int i = 0; i < sources.length; i++ )
+		{
+			LocationProvider provider = sources[i].provider;
+
+			if ( provider instanceof AbstractLocationProvider )
+			{
+				((AbstractLocationProvider)provider).addLocationListener( sources[i], EVERY_LOCATION, -1, -1 );
+			}
+			else
+			{
+				provider.setLocationListener( sources[i], -1, -1, -1 );
+			}
+		}
+	}
+
+	/**
+	 * Stops listening to the sources and stops this provider's thread.  The
+	 * provider goes <code>OUT_OF_SERVICE</code>.  The sources keep running.
+	 */
+	public void close ()
+	{
+		for ( int i = 0; i < sources.length; i++ )
+		{
+			LocationProvider provider = sources[i].provider;
+
+			if ( provider instanceof AbstractLocationProvider )
+			{
+				((AbstractLocationProvider)provider).removeLocationListener( sources[i] );
+			}
+			else
+			{
+				provider.setLocationListener( null, -1, -1, -1 );
+			}
+		}
+
+		synchronized ( lock )
+		{
+			closed = true;
+			lock.notify();
+		}
+	}
+
+	/**
+	 * Merges the sources' fixes epoch by epoch until closed.
+	 *
+	 * @see java.lang.Runnable#run()
+	 */
+	public void run ()
+	{
+		try
+		{
+			while ( nextEpoch() )
+			{
+				merge();
+			}
+
+			raiseState( OUT_OF_SERVICE );
+		}
+		catch (Throwable t)
+		{
+			// Should never happen, but if it does it would be nice to know why.
+			System.out.println( t.getMessage() );
+		}
+	}
+
+	/**
+	 * Waits for an epoch to end, or for a source to change state or a fix
+	 * to go stale, then copies what the sources have given.
+	 *
+	 * @return <code>false</code> once the provider is closed.
+	 * @throws InterruptedException if the thread is interrupted.
+	 */
+	private boolean nextEpoch ()
+		throws InterruptedException
+	{
+		synchronized ( lock )
+		{
+			// Wait for the first fix of the epoch.
+			if ( (reports == 0) && (stateChanged == false) && (closed == false) )
+			{
+				lock.wait( Math.max(staleAfter, 1) );
+			}
+
+			// Wait for the rest of the sources or the end of the window.
+			while ( (reports > 0) && (reports < available()) && (closed == false) )
+			{
+				long wait = epochStart + epochWindow - System.currentTimeMillis();
+
+				if ( wait <= 0 )
+				{
+					break;
+				}
+
+				lock.wait( wait );
+			}
+
+			if ( closed )
+			{
+				return false;
+			}
+
+			for ( int i = 0; i < sources.length; i++ )
+			{
+				Source source = sources[i];
+
+				if ( source.reported )
+				{
+					fixes[i].set( source.latest );
+					arrived[i] = source.received;
+					source.reported = false;
+				}
+
+				states[i] = source.state;
+			}
+
+			newFixes = (reports > 0);
+			reports = 0;
+			stateChanged = false;
+		}
+
+		return true;
+	}
+
+	/**
+	 * @return The number of sources that are <code>AVAILABLE</code>.  Called
+	 *  while holding <code>lock</code>.
+	 */
+	private int available ()
+	{
+		int count = 0;
+
+		for ( int i = 0; i < sources.length; i++ )
+		{
+			if ( sources[i].state == AVAILABLE )
+			{
+				count++;
+			}
+		}
+
+		return count;
+	}
+
+	/**
+	 * Merges the fixes of the epoch just ended and raises the result.
+	 */
+	private void merge ()
+	{
+		long now = System.currentTimeMillis();
+		int best = -1;
+
+		// Work out how accurate each fix still is.
+		for ( int i = 0; i < fixes.length; i++ )
+		{
+			sigmas[i] = Float.NaN;
+
+			if ( arrived[i] == 0 )
+			{
+				continue;
+			}
+
+			long age = now - arrived[i];
+			MutableLocation fix = fixes[i];
+
+			if ( (age > staleAfter) || (fix.isValid() == false) )
+			{
+				continue;
+			}
+
+			float error = (float)KalmanFilter.meters( fix.horizontalAccuracy() );
+			float speed = fix.getSpeed();
+
+			if ( (speed < MIN_DRIFT) || Float.isNaN(speed) )
+			{
+				speed = MIN_DRIFT;
+			}
+
+			sigmas[i] = error + speed * Math.max( age, 0 ) / 1000.0f;
+
+			if ( (best < 0) || (sigmas[i] < sigmas[best]) )
+			{
+				best = i;
+			}
+		}
+
+		if ( best >= 0 )
+		{
+			raiseState( AVAILABLE );
+		}
+		else
+		{
+			raiseState( (outOfService() ? OUT_OF_SERVICE : TEMPORARILY_UNAVAILABLE) );
+		}
+
+		// Only raise a location when a source gave a new one.
+		if ( newFixes == false )
+		{
+			return;
+		}
+
+		if ( best >= 0 )
+		{
+			fuse( best );
+		}
+		else
+		{
+			fused.setInvalid( now, -1, 0 );
+		}
+
+		raiseLocationEvent( isReusingLocations() ? fused : fused.copy() );
+	}
+
+	/**
+	 * Sets <code>fused</code> to the weighted average of the usable fixes.
+	 *
+	 * @param best is the index of the most accurate fix.
+	 */
+	private void fuse (int best)
+	{
+		MutableLocation fix = fixes[best];
+		double latitude = fix.latitude();
+		double longitude = fix.longitude();
+		double metersPerLongitude = METERS_PER_DEGREE * Math.cos( Math.toRadians(latitude) );
+
+		double sumWeights = 0.0;
+		double sumLatitude = 0.0;
+		double sumLongitude = 0.0;
+		long timestamp = 0;
+
+		for ( int i = 0; i < fixes.length; i++ )
+		{
+			float sigma = sigmas[i];
+
+			if ( Float.isNaN(sigma) )
+			{
+				continue;
+			}
+
+			// Offsets from the most accurate fix, across the antimeridian if need be.
+			double dLatitude = fixes[i].latitude() - latitude;
+			double dLongitude = fixes[i].longitude() - longitude;
+
+			if ( dLongitude > 180.0 )
+			{
+				dLongitude -= 360.0;
+			}
+			else if ( dLongitude < -180.0 )
+			{
+				dLongitude += 360.0;
+			}
+
+			// Leave out fixes that disagree with the most accurate one.
+			double north = dLatitude * METERS_PER_DEGREE;
+			double east = dLongitude * metersPerLongitude;
+			double limit = 3.0 * (sigma + sigmas[best]);
+
+			if ( north * north + east * east > limit * limit )
+			{
+				continue;
+			}
+
+			double weight = 1.0 / ((double)sigma * sigma);
+			sumWeights += weight;
+			sumLatitude += weight * dLatitude;
+			sumLongitude += weight * dLongitude;
+			timestamp = Math.max( timestamp, fixes[i].getTimestamp() );
+		}
+
+		// A weighted average of valid latitudes is a valid latitude.
+		latitude += sumLatitude / sumWeights;
+		longitude += sumLongitude / sumWeights;
+
+		if ( longitude >= 180.0 )
+		{
+			longitude -= 360.0;
+		}
+		else if ( longitude < -180.0 )
+		{
+			longitude += 360.0;
+		}
+
+		// Report the error back as a dilution of precision.
+		fused.set( latitude, longitude, fix.altitude(),
+			(float)(1.0 / Math.sqrt(sumWeights) / KalmanFilter.UERE), fix.verticalAccuracy(),
+			fix.getSpeed(), fix.getCourse(), timestamp, fix.getGPSTime(), fix.getArrivalNanoTime() );
+	}
+
+	/**
+	 * @return <code>true</code> if every source is <code>OUT_OF_SERVICE</code>.
+	 */
+	private boolean outOfService ()
+	{
+		for ( int i = 0; i < states.length; i++ )
+		{
+			if ( states[i] != OUT_OF_SERVICE )
+			{
+				return false;
+			}
+		}
+
+		return true;
+	}
+
+	/**
+	 * Raises a state change if the state is different.
+	 *
+	 * @param newState is the <code>LocationProvider</code> state code.
+	 */
+	private void raiseState (int newState)
+	{
+		if ( getState() != newState )
+		{
+			raiseStateChangeEvent( newState );
+		}
+	}
+
+	/**
+	 * @return The names of the providers being merged.
+	 */
+	public String toString ()
+	{
+		StringBuffer name = new StringBuffer( "Fusion of " );
+
+		for ( int i = 0; i < sources.length; i++ )
+		{
+			if ( i > 0 )
+			{
+				name.append( ", " );
+			}
+
+			name.append( sources[i].provider.toString() );
+		}
+
+		return name.toString();
+	}
+}
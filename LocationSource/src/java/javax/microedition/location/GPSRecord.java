@@ -2,34 +2,110 @@ package javax.microedition.location;
 
 /**
  * Storage data type for parsed GPS data.
+ * <p>
+ * All values are held as primitives so that a single record can be
+ * filled over and over again by <code>NMEAParser</code> without creating
+ * any garbage.  Fields that have not been reported by the receiver are
+ * <code>Double.NaN</code>, <code>Float.NaN</code>, or <code>-1</code>.
+ *
+ * @see NMEAParser
  */
 final class GPSRecord {
     /**
-     * Character that indicates a warning.
-     */
-    public String altitude;
-    public String date;
-    public String secondsSinceMidnight;
-    public String hdop;
-    public String lattitude;
-    public char lattitudeDirection;
-    public String longitude;
-    public char longitudeDirection;
-    public String quality;
-    public String satelliteCount;
-    public String vdop;
-    
+     * Bit in <code>sentences</code> set when a GGA sentence was parsed.
+     */
+    public static final int GGA = 0x01;
+
+    /**
+     * Bit in <code>sentences</code> set when a RMC sentence was parsed.
+     */
+    public static final int RMC = 0x02;
+
+    /**
+     * Bit in <code>sentences</code> set when a GSA sentence was parsed.
+     */
+    public static final int GSA = 0x04;
+
+    /**
+     * Bit in <code>sentences</code> set when a VTG sentence was parsed.
+     */
+    public static final int VTG = 0x08;
+
+    /**
+     * Bit mask of the sentence types that have updated this record since
+     * it was last <code>reset</code>.
+     */
+    public int sentences;
+
+    /**
+     * The altitude in meters above the WGS84 ellipsoid.  This is the
+     * GGA altitude above mean sea level plus the geoid separation.
+     */
+    public float altitude;
+
+    /**
+     * The UTC date as the integer <i>ddmmyy</i>.
+     */
+    public int date;
+
+    /**
+     * The UTC time of the fix in whole seconds since midnight.
+     */
+    public int secondsSinceMidnight;
+
+    /**
+     * The fractional part of the UTC time of the fix in milliseconds.
+     */
+    public int milliseconds;
+
+    public float hdop;
+    public float vdop;
+    public float pdop;
+
+    /**
+     * The latitude in degrees.  Southern latitudes are negative.
+     */
+    public double latitude;
+
+    /**
+     * The longitude in degrees.  Western longitudes are negative.
+     */
+    public double longitude;
+
+    /**
+     * The GGA fix quality.  0 is no fix, 1 is a GPS fix, 2 is a DGPS fix.
+     */
+    public int quality;
+
+    /**
+     * The GSA fix type.  1 is no fix, 2 is a 2D fix, 3 is a 3D fix.
+     */
+    public int fixType;
+
+    public int satelliteCount;
+
+    /**
+     * The RMC status.  <code>true</code> for 'A' (active) and <code>false</code>
+     * for 'V' (void).
+     */
+    public boolean active;
+
     /**
      * The ground speed in knots.
      */
-    public String speed;
-    public String course;
+    public float speed;
+
+    /**
+     * The course over ground in degrees relative to true north.
+     */
+    public float course;
 
     /**
      * Constructs a record object for the current position
      * calculated by GPS.
      */
     public GPSRecord() {
+        reset();
     }
 
     /**
@@ -38,18 +114,136 @@ final class GPSRecord {
      * @param record is GPS record to make a deep copy of.
      */
     public GPSRecord(GPSRecord record) {
+        copy(record);
+    }
+
+    /**
+     * Clears all the values so the record can be reused for the next fix.
+     */
+    public void reset() {
+        this.sentences = 0;
+        this.altitude = Float.NaN;
+        this.date = -1;
+        this.secondsSinceMidnight = -1;
+        this.milliseconds = 0;
+        this.hdop = Float.NaN;
+        this.vdop = Float.NaN;
+        this.pdop = Float.NaN;
+        this.latitude = Double.NaN;
+        this.longitude = Double.NaN;
+        this.quality = -1;
+        this.fixType = -1;
+        this.satelliteCount = -1;
+        this.active = false;
+        this.speed = Float.NaN;
+        this.course = Float.NaN;
+    }
+
+    /**
+     * Copies every value from another record into this one.
+     *
+     * @param record is GPS record to copy.
+     */
+    public void copy(GPSRecord record) {
+        this.sentences = record.sentences;
         this.altitude = record.altitude;
         this.date = record.date;
         this.secondsSinceMidnight = record.secondsSinceMidnight;
+        this.milliseconds = record.milliseconds;
         this.hdop = record.hdop;
-        this.lattitude = record.lattitude;
-        this.lattitudeDirection = record.lattitudeDirection;
+        this.vdop = record.vdop;
+        this.pdop = record.pdop;
+        this.latitude = record.latitude;
         this.longitude = record.longitude;
-        this.longitudeDirection = record.longitudeDirection;
         this.quality = record.quality;
+        this.fixType = record.fixType;
         this.satelliteCount = record.satelliteCount;
-        this.vdop = record.vdop;
+        this.active = record.active;
         this.speed = record.speed;
         this.course = record.course;
     }
+
+    /**
+     * Returns the UTC date and time of the fix.  Two digit years are taken
+     * to be from 1980 to 2079.
+     *
+     * @return The time in milliseconds since 1970 or -1 if the date or time
+     *  was not reported.
+     */
+    public long utcTime() {
+        if (date < 0 || secondsSinceMidnight < 0) {
+            return -1;
+        }
+
+        int day = date / 10000;
+        int month = (date / 100) % 100;
+        int year = date % 100;
+        year += (year < 80) ? 2000 : 1900;
+
+        if (day < 1 || day > 31 || month < 1 || month > 12) {
+            return -1;
+        }
+
+        // Days since 1970 of the civil date.
+        int y = (month <= 2) ? year - 1 : year;
+        int era = y / 400;
+        int yearOfEra = y - era * 400;
+        int dayOfYear = (153 * (month + ((month > 2) ? -3 : 9)) + 2) / 5 + day - 1;
+        int dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+        long days = era * 146097L + dayOfEra - 719468;
+
+        return days * 86400000L + secondsSinceMidnight * 1000L + milliseconds;
+    }
+
+    /**
+     * Sets the UTC date and time of the fix.
+     *
+     * @param time is in milliseconds since 1970 or -1 if it is not known.
+     */
+    public void setUTCTime(long time) {
+        if (time < 0) {
+            this.date = -1;
+            this.secondsSinceMidnight = -1;
+            this.milliseconds = 0;
+            return;
+        }
+
+        long days = time / 86400000L;
+        int millisOfDay = (int)(time - days * 86400000L);
+
+        // Civil date of the days since 1970.
+        long z = days + 719468;
+        long era = z / 146097;
+        int dayOfEra = (int)(z - era * 146097);
+        int yearOfEra = (dayOfEra - dayOfEra / 1460 + dayOfEra / 36524 - dayOfEra / 146096) / 365;
+        int dayOfYear = dayOfEra - (365 * yearOfEra + yearOfEra / 4 - yearOfEra / 100);
+        int mp = (5 * dayOfYear + 2) / 153;
+        int day = dayOfYear - (153 * mp + 2) / 5 + 1;
+        int month = (mp < 10) ? mp + 3 : mp - 9;
+        long year = yearOfEra + era * 400 + ((month <= 2) ? 1 : 0);
+
+        this.date = day * 10000 + month * 100 + (int)(year % 100);
+        this.secondsSinceMidnight = millisOfDay / 1000;
+        this.milliseconds = millisOfDay % 1000;
+    }
+
+    /**
+     * @return <code>true</code> if the record holds a position the receiver
+     *  considers a fix; <code>false</code> otherwise.
+     */
+    public boolean hasFix() {
+        if (Double.isNaN(latitude) || Double.isNaN(longitude)) {
+            return false;
+        }
+
+        if ((sentences & RMC) != 0 && !active) {
+            return false;
+        }
+
+        if ((sentences & GGA) != 0 && quality == 0) {
+            return false;
+        }
+
+        return true;
+    }
 }
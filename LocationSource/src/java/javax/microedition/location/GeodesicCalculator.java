@@ -0,0 +1,362 @@
+package javax.microedition.location;
+
+/**
+ * Calculates distances and azimuths from a fixed origin on the WGS84
+ * ellipsoid.  <code>Coordinates.distance</code> approximates the geodesic with
+ * Lambert's formula; this class solves the inverse geodesic problem on the
+ * ellipsoid itself with Vincenty's method.  The method is exact to a fraction
+ * of a millimeter but the arc tangent CLDC lacks is computed by
+ * <code>Coordinates.atan2</code>, which is within 6e-9 radians, so results are
+ * accurate to a few centimeters.
+ * <p>
+ * Everything that depends only on the origin, such as its reduced latitude
+ * and trigonometry, is computed once when the calculator is constructed so
+ * measuring one origin against many points only pays for the other end of
+ * each line.  Calculators are immutable and can be shared between threads.
+ * <p>
+ * Vincenty's method iterates until the longitude on the auxiliary sphere
+ * converges.  The number of iterations is capped so the worst case time is
+ * bounded.  For nearly antipodal points, where the method may not converge
+ * within the cap, the distance and azimuth of <code>Coordinates</code> are
+ * returned instead.
+ *
+ * @see Coordinates#distance(Coordinates)
+ */
+public final class GeodesicCalculator
+{
+	/**
+	 * The equatorial radius of the WGS84 ellipsoid in meters.
+	 */
+	private static final double SEMI_MAJOR_AXIS = 6378137.0;
+
+	/**
+	 * The flattening of the WGS84 ellipsoid.
+	 */
+	private static final double FLATTENING = 1.0 / 298.257223563;
+
+	/**
+	 * The polar radius of the WGS84 ellipsoid in meters.
+	 */
+	private static final double SEMI_MINOR_AXIS = SEMI_MAJOR_AXIS * (1.0 - FLATTENING);
+
+	/**
+	 * (a<sup>2</sup> - b<sup>2</sup>) / b<sup>2</sup> used to compute u<sup>2</sup>.
+	 */
+	private static final double SECOND_ECCENTRICITY_SQUARED =
+		(SEMI_MAJOR_AXIS * SEMI_MAJOR_AXIS - SEMI_MINOR_AXIS * SEMI_MINOR_AXIS) / (SEMI_MINOR_AXIS * SEMI_MINOR_AXIS);
+
+	/**
+	 * The change in longitude, in radians, at which the iteration has
+	 * converged.  This is about 0.06 mm on the ground.
+	 */
+	private static final double CONVERGENCE = 1e-12;
+
+	/**
+	 * The default cap on iterations.  Points that are not nearly antipodal
+	 * converge in fewer than ten.
+	 */
+	public static final int DEFAULT_MAX_ITERATIONS = 20;
+
+	/**
+	 * The origin's longitude in radians.
+	 */
+	private final double longitude;
+
+	/**
+	 * The sine of the origin's reduced latitude.
+	 */
+	private final double sinU1;
+
+	/**
+	 * The cosine of the origin's reduced latitude.
+	 */
+	private final double cosU1;
+
+	/**
+	 * The origin's latitude in radians, for the fallback formulas.
+	 */
+	private final double latitude;
+
+	/**
+	 * The cosine of the origin's latitude, for the fallback formulas.
+	 */
+	private final double cosLatitude;
+
+	/**
+	 * The most iterations made for any point.
+	 */
+	private final int maxIterations;
+
+	/**
+	 * Constructs a calculator measuring from <code>origin</code>.
+	 *
+	 * @param origin is the point distances and azimuths are measured from.
+	 */
+	public GeodesicCalculator (Coordinates origin)
+	{
+		this( origin.getLatitude(), origin.getLongitude(), DEFAULT_MAX_ITERATIONS );
+	}
+
+	/**
+	 * Constructs a calculator measuring from an origin.
+	 *
+	 * @param latitude is the origin's latitude in degrees.
+	 * @param longitude is the origin's longitude in degrees.
+	 */
+	public GeodesicCalculator (double latitude, double longitude)
+	{
+		this( latitude, longitude, DEFAULT_MAX_ITERATIONS );
+	}
+
+	/**
+	 * Constructs a calculator measuring from an origin with a custom cap on
+	 * the iterations of Vincenty's method.
+	 *
+	 * @param latitude is the origin's latitude in degrees.
+	 * @param longitude is the origin's longitude in degrees.
+	 * @param maxIterations is the most iterations made for any point.
+	 * @throws IllegalArgumentException if <code>maxIterations</code> is less than 1.
+	 */
+	public GeodesicCalculator (double latitude, double longitude, int maxIterations)
+	{
+		if ( maxIterations < 1 )
+		{
+			throw new IllegalArgumentException( "Maximum iterations (" + maxIterations + ") is invalid." );
+		}
+
+		this.latitude = Math.toRadians( latitude );
+		this.longitude = Math.toRadians( longitude );
+		this.cosLatitude = Math.cos( this.latitude );
+		this.maxIterations = maxIterations;
+
+		// The reduced latitude is atan((1-f) tan(latitude)).  Only its sine and
+		// cosine are needed and they come straight from its tangent.
+		double tanU1 = (1.0 - FLATTENING) * Math.tan( this.latitude );
+		this.cosU1 = 1.0 / Math.sqrt( 1.0 + tanU1 * tanU1 );
+		this.sinU1 = tanU1 * cosU1;
+	}
+
+	/**
+	 * Calculates the geodesic distance from the origin.
+	 *
+	 * @param latitude is the destination's latitude in degrees.
+	 * @param longitude is the destination's longitude in degrees.
+	 * @return The distance in meters.
+	 */
+	public double distance (double latitude, double longitude)
+	{
+		return inverse( latitude, longitude, false );
+	}
+
+	/**
+	 * Calculates the geodesic distance from the origin.
+	 *
+	 * @param to is the destination.
+	 * @return The distance in meters.
+	 * @throws NullPointerException if <code>to</code> is <code>null</code>.
+	 */
+	public float distance (Coordinates to)
+	{
+		return (float)inverse( to.getLatitude(), to.getLongitude(), false );
+	}
+
+	/**
+	 * Calculates the initial azimuth of the geodesic from the origin.
+	 *
+	 * @param latitude is the destination's latitude in degrees.
+	 * @param longitude is the destination's longitude in degrees.
+	 * @return The azimuth in degrees relative to true north within the range
+	 *  [0.0, 360.0).  If the destination is the origin this is 0.0.
+	 */
+	public double azimuth (double latitude, double longitude)
+	{
+		return inverse( latitude, longitude, true );
+	}
+
+	/**
+	 * Calculates the initial azimuth of the geodesic from the origin.
+	 *
+	 * @param to is the destination.
+	 * @return The azimuth in degrees relative to true north within the range
+	 *  [0.0, 360.0).
+	 * @throws NullPointerException if <code>to</code> is <code>null</code>.
+	 */
+	public float azimuthTo (Coordinates to)
+	{
+		return (float)inverse( to.getLatitude(), to.getLongitude(), true );
+	}
+
+	/**
+	 * Calculates the geodesic distance from the origin to many points.
+	 *
+	 * @param latitudes are the latitudes of the destinations in degrees.
+	 * @param longitudes are the longitudes of the destinations in degrees.
+	 * @param results receives the distance to each destination in meters.
+	 * @param offset is the index of the first element of each array to use.
+	 * @param length is the number of destinations.
+	 * @throws ArrayIndexOutOfBoundsException if an array has fewer than
+	 *  <code>offset + length</code> elements.
+	 */
+	public void distances (double[] latitudes, double[] longitudes, double[] results, int offset, int length)
+	{
+		int end = offset + length;
+
+		if ( (offset < 0) || (length < 0) ||
+			 (end > latitudes.length) || (end > longitudes.length) || (end > results.length) )
+		{
+			throw new ArrayIndexOutOfBoundsException( "Range " + offset + "+" + length + " exceeds an array length" );
+		}
+
+		for ( int i = offset; i < offset + length; i++ )
+		{
+			results[i] = inverse( latitudes[i], longitudes[i], false );
+		}
+	}
+
+	/**
+	 * Solves the inverse geodesic problem with Vincenty's method.  See
+	 * T. Vincenty, "Direct and Inverse Solutions of Geodesics on the
+	 * Ellipsoid with Application of Nested Equations", Survey Review, 1975.
+	 *
+	 * @param latitude is the destination's latitude in degrees.
+	 * @param longitude is the destination's longitude in degrees.
+	 * @param wantAzimuth is <code>true</code> to return the initial azimuth
+	 *  and <code>false</code> to return the distance.
+	 * @return The distance in meters or azimuth in degrees.
+	 */
+	private double inverse (double latitude, double longitude, boolean wantAzimuth)
+	{
+		double lat2 = Math.toRadians( latitude );
+		double L = Math.toRadians( longitude ) - this.longitude;
+
+		double tanU2 = (1.0 - FLATTENING) * Math.tan( lat2 );
+		double cosU2 = 1.0 / Math.sqrt( 1.0 + tanU2 * tanU2 );
+		double sinU2 = tanU2 * cosU2;
+
+		double sinU1sinU2 = sinU1 * sinU2;
+		double cosU1cosU2 = cosU1 * cosU2;
+		double cosU1sinU2 = cosU1 * sinU2;
+		double sinU1cosU2 = sinU1 * cosU2;
+
+		double lambda = L;
+		double sinLambda;
+		double cosLambda;
+		double sinSigma;
+		double cosSigma;
+		double sigma;
+		double cosSquaredAlpha;
+		double cos2SigmaM;
+		int iterations = 0;
+
+		do
+		{
+			sinLambda = Math.sin( lambda );
+			cosLambda = Math.cos( lambda );
+
+			double t1 = cosU2 * sinLambda;
+			double t2 = cosU1sinU2 - sinU1cosU2 * cosLambda;
+			sinSigma = Math.sqrt( t1 * t1 + t2 * t2 );
+
+			if ( sinSigma == 0.0 )
+			{
+				// The points coincide.
+				return 0.0;
+			}
+
+			cosSigma = sinU1sinU2 + cosU1cosU2 * cosLambda;
+			sigma = Coordinates.atan2( sinSigma, cosSigma );
+
+			double sinAlpha = cosU1cosU2 * sinLambda / sinSigma;
+			cosSquaredAlpha = 1.0 - sinAlpha * sinAlpha;
+
+			if ( cosSquaredAlpha != 0.0 )
+			{
+				cos2SigmaM = cosSigma - 2.0 * sinU1sinU2 / cosSquaredAlpha;
+			}
+			else
+			{
+				// Both points are on the equator.
+				cos2SigmaM = 0.0;
+			}
+
+			double C = FLATTENING / 16.0 * cosSquaredAlpha * (4.0 + FLATTENING * (4.0 - 3.0 * cosSquaredAlpha));
+			double previous = lambda;
+
+			lambda = L + (1.0 - C) * FLATTENING * sinAlpha *
+				(sigma + C * sinSigma * (cos2SigmaM + C * cosSigma * (-1.0 + 2.0 * cos2SigmaM * cos2SigmaM)));
+
+			if ( Math.abs(lambda - previous) <= CONVERGENCE )
+			{
+				break;
+			}
+
+			iterations++;
+		}
+		while ( iterations < maxIterations );
+
+		if ( iterations == maxIterations )
+		{
+			// Nearly antipodal points may never converge.
+			return fallback( lat2, L, wantAzimuth );
+		}
+
+		if ( wantAzimuth )
+		{
+			double azimuth = Coordinates.atan2( cosU2 * sinLambda, cosU1sinU2 - sinU1cosU2 * cosLambda );
+			return normalize( Math.toDegrees(azimuth) );
+		}
+
+		double uSquared = cosSquaredAlpha * SECOND_ECCENTRICITY_SQUARED;
+		double A = 1.0 + uSquared / 16384.0 * (4096.0 + uSquared * (-768.0 + uSquared * (320.0 - 175.0 * uSquared)));
+		double B = uSquared / 1024.0 * (256.0 + uSquared * (-128.0 + uSquared * (74.0 - 47.0 * uSquared)));
+		double deltaSigma = B * sinSigma * (cos2SigmaM + B / 4.0 *
+			(cosSigma * (-1.0 + 2.0 * cos2SigmaM * cos2SigmaM) -
+			 B / 6.0 * cos2SigmaM * (-3.0 + 4.0 * sinSigma * sinSigma) * (-3.0 + 4.0 * cos2SigmaM * cos2SigmaM)));
+
+		return SEMI_MINOR_AXIS * A * (sigma - deltaSigma);
+	}
+
+	/**
+	 * The formulas of <code>Coordinates</code>, used when Vincenty's method
+	 * does not converge.
+	 *
+	 * @param lat2 is the destination's latitude in radians.
+	 * @param deltaLon is the destination's longitude minus the origin's in radians.
+	 * @param wantAzimuth is <code>true</code> to return the azimuth and
+	 *  <code>false</code> to return the distance.
+	 * @return The distance in meters or azimuth in degrees.
+	 */
+	private double fallback (double lat2, double deltaLon, boolean wantAzimuth)
+	{
+		double cosLat2 = Math.cos( lat2 );
+
+		if ( wantAzimuth )
+		{
+			double c1 = Math.sin( deltaLon ) * cosLat2;
+			double c2 = cosLatitude * Math.sin( lat2 ) - Math.sin( latitude ) * cosLat2 * Math.cos( deltaLon );
+			return normalize( Math.toDegrees(Coordinates.atan2(c1, c2)) );
+		}
+
+		double beta1 = Coordinates.reducedLatitude( latitude );
+		double beta2 = Coordinates.reducedLatitude( lat2 );
+		double d1 = Math.sin( (beta1 - beta2) / 2.0 );
+		double d4 = Math.sin( deltaLon / 2.0 );
+		double h = d1 * d1 + Math.cos( beta1 ) * Math.cos( beta2 ) * d4 * d4;
+		return Coordinates.lambert( beta1, beta2, h, 2.0 * Coordinates.asin(Math.sqrt(h)) );
+	}
+
+	/**
+	 * @return <code>degrees</code> normalized to [0, 360).
+	 */
+	private static double normalize (double degrees)
+	{
+		double normalized = (360.0 + degrees) % 360.0;
+
+		if ( normalized >= 360.0 )
+		{
+			normalized = 0.0;
+		}
+
+		return normalized;
+	}
+}
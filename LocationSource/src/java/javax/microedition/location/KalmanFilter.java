@@ -0,0 +1,451 @@
+package javax.microedition.location;
+
+/**
+ * Smooths the locations raised by a provider with a constant velocity Kalman
+ * filter.  Jitter in raw fixes makes a stationary receiver wander and makes
+ * proximity and other distance tests trigger over and over; the filter
+ * weighs each fix against where the previous ones said the receiver should
+ * be.
+ * <p>
+ * Position is tracked in meters east and north of an origin near the
+ * receiver and altitude in meters, each as a position and a velocity.  The
+ * receiver is assumed to move at a constant velocity disturbed by random
+ * acceleration.  Each fix is a measurement of position with a standard
+ * deviation of its dilution of precision times <code>UERE</code>, the
+ * accuracy of the range to a single satellite.  A horizontal or vertical
+ * accuracy of <code>Float.NaN</code> counts as a dilution of precision of
+ * <code>DEFAULT_DOP</code>.  Speed and course, when the receiver gives them,
+ * measure the horizontal velocity.
+ * <p>
+ * Filtering does not allocate: the state is kept in fields and the
+ * measurements are applied one at a time so no matrices are needed.  The
+ * only object made is the smoothed <code>Location</code>, and none when it
+ * is smoothed into a <code>MutableLocation</code> as the provider does when
+ * reusing locations.
+ * <p>
+ * This class is not synchronized.  <code>AbstractLocationProvider</code>
+ * calls it only from the single thread raising its events.
+ *
+ * @see AbstractLocationProvider#setSmoothing(boolean)
+ */
+final class KalmanFilter
+{
+	/**
+	 * The user equivalent range error, in meters, that dilutions of precision
+	 * are multiplied by to get a standard deviation.
+	 */
+	static final double UERE = 5.0;
+
+	/**
+	 * The dilution of precision assumed when a fix does not give one.
+	 */
+	static final double DEFAULT_DOP = 2.0;
+
+	/**
+	 * The standard deviation, in meters per second squared, of the random
+	 * acceleration horizontally.  About what a car does in town.
+	 */
+	private static final double HORIZONTAL_ACCELERATION = 2.0;
+
+	/**
+	 * The standard deviation, in meters per second squared, of the random
+	 * acceleration vertically.
+	 */
+	private static final double VERTICAL_ACCELERATION = 0.5;
+
+	/**
+	 * The standard deviation, in meters per second, of a receiver's speed.
+	 */
+	private static final double SPEED_ERROR = 0.5;
+
+	/**
+	 * The standard deviation, in meters per second, of the velocity of the
+	 * first fix.
+	 */
+	private static final double INITIAL_VELOCITY_ERROR = 10.0;
+
+	/**
+	 * Gaps between fixes longer than this, in milliseconds, start the filter
+	 * over.
+	 */
+	private static final long MAX_GAP = 10000;
+
+	/**
+	 * The most northern latitude a location accepts: the largest double
+	 * below 90 degrees.
+	 */
+	private static final double MAX_LATITUDE = Double.longBitsToDouble( Double.doubleToLongBits(90.0) - 1 );
+
+	/**
+	 * Once the estimate is this far, in meters, from the origin the origin is
+	 * moved to it so the flat earth approximation stays accurate.
+	 */
+	private static final double MAX_OFFSET = 10000.0;
+
+	/**
+	 * Meters per degree along a meridian.
+	 */
+	private static final double METERS_PER_DEGREE = Coordinates.METERS_PER_RADIAN * Math.PI / 180.0;
+
+	/**
+	 * One axis of the state: a position and velocity, and their covariance.
+	 */
+	private static final class Axis
+	{
+		/**
+		 * The position in meters and velocity in meters per second.
+		 */
+		double position;
+		double velocity;
+
+		/**
+		 * The covariance of the position and velocity.
+		 */
+		double pp;
+		double pv;
+		double vv;
+
+		/**
+		 * Starts the axis at a measured position.
+		 *
+		 * @param position is the position in meters.
+		 * @param variance is the variance of <code>position</code>.
+		 * @param velocity is the velocity in meters per second.
+		 * @param velocityVariance is the variance of <code>velocity</code>.
+		 */
+		void start (double position, double variance, double velocity, double velocityVariance)
+		{
+			this.position = position;
+			this.velocity = velocity;
+			pp = variance;
+			pv = 0.0;
+			vv = velocityVariance;
+		}
+
+		/**
+		 * Moves the state forward in time.
+		 *
+		 * @param dt is the time elapsed in seconds.
+		 * @param q is the variance of the random acceleration.
+		 */
+		void predict (double dt, double q)
+		{
+			position += velocity * dt;
+
+			double dt2 = dt * dt;
+			pp += dt * (2.0 * pv + dt * vv) + q * dt2 * dt2 / 4.0;
+			pv += dt * vv + q * dt2 * dt / 2.0;
+			vv += q * dt2;
+		}
+
+		/**
+		 * Corrects the state with a measurement of the position.
+		 *
+		 * @param measured is the measured position in meters.
+		 * @param variance is the variance of the measurement.
+		 */
+		void updatePosition (double measured, double variance)
+		{
+			double s = pp + variance;
+			double kp = pp / s;
+			double kv = pv / s;
+			double innovation = measured - position;
+
+			position += kp * innovation;
+			velocity += kv * innovation;
+
+			vv -= kv * pv;
+			pv -= kv * pp;
+			pp -= kp * pp;
+		}
+
+		/**
+		 * Corrects the state with a measurement of the velocity.
+		 *
+		 * @param measured is the measured velocity in meters per second.
+		 * @param variance is the variance of the measurement.
+		 */
+		void updateVelocity (double measured, double variance)
+		{
+			double s = vv + variance;
+			double kp = pv / s;
+			double kv = vv / s;
+			double innovation = measured - velocity;
+
+			position += kp * innovation;
+			velocity += kv * innovation;
+
+			pp -= kp * pv;
+			pv -= kp * vv;
+			vv -= kv * vv;
+		}
+	}
+
+	/**
+	 * Meters east, north, and up.
+	 */
+	private final Axis east = new Axis();
+	private final Axis north = new Axis();
+	private final Axis up = new Axis();
+
+	/**
+	 * <code>true</code> once a fix has started the filter.
+	 */
+	private boolean started;
+
+	/**
+	 * <code>true</code> once a fix with an altitude has started <code>up</code>.
+	 */
+	private boolean hasAltitude;
+
+	/**
+	 * The time of the last fix in milliseconds.
+	 */
+	private long lastTimestamp;
+
+	/**
+	 * The origin of the east and north axes in degrees.
+	 */
+	private double originLatitude;
+	private double originLongitude;
+
+	/**
+	 * Meters per degree of longitude at the origin.
+	 */
+	private double metersPerDegreeLongitude;
+
+	/**
+	 * Forgets the receiver's position so the next fix starts the filter
+	 * over.
+	 */
+	void reset ()
+	{
+		started = false;
+		hasAltitude = false;
+	}
+
+	/**
+	 * Smooths a location.
+	 *
+	 * @param location is the raw location from the receiver.
+	 * @return The smoothed location.  Invalid locations are returned as is.
+	 */
+	Location filter (Location location)
+	{
+		return filter( location, null );
+	}
+
+	/**
+	 * Smooths a location into an existing object instead of a new one.
+	 *
+	 * @param location is the raw location from the receiver.
+	 * @param target is set to the smoothed location and returned, or if
+	 *  <code>null</code> a new location is returned.
+	 * @return The smoothed location.  Invalid locations are returned as is.
+	 */
+	Location filter (Location location, MutableLocation target)
+	{
+		if ( (location == null) || (location.isValid() == false) )
+		{
+			return location;
+		}
+
+		double latitude = location.latitude();
+
+		if ( Double.isNaN(latitude) )
+		{
+			return location;
+		}
+
+		long timestamp = location.getTimestamp();
+		double longitude = location.longitude();
+		double altitude = location.altitude();
+		float horizontalAccuracy = location.horizontalAccuracy();
+		float verticalAccuracy = location.verticalAccuracy();
+		double horizontalVariance = variance( horizontalAccuracy );
+		double verticalVariance = variance( verticalAccuracy );
+		double speed = location.getSpeed();
+		double course = location.getCourse();
+		boolean hasVelocity = (Double.isNaN(speed) == false) && (Double.isNaN(course) == false);
+		double velocityEast = 0.0;
+		double velocityNorth = 0.0;
+
+		if ( hasVelocity )
+		{
+			double radians = Math.toRadians( course );
+			velocityEast = speed * Math.sin( radians );
+			velocityNorth = speed * Math.cos( radians );
+		}
+
+		long elapsed = timestamp - lastTimestamp;
+
+		if ( (started == false) || (elapsed > MAX_GAP) || (elapsed < 0) )
+		{
+			// Start over at this fix.
+			double velocityVariance = hasVelocity ? SPEED_ERROR * SPEED_ERROR : INITIAL_VELOCITY_ERROR * INITIAL_VELOCITY_ERROR;
+
+			moveOrigin( latitude, longitude );
+			east.start( 0.0, horizontalVariance, velocityEast, velocityVariance );
+			north.start( 0.0, horizontalVariance, velocityNorth, velocityVariance );
+			hasAltitude = false;
+			started = true;
+		}
+		else
+		{
+			double dt = elapsed / 1000.0;
+
+			east.predict( dt, HORIZONTAL_ACCELERATION * HORIZONTAL_ACCELERATION );
+			north.predict( dt, HORIZONTAL_ACCELERATION * HORIZONTAL_ACCELERATION );
+			east.updatePosition( eastOf(longitude), horizontalVariance );
+			north.updatePosition( northOf(latitude), horizontalVariance );
+
+			if ( hasVelocity )
+			{
+				east.updateVelocity( velocityEast, SPEED_ERROR * SPEED_ERROR );
+				north.updateVelocity( velocityNorth, SPEED_ERROR * SPEED_ERROR );
+			}
+
+			if ( hasAltitude )
+			{
+				up.predict( dt, VERTICAL_ACCELERATION * VERTICAL_ACCELERATION );
+			}
+		}
+
+		lastTimestamp = timestamp;
+
+		// Altitude comes and goes with the number of satellites in view.
+		float smoothedAltitude = Float.NaN;
+
+		if ( Double.isNaN(altitude) == false )
+		{
+			if ( hasAltitude )
+			{
+				up.updatePosition( altitude, verticalVariance );
+			}
+			else
+			{
+				up.start( altitude, verticalVariance, 0.0, INITIAL_VELOCITY_ERROR * INITIAL_VELOCITY_ERROR );
+				hasAltitude = true;
+			}
+
+			smoothedAltitude = (float)up.position;
+		}
+
+		// Convert the estimate back to degrees.
+		double smoothedLatitude = originLatitude + north.position / METERS_PER_DEGREE;
+		double smoothedLongitude = originLongitude + east.position / metersPerDegreeLongitude;
+
+		// Locations accept the south pole but not the north.
+		if ( smoothedLatitude > MAX_LATITUDE )
+		{
+			smoothedLatitude = MAX_LATITUDE;
+		}
+		else if ( smoothedLatitude < -90.0 )
+		{
+			smoothedLatitude = -90.0;
+		}
+
+		if ( smoothedLongitude >= 180.0 )
+		{
+			smoothedLongitude -= 360.0;
+		}
+		else if ( smoothedLongitude < -180.0 )
+		{
+			smoothedLongitude += 360.0;
+		}
+
+		double smoothedSpeed = Math.sqrt( east.velocity * east.velocity + north.velocity * north.velocity );
+		double smoothedCourse = Math.toDegrees( Coordinates.atan2(east.velocity, north.velocity) );
+
+		if ( smoothedCourse < 0.0 )
+		{
+			smoothedCourse += 360.0;
+		}
+
+		// Keep the origin near the receiver.
+		if ( (Math.abs(east.position) > MAX_OFFSET) || (Math.abs(north.position) > MAX_OFFSET) )
+		{
+			moveOrigin( smoothedLatitude, smoothedLongitude );
+			east.position = 0.0;
+			north.position = 0.0;
+		}
+
+		if ( target != null )
+		{
+			target.set( smoothedLatitude, smoothedLongitude, smoothedAltitude,
+				horizontalAccuracy, verticalAccuracy,
+				(float)smoothedSpeed, (float)smoothedCourse,
+				timestamp, location.getGPSTime(), location.getArrivalNanoTime() );
+			return target;
+		}
+
+		return new LocationImpl( smoothedLatitude, smoothedLongitude, smoothedAltitude,
+			horizontalAccuracy, verticalAccuracy,
+			(float)smoothedSpeed, (float)smoothedCourse,
+			timestamp, location.getGPSTime(), location.getArrivalNanoTime() );
+	}
+
+	/**
+	 * @return The standard deviation, in meters, of a position with the
+	 *  given dilution of precision, or <code>DEFAULT_DOP</code> if it has
+	 *  none.
+	 */
+	static double meters (float dop)
+	{
+		return (Float.isNaN(dop) || (dop <= 0.0f)) ? DEFAULT_DOP * UERE : dop * UERE;
+	}
+
+	/**
+	 * @return The variance, in square meters, of a position with the given
+	 *  dilution of precision.
+	 */
+	private static double variance (float dop)
+	{
+		double error = meters( dop );
+		return error * error;
+	}
+
+	/**
+	 * Puts the origin of the east and north axes at the given degrees.
+	 */
+	private void moveOrigin (double latitude, double longitude)
+	{
+		originLatitude = latitude;
+		originLongitude = longitude;
+		metersPerDegreeLongitude = METERS_PER_DEGREE * Math.cos( Math.toRadians(latitude) );
+
+		// Keep the axes defined at the poles.
+		if ( metersPerDegreeLongitude < 1.0 )
+		{
+			metersPerDegreeLongitude = 1.0;
+		}
+	}
+
+	/**
+	 * @return The meters east of the origin of a longitude.
+	 */
+	private double eastOf (double longitude)
+	{
+		double delta = longitude - originLongitude;
+
+		// Take the short way across the antimeridian.
+		if ( delta > 180.0 )
+		{
+			delta -= 360.0;
+		}
+		else if ( delta < -180.0 )
+		{
+			delta += 360.0;
+		}
+
+		return delta * metersPerDegreeLongitude;
+	}
+
+	/**
+	 * @return The meters north of the origin of a latitude.
+	 */
+	private double northOf (double latitude)
+	{
+		return (latitude - originLatitude) * METERS_PER_DEGREE;
+	}
+}
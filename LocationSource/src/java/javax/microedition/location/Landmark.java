@@ -0,0 +1,157 @@
+package javax.microedition.location;
+
+/**
+ * The <code>Landmark</code> class represents a landmark, i.e. a known location
+ * with a name. A landmark has a name by which it is known to the end user, a
+ * textual description, <code>QualifiedCoordinates</code> and optionally
+ * <code>AddressInfo</code>.
+ * <p>
+ * This class is only a container for the information. When the
+ * <code>Landmark</code> is stored in a <code>LandmarkStore</code>, it remembers
+ * the store and its place in it, so later changes can be written back with
+ * <code>LandmarkStore.updateLandmark</code>.
+ *
+ * @see LandmarkStore
+ */
+public class Landmark
+{
+	/**
+	 * The name of the landmark.
+	 */
+	private String name;
+
+	/**
+	 * The description of the landmark or <code>null</code>.
+	 */
+	private String description;
+
+	/**
+	 * The coordinates of the landmark or <code>null</code>.
+	 */
+	private QualifiedCoordinates coordinates;
+
+	/**
+	 * The address of the landmark or <code>null</code>.
+	 */
+	private AddressInfo addressInfo;
+
+	/**
+	 * The landmark store this landmark belongs to or <code>null</code> if it
+	 * has not been stored.
+	 */
+	Object store;
+
+	/**
+	 * Identifies this landmark within <code>store</code>.
+	 */
+	int id;
+
+	/**
+	 * Constructs a new <code>Landmark</code> object with the values specified.
+	 * 
+	 * @param name - the name of the landmark
+	 * @param description - description of the landmark. May be <code>null</code>
+	 *        if not available.
+	 * @param coordinates - the Coordinates of the landmark. May be <code>null</code>
+	 *        if not known.
+	 * @param addressInfo - the textual address information of the landmark.
+	 *        May be <code>null</code> if not known.
+	 * @throws java.lang.NullPointerException - if the name is <code>null</code>
+	 */
+	public Landmark (String name, String description, QualifiedCoordinates coordinates, AddressInfo addressInfo)
+	{
+		setName( name );
+		this.description = description;
+		this.coordinates = coordinates;
+		this.addressInfo = addressInfo;
+	}
+
+	/**
+	 * Gets the landmark name.
+	 * 
+	 * @return the name of the landmark
+	 */
+	public String getName ()
+	{
+		return name;
+	}
+
+	/**
+	 * Gets the landmark description.
+	 * 
+	 * @return returns the description of the landmark, <code>null</code> if
+	 *         not available
+	 */
+	public String getDescription ()
+	{
+		return description;
+	}
+
+	/**
+	 * Gets the <code>QualifiedCoordinates</code> of the landmark.
+	 * 
+	 * @return the <code>QualifiedCoordinates</code> of the landmark.
+	 *         <code>null</code> if not available.
+	 */
+	public QualifiedCoordinates getQualifiedCoordinates ()
+	{
+		return coordinates;
+	}
+
+	/**
+	 * Gets the <code>AddressInfo</code> of the landmark.
+	 * 
+	 * @return the <code>AddressInfo</code> of the landmark
+	 */
+	public AddressInfo getAddressInfo ()
+	{
+		return addressInfo;
+	}
+
+	/**
+	 * Sets the <code>QualifiedCoordinates</code> of the landmark.
+	 * 
+	 * @param coordinates - the qualified coordinates of the landmark
+	 */
+	public void setQualifiedCoordinates (QualifiedCoordinates coordinates)
+	{
+		this.coordinates = coordinates;
+	}
+
+	/**
+	 * Sets the name of the landmark.
+	 * 
+	 * @param name - name for the landmark
+	 * @throws java.lang.NullPointerException - if the parameter is <code>null</code>
+	 */
+	public void setName (String name)
+	{
+		if ( name == null )
+		{
+			throw new NullPointerException( "Landmark name cannot be null." );
+		}
+
+		this.name = name;
+	}
+
+	/**
+	 * Sets the description of the landmark.
+	 * 
+	 * @param description - description for the landmark, <code>null</code> may
+	 *        be passed in to indicate that description is not available.
+	 */
+	public void setDescription (String description)
+	{
+		this.description = description;
+	}
+
+	/**
+	 * Sets the <code>AddressInfo</code> of the landmark.
+	 * 
+	 * @param addressInfo - the <code>AddressInfo</code> of the landmark
+	 */
+	public void setAddressInfo (AddressInfo addressInfo)
+	{
+		this.addressInfo = addressInfo;
+	}
+}
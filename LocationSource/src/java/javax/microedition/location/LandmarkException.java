@@ -0,0 +1,28 @@
+package javax.microedition.location;
+
+/**
+ * The <code>LandmarkException</code> is thrown when an error related to
+ * handling landmarks has occurred.  The detailed conditions when this
+ * exception is thrown are documented in the methods that throw it.
+ */
+public class LandmarkException
+	extends Exception
+{
+	/**
+	 * Constructs a <code>LandmarkException</code> with no detail message.
+	 */
+	public LandmarkException ()
+	{
+		super();
+	}
+
+	/**
+	 * Constructs a <code>LandmarkException</code> with the specified detail message.
+	 * 
+	 * @param message - the detailed exception message.
+	 */
+	public LandmarkException (String message)
+	{
+		super(message);
+	}
+}
@@ -0,0 +1,232 @@
+package javax.microedition.location;
+
+/**
+ * Counts how long something took in buckets that double in width, from
+ * under a microsecond to over a quarter hour.  Recording is a handful of
+ * shifts and adds so it can be done for every location.  Percentiles are
+ * estimated from the buckets and are accurate to within a factor of two.
+ * <p>
+ * Times are recorded by one thread at a time, the one raising a provider's
+ * events or a listener's own, and read by any thread without locking through <code>LocationProviderMetrics</code>,
+ * so the values may be a moment behind.  This class is not part of JSR-179.
+ *
+ * @see LocationProviderMetrics
+ */
+public final class LatencyHistogram
+{
+	/**
+	 * The number of buckets.
+	 */
+	public static final int BUCKETS = 32;
+
+	/**
+	 * Indexes into <code>values</code> after the buckets of the number of
+	 * times recorded, their sum, and the longest, in nanoseconds.
+	 */
+	private static final int COUNT = BUCKETS;
+	private static final int TOTAL = BUCKETS + 1;
+	private static final int MAX = BUCKETS + 2;
+
+	/**
+	 * The count of times in each bucket followed by the totals.  Bucket 0
+	 * holds times under one microsecond and bucket <code>i</code> times from
+	 * 2<sup>i-1</sup> up to 2<sup>i</sup> microseconds.  The last bucket
+	 * holds every longer time.  Only changed by one thread at a time.
+	 */
+	private final long[] values = new long[BUCKETS + 3];
+
+	/**
+	 * <code>values</code> as other threads read it.  The same array is
+	 * written again by <code>publish</code> so readers see the changes
+	 * before it.
+	 */
+	private volatile long[] published = values;
+
+	/**
+	 * Only <code>LocationProviderMetrics</code> creates histograms.
+	 */
+	LatencyHistogram ()
+	{
+	}
+
+	/**
+	 * Records a time.
+	 *
+	 * @param nanos is the time in nanoseconds.  Negative times, from clocks
+	 *  that went backwards, are recorded as 0.
+	 */
+	void record (long nanos)
+	{
+		if ( nanos < 0 )
+		{
+			nanos = 0;
+		}
+
+		long[] values = this.values;
+		values[bucket(nanos / 1000)]++;
+		values[COUNT]++;
+		values[TOTAL] += nanos;
+
+		if ( nanos > values[MAX] )
+		{
+			values[MAX] = nanos;
+		}
+	}
+
+	/**
+	 * Makes the times recorded so far visible to other threads.
+	 */
+	void publish ()
+	{
+		published = values;
+	}
+
+	/**
+	 * @return The bucket for a time in microseconds: the number of bits
+	 *  needed to hold it, up to the last bucket.
+	 */
+	private static int bucket (long micros)
+	{
+		int bits = 0;
+
+		if ( micros >= (1L << 32) )
+		{
+			return BUCKETS - 1;
+		}
+
+		if ( micros >= (1L << 16) )
+		{
+			micros >>>= 16;
+			bits += 16;
+		}
+
+		if ( micros >= (1L << 8) )
+		{
+			micros >>>= 8;
+			bits += 8;
+		}
+
+		if ( micros >= (1L << 4) )
+		{
+			micros >>>= 4;
+			bits += 4;
+		}
+
+		while ( micros != 0 )
+		{
+			micros >>>= 1;
+			bits++;
+		}
+
+		return (bits < BUCKETS) ? bits : BUCKETS - 1;
+	}
+
+	/**
+	 * @return The number of times recorded.
+	 */
+	public long getCount ()
+	{
+		return published[COUNT];
+	}
+
+	/**
+	 * @return The sum of the times recorded in nanoseconds.
+	 */
+	public long getTotal ()
+	{
+		return published[TOTAL];
+	}
+
+	/**
+	 * @return The longest time recorded in nanoseconds or 0 if none have been.
+	 */
+	public long getMax ()
+	{
+		return published[MAX];
+	}
+
+	/**
+	 * @return The average time in nanoseconds or 0 if none have been recorded.
+	 */
+	public long getMean ()
+	{
+		long[] values = published;
+		long count = values[COUNT];
+		return (count == 0) ? 0 : values[TOTAL] / count;
+	}
+
+	/**
+	 * @param bucket is from 0 to <code>BUCKETS</code> - 1.
+	 * @return The number of times recorded in the bucket.
+	 */
+	public long getBucketCount (int bucket)
+	{
+		if ( (bucket < 0) || (bucket >= BUCKETS) )
+		{
+			throw new IndexOutOfBoundsException( "Bucket (" + bucket + ") is invalid." );
+		}
+
+		return published[bucket];
+	}
+
+	/**
+	 * @param bucket is from 0 to <code>BUCKETS</code> - 1.
+	 * @return The time, in nanoseconds, the times in the bucket are less
+	 *  than or <code>Long.MAX_VALUE</code> for the last bucket.
+	 */
+	public static long getBucketBound (int bucket)
+	{
+		if ( bucket >= BUCKETS - 1 )
+		{
+			return Long.MAX_VALUE;
+		}
+
+		return (1L << bucket) * 1000;
+	}
+
+	/**
+	 * Estimates a percentile as the upper bound of the bucket it falls in,
+	 * or the longest time if that is less.
+	 *
+	 * @param percent is from 0 to 100, such as 99 for the 99th percentile.
+	 * @return The time in nanoseconds or 0 if none have been recorded.
+	 */
+	public long getPercentile (double percent)
+	{
+		long[] values = published;
+		long count = values[COUNT];
+		long max = values[MAX];
+
+		if ( count == 0 )
+		{
+			return 0;
+		}
+
+		long rank = (long)Math.ceil( count * percent / 100.0 );
+		long seen = 0;
+
+		for ( int i = 0; i < BUCKETS; i++ )
+		{
+			seen += values[i];
+
+			if ( seen >= rank )
+			{
+				return Math.min( getBucketBound(i), max );
+			}
+		}
+
+		return max;
+	}
+
+	/**
+	 * @see Object#toString()
+	 */
+	public String toString ()
+	{
+		return "count=" + getCount() +
+			" mean=" + getMean() + "ns" +
+			" p50=" + getPercentile( 50 ) + "ns" +
+			" p99=" + getPercentile( 99 ) + "ns" +
+			" max=" + getMax() + "ns";
+	}
+}
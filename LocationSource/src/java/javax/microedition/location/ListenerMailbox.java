@@ -0,0 +1,281 @@
+package javax.microedition.location;
+
+/**
+ * Gives a listener its events on a thread of its own so a slow listener
+ * never delays the provider.  The thread raising events only leaves the
+ * newest location and state in the mailbox and returns.  The mailbox's
+ * thread takes them and calls the listener.
+ * <p>
+ * The mailbox holds one location.  A location left there when a newer one
+ * arrives is replaced, not queued, so the listener always gets the newest
+ * fix however far behind it is, and the provider counts the one replaced.
+ * State changes are kept the same way, one at a time, and are given in the
+ * order they arrived relative to the location.
+ * <p>
+ * Reused locations are copied into one of two locations the mailbox owns:
+ * one the thread raising events fills in and one the listener is given.
+ * They swap as the listener takes each, so the listener owns its location
+ * until <code>locationUpdated</code> returns, as it would on the provider's
+ * thread, and no garbage is created.
+ * <p>
+ * The mailbox's thread records in the provider's metrics when the listener
+ * returns, measured from when the location was raised, and when it throws.
+ *
+ * @see AbstractLocationProvider#addLocationListener(LocationListener, int, int, int, boolean)
+ */
+final class ListenerMailbox
+	implements Runnable
+{
+	/**
+	 * <code>state</code> when no state change is waiting.
+	 */
+	private static final int NO_STATE = -1;
+
+	/**
+	 * The provider raising the events.
+	 */
+	private final LocationProvider provider;
+
+	/**
+	 * The application's listener.
+	 */
+	private final LocationListener listener;
+
+	/**
+	 * The provider's metrics.
+	 */
+	private final LocationProviderMetrics metrics;
+
+	/**
+	 * The location reused locations are copied into.  Guarded by
+	 * <code>this</code>.
+	 */
+	private MutableLocation slot = new MutableLocation();
+
+	/**
+	 * The location last given to the listener from <code>slot</code>.  Only
+	 * used by the mailbox's thread while it is not in <code>slot</code>.
+	 */
+	private MutableLocation delivering = new MutableLocation();
+
+	/**
+	 * <code>true</code> while a location is waiting.  This and the other
+	 * fields below are guarded by <code>this</code>.
+	 */
+	private boolean hasLocation;
+
+	/**
+	 * The waiting location, which may be <code>slot</code>.
+	 */
+	private Location location;
+
+	/**
+	 * When the waiting location was raised from
+	 * <code>LocationProviderMetrics.nanoTime</code>.
+	 */
+	private long raised;
+
+	/**
+	 * The waiting state change or <code>NO_STATE</code>.
+	 */
+	private int state = NO_STATE;
+
+	/**
+	 * <code>true</code> if the waiting state change arrived after the
+	 * waiting location.
+	 */
+	private boolean stateLast;
+
+	/**
+	 * Set once the listener is removed.
+	 */
+	private boolean closed;
+
+	/**
+	 * Starts the mailbox's thread.
+	 *
+	 * @param provider is the provider raising events.
+	 * @param listener is the listener to give them to.
+	 * @param metrics is the provider's metrics.
+	 */
+	ListenerMailbox (LocationProvider provider, LocationListener listener, LocationProviderMetrics metrics)
+	{
+		this.provider = provider;
+		this.listener = listener;
+		this.metrics = metrics;
+
+		new Thread( this, "Location listener" ).start();
+	}
+
+	/**
+	 * Leaves a location for the listener.  Called by the thread raising
+	 * events.
+	 *
+	 * @param update is the location.  A reused location is copied.
+	 * @param raised is when it was raised from <code>LocationProviderMetrics.nanoTime</code>.
+	 * @return <code>true</code> if it replaced a location the listener had
+	 *  not taken.
+	 */
+	synchronized boolean offerLocation (Location update, long raised)
+	{
+		boolean conflated = hasLocation;
+
+		if ( update instanceof MutableLocation )
+		{
+			slot.set( update );
+			location = slot;
+		}
+		else
+		{
+			location = update;
+		}
+
+		this.raised = raised;
+		hasLocation = true;
+		stateLast = false;
+		notify();
+
+		return conflated;
+	}
+
+	/**
+	 * Leaves a state change for the listener.  Called by the thread raising
+	 * events.
+	 *
+	 * @param newState is the <code>LocationProvider</code> state code.
+	 */
+	synchronized void offerState (int newState)
+	{
+		state = newState;
+		stateLast = hasLocation;
+		notify();
+	}
+
+	/**
+	 * Stops the thread.  Events it has not given the listener are dropped.
+	 */
+	synchronized void close ()
+	{
+		closed = true;
+		notify();
+	}
+
+	/**
+	 * Gives the listener its events until closed.
+	 *
+	 * @see java.lang.Runnable#run()
+	 */
+	public void run ()
+	{
+		try
+		{
+			while ( true )
+			{
+				Location update;
+				long updateRaised;
+				boolean updated;
+				int newState;
+				boolean afterUpdate;
+
+				synchronized ( this )
+				{
+					while ( (hasLocation == false) && (state == NO_STATE) && (closed == false) )
+					{
+						wait();
+					}
+
+					if ( closed )
+					{
+						return;
+					}
+
+					update = location;
+					updateRaised = raised;
+					updated = hasLocation;
+					newState = state;
+					afterUpdate = stateLast;
+
+					if ( location == slot )
+					{
+						// The listener owns this one until it returns.
+						slot = delivering;
+						delivering = (MutableLocation)update;
+					}
+
+					location = null;
+					hasLocation = false;
+					state = NO_STATE;
+				}
+
+				if ( (newState != NO_STATE) && (afterUpdate == false) )
+				{
+					stateChanged( newState );
+				}
+
+				if ( updated )
+				{
+					locationUpdated( update, updateRaised );
+				}
+
+				if ( (newState != NO_STATE) && afterUpdate )
+				{
+					stateChanged( newState );
+				}
+			}
+		}
+		catch (Throwable t)
+		{
+			// Should never happen, but if it does it would be nice to know why.
+			System.out.println( t.getMessage() );
+		}
+	}
+
+	/**
+	 * Gives the listener a location.
+	 *
+	 * @param raised is when it was raised from <code>LocationProviderMetrics.nanoTime</code>.
+	 */
+	private void locationUpdated (Location update, long raised)
+	{
+		Object dispatch = (EventRecorder.recorder == null) ? null : EventRecorder.recorder.dispatchStarted();
+		boolean failed = false;
+
+		try
+		{
+			listener.locationUpdated( provider, update );
+		}
+		catch (Throwable t)
+		{
+			// This is a programming error in the user's application.
+			failed = true;
+			metrics.listenerFailed();
+			System.out.println( t.getMessage() );
+		}
+
+		metrics.listenerReturned( raised );
+		metrics.publish();
+
+		if ( dispatch != null )
+		{
+			EventRecorder.recorder.dispatchEnded( dispatch, provider, listener, update, failed );
+		}
+	}
+
+	/**
+	 * Gives the listener a state change.
+	 */
+	private void stateChanged (int newState)
+	{
+		try
+		{
+			listener.providerStateChanged( provider, newState );
+		}
+		catch (Throwable t)
+		{
+			// This is a programming error in the user's application.
+			metrics.listenerFailed();
+			metrics.publish();
+			System.out.println( t.getMessage() );
+		}
+	}
+}
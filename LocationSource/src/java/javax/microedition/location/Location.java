@@ -96,4 +96,89 @@ public abstract class Location
 	 *  instance
 	 */
 	public abstract boolean isValid ();
+
+	/**
+	 * Returns the UTC time the receiver reported for this location.  Unlike
+	 * <code>getTimestamp</code> it comes from the satellites, not the
+	 * terminal's clock, so comparing the two shows how long the location took
+	 * to arrive and how far the terminal's clock is off.
+	 * <p>
+	 * This method is not part of JSR-179.
+	 * 
+	 * @return the time in milliseconds since midnight, January 1, 1970 UTC
+	 *  or -1 if the receiver did not report it
+	 */
+	public long getGPSTime ()
+	{
+		return -1;
+	}
+
+	/**
+	 * Returns when this location arrived from the receiver on a clock that
+	 * never jumps, in the units of J2SE's <code>System.nanoTime</code>.  The
+	 * value only means something compared to other arrival times, or to
+	 * <code>System.nanoTime</code> to measure how long the location took to
+	 * reach a listener.  Locations can be ordered by it even when the
+	 * terminal's clock is set while they are being taken.
+	 * <p>
+	 * This method is not part of JSR-179.
+	 * 
+	 * @return the arrival time in nanoseconds or 0 if it is not known, such
+	 *  as on CLDC, which has no monotonic clock
+	 */
+	public long getArrivalNanoTime ()
+	{
+		return 0;
+	}
+
+	// The coordinates as primitives for the per fix code in this package.
+	// The locations made here override them to return their fields instead
+	// of creating a QualifiedCoordinates each call; these work for any other.
+
+	/**
+	 * @return The latitude in degrees or <code>Double.NaN</code> if there
+	 *  are no coordinates.
+	 */
+	double latitude ()
+	{
+		QualifiedCoordinates coordinates = getQualifiedCoordinates();
+		return (coordinates == null) ? Double.NaN : coordinates.getLatitude();
+	}
+
+	/**
+	 * @return The longitude in degrees or <code>Double.NaN</code> if there
+	 *  are no coordinates.
+	 */
+	double longitude ()
+	{
+		QualifiedCoordinates coordinates = getQualifiedCoordinates();
+		return (coordinates == null) ? Double.NaN : coordinates.getLongitude();
+	}
+
+	/**
+	 * @return The altitude in meters or <code>Float.NaN</code>.
+	 */
+	float altitude ()
+	{
+		QualifiedCoordinates coordinates = getQualifiedCoordinates();
+		return (coordinates == null) ? Float.NaN : coordinates.getAltitude();
+	}
+
+	/**
+	 * @return The horizontal accuracy or <code>Float.NaN</code>.
+	 */
+	float horizontalAccuracy ()
+	{
+		QualifiedCoordinates coordinates = getQualifiedCoordinates();
+		return (coordinates == null) ? Float.NaN : coordinates.getHorizontalAccuracy();
+	}
+
+	/**
+	 * @return The vertical accuracy or <code>Float.NaN</code>.
+	 */
+	float verticalAccuracy ()
+	{
+		QualifiedCoordinates coordinates = getQualifiedCoordinates();
+		return (coordinates == null) ? Float.NaN : coordinates.getVerticalAccuracy();
+	}
 }
@@ -2,6 +2,20 @@ package javax.microedition.location;
 
 /**
  * An implementation of the <code>Location</code> interface.
+ * <p>
+ * The coordinates are held inline as primitives rather than in a
+ * <code>QualifiedCoordinates</code>, so each location is one object instead
+ * of two, saving an object header and reference per location in long
+ * histories and halving the objects the garbage collector traces.  The
+ * <code>QualifiedCoordinates</code> is only created when
+ * <code>getQualifiedCoordinates</code> is called and is not kept, so each
+ * call returns a new one; code in this package reads the values through
+ * the primitive accessors of <code>Location</code> instead so a fix is not
+ * copied into one.  An invalid location is marked by a
+ * <code>NaN</code> latitude rather than a flag of its own.
+ * <p>
+ * Locations from a receiver carry its UTC time for the fix and the
+ * <code>MonotonicClock</code> time they arrived, as well as the timestamp.
  */
 class LocationImpl
 	extends Location
@@ -12,9 +26,30 @@ class LocationImpl
     private static final float MS_PER_KNOT = 0.514444444444444f;
 
 	/**
-	 * Qualified coordinates
+	 * The latitude in degrees or <code>Double.NaN</code> if this location is
+	 * invalid.
 	 */
-	private final QualifiedCoordinates qualifiedCoordinates;
+	private final double latitude;
+
+	/**
+	 * The longitude in degrees.
+	 */
+	private final double longitude;
+
+	/**
+	 * The altitude in meters or <code>Float.NaN</code>.
+	 */
+	private final float altitude;
+
+	/**
+	 * The horizontal accuracy in meters or <code>Float.NaN</code>.
+	 */
+	private final float horizontalAccuracy;
+
+	/**
+	 * The vertical accuracy in meters or <code>Float.NaN</code>.
+	 */
+	private final float verticalAccuracy;
 
 	/**
 	 * The ground speed
@@ -25,75 +60,118 @@ class LocationImpl
 	 * The bearing
 	 */
 	private final float course;
-	
-	/**
-	 * Whether this object is valid or not
-	 */
-	private final boolean valid;
-	
+
 	/**
 	 * The time this location was obtained using the same time definition as
 	 * <code>System.currentTimeMillis</code>.
 	 */
 	private final long timestamp;
-	
+
 	/**
-	 * Constructor for a valid location.
-	 * 
-	 * @param qualifiedCoordinates must not be <code>null</code> if <code>valid</code>
-	 *  is <code>true</code>.
+	 * The UTC time the receiver reported in milliseconds since 1970 or -1.
+	 */
+	private final long gpsTime;
+
+	/**
+	 * The <code>MonotonicClock</code> time the location arrived or 0.
+	 */
+	private final long arrivalNanoTime;
+
+	/**
+	 * Constructor for a valid location.  The values are checked the same way
+	 * <code>QualifiedCoordinates</code> checks them.
+	 *
+	 * @param latitude is in degrees.
+	 * @param longitude is in degrees.
+	 * @param altitude is in meters or <code>Float.NaN</code>.
+	 * @param horizontalAccuracy may be <code>Float.NaN</code>.
+	 * @param verticalAccuracy may be <code>Float.NaN</code>.
 	 * @param speed may be <code>Float.NaN</code>.
 	 * @param course may be <code>Float.NaN</code>.
 	 * @param timestamp is the time the location was taken relative to
 	 *  <code>System.currentTimeMillis</code>.
+	 * @param gpsTime is the receiver's UTC time in milliseconds or -1.
+	 * @param arrivalNanoTime is the <code>MonotonicClock</code> time the
+	 *  location arrived or 0.
+	 * @throws IllegalArgumentException if the latitude or longitude is
+	 *  out of range.
 	 */
-	public LocationImpl (QualifiedCoordinates qualifiedCoordinates, float speed, float course, long timestamp)
+	public LocationImpl (double latitude, double longitude, float altitude,
+		float horizontalAccuracy, float verticalAccuracy, float speed, float course,
+		long timestamp, long gpsTime, long arrivalNanoTime)
 	{
-		this.valid = true;
-		this.qualifiedCoordinates = (QualifiedCoordinates) qualifiedCoordinates;
+		this.latitude = checkLatitude( latitude );
+		this.longitude = checkLongitude( longitude );
+		this.altitude = checkAltitude( altitude );
+		this.horizontalAccuracy = checkAccuracy( horizontalAccuracy );
+		this.verticalAccuracy = Float.isNaN( this.altitude ) ? Float.NaN : checkAccuracy( verticalAccuracy );
 		this.speed = speed;
 		this.course = course;
 		this.timestamp = timestamp;
+		this.gpsTime = gpsTime;
+		this.arrivalNanoTime = arrivalNanoTime;
 	}
 
 	/**
-	 * Constructor for a valid location used by the JNI.
-	 * 
-	 * @param qualifiedCoordinates must not be <code>null</code> if <code>valid</code>
-	 *  is <code>true</code>.
+	 * Constructor for a valid location.
+	 *
+	 * @param qualifiedCoordinates must not be <code>null</code>.  Its values
+	 *  are copied.
 	 * @param speed may be <code>Float.NaN</code>.
 	 * @param course may be <code>Float.NaN</code>.
+	 * @param timestamp is the time the location was taken relative to
+	 *  <code>System.currentTimeMillis</code>.
 	 */
-	public LocationImpl (QualifiedCoordinates qualifiedCoordinates, float speed, float course)
+	public LocationImpl (QualifiedCoordinates qualifiedCoordinates, float speed, float course, long timestamp)
 	{
-		this.valid = true;
-		this.qualifiedCoordinates = (QualifiedCoordinates) qualifiedCoordinates;
-		
-		if ( speed < 0F )
-		{
-			// Used by the JNI.
-			this.speed = Float.NaN;
-		}
-		else
-		{
-			// Convert speed from knots to meters/second.
-			this.speed = speed * MS_PER_KNOT;
-		}
-		
-		if ( course < 10000F )
+		this.latitude = qualifiedCoordinates.getLatitude();
+		this.longitude = qualifiedCoordinates.getLongitude();
+		this.altitude = qualifiedCoordinates.getAltitude();
+		this.horizontalAccuracy = qualifiedCoordinates.getHorizontalAccuracy();
+		this.verticalAccuracy = qualifiedCoordinates.getVerticalAccuracy();
+		this.speed = speed;
+		this.course = course;
+		this.timestamp = timestamp;
+		this.gpsTime = -1;
+		this.arrivalNanoTime = 0;
+	}
+
+	/**
+	 * Constructor for a location parsed from NMEA sentences.  The location
+	 * is valid only if the receiver reported a fix.
+	 *
+	 * @param record holds the parsed GPS values.  It is not referenced after
+	 *  the constructor returns so it can be reused.
+	 * @param timestamp is the time the location was taken relative to
+	 *  <code>System.currentTimeMillis</code>.
+	 */
+	public LocationImpl (GPSRecord record, long timestamp)
+	{
+		this.timestamp = timestamp;
+		this.gpsTime = record.utcTime();
+		this.arrivalNanoTime = MonotonicClock.nanoTime();
+
+		if ( record.hasFix() )
 		{
-			// Used by the JNI.
-			this.course = Float.NaN;
+			// The accuracy is the dilution of precision just like the JNI gives.
+			this.latitude = checkLatitude( record.latitude );
+			this.longitude = checkLongitude( record.longitude );
+			this.altitude = checkAltitude( record.altitude );
+			this.horizontalAccuracy = checkAccuracy( record.hdop );
+			this.verticalAccuracy = Float.isNaN( this.altitude ) ? Float.NaN : checkAccuracy( record.vdop );
+			this.speed = record.speed * MS_PER_KNOT;  // NaN stays NaN
+			this.course = record.course;
 		}
 		else
 		{
-			this.course = course;
+			this.latitude = Double.NaN;
+			this.longitude = Double.NaN;
+			this.altitude = Float.NaN;
+			this.horizontalAccuracy = Float.NaN;
+			this.verticalAccuracy = Float.NaN;
+			this.speed = 0.0f;
+			this.course = 0.0f;
 		}
-		
-		// Set the time to the current time.  Technically we are given this value
-		// by the GPS as a SYSTEMTIME struct which we could convert to be more accurate.
-		// As a starting point use J4ME's BluetoothGPS.convertUTCTime() method.
-		this.timestamp = System.currentTimeMillis();
 	}
 
 	/**
@@ -103,20 +181,129 @@ class LocationImpl
 	 */
 	public LocationImpl ()
 	{
-		this.valid = false;
-		this.timestamp = System.currentTimeMillis();
-		
-		this.qualifiedCoordinates = null;
+		this( System.currentTimeMillis() );
+	}
+
+	/**
+	 * Constructor for an invalid location raised at a known time.
+	 *
+	 * @param timestamp is the time relative to <code>System.currentTimeMillis</code>.
+	 */
+	public LocationImpl (long timestamp)
+	{
+		this.timestamp = timestamp;
+		this.gpsTime = -1;
+		this.arrivalNanoTime = 0;
+
+		this.latitude = Double.NaN;
+		this.longitude = Double.NaN;
+		this.altitude = Float.NaN;
+		this.horizontalAccuracy = Float.NaN;
+		this.verticalAccuracy = Float.NaN;
 		this.speed = 0.0f;
 		this.course = 0.0f;
 	}
-	
+
+	/**
+	 * @return <code>latitude</code> if it is valid.
+	 * @throws IllegalArgumentException like <code>Coordinates.setLatitude</code>.
+	 */
+	private static double checkLatitude (double latitude)
+	{
+		if ( Double.isNaN(latitude) || (latitude < -90.0 || latitude >= 90.0) )
+		{
+			throw new IllegalArgumentException("Latitude (" + latitude + ") is invalid.");
+		}
+
+		return latitude;
+	}
+
+	/**
+	 * @return <code>longitude</code> if it is valid.
+	 * @throws IllegalArgumentException like <code>Coordinates.setLongitude</code>.
+	 */
+	private static double checkLongitude (double longitude)
+	{
+		if ( Double.isNaN(longitude) || (longitude < -180.0 || longitude >= 180.0) )
+		{
+			throw new IllegalArgumentException("Longitude (" + longitude + ") is invalid.");
+		}
+
+		return longitude;
+	}
+
+	/**
+	 * @return <code>altitude</code> or <code>Float.NaN</code> for the JNI's
+	 *  no altitude value, like <code>Coordinates.setAltitude</code>.
+	 */
+	private static float checkAltitude (float altitude)
+	{
+		return (altitude >= -10000.0F) ? altitude : Float.NaN;
+	}
+
+	/**
+	 * @return <code>accuracy</code> or <code>Float.NaN</code> for the JNI's
+	 *  no value, like <code>QualifiedCoordinates.setHorizontalAccuracy</code>.
+	 */
+	private static float checkAccuracy (float accuracy)
+	{
+		return (accuracy >= 0.0F) ? accuracy : Float.NaN;
+	}
+
 	/**
+	 * Creates the coordinates from the values held by this location.  A new
+	 * object is returned by every call.
+	 *
 	 * @see org.j4me.bluetoothgps.Location#getQualifiedCoordinates()
 	 */
 	public QualifiedCoordinates getQualifiedCoordinates ()
 	{
-		return qualifiedCoordinates;
+		if ( Double.isNaN(latitude) )
+		{
+			return null;
+		}
+
+		return new QualifiedCoordinates( latitude, longitude, altitude, horizontalAccuracy, verticalAccuracy );
+	}
+
+	/**
+	 * @see javax.microedition.location.Location#latitude()
+	 */
+	double latitude ()
+	{
+		return latitude;
+	}
+
+	/**
+	 * @see javax.microedition.location.Location#longitude()
+	 */
+	double longitude ()
+	{
+		return Double.isNaN( latitude ) ? Double.NaN : longitude;
+	}
+
+	/**
+	 * @see javax.microedition.location.Location#altitude()
+	 */
+	float altitude ()
+	{
+		return altitude;
+	}
+
+	/**
+	 * @see javax.microedition.location.Location#horizontalAccuracy()
+	 */
+	float horizontalAccuracy ()
+	{
+		return horizontalAccuracy;
+	}
+
+	/**
+	 * @see javax.microedition.location.Location#verticalAccuracy()
+	 */
+	float verticalAccuracy ()
+	{
+		return verticalAccuracy;
 	}
 
 	/**
@@ -143,22 +330,38 @@ class LocationImpl
 		return timestamp;
 	}
 
+	/**
+	 * @see javax.microedition.location.Location#getGPSTime()
+	 */
+	public long getGPSTime ()
+	{
+		return gpsTime;
+	}
+
+	/**
+	 * @see javax.microedition.location.Location#getArrivalNanoTime()
+	 */
+	public long getArrivalNanoTime ()
+	{
+		return arrivalNanoTime;
+	}
+
 	/**
 	 * @see org.j4me.bluetoothgps.Location#isValid()
 	 */
 	public boolean isValid ()
 	{
-		return valid;
+		return (Double.isNaN(latitude) == false);
 	}
-	
+
 	/**
 	 * @see Object#toString()
 	 */
 	public String toString ()
 	{
-		if ( valid )
+		if ( isValid() )
 		{
-			return qualifiedCoordinates.toString() +
+			return getQualifiedCoordinates().toString() +
 				"\nSpeed=" + speed +
 				"\nCourse=" + course +
 				"\nTimestamp=" + timestamp;
@@ -47,9 +47,10 @@ public abstract class LocationProvider
 
 	/**
 	 * The last instance of a location provider.  It is obtained when the user
-	 * calls <code>getInstance</code>.
+	 * calls <code>getInstance</code>.  It is <code>volatile</code> so
+	 * <code>getLastKnownLocation</code> never waits on a lock.
 	 */
-	private static LocationProvider instance;
+	private static volatile LocationProvider instance;
 	
 	/**
 	 * Empty constructor to help implementations and extensions. This is not
@@ -100,6 +101,9 @@ public abstract class LocationProvider
 	 * to fulfil both defined criteria. Note that there can be only one
 	 * <code>LocationListener</code> associated with a <code>LocationProvider</code>
 	 * instance.
+	 * <p>
+	 * The providers to choose from are registered with
+	 * <code>LocationProviderRegistry</code>.
 	 * 
 	 * @param criteria - the criteria for provider selection or <code>null</code> to
 	 *        indicate the least restrictive criteria with default values
@@ -111,12 +115,19 @@ public abstract class LocationProvider
 	 * @throws LocationException - if all <code>LocationProvider</code>s are
 	 *         currently out of service.
 	 * @see Criteria
+	 * @see LocationProviderRegistry
 	 */
 	public static LocationProvider getInstance (Criteria criteria)
 		throws LocationException, SecurityException
 	{
-		instance = WindowsMobileLocationProvider.instance();
-		return instance;
+		LocationProvider provider = LocationProviderRegistry.getProvider( criteria );
+		
+		if ( provider != null )
+		{
+			instance = provider;
+		}
+		
+		return provider;
 	}
 	
 	/**
@@ -255,6 +266,22 @@ public abstract class LocationProvider
 	 * from blocking synchronous operations.
 	 */
 	public abstract void reset ();
+
+	/**
+	 * Returns counters and latency histograms of what this provider has done,
+	 * such as how many locations it raised and how long its listeners took
+	 * with them.  They can be read at any time, from any thread, to watch the
+	 * provider's performance.
+	 * <p>
+	 * This is not part of JSR-179.
+	 *
+	 * @return The provider's metrics or <code>null</code> if it does not
+	 *  keep any.
+	 */
+	public LocationProviderMetrics getMetrics ()
+	{
+		return null;
+	}
 	
 	/**
 	 * Returns the last known location that the implementation has.  This is the
@@ -282,6 +309,59 @@ public abstract class LocationProvider
 		}
 	}
 
+	/**
+	 * Adds a <code>ProximityListener</code> for updates when proximity to the
+	 * specified coordinates is detected.
+	 * <p>
+	 * If this method succeeds, it has registered the listener with the
+	 * implementation. The listener is called once when the terminal enters the
+	 * proximity of the coordinates, after which the registration with these
+	 * coordinates is cancelled. The same listener may be registered for several
+	 * coordinates; each registration is handled separately.
+	 * <p>
+	 * The proximity is detected from the locations produced by every
+	 * <code>LocationProvider</code> in use. Registered coordinates are kept in
+	 * a spatial index so each location is only compared with coordinates near
+	 * it, no matter how many are registered.
+	 * 
+	 * @param listener - the listener to be registered
+	 * @param coordinates - the coordinates to be registered
+	 * @param proximityRadius - the radius in meters that is considered to be
+	 *        the threshold for being in the proximity of the specified
+	 *        coordinates
+	 * @throws LocationException - if the platform does not have resources to
+	 *         add a new listener and coordinates to be monitored or does not
+	 *         support proximity monitoring at all
+	 * @throws java.lang.IllegalArgumentException - if the proximity radius is
+	 *         0 or negative or <code>Float.NaN</code>
+	 * @throws java.lang.NullPointerException - if the listener or coordinates
+	 *         parameter is <code>null</code>
+	 * @throws java.lang.SecurityException - if the application does not have
+	 *         the permission to register a proximity listener
+	 * @see ProximityListener
+	 */
+	public static void addProximityListener (ProximityListener listener, Coordinates coordinates, float proximityRadius)
+		throws LocationException
+	{
+		ProximityMonitor.add( listener, coordinates, proximityRadius );
+	}
+
+	/**
+	 * Removes a <code>ProximityListener</code> from the list of recipients for
+	 * updates. If the specified listener is not registered, this method
+	 * silently returns with no action.
+	 * <p>
+	 * All the coordinates the listener was registered with are cancelled.
+	 * 
+	 * @param listener - the listener to remove
+	 * @throws java.lang.NullPointerException - if the parameter is <code>null</code>
+	 * @see ProximityListener
+	 */
+	public static void removeProximityListener (ProximityListener listener)
+	{
+		ProximityMonitor.remove( listener );
+	}
+
 	/**
 	 * Returns the last known location by the provider.  This is a helper method for
 	 * JSR-179's <code>static</code> method <code>getLastKnownLocation</code>.
@@ -0,0 +1,180 @@
+package javax.microedition.location;
+
+/**
+ * Describes a kind of <code>LocationProvider</code> and creates it on demand.
+ * Factories are registered with <code>LocationProviderRegistry</code> which
+ * compares their typical capabilities against the <code>Criteria</code> given
+ * to <code>LocationProvider.getInstance</code>.
+ * <p>
+ * Describing a provider must be cheap.  Nothing expensive, such as loading a
+ * native library or starting a receiver, should happen until
+ * <code>createProvider</code> is called for the provider that was chosen.
+ *
+ * @see LocationProviderRegistry
+ * @see Criteria
+ */
+public abstract class LocationProviderFactory
+{
+	/**
+	 * The provider created by this factory.  It is only created once.
+	 */
+	private LocationProvider provider;
+
+	/**
+	 * Returns if the provider can run in this environment.  For example a
+	 * provider built on a native library can check for its platform here.
+	 * The default implementation returns <code>true</code>.
+	 *
+	 * @return <code>true</code> if the provider can be created; <code>false</code>
+	 *  if it should never be chosen.
+	 */
+	public boolean isSupported ()
+	{
+		return true;
+	}
+
+	/**
+	 * @return The typical horizontal accuracy of the provider in meters
+	 *  (1-sigma standard deviation).
+	 * @see Criteria#getHorizontalAccuracy()
+	 */
+	public abstract int getHorizontalAccuracy ();
+
+	/**
+	 * @return The typical vertical accuracy of the provider in meters
+	 *  (1-sigma standard deviation).
+	 * @see Criteria#getVerticalAccuracy()
+	 */
+	public abstract int getVerticalAccuracy ();
+
+	/**
+	 * @return The typical time in milliseconds the provider takes to return
+	 *  a location.
+	 * @see Criteria#getPreferredResponseTime()
+	 */
+	public abstract int getResponseTime ();
+
+	/**
+	 * @return The power consumption of the provider.  One of
+	 *  <code>Criteria.POWER_USAGE_LOW</code>, <code>Criteria.POWER_USAGE_MEDIUM</code>,
+	 *  or <code>Criteria.POWER_USAGE_HIGH</code>.
+	 * @see Criteria#getPreferredPowerConsumption()
+	 */
+	public abstract int getPowerConsumption ();
+
+	/**
+	 * @return <code>true</code> if using the provider may cost the end user
+	 *  money; <code>false</code> if it is free.
+	 * @see Criteria#isAllowedToCost()
+	 */
+	public abstract boolean isCostIncurred ();
+
+	/**
+	 * @return <code>true</code> if the provider reports speed and course.
+	 * @see Criteria#isSpeedAndCourseRequired()
+	 */
+	public abstract boolean isSpeedAndCourseSupported ();
+
+	/**
+	 * @return <code>true</code> if the provider reports altitude.
+	 * @see Criteria#isAltitudeRequired()
+	 */
+	public abstract boolean isAltitudeSupported ();
+
+	/**
+	 * @return <code>true</code> if the provider reports textual address
+	 *  information.  The default implementation returns <code>false</code>.
+	 * @see Criteria#isAddressInfoRequired()
+	 */
+	public boolean isAddressInfoSupported ()
+	{
+		return false;
+	}
+
+	/**
+	 * Creates the location provider.  This is where native libraries are
+	 * loaded and receivers started.  It is only called once per factory.
+	 *
+	 * @return The new location provider.
+	 * @throws LocationException if the provider is out of service.
+	 */
+	protected abstract LocationProvider createProvider ()
+		throws LocationException;
+
+	/**
+	 * Returns the location provider, creating it the first time.
+	 *
+	 * @return The location provider.
+	 * @throws LocationException if the provider is out of service.
+	 */
+	synchronized LocationProvider getProvider ()
+		throws LocationException
+	{
+		if ( provider == null )
+		{
+			provider = createProvider();
+		}
+
+		return provider;
+	}
+
+	/**
+	 * Checks if the provider typically meets <code>criteria</code>.
+	 *
+	 * @param criteria are the application's requirements.
+	 * @return <code>true</code> if every requirement is met; <code>false</code>
+	 *  otherwise.
+	 */
+	boolean meets (Criteria criteria)
+	{
+		if ( (criteria.isAllowedToCost() == false) && isCostIncurred() )
+		{
+			return false;
+		}
+
+		int horizontal = criteria.getHorizontalAccuracy();
+
+		if ( (horizontal != Criteria.NO_REQUIREMENT) && (getHorizontalAccuracy() > horizontal) )
+		{
+			return false;
+		}
+
+		int vertical = criteria.getVerticalAccuracy();
+
+		if ( (vertical != Criteria.NO_REQUIREMENT) && (getVerticalAccuracy() > vertical) )
+		{
+			return false;
+		}
+
+		int responseTime = criteria.getPreferredResponseTime();
+
+		if ( (responseTime != Criteria.NO_REQUIREMENT) && (getResponseTime() > responseTime) )
+		{
+			return false;
+		}
+
+		int power = criteria.getPreferredPowerConsumption();
+
+		if ( (power != Criteria.NO_REQUIREMENT) && (getPowerConsumption() > power) )
+		{
+			return false;
+		}
+
+		if ( criteria.isSpeedAndCourseRequired() && (isSpeedAndCourseSupported() == false) )
+		{
+			return false;
+		}
+
+		if ( criteria.isAltitudeRequired() && (isAltitudeSupported() == false) )
+		{
+			return false;
+		}
+
+		if ( criteria.isAddressInfoRequired() && (isAddressInfoSupported() == false) )
+		{
+			return false;
+		}
+
+		return true;
+	}
+}
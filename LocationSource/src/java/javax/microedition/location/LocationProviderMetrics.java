@@ -0,0 +1,338 @@
+package javax.microedition.location;
+
+/**
+ * Counts what a location provider does so its performance can be watched
+ * while it runs: how many locations it raised and how many were invalid,
+ * how long they took to reach the listeners, how many no listener was due
+ * for, were dropped, or were conflated by a listener's own thread, how many
+ * times listeners threw, and how long the provider spent in each state.
+ * <p>
+ * Counts only grow.  Rates, such as locations per second, come from the
+ * difference between two readings divided by the time between them, which
+ * is how monitoring systems scrape counters.  The invalid location ratio is
+ * <code>getInvalidLocationCount() / getLocationCount()</code>.
+ * <p>
+ * Together with <code>Location.getGPSTime</code> the histograms show where
+ * a location is delayed:
+ * <ul>
+ *  <li>the receiver, from the GPS time to the location's arrival,
+ *  <li>the provider's worker thread, from arrival to being raised
+ *      (<code>getArrivalLatency</code>), and
+ *  <li>the listeners, from being raised to each listener returning
+ *      (<code>getDispatchLatency</code>).
+ * </ul>
+ * <p>
+ * The metrics are changed by the thread raising the provider's events and
+ * cost a few additions per event.  Listeners on their own threads record
+ * returning and throwing from those threads, so those updates and
+ * publishing them are synchronized.  Other threads read them without
+ * locking, so a reading may be a moment behind and values read one after
+ * another may be from different events.  This class is not part of JSR-179.
+ *
+ * @see LocationProvider#getMetrics()
+ */
+public final class LocationProviderMetrics
+{
+	/**
+	 * Indexes into <code>values</code>.  The time spent in each state before
+	 * the current one, in milliseconds, is at the <code>LocationProvider</code>
+	 * state code, which start at 1.
+	 */
+	private static final int STATE = 0;
+	private static final int STATE_TIMES = 0;
+	private static final int STATE_START = LocationProvider.OUT_OF_SERVICE + 1;
+	private static final int LOCATIONS = STATE_START + 1;
+	private static final int INVALID_LOCATIONS = STATE_START + 2;
+	private static final int SUPPRESSED_LOCATIONS = STATE_START + 3;
+	private static final int DROPPED_LOCATIONS = STATE_START + 4;
+	private static final int LISTENER_EXCEPTIONS = STATE_START + 5;
+	private static final int STATE_CHANGES = STATE_START + 6;
+	private static final int CONFLATED_LOCATIONS = STATE_START + 7;
+
+	/**
+	 * When the metrics started in milliseconds since 1970.
+	 */
+	private final long startTime = System.currentTimeMillis();
+
+	/**
+	 * The counts, the current state, and when it was entered in milliseconds
+	 * since 1970.  Changed by the thread raising events, and by listeners'
+	 * threads while synchronized.
+	 */
+	private final long[] values = new long[CONFLATED_LOCATIONS + 1];
+
+	/**
+	 * <code>values</code> as other threads read it.  The same array is
+	 * written again by <code>publish</code> so readers see the changes
+	 * before it.
+	 */
+	private volatile long[] published = values;
+
+	/**
+	 * The time from a location arriving to it being raised.
+	 */
+	private final LatencyHistogram arrivalLatency = new LatencyHistogram();
+
+	/**
+	 * The time from a location being raised to each listener returning.
+	 */
+	private final LatencyHistogram dispatchLatency = new LatencyHistogram();
+
+	/**
+	 * Only location providers create metrics.
+	 */
+	LocationProviderMetrics ()
+	{
+		values[STATE] = LocationProvider.TEMPORARILY_UNAVAILABLE;
+		values[STATE_START] = startTime;
+	}
+
+	/**
+	 * @return The current time, in nanoseconds, for measuring latencies.
+	 *  The <code>MonotonicClock</code> when there is one, otherwise the
+	 *  wall clock with only millisecond resolution.
+	 */
+	static long nanoTime ()
+	{
+		long time = MonotonicClock.nanoTime();
+		return (time != 0) ? time : System.currentTimeMillis() * 1000000L;
+	}
+
+	/**
+	 * Counts a location being raised.
+	 *
+	 * @param location is the location raised.
+	 * @param raised is the <code>nanoTime</code> it was raised.
+	 */
+	void locationRaised (Location location, long raised)
+	{
+		values[LOCATIONS]++;
+
+		if ( (location == null) || (location.isValid() == false) )
+		{
+			values[INVALID_LOCATIONS]++;
+		}
+
+		long arrived = (location == null) ? 0 : location.getArrivalNanoTime();
+
+		if ( arrived != 0 )
+		{
+			arrivalLatency.record( raised - arrived );
+		}
+	}
+
+	/**
+	 * Counts a location raised when no listener's interval had expired.
+	 */
+	void locationSuppressed ()
+	{
+		values[SUPPRESSED_LOCATIONS]++;
+	}
+
+	/**
+	 * Counts a location the provider dropped instead of raising.
+	 */
+	void locationDropped ()
+	{
+		values[DROPPED_LOCATIONS]++;
+	}
+
+	/**
+	 * Counts a location replaced, before its listener's thread took it, by
+	 * a newer one.
+	 */
+	void locationConflated ()
+	{
+		values[CONFLATED_LOCATIONS]++;
+	}
+
+	/**
+	 * Records a listener returning from a location update.
+	 *
+	 * @param raised is the <code>nanoTime</code> the location was raised.
+	 */
+	synchronized void listenerReturned (long raised)
+	{
+		dispatchLatency.record( nanoTime() - raised );
+	}
+
+	/**
+	 * Counts a listener throwing.
+	 */
+	synchronized void listenerFailed ()
+	{
+		values[LISTENER_EXCEPTIONS]++;
+	}
+
+	/**
+	 * Records the provider changing state.
+	 *
+	 * @param newState is the <code>LocationProvider</code> state code.
+	 */
+	void stateChanged (int newState)
+	{
+		long now = System.currentTimeMillis();
+
+		long[] values = this.values;
+		values[(int)values[STATE]] += now - values[STATE_START];
+		values[STATE] = newState;
+		values[STATE_START] = now;
+		values[STATE_CHANGES]++;
+	}
+
+	/**
+	 * Makes the changes so far visible to other threads.  Called once an
+	 * event has been raised.
+	 */
+	synchronized void publish ()
+	{
+		published = values;
+		arrivalLatency.publish();
+		dispatchLatency.publish();
+	}
+
+	/**
+	 * @return When the metrics started counting in milliseconds since 1970.
+	 */
+	public long getStartTime ()
+	{
+		return startTime;
+	}
+
+	/**
+	 * @return The number of locations raised, valid and invalid.
+	 */
+	public long getLocationCount ()
+	{
+		return published[LOCATIONS];
+	}
+
+	/**
+	 * @return The number of invalid locations raised.
+	 */
+	public long getInvalidLocationCount ()
+	{
+		return published[INVALID_LOCATIONS];
+	}
+
+	/**
+	 * @return The number of locations raised that no listener was given
+	 *  because none of their intervals had expired.  Locations raised when
+	 *  there are no listeners are not counted.
+	 */
+	public long getSuppressedLocationCount ()
+	{
+		return published[SUPPRESSED_LOCATIONS];
+	}
+
+	/**
+	 * @return The number of locations the provider dropped instead of
+	 *  raising, such as by a batching window.
+	 */
+	public long getDroppedLocationCount ()
+	{
+		return published[DROPPED_LOCATIONS];
+	}
+
+	/**
+	 * @return The number of locations given to listeners with their own
+	 *  thread that were replaced by a newer one before the thread took them.
+	 * @see AbstractLocationProvider#addLocationListener(LocationListener, int, int, int, boolean)
+	 */
+	public long getConflatedLocationCount ()
+	{
+		return published[CONFLATED_LOCATIONS];
+	}
+
+	/**
+	 * @return The number of times a listener threw from a callback.  Throws
+	 *  on a listener's own thread are not counted.
+	 */
+	public long getListenerExceptionCount ()
+	{
+		return published[LISTENER_EXCEPTIONS];
+	}
+
+	/**
+	 * @return The number of state changes raised.
+	 */
+	public long getStateChangeCount ()
+	{
+		return published[STATE_CHANGES];
+	}
+
+	/**
+	 * @return The provider's state as last raised.
+	 */
+	public int getState ()
+	{
+		return (int)published[STATE];
+	}
+
+	/**
+	 * Returns how long the provider has spent in a state, including the
+	 * time so far if it is the current state.
+	 *
+	 * @param state is <code>LocationProvider.AVAILABLE</code>,
+	 *  <code>TEMPORARILY_UNAVAILABLE</code>, or <code>OUT_OF_SERVICE</code>.
+	 * @return The time in milliseconds.
+	 * @throws IllegalArgumentException if <code>state</code> is not a state.
+	 */
+	public long getTimeInState (int state)
+	{
+		if ( (state < LocationProvider.AVAILABLE) || (state > LocationProvider.OUT_OF_SERVICE) )
+		{
+			throw new IllegalArgumentException( "State (" + state + ") is invalid." );
+		}
+
+		long[] values = published;
+		long time = values[STATE_TIMES + state];
+
+		if ( state == values[STATE] )
+		{
+			time += System.currentTimeMillis() - values[STATE_START];
+		}
+
+		return time;
+	}
+
+	/**
+	 * @return The times, in nanoseconds, from locations arriving from the
+	 *  receiver to being raised.  Only locations that know when they arrived
+	 *  are counted.
+	 * @see Location#getArrivalNanoTime()
+	 */
+	public LatencyHistogram getArrivalLatency ()
+	{
+		return arrivalLatency;
+	}
+
+	/**
+	 * @return The times, in nanoseconds, from locations being raised to each
+	 *  listener given one returning.  One time is counted per listener.  For
+	 *  listeners with their own thread it is the time to hand the location
+	 *  to that thread.
+	 */
+	public LatencyHistogram getDispatchLatency ()
+	{
+		return dispatchLatency;
+	}
+
+	/**
+	 * @see Object#toString()
+	 */
+	public String toString ()
+	{
+		return "locations=" + getLocationCount() +
+			" invalid=" + getInvalidLocationCount() +
+			" suppressed=" + getSuppressedLocationCount() +
+			" dropped=" + getDroppedLocationCount() +
+			" conflated=" + getConflatedLocationCount() +
+			" listenerExceptions=" + getListenerExceptionCount() +
+			" available=" + getTimeInState( LocationProvider.AVAILABLE ) + "ms" +
+			" unavailable=" + getTimeInState( LocationProvider.TEMPORARILY_UNAVAILABLE ) + "ms" +
+			" outOfService=" + getTimeInState( LocationProvider.OUT_OF_SERVICE ) + "ms" +
+			"\nArrival: " + getArrivalLatency() +
+			"\nDispatch: " + getDispatchLatency();
+	}
+}
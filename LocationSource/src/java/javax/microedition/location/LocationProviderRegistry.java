@@ -0,0 +1,397 @@
+package javax.microedition.location;
+
+import java.util.Vector;
+
+/**
+ * Chooses the <code>LocationProvider</code> returned by
+ * <code>LocationProvider.getInstance</code>.  Each kind of provider is
+ * described by a registered <code>LocationProviderFactory</code>.  The
+ * factories are compared against the application's <code>Criteria</code> and
+ * only the provider chosen is ever created.
+ * <p>
+ * When several providers meet the criteria the one using the least power is
+ * chosen, then the most accurate one, then the fastest one.  Ties go to the
+ * factory registered first.
+ * <p>
+ * Decisions are remembered for the last few distinct criteria so repeated
+ * calls to <code>getInstance</code> do not search the factories again.
+ * <p>
+ * The Windows Mobile GPS Intermediate Driver is registered by default.
+ * Additional factories are registered by calling <code>register</code> or
+ * by listing their class names, separated by commas, in the
+ * <code>locationsource.providers</code> system property.  Those factories
+ * need a public no argument constructor and are preferred over the
+ * defaults.
+ *
+ * @see LocationProviderFactory
+ */
+public final class LocationProviderRegistry
+{
+	/**
+	 * System property holding the class names of factories to register.
+	 */
+	public static final String PROVIDERS_PROPERTY = "locationsource.providers";
+
+	/**
+	 * The number of criteria decisions remembered.
+	 */
+	private static final int CACHE_SIZE = 8;
+
+	/**
+	 * The number of values in a criteria snapshot.
+	 */
+	private static final int KEY_LENGTH = 8;
+
+	/**
+	 * The registered <code>LocationProviderFactory</code> objects in the
+	 * order they were registered.
+	 */
+	private static final Vector factories = new Vector();
+
+	/**
+	 * Snapshots of the <code>Criteria</code> values of remembered decisions.
+	 */
+	private static final int[][] cachedKeys = new int[CACHE_SIZE][KEY_LENGTH];
+
+	/**
+	 * The factory chosen for each remembered criteria.  <code>null</code> means
+	 * no provider meets the criteria.
+	 */
+	private static final LocationProviderFactory[] cachedFactories = new LocationProviderFactory[CACHE_SIZE];
+
+	/**
+	 * Which entries of the cache hold a decision.
+	 */
+	private static final boolean[] cached = new boolean[CACHE_SIZE];
+
+	/**
+	 * The cache entry replaced by the next new decision.
+	 */
+	private static int nextCacheEntry;
+
+	/**
+	 * Scratch space for the snapshot of the criteria being looked up.
+	 */
+	private static final int[] key = new int[KEY_LENGTH];
+
+	/**
+	 * The least restrictive criteria used when the application passes <code>null</code>.
+	 */
+	private static final Criteria DEFAULT_CRITERIA = new Criteria();
+
+	static
+	{
+		// Factories named by the application come first.
+		String names = System.getProperty( PROVIDERS_PROPERTY );
+
+		if ( names != null )
+		{
+			int start = 0;
+
+			while ( start <= names.length() )
+			{
+				int end = names.indexOf( ',', start );
+
+				if ( end < 0 )
+				{
+					end = names.length();
+				}
+
+				String name = names.substring( start, end ).trim();
+
+				if ( name.length() > 0 )
+				{
+					try
+					{
+						factories.addElement( (LocationProviderFactory)Class.forName(name).newInstance() );
+					}
+					catch (Throwable t)  // ClassNotFoundException, InstantiationException, ClassCastException, ...
+					{
+						System.out.println( "Could not register location provider " + name + ": " + t.getMessage() );
+					}
+				}
+
+				start = end + 1;
+			}
+		}
+
+		// Built in providers.
+		factories.addElement( new WindowsMobileLocationProviderFactory() );
+	}
+
+	/**
+	 * This class is not instantiated.
+	 */
+	private LocationProviderRegistry ()
+	{
+	}
+
+	/**
+	 * Adds a kind of location provider that can be chosen by
+	 * <code>LocationProvider.getInstance</code>.  It is considered after all
+	 * the factories already registered.
+	 *
+	 * @param factory describes and creates the location provider.
+	 * @throws NullPointerException if <code>factory</code> is <code>null</code>.
+	 */
+	public static synchronized void register (LocationProviderFactory factory)
+	{
+		if ( factory == null )
+		{
+			throw new NullPointerException();
+		}
+
+		if ( factories.contains(factory) == false )
+		{
+			factories.addElement( factory );
+			clearCache();
+		}
+	}
+
+	/**
+	 * Removes a kind of location provider so it is no longer chosen.  Providers
+	 * it already created keep working.
+	 *
+	 * @param factory was previously passed to <code>register</code>.
+	 */
+	public static synchronized void unregister (LocationProviderFactory factory)
+	{
+		if ( factories.removeElement(factory) )
+		{
+			clearCache();
+		}
+	}
+
+	/**
+	 * Returns the location provider that best fits <code>criteria</code>.  This
+	 * implements <code>LocationProvider.getInstance</code>.
+	 *
+	 * @param criteria are the application's requirements or <code>null</code>
+	 *  for the least restrictive criteria.
+	 * @return The best location provider or <code>null</code> if none meet the
+	 *  criteria but others are available.
+	 * @throws LocationException if all location providers are out of service.
+	 * @see LocationProvider#getInstance(Criteria)
+	 */
+	static synchronized LocationProvider getProvider (Criteria criteria)
+		throws LocationException
+	{
+		if ( criteria == null )
+		{
+			criteria = DEFAULT_CRITERIA;
+		}
+
+		snapshot( criteria, key );
+
+		// Reuse the last decision for these criteria while its provider works.
+		int entry = find( key );
+
+		if ( entry >= 0 )
+		{
+			LocationProviderFactory factory = cachedFactories[entry];
+
+			if ( factory == null )
+			{
+				return null;
+			}
+
+			LocationProvider provider = inService( factory );
+
+			if ( provider != null )
+			{
+				return provider;
+			}
+
+			cached[entry] = false;
+		}
+
+		return choose( criteria );
+	}
+
+	/**
+	 * Searches the factories for the best provider meeting <code>criteria</code>
+	 * and remembers the decision.
+	 *
+	 * @param criteria are the application's requirements.
+	 * @return The best location provider or <code>null</code> if none meet the
+	 *  criteria but others are available.
+	 * @throws LocationException if all location providers are out of service.
+	 */
+	private static LocationProvider choose (Criteria criteria)
+		throws LocationException
+	{
+		int count = factories.size();
+		boolean[] rejected = new boolean[count];
+		int supported = 0;
+		int outOfService = 0;
+
+		for ( int i = 0; i < count; i++ )
+		{
+			LocationProviderFactory factory = (LocationProviderFactory)factories.elementAt( i );
+
+			if ( factory.isSupported() )
+			{
+				supported++;
+				rejected[i] = (factory.meets(criteria) == false);
+			}
+			else
+			{
+				rejected[i] = true;
+			}
+		}
+
+		// Try the matching providers from best to worst.
+		while ( true )
+		{
+			int best = -1;
+
+			for ( int i = 0; i < count; i++ )
+			{
+				if ( (rejected[i] == false) &&
+					 ((best < 0) || isBetter((LocationProviderFactory)factories.elementAt(i), (LocationProviderFactory)factories.elementAt(best))) )
+				{
+					best = i;
+				}
+			}
+
+			if ( best < 0 )
+			{
+				break;
+			}
+
+			LocationProviderFactory factory = (LocationProviderFactory)factories.elementAt( best );
+			LocationProvider provider = inService( factory );
+
+			if ( provider != null )
+			{
+				remember( factory );
+				return provider;
+			}
+
+			rejected[best] = true;
+			outOfService++;
+		}
+
+		if ( outOfService == supported )
+		{
+			throw new LocationException( "All location providers are out of service." );
+		}
+
+		// Other providers exist that might work with more relaxed criteria.
+		remember( null );
+		return null;
+	}
+
+	/**
+	 * Gets the provider from a factory if it is not out of service.
+	 *
+	 * @param factory creates the provider.
+	 * @return The provider or <code>null</code> if it is out of service.
+	 */
+	private static LocationProvider inService (LocationProviderFactory factory)
+	{
+		try
+		{
+			LocationProvider provider = factory.getProvider();
+
+			if ( provider.getState() != LocationProvider.OUT_OF_SERVICE )
+			{
+				return provider;
+			}
+		}
+		catch (LocationException e)
+		{
+			// The provider is out of service.
+		}
+
+		return null;
+	}
+
+	/**
+	 * Ranks two factories that both meet the criteria.
+	 *
+	 * @return <code>true</code> if <code>a</code> should be chosen over <code>b</code>.
+	 */
+	private static boolean isBetter (LocationProviderFactory a, LocationProviderFactory b)
+	{
+		if ( a.getPowerConsumption() != b.getPowerConsumption() )
+		{
+			return a.getPowerConsumption() < b.getPowerConsumption();
+		}
+
+		if ( a.getHorizontalAccuracy() != b.getHorizontalAccuracy() )
+		{
+			return a.getHorizontalAccuracy() < b.getHorizontalAccuracy();
+		}
+
+		return a.getResponseTime() < b.getResponseTime();
+	}
+
+	/**
+	 * Copies the values of <code>criteria</code> used to choose a provider.
+	 */
+	private static void snapshot (Criteria criteria, int[] values)
+	{
+		values[0] = criteria.getHorizontalAccuracy();
+		values[1] = criteria.getVerticalAccuracy();
+		values[2] = criteria.getPreferredResponseTime();
+		values[3] = criteria.getPreferredPowerConsumption();
+		values[4] = criteria.isAllowedToCost() ? 1 : 0;
+		values[5] = criteria.isSpeedAndCourseRequired() ? 1 : 0;
+		values[6] = criteria.isAltitudeRequired() ? 1 : 0;
+		values[7] = criteria.isAddressInfoRequired() ? 1 : 0;
+	}
+
+	/**
+	 * @return The cache entry holding the decision for <code>values</code> or
+	 *  -1 if there is none.
+	 */
+	private static int find (int[] values)
+	{
+		for ( int i = 0; i < CACHE_SIZE; i++ )
+		{
+			if ( cached[i] )
+			{
+				int[] k = cachedKeys[i];
+				int j = 0;
+
+				while ( (j < KEY_LENGTH) && (k[j] == values[j]) )
+				{
+					j++;
+				}
+
+				if ( j == KEY_LENGTH )
+				{
+					return i;
+				}
+			}
+		}
+
+		return -1;
+	}
+
+	/**
+	 * Remembers the decision for the criteria in <code>key</code>.
+	 */
+	private static void remember (LocationProviderFactory factory)
+	{
+		int entry = nextCacheEntry;
+		nextCacheEntry = (nextCacheEntry + 1) % CACHE_SIZE;
+
+		System.arraycopy( key, 0, cachedKeys[entry], 0, KEY_LENGTH );
+		cachedFactories[entry] = factory;
+		cached[entry] = true;
+	}
+
+	/**
+	 * Forgets all the decisions.
+	 */
+	private static void clearCache ()
+	{
+		for ( int i = 0; i < CACHE_SIZE; i++ )
+		{
+			cached[i] = false;
+			cachedFactories[i] = null;
+		}
+	}
+}
@@ -0,0 +1,48 @@
+package javax.microedition.location;
+
+/**
+ * A clock that only moves forward, for stamping when locations arrive.
+ * CLDC has no such clock, only <code>System.currentTimeMillis</code> which
+ * jumps whenever the wall clock is set.  On J2SE <code>System.nanoTime</code>
+ * is used through <code>SystemNanoClock</code>, which is only compiled into
+ * the J2SE build and so is loaded by name.
+ */
+abstract class MonotonicClock
+{
+	/**
+	 * The platform's clock or <code>null</code> if it has none.
+	 */
+	private static final MonotonicClock clock = load();
+
+	/**
+	 * @return The platform's monotonic time in nanoseconds.
+	 */
+	abstract long now ();
+
+	/**
+	 * Returns a time in nanoseconds that is only useful compared to other
+	 * times from this method.
+	 *
+	 * @return The monotonic time in nanoseconds or 0 if the platform does
+	 *  not have a monotonic clock.
+	 */
+	static long nanoTime ()
+	{
+		return (clock == null) ? 0 : clock.now();
+	}
+
+	/**
+	 * @return The J2SE clock or <code>null</code> if it is not available.
+	 */
+	private static MonotonicClock load ()
+	{
+		try
+		{
+			return (MonotonicClock)Class.forName( "javax.microedition.location.SystemNanoClock" ).newInstance();
+		}
+		catch (Throwable t)  // ClassNotFoundException, NoClassDefFoundError
+		{
+			return null;
+		}
+	}
+}
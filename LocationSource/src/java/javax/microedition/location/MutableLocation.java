@@ -0,0 +1,291 @@
+package javax.microedition.location;
+
+/**
+ * A <code>Location</code> that is filled in again for each fix instead of
+ * being created anew.  Providers that reuse locations give their listeners
+ * the same instance, and the same <code>QualifiedCoordinates</code>, every
+ * time, so raising a fix creates no garbage.
+ * <p>
+ * A listener given a <code>MutableLocation</code> owns it only until its
+ * <code>locationUpdated</code> method returns.  After that the values can
+ * change at any time.  Listeners that need a fix later must copy the values
+ * they use, or the whole location with <code>copy</code>.
+ * <p>
+ * Instances are only changed by the thread raising events.
+ *
+ * @see AbstractLocationProvider#setReuseLocations(boolean)
+ */
+final class MutableLocation
+	extends Location
+{
+	/**
+	 * Conversion constant to convert between knots and meters per second (m/s).
+	 */
+	private static final float MS_PER_KNOT = 0.514444444444444f;
+
+	/**
+	 * The coordinates, updated in place.
+	 */
+	private final QualifiedCoordinates qualifiedCoordinates = new QualifiedCoordinates( 0.0, 0.0, Float.NaN, Float.NaN, Float.NaN );
+
+	/**
+	 * The ground speed in meters per second.
+	 */
+	private float speed;
+
+	/**
+	 * The course in degrees relative to true north.
+	 */
+	private float course;
+
+	/**
+	 * Whether this object is valid or not.
+	 */
+	private boolean valid;
+
+	/**
+	 * The time this location was obtained using the same time definition as
+	 * <code>System.currentTimeMillis</code>.
+	 */
+	private long timestamp;
+
+	/**
+	 * The receiver's UTC time in milliseconds since 1970 or -1.
+	 */
+	private long gpsTime;
+
+	/**
+	 * The <code>MonotonicClock</code> time the location arrived or 0.
+	 */
+	private long arrivalNanoTime;
+
+	/**
+	 * Sets the values of a valid location.
+	 *
+	 * @param latitude is in degrees.
+	 * @param longitude is in degrees.
+	 * @param altitude is in meters or <code>Float.NaN</code>.
+	 * @param horizontalAccuracy may be <code>Float.NaN</code>.
+	 * @param verticalAccuracy may be <code>Float.NaN</code>.
+	 * @param speed is in meters per second or <code>Float.NaN</code>.
+	 * @param course is in degrees or <code>Float.NaN</code>.
+	 * @param timestamp is the time the location was taken relative to
+	 *  <code>System.currentTimeMillis</code>.
+	 * @param gpsTime is the receiver's UTC time in milliseconds or -1.
+	 * @param arrivalNanoTime is the <code>MonotonicClock</code> time the
+	 *  location arrived or 0.
+	 */
+	void set (double latitude, double longitude, float altitude,
+		float horizontalAccuracy, float verticalAccuracy, float speed, float course,
+		long timestamp, long gpsTime, long arrivalNanoTime)
+	{
+		qualifiedCoordinates.setLatitude( latitude );
+		qualifiedCoordinates.setLongitude( longitude );
+		qualifiedCoordinates.setAltitude( altitude );
+		qualifiedCoordinates.setHorizontalAccuracy( horizontalAccuracy );
+		qualifiedCoordinates.setVerticalAccuracy( verticalAccuracy );
+
+		this.speed = speed;
+		this.course = course;
+		this.timestamp = timestamp;
+		this.gpsTime = gpsTime;
+		this.arrivalNanoTime = arrivalNanoTime;
+		this.valid = true;
+	}
+
+	/**
+	 * Makes this an invalid location.
+	 *
+	 * @param timestamp is the time relative to <code>System.currentTimeMillis</code>.
+	 * @param gpsTime is the receiver's UTC time in milliseconds or -1.
+	 * @param arrivalNanoTime is the <code>MonotonicClock</code> time the
+	 *  location arrived or 0.
+	 */
+	void setInvalid (long timestamp, long gpsTime, long arrivalNanoTime)
+	{
+		this.valid = false;
+		this.timestamp = timestamp;
+		this.gpsTime = gpsTime;
+		this.arrivalNanoTime = arrivalNanoTime;
+		this.speed = 0.0f;
+		this.course = 0.0f;
+	}
+
+	/**
+	 * Sets the values parsed from a receiver.  The location is valid only
+	 * if the receiver reported a fix.
+	 *
+	 * @param record holds the parsed GPS values.
+	 * @param timestamp is the time the location was taken relative to
+	 *  <code>System.currentTimeMillis</code>.
+	 * @see LocationImpl#LocationImpl(GPSRecord, long)
+	 */
+	void set (GPSRecord record, long timestamp)
+	{
+		long gpsTime = record.utcTime();
+		long arrivalNanoTime = MonotonicClock.nanoTime();
+
+		if ( record.hasFix() )
+		{
+			// The accuracy is the dilution of precision just like the JNI gives.
+			set( record.latitude, record.longitude, record.altitude, record.hdop, record.vdop,
+				record.speed * MS_PER_KNOT, record.course, timestamp, gpsTime, arrivalNanoTime );
+		}
+		else
+		{
+			setInvalid( timestamp, gpsTime, arrivalNanoTime );
+		}
+	}
+
+	/**
+	 * Sets the values of another location.
+	 *
+	 * @param location is the location to copy.
+	 */
+	void set (Location location)
+	{
+		double latitude = location.latitude();
+
+		if ( location.isValid() && (Double.isNaN(latitude) == false) )
+		{
+			set( latitude, location.longitude(), location.altitude(),
+				location.horizontalAccuracy(), location.verticalAccuracy(),
+				location.getSpeed(), location.getCourse(), location.getTimestamp(),
+				location.getGPSTime(), location.getArrivalNanoTime() );
+		}
+		else
+		{
+			setInvalid( location.getTimestamp(), location.getGPSTime(), location.getArrivalNanoTime() );
+		}
+	}
+
+	/**
+	 * @return A <code>Location</code> with the current values that does not
+	 *  change.
+	 */
+	Location copy ()
+	{
+		if ( valid == false )
+		{
+			return new LocationImpl( timestamp );
+		}
+
+		return new LocationImpl( qualifiedCoordinates.getLatitude(), qualifiedCoordinates.getLongitude(),
+			qualifiedCoordinates.getAltitude(), qualifiedCoordinates.getHorizontalAccuracy(),
+			qualifiedCoordinates.getVerticalAccuracy(), speed, course, timestamp, gpsTime, arrivalNanoTime );
+	}
+
+	/**
+	 * @see javax.microedition.location.Location#getQualifiedCoordinates()
+	 */
+	public QualifiedCoordinates getQualifiedCoordinates ()
+	{
+		return valid ? qualifiedCoordinates : null;
+	}
+
+	/**
+	 * @see javax.microedition.location.Location#latitude()
+	 */
+	double latitude ()
+	{
+		return valid ? qualifiedCoordinates.getLatitude() : Double.NaN;
+	}
+
+	/**
+	 * @see javax.microedition.location.Location#longitude()
+	 */
+	double longitude ()
+	{
+		return valid ? qualifiedCoordinates.getLongitude() : Double.NaN;
+	}
+
+	/**
+	 * @see javax.microedition.location.Location#altitude()
+	 */
+	float altitude ()
+	{
+		return valid ? qualifiedCoordinates.getAltitude() : Float.NaN;
+	}
+
+	/**
+	 * @see javax.microedition.location.Location#horizontalAccuracy()
+	 */
+	float horizontalAccuracy ()
+	{
+		return valid ? qualifiedCoordinates.getHorizontalAccuracy() : Float.NaN;
+	}
+
+	/**
+	 * @see javax.microedition.location.Location#verticalAccuracy()
+	 */
+	float verticalAccuracy ()
+	{
+		return valid ? qualifiedCoordinates.getVerticalAccuracy() : Float.NaN;
+	}
+
+	/**
+	 * @see javax.microedition.location.Location#getSpeed()
+	 */
+	public float getSpeed ()
+	{
+		return speed;
+	}
+
+	/**
+	 * @see javax.microedition.location.Location#getCourse()
+	 */
+	public float getCourse ()
+	{
+		return course;
+	}
+
+	/**
+	 * @see javax.microedition.location.Location#getTimestamp()
+	 */
+	public long getTimestamp ()
+	{
+		return timestamp;
+	}
+
+	/**
+	 * @see javax.microedition.location.Location#getGPSTime()
+	 */
+	public long getGPSTime ()
+	{
+		return gpsTime;
+	}
+
+	/**
+	 * @see javax.microedition.location.Location#getArrivalNanoTime()
+	 */
+	public long getArrivalNanoTime ()
+	{
+		return arrivalNanoTime;
+	}
+
+	/**
+	 * @see javax.microedition.location.Location#isValid()
+	 */
+	public boolean isValid ()
+	{
+		return valid;
+	}
+
+	/**
+	 * @see Object#toString()
+	 */
+	public String toString ()
+	{
+		if ( valid )
+		{
+			return qualifiedCoordinates.toString() +
+				"\nSpeed=" + speed +
+				"\nCourse=" + course +
+				"\nTimestamp=" + timestamp;
+		}
+		else
+		{
+			return "invalid";
+		}
+	}
+}
@@ -0,0 +1,577 @@
+package javax.microedition.location;
+
+/**
+ * Parses NMEA 0183 sentences straight from the bytes a GPS receiver sends
+ * into a <code>GPSRecord</code>.  The GGA, RMC, GSA, and VTG sentences are
+ * understood from any talker (e.g. <code>$GPGGA</code>, <code>$GNRMC</code>).
+ * <p>
+ * The checksum is validated over the original bytes and every field is
+ * converted in place.  No <code>String</code>s or other objects are created
+ * per sentence so a receiver running at 10 Hz does not produce any garbage.
+ * <p>
+ * Instances keep scratch state between calls and are not thread safe.  Use
+ * one parser per receiver.
+ *
+ * @see GPSRecord
+ */
+final class NMEAParser
+{
+	/**
+	 * Returned by <code>parse</code> when the sentence is well formed but not
+	 * one of the types this parser understands.
+	 */
+	public static final int UNSUPPORTED = 0;
+
+	/**
+	 * Returned by <code>parse</code> when the sentence is malformed or its
+	 * checksum does not match.
+	 */
+	public static final int INVALID = -1;
+
+	/**
+	 * The most fields any supported sentence has.  GSA is the largest with 18.
+	 */
+	private static final int MAX_FIELDS = 24;
+
+	/**
+	 * Powers of ten used to scale the fractional digits of numbers.
+	 */
+	private static final double[] POWERS_OF_TEN = {
+		1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9,
+		1e10, 1e11, 1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18 };
+
+	/**
+	 * The offset of the first byte of each field in the sentence being parsed.
+	 * Field 0 is the address (e.g. "GPGGA").
+	 */
+	private final int[] fieldStart = new int[MAX_FIELDS];
+
+	/**
+	 * The offset just past the last byte of each field in the sentence being
+	 * parsed.
+	 */
+	private final int[] fieldEnd = new int[MAX_FIELDS];
+
+	/**
+	 * The number of fields found in the sentence being parsed.
+	 */
+	private int fieldCount;
+
+	/**
+	 * The bytes of the sentence being parsed.
+	 */
+	private byte[] buffer;
+
+	/**
+	 * Parses a single NMEA sentence and writes its values into <code>record</code>.
+	 * The sentence may include the leading '$' and trailing "*hh" checksum and
+	 * line terminator.  Only the fields the sentence carries are changed in the
+	 * record; the rest keep their previous values.
+	 *
+	 * @param sentence holds the bytes of the sentence.
+	 * @param offset is the index of the first byte of the sentence.
+	 * @param length is the number of bytes in the sentence.
+	 * @param record is filled with the parsed values.
+	 * @return The <code>GPSRecord</code> sentence bit (e.g. <code>GPSRecord.GGA</code>)
+	 *  if the sentence was parsed, <code>UNSUPPORTED</code> if it is a valid
+	 *  sentence of another type, or <code>INVALID</code> if it is corrupt.
+	 */
+	public int parse (byte[] sentence, int offset, int length, GPSRecord record)
+	{
+		int end = offset + length;
+
+		// Trim the line terminator and any surrounding white space.
+		while ( (offset < end) && (sentence[offset] <= ' ') )
+		{
+			offset++;
+		}
+
+		while ( (end > offset) && (sentence[end - 1] <= ' ') )
+		{
+			end--;
+		}
+
+		if ( (end - offset < 7) || (sentence[offset] != '$') )
+		{
+			return INVALID;
+		}
+
+		// Validate the checksum.  It is the XOR of everything between '$' and '*'.
+		int checksum = 0;
+		int i = offset + 1;
+
+		while ( (i < end) && (sentence[i] != '*') )
+		{
+			checksum ^= sentence[i];
+			i++;
+		}
+
+		if ( i + 3 != end )
+		{
+			// The "*hh" checksum is missing or followed by garbage.
+			return INVALID;
+		}
+
+		int high = hexValue( sentence[i + 1] );
+		int low = hexValue( sentence[i + 2] );
+
+		if ( (high < 0) || (low < 0) || (((high << 4) | low) != checksum) )
+		{
+			return INVALID;
+		}
+
+		// Split the sentence into fields without copying anything.
+		if ( split(sentence, offset + 1, i) == false )
+		{
+			return INVALID;
+		}
+
+		// The address is a two letter talker ID followed by the sentence type.
+		int address = fieldStart[0];
+
+		if ( fieldEnd[0] - address != 5 )
+		{
+			return UNSUPPORTED;
+		}
+
+		byte t1 = sentence[address + 2];
+		byte t2 = sentence[address + 3];
+		byte t3 = sentence[address + 4];
+
+		try
+		{
+			if ( (t1 == 'G') && (t2 == 'G') && (t3 == 'A') )
+			{
+				return parseGGA( record );
+			}
+			else if ( (t1 == 'R') && (t2 == 'M') && (t3 == 'C') )
+			{
+				return parseRMC( record );
+			}
+			else if ( (t1 == 'G') && (t2 == 'S') && (t3 == 'A') )
+			{
+				return parseGSA( record );
+			}
+			else if ( (t1 == 'V') && (t2 == 'T') && (t3 == 'G') )
+			{
+				return parseVTG( record );
+			}
+			else
+			{
+				return UNSUPPORTED;
+			}
+		}
+		finally
+		{
+			// Do not hold onto the caller's buffer.
+			buffer = null;
+		}
+	}
+
+	/**
+	 * Records the start and end of each comma separated field.
+	 *
+	 * @param sentence holds the bytes of the sentence.
+	 * @param start is the index just after the '$'.
+	 * @param end is the index of the '*'.
+	 * @return <code>true</code> if the fields were found; <code>false</code> if
+	 *  there were too many.
+	 */
+	private boolean split (byte[] sentence, int start, int end)
+	{
+		buffer = sentence;
+		fieldCount = 0;
+		fieldStart[0] = start;
+
+		for ( int i = start; i < end; i++ )
+		{
+			if ( sentence[i] == ',' )
+			{
+				fieldEnd[fieldCount] = i;
+				fieldCount++;
+
+				if ( fieldCount == MAX_FIELDS )
+				{
+					return false;
+				}
+
+				fieldStart[fieldCount] = i + 1;
+			}
+		}
+
+		fieldEnd[fieldCount] = end;
+		fieldCount++;
+		return true;
+	}
+
+	/**
+	 * Parses the GPS Fix Data sentence:
+	 * <pre>
+	 *   $--GGA,hhmmss.ss,llll.ll,a,yyyyy.yy,a,x,xx,x.x,x.x,M,x.x,M,x.x,xxxx*hh
+	 * </pre>
+	 */
+	private int parseGGA (GPSRecord record)
+	{
+		if ( fieldCount < 12 )
+		{
+			return INVALID;
+		}
+
+		parseTime( 1, record );
+		record.latitude = parseCoordinate( 2, 3, 'N', 'S', 90.0, false );
+		record.longitude = parseCoordinate( 4, 5, 'E', 'W', 180.0, true );
+		record.quality = parseInt( 6 );
+		record.satelliteCount = parseInt( 7 );
+		record.hdop = (float)parseDouble( 8 );
+
+		// GGA gives the altitude above mean sea level.  JSR-179 wants the
+		// altitude above the ellipsoid which adds the geoid separation.
+		double altitude = parseDouble( 9 );
+		double separation = parseDouble( 11 );
+
+		if ( Double.isNaN(separation) == false )
+		{
+			altitude += separation;
+		}
+
+		record.altitude = (float)altitude;
+		record.sentences |= GPSRecord.GGA;
+		return GPSRecord.GGA;
+	}
+
+	/**
+	 * Parses the Recommended Minimum Specific GNSS Data sentence:
+	 * <pre>
+	 *   $--RMC,hhmmss.ss,A,llll.ll,a,yyyyy.yy,a,x.x,x.x,ddmmyy,x.x,a*hh
+	 * </pre>
+	 */
+	private int parseRMC (GPSRecord record)
+	{
+		if ( fieldCount < 10 )
+		{
+			return INVALID;
+		}
+
+		parseTime( 1, record );
+		record.active = (charAt(2) == 'A');
+		record.latitude = parseCoordinate( 3, 4, 'N', 'S', 90.0, false );
+		record.longitude = parseCoordinate( 5, 6, 'E', 'W', 180.0, true );
+		record.speed = (float)parseDouble( 7 );
+		record.course = (float)parseDouble( 8 );
+		record.date = parseInt( 9 );
+		record.sentences |= GPSRecord.RMC;
+		return GPSRecord.RMC;
+	}
+
+	/**
+	 * Parses the GNSS DOP and Active Satellites sentence:
+	 * <pre>
+	 *   $--GSA,a,x,xx,xx,xx,xx,xx,xx,xx,xx,xx,xx,xx,xx,x.x,x.x,x.x*hh
+	 * </pre>
+	 */
+	private int parseGSA (GPSRecord record)
+	{
+		if ( fieldCount < 18 )
+		{
+			return INVALID;
+		}
+
+		record.fixType = parseInt( 2 );
+		record.pdop = (float)parseDouble( 15 );
+		record.hdop = (float)parseDouble( 16 );
+		record.vdop = (float)parseDouble( 17 );
+		record.sentences |= GPSRecord.GSA;
+		return GPSRecord.GSA;
+	}
+
+	/**
+	 * Parses the Course Over Ground and Ground Speed sentence:
+	 * <pre>
+	 *   $--VTG,x.x,T,x.x,M,x.x,N,x.x,K*hh
+	 * </pre>
+	 */
+	private int parseVTG (GPSRecord record)
+	{
+		if ( fieldCount < 9 )
+		{
+			return INVALID;
+		}
+
+		record.course = (float)parseDouble( 1 );
+		record.speed = (float)parseDouble( 5 );
+		record.sentences |= GPSRecord.VTG;
+		return GPSRecord.VTG;
+	}
+
+	/**
+	 * Parses a "hhmmss.sss" UTC time field.  The record is not changed if the
+	 * field is empty or malformed.
+	 */
+	private void parseTime (int field, GPSRecord record)
+	{
+		int start = fieldStart[field];
+		int end = fieldEnd[field];
+
+		if ( end - start < 6 )
+		{
+			return;
+		}
+
+		int hours = digits( start, 2 );
+		int minutes = digits( start + 2, 2 );
+		int seconds = digits( start + 4, 2 );
+
+		if ( (hours < 0) || (hours > 23) || (minutes < 0) || (minutes > 59) || (seconds < 0) || (seconds > 60) )
+		{
+			return;
+		}
+
+		// Up to three fractional digits become milliseconds.
+		int millis = 0;
+
+		if ( (end - start > 7) && (buffer[start + 6] == '.') )
+		{
+			int scale = 100;
+
+			for ( int i = start + 7; (i < end) && (scale > 0); i++ )
+			{
+				int d = buffer[i] - '0';
+
+				if ( (d < 0) || (d > 9) )
+				{
+					return;
+				}
+
+				millis += d * scale;
+				scale /= 10;
+			}
+		}
+
+		record.secondsSinceMidnight = hours * 3600 + minutes * 60 + seconds;
+		record.milliseconds = millis;
+	}
+
+	/**
+	 * Parses a "dddmm.mmmm" coordinate and its hemisphere field into signed
+	 * decimal degrees in the range <code>LocationImpl</code> accepts, from
+	 * <code>-limit</code> up to but not including <code>limit</code>.
+	 *
+	 * @param field is the index of the number field.
+	 * @param hemisphereField is the index of the hemisphere letter field.
+	 * @param positive is the hemisphere letter for positive values.
+	 * @param negative is the hemisphere letter for negative values.
+	 * @param limit is the largest allowed magnitude in degrees.
+	 * @param wraps is <code>true</code> if <code>limit</code> in the positive
+	 *  direction is the same place as in the negative, as 180 degrees east
+	 *  is 180 degrees west.  Otherwise it is invalid.
+	 * @return The coordinate in degrees or <code>Double.NaN</code> if it is
+	 *  empty or invalid.
+	 */
+	private double parseCoordinate (int field, int hemisphereField, char positive, char negative, double limit, boolean wraps)
+	{
+		double value = parseDouble( field );
+
+		if ( Double.isNaN(value) || (value < 0.0) )
+		{
+			return Double.NaN;
+		}
+
+		int degrees = (int)(value / 100.0);
+		double minutes = value - degrees * 100.0;
+
+		if ( minutes >= 60.0 )
+		{
+			return Double.NaN;
+		}
+
+		double coordinate = degrees + minutes / 60.0;
+
+		if ( coordinate > limit )
+		{
+			return Double.NaN;
+		}
+
+		int hemisphere = charAt( hemisphereField );
+
+		if ( hemisphere == negative )
+		{
+			return -coordinate;
+		}
+		else if ( hemisphere != positive )
+		{
+			return Double.NaN;
+		}
+		else if ( coordinate < limit )
+		{
+			return coordinate;
+		}
+		else if ( wraps )
+		{
+			return -coordinate;
+		}
+		else
+		{
+			return Double.NaN;
+		}
+	}
+
+	/**
+	 * Parses a decimal number such as "-12.345".
+	 *
+	 * @return The number or <code>Double.NaN</code> if the field is empty or
+	 *  not a number.
+	 */
+	private double parseDouble (int field)
+	{
+		int i = fieldStart[field];
+		int end = fieldEnd[field];
+
+		if ( i == end )
+		{
+			return Double.NaN;
+		}
+
+		boolean negative = false;
+
+		if ( (buffer[i] == '-') || (buffer[i] == '+') )
+		{
+			negative = (buffer[i] == '-');
+			i++;
+		}
+
+		long mantissa = 0;
+		int fractionDigits = 0;
+		int significantDigits = 0;
+		boolean fraction = false;
+		boolean anyDigits = false;
+
+		for ( ; i < end; i++ )
+		{
+			byte b = buffer[i];
+
+			if ( b == '.' )
+			{
+				if ( fraction )
+				{
+					return Double.NaN;
+				}
+
+				fraction = true;
+			}
+			else if ( (b >= '0') && (b <= '9') )
+			{
+				anyDigits = true;
+
+				// Digits past what a long holds add nothing a float or double keeps.
+				if ( (significantDigits < 18) && (fractionDigits < 18) )
+				{
+					mantissa = mantissa * 10 + (b - '0');
+
+					if ( mantissa != 0 )
+					{
+						significantDigits++;
+					}
+
+					if ( fraction )
+					{
+						fractionDigits++;
+					}
+				}
+				else if ( fraction == false )
+				{
+					return Double.NaN;
+				}
+			}
+			else
+			{
+				return Double.NaN;
+			}
+		}
+
+		if ( anyDigits == false )
+		{
+			return Double.NaN;
+		}
+
+		double value = mantissa / POWERS_OF_TEN[fractionDigits];
+		return negative ? -value : value;
+	}
+
+	/**
+	 * Parses a non-negative integer field.
+	 *
+	 * @return The integer or -1 if the field is empty or not an integer.
+	 */
+	private int parseInt (int field)
+	{
+		int start = fieldStart[field];
+		int length = fieldEnd[field] - start;
+
+		if ( (length == 0) || (length > 9) )
+		{
+			return -1;
+		}
+
+		return digits( start, length );
+	}
+
+	/**
+	 * Converts <code>count</code> decimal digits starting at <code>start</code>.
+	 *
+	 * @return The value or -1 if any byte is not a digit.
+	 */
+	private int digits (int start, int count)
+	{
+		int value = 0;
+
+		for ( int i = start; i < start + count; i++ )
+		{
+			int d = buffer[i] - '0';
+
+			if ( (d < 0) || (d > 9) )
+			{
+				return -1;
+			}
+
+			value = value * 10 + d;
+		}
+
+		return value;
+	}
+
+	/**
+	 * @return The first character of a field or 0 if the field is empty.
+	 */
+	private int charAt (int field)
+	{
+		if ( fieldStart[field] == fieldEnd[field] )
+		{
+			return 0;
+		}
+
+		return buffer[fieldStart[field]];
+	}
+
+	/**
+	 * @return The value of a hexadecimal digit or -1 if <code>b</code> is not one.
+	 */
+	private static int hexValue (byte b)
+	{
+		if ( (b >= '0') && (b <= '9') )
+		{
+			return b - '0';
+		}
+		else if ( (b >= 'A') && (b <= 'F') )
+		{
+			return b - 'A' + 10;
+		}
+		else if ( (b >= 'a') && (b <= 'f') )
+		{
+			return b - 'a' + 10;
+		}
+		else
+		{
+			return -1;
+		}
+	}
+}
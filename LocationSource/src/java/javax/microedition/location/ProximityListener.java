@@ -0,0 +1,61 @@
+package javax.microedition.location;
+
+/**
+ * This interface represents a listener to events associated with detecting
+ * proximity to some registered coordinates. Applications implement this
+ * interface and register it with a static method in <code>LocationProvider</code>
+ * to obtain notifications when proximity to registered coordinates is
+ * detected.
+ * <p>
+ * This listener is called when the terminal enters the proximity of the
+ * registered coordinates. The proximity is defined as the proximity radius
+ * around the coordinates combined with the horizontal accuracy of the
+ * location determination.
+ * <p>
+ * The listener is called only once when the terminal enters the proximity of
+ * the registered coordinates. The registration with these coordinates is
+ * cancelled when the listener is called. If the application wants to continue
+ * monitoring the proximity, it must re-register with the coordinates.
+ * <p>
+ * The application is responsible for any possible synchronization needed in
+ * the listener methods.
+ * <p>
+ * The listener methods MUST return quickly and should not perform any
+ * extensive processing. The method calls are intended as triggers to the
+ * application. Application should do any necessary extensive processing in a
+ * separate thread and only use these methods to initiate the processing.
+ *
+ * @see LocationProvider#addProximityListener(ProximityListener, Coordinates, float)
+ * @see LocationProvider#removeProximityListener(ProximityListener)
+ */
+public interface ProximityListener
+{
+	/**
+	 * After registering this listener with the <code>LocationProvider</code>,
+	 * this method will be called by the platform when the implementation
+	 * detects that the current location of the terminal is within the defined
+	 * proximity radius of the registered coordinates.
+	 *
+	 * @param coordinates - the registered coordinates to which proximity has
+	 *        been detected
+	 * @param location - the current location of the terminal
+	 */
+	public void proximityEvent (Coordinates coordinates, Location location);
+
+	/**
+	 * Called to notify that the state of the proximity monitoring has changed.
+	 * These state changes are delivered to the application as soon as possible
+	 * after the state of the monitoring changes.
+	 * <p>
+	 * Regardless of the state, the <code>ProximityListener</code> remains
+	 * registered until the application explicitly removes it with
+	 * <code>LocationProvider.removeProximityListener</code> or the application
+	 * exits.
+	 *
+	 * @param isMonitoringActive - a boolean indicating the new state of the
+	 *        proximity monitoring. <code>true</code> indicates that the
+	 *        proximity monitoring is active and <code>false</code> indicates
+	 *        that the proximity monitoring can't be done currently.
+	 */
+	public void monitoringStateChanged (boolean isMonitoringActive);
+}
@@ -0,0 +1,789 @@
+package javax.microedition.location;
+
+import java.util.Enumeration;
+import java.util.Hashtable;
+import java.util.Vector;
+
+/**
+ * Tracks the coordinates registered with <code>LocationProvider.addProximityListener</code>
+ * and tells their listeners when a location comes within range.
+ * <p>
+ * Each registration is a circle around its coordinates.  The circles are
+ * indexed by a uniform grid of <code>CELL_DEGREES</code> square cells over
+ * latitude and longitude; each circle is listed in every cell its bounding
+ * box overlaps.  A location only has to be compared against the circles
+ * listed in the cells it might be in, so the work per location depends on how
+ * crowded the circles are around it and not on how many are registered.
+ * Circles whose bounding box would cover more than <code>MAX_CELLS</code>
+ * cells, such as very large ones or ones around the poles, are kept in a
+ * separate list compared against every location.
+ * <p>
+ * Distances are measured on a sphere of the earth's mean radius with the
+ * Haversine formula.  The comparison is made on the Haversine value itself,
+ * so no inverse trigonometry is needed per circle.
+ * <p>
+ * Only providers whose <code>isProximityMonitored</code> is <code>true</code>
+ * feed the monitor.  Monitoring is active while at least one of them is
+ * <code>AVAILABLE</code>, so one provider going out of service does not
+ * switch it off while another is still being monitored.
+ * <p>
+ * Listeners are called after the monitor's lock is released so they may
+ * register and remove proximity listeners themselves.
+ *
+ * @see ProximityListener
+ */
+final class ProximityMonitor
+{
+	/**
+	 * The width and height of a grid cell in degrees, about 2.2 km of latitude.
+	 */
+	private static final double CELL_DEGREES = 0.02;
+
+	/**
+	 * The number of grid rows, from the South pole to the North pole.
+	 */
+	private static final int ROWS = (int)(180.0 / CELL_DEGREES);
+
+	/**
+	 * The number of grid columns, eastward from the antimeridian.
+	 */
+	private static final int COLUMNS = (int)(360.0 / CELL_DEGREES);
+
+	/**
+	 * The most cells a circle is listed in before it is kept in the list
+	 * of large circles instead.
+	 */
+	private static final int MAX_CELLS = 256;
+
+	/**
+	 * The registered circles listed by grid cell.  The values are
+	 * <code>Vector</code>s of <code>Fence</code>s.
+	 */
+	private static final CellTable grid = new CellTable();
+
+	/**
+	 * The registered circles too large to list in the grid.
+	 */
+	private static final Vector largeFences = new Vector();
+
+	/**
+	 * The registered circles of each listener.  The keys are
+	 * <code>ProximityListener</code>s and the values <code>Vector</code>s of
+	 * <code>Fence</code>s.
+	 */
+	private static final Hashtable listeners = new Hashtable();
+
+	/**
+	 * The number of circles registered.  It is read without the lock so
+	 * locations are not checked at all while there are none.
+	 */
+	private static volatile int fenceCount;
+
+	/**
+	 * The number of the current location check.  Circles listed in several
+	 * cells remember it so they are only compared once per location.
+	 */
+	private static int checkNumber;
+
+	/**
+	 * Scratch space for the circles a location might be within.
+	 */
+	private static final Vector candidates = new Vector();
+
+	/**
+	 * Scratch space for the grid cells a location might be in.
+	 */
+	private static final int[] box = new int[4];
+
+	/**
+	 * The number of monitored providers that are <code>AVAILABLE</code>.
+	 */
+	private static int availableProviders;
+
+	/**
+	 * If locations are being received to monitor.  This is
+	 * <code>true</code> while <code>availableProviders</code> is not 0.
+	 */
+	private static boolean monitoringActive;
+
+	/**
+	 * This class is not instantiated.
+	 */
+	private ProximityMonitor ()
+	{
+	}
+
+	/**
+	 * Registers a circle.  This implements <code>LocationProvider.addProximityListener</code>.
+	 *
+	 * @see LocationProvider#addProximityListener(ProximityListener, Coordinates, float)
+	 */
+	static void add (ProximityListener listener, Coordinates coordinates, float proximityRadius)
+	{
+		if ( (listener == null) || (coordinates == null) )
+		{
+			throw new NullPointerException();
+		}
+
+		if ( (proximityRadius <= 0.0f) || Float.isNaN(proximityRadius) )
+		{
+			throw new IllegalArgumentException( "Proximity radius (" + proximityRadius + ") must be positive." );
+		}
+
+		Fence fence = new Fence( listener, coordinates, proximityRadius );
+
+		synchronized ( ProximityMonitor.class )
+		{
+			Vector fences = (Vector)listeners.get( listener );
+
+			if ( fences == null )
+			{
+				fences = new Vector();
+				listeners.put( listener, fences );
+			}
+
+			fences.addElement( fence );
+			index( fence );
+			fenceCount++;
+		}
+	}
+
+	/**
+	 * Cancels all the circles registered to a listener.  This implements
+	 * <code>LocationProvider.removeProximityListener</code>.
+	 *
+	 * @see LocationProvider#removeProximityListener(ProximityListener)
+	 */
+	static void remove (ProximityListener listener)
+	{
+		if ( listener == null )
+		{
+			throw new NullPointerException();
+		}
+
+		synchronized ( ProximityMonitor.class )
+		{
+			Vector fences = (Vector)listeners.remove( listener );
+
+			if ( fences != null )
+			{
+				for ( int i = 0; i < fences.size(); i++ )
+				{
+					unindex( (Fence)fences.elementAt(i) );
+				}
+
+				fenceCount -= fences.size();
+			}
+		}
+	}
+
+	/**
+	 * Compares a new location against the registered circles.  Circles it
+	 * is within are cancelled and their listeners called.
+	 *
+	 * @param location is the new location.  Invalid locations are ignored.
+	 */
+	static void locationUpdated (Location location)
+	{
+		if ( (location == null) || (location.isValid() == false) || (fenceCount == 0) )
+		{
+			return;
+		}
+
+		Fence[] entered = null;
+		int enteredCount = 0;
+
+		synchronized ( ProximityMonitor.class )
+		{
+			if ( fenceCount == 0 )
+			{
+				return;
+			}
+
+			double latitude = location.latitude();
+
+			if ( Double.isNaN(latitude) )
+			{
+				return;
+			}
+
+			double longitude = location.longitude();
+			float accuracy = location.horizontalAccuracy();
+
+			if ( (accuracy < 0.0f) || Float.isNaN(accuracy) )
+			{
+				accuracy = 0.0f;
+			}
+
+			double lat = Math.toRadians( latitude );
+			double lon = Math.toRadians( longitude );
+			double cosLat = Math.cos( lat );
+
+			checkNumber++;
+
+			// Gather the circles that might contain the location.
+			candidates.removeAllElements();
+
+			if ( bounds(latitude, longitude, accuracy, box) )
+			{
+				for ( int row = box[0]; row <= box[1]; row++ )
+				{
+					for ( int column = box[2]; column <= box[3]; column++ )
+					{
+						Vector cell = (Vector)grid.get( cell(row, column) );
+
+						if ( cell != null )
+						{
+							collect( cell, candidates );
+						}
+					}
+				}
+			}
+			else
+			{
+				// The location is so inaccurate it could be in a huge area.
+				Enumeration e = listeners.elements();
+
+				while ( e.hasMoreElements() )
+				{
+					collect( (Vector)e.nextElement(), candidates );
+				}
+			}
+
+			collect( largeFences, candidates );
+
+			// Keep the ones the location is actually within.
+			for ( int i = 0; i < candidates.size(); i++ )
+			{
+				Fence fence = (Fence)candidates.elementAt( i );
+
+				if ( fence.contains(lat, lon, cosLat, accuracy) )
+				{
+					if ( entered == null )
+					{
+						entered = new Fence[candidates.size() - i];
+					}
+
+					entered[enteredCount++] = fence;
+
+					// Registrations are cancelled once they are triggered.
+					Vector fences = (Vector)listeners.get( fence.listener );
+					fences.removeElement( fence );
+
+					if ( fences.isEmpty() )
+					{
+						listeners.remove( fence.listener );
+					}
+
+					unindex( fence );
+					fenceCount--;
+				}
+			}
+
+			candidates.removeAllElements();
+		}
+
+		// Listeners may keep the location so do not give them one that is reused.
+		if ( (enteredCount > 0) && (location instanceof MutableLocation) )
+		{
+			location = ((MutableLocation)location).copy();
+		}
+
+		// Tell the applications outside the lock.
+		for ( int i = 0; i < enteredCount; i++ )
+		{
+			Fence fence = entered[i];
+
+			try
+			{
+				fence.listener.proximityEvent( fence.coordinates, location );
+			}
+			catch (Throwable t)
+			{
+				// This is a programming error in the user's application.
+				System.out.println( t.getMessage() );
+			}
+		}
+	}
+
+	/**
+	 * Called when a monitored location provider changes state.  Listeners
+	 * are told monitoring is active when the first monitored provider becomes
+	 * available and inactive when the last one stops being available.
+	 *
+	 * @param oldState is the provider's previous <code>LocationProvider</code>
+	 *  state code.
+	 * @param newState is its new state code.
+	 */
+	static void providerStateChanged (int oldState, int newState)
+	{
+		boolean wasAvailable = (oldState == LocationProvider.AVAILABLE);
+		boolean available = (newState == LocationProvider.AVAILABLE);
+		boolean active;
+		ProximityListener[] toNotify;
+
+		if ( wasAvailable == available )
+		{
+			return;
+		}
+
+		synchronized ( ProximityMonitor.class )
+		{
+			availableProviders += available ? 1 : -1;
+			active = (availableProviders > 0);
+
+			if ( active == monitoringActive )
+			{
+				return;
+			}
+
+			monitoringActive = active;
+
+			toNotify = new ProximityListener[listeners.size()];
+			Enumeration e = listeners.keys();
+
+			for ( int i = 0; i < toNotify.length; i++ )
+			{
+				toNotify[i] = (ProximityListener)e.nextElement();
+			}
+		}
+
+		for ( int i = 0; i < toNotify.length; i++ )
+		{
+			try
+			{
+				toNotify[i].monitoringStateChanged( active );
+			}
+			catch (Throwable t)
+			{
+				// This is a programming error in the user's application.
+				System.out.println( t.getMessage() );
+			}
+		}
+	}
+
+	/**
+	 * Adds the circles in <code>fences</code> to <code>candidates</code> unless
+	 * they have already been added for the current location.
+	 */
+	private static void collect (Vector fences, Vector candidates)
+	{
+		for ( int i = 0; i < fences.size(); i++ )
+		{
+			Fence fence = (Fence)fences.elementAt( i );
+
+			if ( fence.checkNumber != checkNumber )
+			{
+				fence.checkNumber = checkNumber;
+				candidates.addElement( fence );
+			}
+		}
+	}
+
+	/**
+	 * Lists a circle in the grid cells it overlaps.
+	 */
+	private static void index (Fence fence)
+	{
+		int[] box = fence.box;
+
+		if ( box == null )
+		{
+			largeFences.addElement( fence );
+			return;
+		}
+
+		for ( int row = box[0]; row <= box[1]; row++ )
+		{
+			for ( int column = box[2]; column <= box[3]; column++ )
+			{
+				int key = cell( row, column );
+				Vector cell = (Vector)grid.get( key );
+
+				if ( cell == null )
+				{
+					cell = new Vector( 4 );
+					grid.put( key, cell );
+				}
+
+				cell.addElement( fence );
+			}
+		}
+	}
+
+	/**
+	 * Removes a circle from the grid cells it overlaps.
+	 */
+	private static void unindex (Fence fence)
+	{
+		int[] box = fence.box;
+
+		if ( box == null )
+		{
+			largeFences.removeElement( fence );
+			return;
+		}
+
+		for ( int row = box[0]; row <= box[1]; row++ )
+		{
+			for ( int column = box[2]; column <= box[3]; column++ )
+			{
+				int key = cell( row, column );
+				Vector cell = (Vector)grid.get( key );
+
+				if ( cell != null )
+				{
+					cell.removeElement( fence );
+
+					if ( cell.isEmpty() )
+					{
+						grid.remove( key );
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Finds the grid cells overlapped by the bounding box of a circle.
+	 *
+	 * @param latitude is the center's latitude in degrees.
+	 * @param longitude is the center's longitude in degrees.
+	 * @param radius is the circle's radius in meters.
+	 * @param box receives the first and last rows and the first and last
+	 *  columns.  The last column may be past <code>COLUMNS</code> when the box
+	 *  crosses the antimeridian; <code>cell</code> wraps it around.
+	 * @return <code>true</code> if the box covers at most <code>MAX_CELLS</code>
+	 *  cells; <code>false</code> if it covers more and <code>box</code> is not set.
+	 */
+	private static boolean bounds (double latitude, double longitude, double radius, int[] box)
+	{
+		// A little extra covers rounding in the conversion to degrees.
+		double deltaLatitude = Math.toDegrees( radius / Coordinates.METERS_PER_RADIAN ) * 1.001;
+		double farthestLatitude = Math.abs( latitude ) + deltaLatitude;
+
+		if ( farthestLatitude >= 90.0 )
+		{
+			// The circle contains a pole so covers every longitude.
+			return false;
+		}
+
+		double deltaLongitude = deltaLatitude / Math.cos( Math.toRadians(farthestLatitude) );
+
+		int firstRow = row( latitude - deltaLatitude );
+		int lastRow = row( latitude + deltaLatitude );
+		int firstColumn = (int)Math.floor( (longitude - deltaLongitude + 180.0) / CELL_DEGREES );
+		int lastColumn = (int)Math.floor( (longitude + deltaLongitude + 180.0) / CELL_DEGREES );
+
+		if ( (lastRow - firstRow + 1) * (lastColumn - firstColumn + 1) > MAX_CELLS )
+		{
+			return false;
+		}
+
+		box[0] = firstRow;
+		box[1] = lastRow;
+		box[2] = firstColumn;
+		box[3] = lastColumn;
+
+		return true;
+	}
+
+	/**
+	 * @return The grid row holding <code>latitude</code>.
+	 */
+	private static int row (double latitude)
+	{
+		int row = (int)Math.floor( (latitude + 90.0) / CELL_DEGREES );
+
+		if ( row < 0 )
+		{
+			row = 0;
+		}
+		else if ( row >= ROWS )
+		{
+			row = ROWS - 1;
+		}
+
+		return row;
+	}
+
+	/**
+	 * @return The number of a grid cell.  Columns outside the grid are wrapped
+	 *  around the antimeridian.
+	 */
+	private static int cell (int row, int column)
+	{
+		column %= COLUMNS;
+
+		if ( column < 0 )
+		{
+			column += COLUMNS;
+		}
+
+		return row * COLUMNS + column;
+	}
+
+	/**
+	 * A circle registered with <code>addProximityListener</code>.
+	 */
+	private static final class Fence
+	{
+		/**
+		 * The application's listener.
+		 */
+		final ProximityListener listener;
+
+		/**
+		 * The coordinates the application registered.  These are passed back
+		 * to the listener.
+		 */
+		final Coordinates coordinates;
+
+		/**
+		 * The radius of the circle in meters.
+		 */
+		final float radius;
+
+		/**
+		 * The center in radians and the cosine of its latitude.
+		 */
+		final double lat;
+		final double lon;
+		final double cosLat;
+
+		/**
+		 * The Haversine value of <code>radius</code>; locations with a value
+		 * at most this are within the circle.
+		 */
+		final double threshold;
+
+		/**
+		 * The grid cells overlapped or <code>null</code> if this is a large
+		 * circle.
+		 */
+		final int[] box;
+
+		/**
+		 * The last location check this circle was a candidate for.
+		 */
+		int checkNumber;
+
+		Fence (ProximityListener listener, Coordinates coordinates, float radius)
+		{
+			this.listener = listener;
+			this.coordinates = coordinates;
+			this.radius = radius;
+
+			double latitude = coordinates.getLatitude();
+			double longitude = coordinates.getLongitude();
+
+			this.lat = Math.toRadians( latitude );
+			this.lon = Math.toRadians( longitude );
+			this.cosLat = Math.cos( lat );
+			this.threshold = haversine( radius );
+
+			int[] cells = new int[4];
+			this.box = bounds( latitude, longitude, radius, cells ) ? cells : null;
+		}
+
+		/**
+		 * Tests if a location is within the circle.  The location's accuracy
+		 * is added to the radius.
+		 *
+		 * @param lat is the location's latitude in radians.
+		 * @param lon is the location's longitude in radians.
+		 * @param cosLat is the cosine of <code>lat</code>.
+		 * @param accuracy is the location's horizontal accuracy in meters.
+		 * @return <code>true</code> if the location is within the circle.
+		 */
+		boolean contains (double lat, double lon, double cosLat, float accuracy)
+		{
+			double d1 = Math.sin( (this.lat - lat) / 2.0 );
+			double d4 = Math.sin( (this.lon - lon) / 2.0 );
+			double h = d1 * d1 + this.cosLat * cosLat * d4 * d4;
+
+			double limit = (accuracy == 0.0f) ? threshold : haversine( radius + accuracy );
+			return h <= limit;
+		}
+
+		/**
+		 * Inverts the last step of the Haversine formula so distances can be
+		 * compared without an arc sine.
+		 *
+		 * @param distance is in meters.
+		 * @return The Haversine value of <code>distance</code>.
+		 */
+		private static double haversine (double distance)
+		{
+			double halfAngle = distance / Coordinates.METERS_PER_RADIAN / 2.0;
+
+			if ( halfAngle >= Math.PI / 2.0 )
+			{
+				// Covers the whole earth.
+				return 1.0;
+			}
+
+			double s = Math.sin( halfAngle );
+			return s * s;
+		}
+	}
+
+	/**
+	 * Hash table from grid cell numbers to their circles.  The keys are
+	 * <code>int</code>s kept in an open addressed array so looking a cell up
+	 * creates no objects, unlike <code>Hashtable</code> and its
+	 * <code>Integer</code> keys.  Cell numbers are never negative.
+	 */
+	private static final class CellTable
+	{
+		/**
+		 * The keys.  A slot is empty when its value is <code>null</code>.
+		 */
+		private int[] keys = new int[64];
+
+		/**
+		 * The value of the key in the same slot of <code>keys</code>.
+		 */
+		private Object[] values = new Object[64];
+
+		/**
+		 * The number of keys in the table.
+		 */
+		private int size;
+
+		/**
+		 * @return The value of <code>key</code> or <code>null</code>.
+		 */
+		Object get (int key)
+		{
+			int mask = keys.length - 1;
+
+			for ( int i = slot(key, mask); values[i] != null; i = (i + 1) & mask )
+			{
+				if ( keys[i] == key )
+				{
+					return values[i];
+				}
+			}
+
+			return null;
+		}
+
+		/**
+		 * Sets the value of <code>key</code>.
+		 *
+		 * @param value is the new value.  It must not be <code>null</code>.
+		 */
+		void put (int key, Object value)
+		{
+			// Keep the table at most half full so probes stay short.
+			if ( 2 * (size + 1) > keys.length )
+			{
+				grow();
+			}
+
+			int mask = keys.length - 1;
+			int i = slot( key, mask );
+
+			while ( values[i] != null )
+			{
+				if ( keys[i] == key )
+				{
+					values[i] = value;
+					return;
+				}
+
+				i = (i + 1) & mask;
+			}
+
+			keys[i] = key;
+			values[i] = value;
+			size++;
+		}
+
+		/**
+		 * Removes <code>key</code> and its value if it is in the table.
+		 */
+		void remove (int key)
+		{
+			int mask = keys.length - 1;
+			int i = slot( key, mask );
+
+			while ( values[i] != null )
+			{
+				if ( keys[i] == key )
+				{
+					break;
+				}
+
+				i = (i + 1) & mask;
+			}
+
+			if ( values[i] == null )
+			{
+				return;
+			}
+
+			values[i] = null;
+			size--;
+
+			// Move back the keys after the removed one that would no
+			// longer be found past the empty slot.
+			int j = i;
+
+			while ( true )
+			{
+				j = (j + 1) & mask;
+
+				if ( values[j] == null )
+				{
+					return;
+				}
+
+				int home = slot( keys[j], mask );
+
+				// Keep the key where it is if its home slot is cyclically
+				// after the empty slot and at or before its own.
+				boolean stays = (i <= j) ? ((i < home) && (home <= j)) : ((i < home) || (home <= j));
+
+				if ( stays == false )
+				{
+					keys[i] = keys[j];
+					values[i] = values[j];
+					values[j] = null;
+					i = j;
+				}
+			}
+		}
+
+		/**
+		 * Doubles the size of the table.
+		 */
+		private void grow ()
+		{
+			int[] oldKeys = keys;
+			Object[] oldValues = values;
+
+			keys = new int[oldKeys.length * 2];
+			values = new Object[oldValues.length * 2];
+			size = 0;
+
+			for ( int i = 0; i < oldKeys.length; i++ )
+			{
+				if ( oldValues[i] != null )
+				{
+					put( oldKeys[i], oldValues[i] );
+				}
+			}
+		}
+
+		/**
+		 * @return The slot a key is looked for first.
+		 */
+		private static int slot (int key, int mask)
+		{
+			// Mix the bits so neighboring cells spread over the table.
+			return (key * 0x9E3779B9 >>> 16 ^ key) & mask;
+		}
+	}
+}
@@ -0,0 +1,427 @@
+package javax.microedition.location;
+
+/**
+ * A <code>LocationListener</code> stage that passes on only the locations
+ * needed to draw the track within a tolerance.  Register it with a provider
+ * in place of the application's listener; the application's listener gets
+ * the simplified track.
+ * <p>
+ * The track is simplified with the Douglas-Peucker algorithm run over a
+ * bounded window of the latest locations.  The last location passed on is
+ * the <i>anchor</i>.  Locations after it are held while every one of them is
+ * within the tolerance of the line from the anchor to the newest location.
+ * When one is not, Douglas-Peucker picks the locations to keep from the
+ * window, they are passed on, and the last one kept becomes the anchor.  If
+ * the window fills without that happening the newest location is passed on
+ * so memory stays constant however long the track is.
+ * <p>
+ * Distances are measured on a plane tangent to the earth at the anchor,
+ * which matches <code>Coordinates.distance</code> closely over the few
+ * kilometers a window spans and needs no inverse trigonometry.
+ * <p>
+ * Locations are passed on late: each one waits until a later location shows
+ * whether it is needed.  Held locations from a provider reusing locations
+ * are copies, so each one held creates garbage.  Invalid locations end the track; the held location
+ * closest to the gap is passed on first, then the invalid location, and
+ * the next valid location starts a new track.  Call <code>flush</code> to
+ * pass on the held location at the end of a track.
+ *
+ * @see LocationListener
+ */
+public class TrackSimplifier
+	implements LocationListener
+{
+	/**
+	 * The default number of locations held after the anchor.
+	 */
+	public static final int DEFAULT_WINDOW_SIZE = 64;
+
+	/**
+	 * Meters per degree along a meridian.
+	 */
+	private static final double METERS_PER_DEGREE = Coordinates.METERS_PER_RADIAN * Math.PI / 180.0;
+
+	/**
+	 * The application's listener given the simplified track.
+	 */
+	private final LocationListener listener;
+
+	/**
+	 * The square of the tolerance in meters.
+	 */
+	private final double toleranceSquared;
+
+	/**
+	 * The anchor at index 0 and the held locations after it.
+	 */
+	private final Location[] window;
+
+	/**
+	 * The latitudes and longitudes of <code>window</code> in degrees.
+	 */
+	private final double[] latitudes;
+	private final double[] longitudes;
+
+	/**
+	 * <code>window</code> projected onto the plane at the anchor, in meters
+	 * east and north of it.
+	 */
+	private final double[] x;
+	private final double[] y;
+
+	/**
+	 * Scratch space for Douglas-Peucker: which locations are kept and the
+	 * ranges still to check.
+	 */
+	private final boolean[] keep;
+	private final int[] stack;
+
+	/**
+	 * The number of locations held after the anchor.  -1 when there is no
+	 * anchor.
+	 */
+	private int count = -1;
+
+	/**
+	 * Meters per degree of longitude at the anchor.
+	 */
+	private double metersPerDegreeLongitude;
+
+	/**
+	 * The provider of the latest event, passed to the application's listener.
+	 */
+	private LocationProvider provider;
+
+	/**
+	 * Constructs a stage with the default window size.
+	 *
+	 * @param listener is the application's listener.
+	 * @param tolerance is the furthest, in meters, any location may be from
+	 *  the simplified track.
+	 */
+	public TrackSimplifier (LocationListener listener, float tolerance)
+	{
+		this( listener, tolerance, DEFAULT_WINDOW_SIZE );
+	}
+
+	/**
+	 * Constructs a stage.
+	 *
+	 * @param listener is the application's listener.
+	 * @param tolerance is the furthest, in meters, any location may be from
+	 *  the simplified track.
+	 * @param windowSize is the most locations held after the anchor.  Larger
+	 *  windows drop more locations from straight stretches.
+	 * @throws NullPointerException if <code>listener</code> is <code>null</code>.
+	 * @throws IllegalArgumentException if <code>tolerance</code> is not positive
+	 *  or <code>windowSize</code> is less than 2.
+	 */
+	public TrackSimplifier (LocationListener listener, float tolerance, int windowSize)
+	{
+		if ( listener == null )
+		{
+			throw new NullPointerException();
+		}
+
+		if ( (tolerance > 0.0f) == false )
+		{
+			throw new IllegalArgumentException( "Tolerance (" + tolerance + ") must be positive." );
+		}
+
+		if ( windowSize < 2 )
+		{
+			throw new IllegalArgumentException( "Window size (" + windowSize + ") must be at least 2." );
+		}
+
+		this.listener = listener;
+		this.toleranceSquared = (double)tolerance * tolerance;
+
+		window = new Location[windowSize + 1];
+		latitudes = new double[windowSize + 1];
+		longitudes = new double[windowSize + 1];
+		x = new double[windowSize + 1];
+		y = new double[windowSize + 1];
+		keep = new boolean[windowSize + 1];
+		stack = new int[2 * (windowSize + 1)];
+	}
+
+	/**
+	 * @see javax.microedition.location.LocationListener#locationUpdated(javax.microedition.location.LocationProvider, javax.microedition.location.Location)
+	 */
+	public synchronized void locationUpdated (LocationProvider provider, Location location)
+	{
+		this.provider = provider;
+
+		double latitude = Double.NaN;
+
+		if ( (location != null) && location.isValid() )
+		{
+			latitude = location.latitude();
+		}
+
+		if ( Double.isNaN(latitude) )
+		{
+			// A gap ends the track.
+			flush();
+			pass( location );
+			return;
+		}
+
+		if ( count < 0 )
+		{
+			// The first location of a track is always kept.
+			count = 0;
+			hold( 0, location, latitude, location.longitude() );
+			anchor( 0 );
+			pass( location );
+			return;
+		}
+
+		count++;
+		hold( count, location, latitude, location.longitude() );
+
+		if ( isWithinTolerance(0, count) == false )
+		{
+			simplify();
+		}
+		else if ( count == window.length - 1 )
+		{
+			// The window is full and its locations are all close to the line
+			// from the anchor to the newest, so that line is kept.
+			pass( window[count] );
+			anchor( count );
+		}
+	}
+
+	/**
+	 * @see javax.microedition.location.LocationListener#providerStateChanged(javax.microedition.location.LocationProvider, int)
+	 */
+	public synchronized void providerStateChanged (LocationProvider provider, int newState)
+	{
+		this.provider = provider;
+
+		if ( newState == LocationProvider.OUT_OF_SERVICE )
+		{
+			flush();
+		}
+
+		try
+		{
+			listener.providerStateChanged( provider, newState );
+		}
+		catch (Throwable t)
+		{
+			// This is a programming error in the user's application.
+			System.out.println( t.getMessage() );
+		}
+	}
+
+	/**
+	 * Passes on the newest held location and ends the track.  The next
+	 * location starts a new one.
+	 */
+	public synchronized void flush ()
+	{
+		if ( count > 0 )
+		{
+			pass( window[count] );
+		}
+
+		for ( int i = 0; i <= count; i++ )
+		{
+			window[i] = null;
+		}
+
+		count = -1;
+	}
+
+	/**
+	 * Runs Douglas-Peucker over the window, passes on the locations kept
+	 * before the newest, and makes the last of them the anchor.
+	 */
+	private void simplify ()
+	{
+		for ( int i = 0; i <= count; i++ )
+		{
+			keep[i] = false;
+		}
+
+		keep[0] = true;
+		keep[count] = true;
+
+		int top = 0;
+		stack[top++] = 0;
+		stack[top++] = count;
+
+		while ( top > 0 )
+		{
+			int last = stack[--top];
+			int first = stack[--top];
+			int farthest = -1;
+			double farthestDistance = toleranceSquared;
+
+			for ( int i = first + 1; i < last; i++ )
+			{
+				double distance = distanceSquared( i, first, last );
+
+				if ( distance > farthestDistance )
+				{
+					farthest = i;
+					farthestDistance = distance;
+				}
+			}
+
+			if ( farthest > 0 )
+			{
+				keep[farthest] = true;
+				stack[top++] = first;
+				stack[top++] = farthest;
+				stack[top++] = farthest;
+				stack[top++] = last;
+			}
+		}
+
+		int newAnchor = 0;
+
+		for ( int i = 1; i < count; i++ )
+		{
+			if ( keep[i] )
+			{
+				pass( window[i] );
+				newAnchor = i;
+			}
+		}
+
+		anchor( newAnchor );
+	}
+
+	/**
+	 * @return <code>true</code> if every location between <code>first</code>
+	 *  and <code>last</code> is within the tolerance of the line between them.
+	 */
+	private boolean isWithinTolerance (int first, int last)
+	{
+		for ( int i = first + 1; i < last; i++ )
+		{
+			if ( distanceSquared(i, first, last) > toleranceSquared )
+			{
+				return false;
+			}
+		}
+
+		return true;
+	}
+
+	/**
+	 * @return The square of the distance in meters from location <code>i</code>
+	 *  to the line segment from <code>first</code> to <code>last</code>.
+	 */
+	private double distanceSquared (int i, int first, int last)
+	{
+		double dx = x[last] - x[first];
+		double dy = y[last] - y[first];
+		double px = x[i] - x[first];
+		double py = y[i] - y[first];
+		double lengthSquared = dx * dx + dy * dy;
+
+		if ( lengthSquared > 0.0 )
+		{
+			// Move to the closest point of the segment.
+			double t = (px * dx + py * dy) / lengthSquared;
+
+			if ( t > 1.0 )
+			{
+				t = 1.0;
+			}
+			else if ( t < 0.0 )
+			{
+				t = 0.0;
+			}
+
+			px -= t * dx;
+			py -= t * dy;
+		}
+
+		return px * px + py * py;
+	}
+
+	/**
+	 * Puts a location in the window and projects it.  A reused location is
+	 * copied since the provider fills it in again for the next fix.
+	 */
+	private void hold (int i, Location location, double latitude, double longitude)
+	{
+		if ( location instanceof MutableLocation )
+		{
+			location = ((MutableLocation)location).copy();
+		}
+
+		window[i] = location;
+		latitudes[i] = latitude;
+		longitudes[i] = longitude;
+		project( i );
+	}
+
+	/**
+	 * Makes location <code>i</code> the anchor.  The locations after it move
+	 * to the start of the window and are projected onto the plane at it.
+	 */
+	private void anchor (int i)
+	{
+		int remaining = count - i;
+
+		System.arraycopy( window, i, window, 0, remaining + 1 );
+		System.arraycopy( latitudes, i, latitudes, 0, remaining + 1 );
+		System.arraycopy( longitudes, i, longitudes, 0, remaining + 1 );
+
+		for ( int j = remaining + 1; j <= count; j++ )
+		{
+			window[j] = null;
+		}
+
+		count = remaining;
+		metersPerDegreeLongitude = METERS_PER_DEGREE * Math.cos( Math.toRadians(latitudes[0]) );
+
+		for ( int j = 0; j <= count; j++ )
+		{
+			project( j );
+		}
+	}
+
+	/**
+	 * Projects location <code>i</code> onto the plane at the anchor.
+	 */
+	private void project (int i)
+	{
+		double deltaLongitude = longitudes[i] - longitudes[0];
+
+		// Take the short way across the antimeridian.
+		if ( deltaLongitude > 180.0 )
+		{
+			deltaLongitude -= 360.0;
+		}
+		else if ( deltaLongitude < -180.0 )
+		{
+			deltaLongitude += 360.0;
+		}
+
+		x[i] = deltaLongitude * metersPerDegreeLongitude;
+		y[i] = (latitudes[i] - latitudes[0]) * METERS_PER_DEGREE;
+	}
+
+	/**
+	 * Gives a location to the application's listener.
+	 */
+	private void pass (Location location)
+	{
+		try
+		{
+			listener.locationUpdated( provider, location );
+		}
+		catch (Throwable t)
+		{
+			// This is a programming error in the user's application.
+			System.out.println( t.getMessage() );
+		}
+	}
+}
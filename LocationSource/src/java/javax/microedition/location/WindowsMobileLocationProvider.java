@@ -4,13 +4,39 @@ package javax.microedition.location;
  * Location provider which glues together the Java JSR-179 Location API
  * to the Windows Mobile <a href="http://msdn2.microsoft.com/en-us/library/ms889503.aspx">
  * GPS Intermediate Driver</a> (GPSID) API.  All the C and Java code mix here.
+ * <p>
+ * Events are raised as soon as the driver gives them.  Receivers that report
+ * faster than the application needs can be slowed with a batching window,
+ * set in milliseconds by the <code>locationsource.windowsmobile.batchWindow</code>
+ * system property.  At most one location is raised per window; locations
+ * arriving before the window since the last one has passed are dropped, so
+ * the ones raised are never delayed.  The default of 0 raises every location.
+ * <p>
+ * The driver's values, including its UTC time for the fix, are written
+ * straight into a <code>GPSRecord</code> that becomes the location.  When
+ * reusing locations no garbage is created per fix on either side of the JNI.
  * 
  * @see LocationProvider
  */
 class WindowsMobileLocationProvider 
-	extends LocationProvider
+	extends AbstractLocationProvider
 	implements Runnable
 {
+	/**
+	 * System property holding the batching window in milliseconds.
+	 */
+	static final String BATCH_WINDOW_PROPERTY = "locationsource.windowsmobile.batchWindow";
+
+	/**
+	 * Returned by <code>getGPSEvent</code> when the GPSID is closing.
+	 */
+	private static final int SHUTDOWN = -1;
+
+	/**
+	 * Returned by <code>getGPSEvent</code> when it filled in a location.
+	 */
+	private static final int LOCATION = 0;
+
 	/**
 	 * The singleton instance of this class.  By making it a singleton we can
 	 * avoid a lot of synchronization and library loading hassles.
@@ -30,43 +56,15 @@ class WindowsMobileLocationProvider
 	private final Thread worker = new Thread( this );
 
 	/**
-	 * The application's object registered to listen to location updates.
-	 * This can be <code>null</code> meaning the application isn't receiving
-	 * events. 
-	 */
-	private LocationListener locationListener;
-	
-	/**
-	 * The last <code>Location</code> returned by the GPS Intermediate Driver.
-	 */
-	private Location lastLocation;
-	
-	/**
-	 * The time the last location update arrived.  This is used to make sure
-	 * location updates are given only at the registered <code>interval</code>.
-	 */
-	private long lastLocationTime;
-	
-	/**
-	 * The last known state of the location provider.
-	 */
-	private int state = TEMPORARILY_UNAVAILABLE;
-
-	/**
-	 * The time between location updates in milliseconds.  If this is 0 then
-	 * no location events should be raised.
-	 */
-	private int interval;
-
-	/**
-	 * The maximum wait time, in milliseconds, for GPS data.
+	 * The least time, in milliseconds, between raised locations.  0 raises
+	 * every location.
 	 */
-	private int timeout;
+	private final int batchWindow;
 
 	/**
-	 * The maximum age, in milliseconds, GPS data can be.
+	 * The values of the last location.  Only used by the worker thread.
 	 */
-	private int maxAge;
+	private final GPSRecord record = new GPSRecord();
 
 	/**
 	 * Returns the singleton instance of this provider.
@@ -102,6 +100,8 @@ class WindowsMobileLocationProvider
 	private WindowsMobileLocationProvider ()
 		throws LocationException
 	{
+		this( batchWindowProperty() );
+
 		// Load the native C library.
 		if ( isIBM() )
 		{
@@ -134,102 +134,65 @@ class WindowsMobileLocationProvider
 	}
 	
 	/**
-	 * @return <code>true</code> if this is IBM's JVM; <code>false</code>
-	 *  otherwise.
+	 * Constructs a provider without loading the native library or starting
+	 * the GPS.  A subclass simulating the driver overrides <code>getGPSEvent</code>
+	 * and calls <code>run</code> itself.
+	 *
+	 * @param batchWindow is the least time, in milliseconds, between raised
+	 *  locations or 0 to raise every location.
 	 */
-	private static boolean isIBM ()
+	WindowsMobileLocationProvider (int batchWindow)
 	{
-		try
-		{
-			Class.forName( "com.ibm.oti.vm.VM" );
-		}
-		catch (Throwable e)  // ClassNotFoundException, NoClassDefFoundError
-		{
-			return false;
-		}
-		
-		return true;
+		this.batchWindow = batchWindow;
 	}
 
 	/**
-	 * Sets a new listener object created by the API user.  It will start getting
-	 * location updates on the <code>worker</code> thread.
-	 * <p>
-	 * This method is synchronized so that another thread cannot
-	 * create a race condition by changing something else.
-	 * 
-	 * @see javax.microedition.location.LocationProvider#setLocationListener(javax.microedition.location.LocationListener, int, int, int)
+	 * @return The batching window from the <code>locationsource.windowsmobile.batchWindow</code>
+	 *  system property or 0 if it is not set or not valid.
 	 */
-	public synchronized void setLocationListener (LocationListener locationlistener, int interval, int timeout, int maxAge)
+	private static int batchWindowProperty ()
 	{
-		// Set the interval between location updates.
-		if ( interval < 0 )
-		{
-			interval = 1;
-		}
-		
-		this.interval = interval * 1000;  // Convert seconds to milliseconds
+		String value = System.getProperty( BATCH_WINDOW_PROPERTY );
 
-		// Set the timeout for waiting for GPS data.
-		if ( timeout < 1 )
-		{
-			timeout = 10;
-		}
-		
-		this.timeout = timeout * 1000;  // Convert seconds to milliseconds
-		
-		// Set the maximum age of usuable GPS data.
-		if ( maxAge < 1 )
+		if ( value != null )
 		{
-			maxAge = 3;
+			try
+			{
+				int window = Integer.parseInt( value.trim() );
+
+				if ( window >= 0 )
+				{
+					return window;
+				}
+			}
+			catch (NumberFormatException e)
+			{
+			}
+
+			System.out.println( "Ignoring " + BATCH_WINDOW_PROPERTY + "=" + value );
 		}
-		
-		this.maxAge = maxAge * 1000;  // Convert seconds to milliseconds
-		
-		// Record the new location listener.
-		this.locationListener = locationlistener;
-	}
-	
-	/**
-	 * @see javax.microedition.location.LocationProvider#getLastKnownLocationToProvider()
-	 */
-	protected Location getLastKnownLocationToProvider ()
-	{
-		return lastLocation;
-	}
 
-	/**
-	 * @see javax.microedition.location.LocationProvider#getLocation(int)
-	 */
-	public Location getLocation (int timeout)
-	{
-		return lastLocation;
+		return 0;
 	}
 
 	/**
-	 * Closes the GPS.
-	 * <p>
-	 * This method is synchronized so that another thread cannot
-	 * simultaneously start GPS and create a race condition.
-	 * 
-	 * @see javax.microedition.location.LocationProvider#reset()
-	 */
-	public synchronized void reset ()
-	{
-		// No more location listener.
-		setLocationListener( null, 0, -1, -1 );
-	}
-	
-	/**
-	 * Returns the state of the GSP Intermediate Driver.
-	 * 
-	 * @see javax.microedition.location.LocationProvider#getState()
+	 * @return <code>true</code> if this is IBM's JVM; <code>false</code>
+	 *  otherwise.
 	 */
-	public int getState ()
+	static boolean isIBM ()
 	{
-		return state;
+		try
+		{
+			Class.forName( "com.ibm.oti.vm.VM" );
+		}
+		catch (Throwable e)  // ClassNotFoundException, NoClassDefFoundError
+		{
+			return false;
+		}
+		
+		return true;
 	}
-	
+
 	/**
 	 * Initializes the GPS Intermediate Driver.  This will start the GPS
 	 * chip which will start trying to acquire a fix.
@@ -247,23 +210,23 @@ class WindowsMobileLocationProvider
 	
 	/**
 	 * Blocks until a new GPS event is raised by the GPS Intermediate
-	 * Driver.  The returned object will be one of:
-	 * <ol>
-	 *  <li><code>Location</code> when a new location is acquired
-	 *  <li><code>Integer</code> when the GPS changes state
-	 *  <li><code>null</code> when the GPSID is closing.
-	 * </ol>
+	 * Driver.  No Java objects are created.  A new location is written into
+	 * <code>record</code>; its latitude and longitude are left <code>NaN</code>
+	 * when the GPS has no fix.
 	 * 
+	 * @param record is filled in with a new location.  Values the GPS did
+	 *  not report are not changed, so it should be <code>reset</code> first.
 	 * @param interval is the time between location updates in milliseconds.
 	 * @param timeout is the wait period, in milliseconds, for location 
 	 *  information before returning an invalid location object to the
 	 *  location listener.
 	 * @param maxAge is the maximum age, in milliseconds, of location 
 	 *  information.
-	 * @return A <code>Location</code> event, new state event, or <code>
-	 *  null</code> signaling shutdown.
+	 * @return <code>LOCATION</code> when <code>record</code> holds a new
+	 *  location, the new state when the GPS changes state, or
+	 *  <code>SHUTDOWN</code> signaling shutdown.
 	 */
-	private native Object getGPSEvent (int interval, int timeout, int maxAge);
+	native int getGPSEvent (GPSRecord record, int interval, int timeout, int maxAge);
 	
 	/**
 	 * A background thread that posts location events to the registered
@@ -273,25 +236,28 @@ class WindowsMobileLocationProvider
 	 */
 	public void run ()
 	{
+		// When the last location was raised.
+		long lastRaised = 0;
+
 		try
 		{
 			// Get location events until signaled to shutdown.
 			while ( true )
 			{
 				// Block until a new event has been raised.
-				Object o = getGPSEvent( interval, timeout, maxAge );
+				record.reset();
+				int event = getGPSEvent( record, getInterval(), getTimeout(), getMaxAge() );
 				
 				// Check what kind of update it is.
-				if ( o == null )
+				if ( event == SHUTDOWN )
 				{
 					// Signal for this thread to exit
 					break;
 				}
-				else if ( o instanceof Integer )
+				else if ( event != LOCATION )
 				{
 					// The provider is now unavailable.
-					Integer i = (Integer)o;
-					int newState = i.intValue();
+					int newState = event;
 					
 					// Forward the state change event to the user's location listener.
 					if ( newState != AVAILABLE )  // to ensure all AVAILABLE states also have a new location
@@ -299,24 +265,33 @@ class WindowsMobileLocationProvider
 						raiseStateChangeEvent( newState );
 					}
 				}
-				else // ( o instanceof javax.microedition.location.Location )
+				else
 				{
 					// A new location event has been received;
-					Location l = (Location)o;
+					Location l = newLocation( record, System.currentTimeMillis() );
 					
 					// Was the provider unavailable and is now available?
-					if ( (state != AVAILABLE) && l.isValid() )
+					if ( (getState() != AVAILABLE) && l.isValid() )
 					{
 						// Now the provider is available again.
 						raiseStateChangeEvent( AVAILABLE );
 					}
 					
-					// Forward the location event to the user's location listener.
-					raiseLocationEvent( l );
+					// Forward the location event to the user's location listener
+					// unless it came too soon after the last one.  Invalid ones
+					// always go so the loss of the fix is not hidden.
+					long now = System.currentTimeMillis();
+					
+					if ( (l.isValid() == false) || (batchWindow == 0) || (now - lastRaised >= batchWindow) )
+					{
+						lastRaised = now;
+						raiseLocationEvent( l );
+					}
+					else
+					{
+						locationDropped();
+					}
 				}
-				
-				// Give up the CPU.
-				Thread.sleep( 100 );
 			}
 		}
 		catch (Throwable t)
@@ -326,71 +301,6 @@ class WindowsMobileLocationProvider
 		}
 	}
 	
-	/**
-	 * Call when the location provider gives us a new state.
-	 * 
-	 * @param newState is the <code>javax.microedition.location.LocationProvider</code>
-	 *  state code.
-	 */
-	private synchronized void raiseStateChangeEvent (int newState)
-	{
-		// Record the unavailable state.
-		state = newState;
-		
-		// Forward to the application's listener.
-		if ( locationListener != null )
-		{
-			try
-			{
-				locationListener.providerStateChanged( this, newState );
-			}
-			catch (Throwable t)
-			{
-				// This is a programming error in the user's application.
-				System.out.println( t.getMessage() );
-			}
-		}
-	}
-	
-	/**
-	 * Call when the location provider gives us a new location.
-	 * 
-	 * @param location is the new location.
-	 */
-	private synchronized void raiseLocationEvent (Location location)
-	{
-		// Record the last known location to the GPS.
-		if ( (location != null) && location.isValid() )
-		{
-			lastLocation = location;
-		}
-		
-		// Forward to the application's listener.
-		if ( locationListener != null )
-		{
-			// Does the user want location events?
-			if ( interval != 0 )
-			{
-				// Do not provide updates until the interval has expired.
-				long now = System.currentTimeMillis();
-				
-				if ( lastLocationTime + interval <= now )
-				{
-					try
-					{
-						lastLocationTime = now;
-						locationListener.locationUpdated( this, location );
-					}
-					catch (Throwable t)
-					{
-						// This is a programming error in the user's application.
-						System.out.println( t.getMessage() );
-					}
-				}
-			}
-		}
-	}
-	
 	/**
 	 * @return The name of this location provider.
 	 */
@@ -0,0 +1,101 @@
+package javax.microedition.location;
+
+/**
+ * Describes the Windows Mobile GPS Intermediate Driver provider.  The native
+ * library is not loaded, and the GPS not started, until the provider is
+ * chosen by <code>LocationProvider.getInstance</code>.
+ *
+ * @see WindowsMobileLocationProvider
+ */
+class WindowsMobileLocationProviderFactory
+	extends LocationProviderFactory
+{
+	/**
+	 * The GPSID only runs in IBM's WEME JVM (a.k.a. J9).
+	 *
+	 * @see javax.microedition.location.LocationProviderFactory#isSupported()
+	 */
+	public boolean isSupported ()
+	{
+		return WindowsMobileLocationProvider.isIBM();
+	}
+
+	/**
+	 * @see javax.microedition.location.LocationProviderFactory#getHorizontalAccuracy()
+	 */
+	public int getHorizontalAccuracy ()
+	{
+		return 10;
+	}
+
+	/**
+	 * @see javax.microedition.location.LocationProviderFactory#getVerticalAccuracy()
+	 */
+	public int getVerticalAccuracy ()
+	{
+		return 20;
+	}
+
+	/**
+	 * @see javax.microedition.location.LocationProviderFactory#getResponseTime()
+	 */
+	public int getResponseTime ()
+	{
+		return 1000;
+	}
+
+	/**
+	 * @see javax.microedition.location.LocationProviderFactory#getPowerConsumption()
+	 */
+	public int getPowerConsumption ()
+	{
+		return Criteria.POWER_USAGE_HIGH;
+	}
+
+	/**
+	 * GPS satellites are free to use.
+	 *
+	 * @see javax.microedition.location.LocationProviderFactory#isCostIncurred()
+	 */
+	public boolean isCostIncurred ()
+	{
+		return false;
+	}
+
+	/**
+	 * @see javax.microedition.location.LocationProviderFactory#isSpeedAndCourseSupported()
+	 */
+	public boolean isSpeedAndCourseSupported ()
+	{
+		return true;
+	}
+
+	/**
+	 * @see javax.microedition.location.LocationProviderFactory#isAltitudeSupported()
+	 */
+	public boolean isAltitudeSupported ()
+	{
+		return true;
+	}
+
+	/**
+	 * @see javax.microedition.location.LocationProviderFactory#createProvider()
+	 */
+	protected LocationProvider createProvider ()
+		throws LocationException
+	{
+		try
+		{
+			return WindowsMobileLocationProvider.instance();
+		}
+		catch (RuntimeException e)
+		{
+			// The native library could not be loaded.
+			throw new LocationException( e.getMessage() );
+		}
+		catch (UnsatisfiedLinkError e)
+		{
+			throw new LocationException( "Could not link jsr179-gpsid.dll." );
+		}
+	}
+}